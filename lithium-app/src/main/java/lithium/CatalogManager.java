@@ -17,14 +17,18 @@
 
 package lithium;
 
+import java.beans.*;
 import java.io.*;
 import java.net.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import com.github.meinders.common.*;
 import lithium.catalog.*;
 import lithium.io.*;
+import lithium.io.catalog.*;
+import lithium.search.*;
 import org.xml.sax.*;
 
 /**
@@ -58,6 +62,32 @@ public abstract class CatalogManager {
 	 */
 	private static LinkedCatalog defaultCatalogs;
 
+	/**
+	 * Index of the words in the lyrics of all catalogs.
+	 */
+	private static LyricIndex index;
+
+	/**
+	 * Index of the bible references of the lyrics in all catalogs.
+	 */
+	private static BibleRefIndex bibleRefIndex;
+
+	/**
+	 * Writes catalog snapshots in the background.
+	 */
+	private static ExecutorService snapshotWriter;
+
+	/**
+	 * Cache of lyric references resolved using {@link #getLyric(LyricRef)}.
+	 * References that couldn't be resolved are mapped to {@code null}.
+	 */
+	private static final Map<LyricRef, Lyric> resolvedReferences = new WeakHashMap<LyricRef, Lyric>();
+
+	/**
+	 * Incremented whenever the cache of resolved references is invalidated.
+	 */
+	private static int resolvedReferencesVersion = 0;
+
 	static {
 		cache = new HashMap<URL, MutableCatalog>();
 		defaultCatalogs = new LinkedCatalog();
@@ -66,10 +96,33 @@ public abstract class CatalogManager {
 		catalogs = new LinkedCatalog();
 		catalogs.add(openCatalogs);
 		catalogs.add(defaultCatalogs);
+
+		index = new LyricIndex(catalogs);
+		bibleRefIndex = new BibleRefIndex(catalogs);
+
+		catalogs.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent e) {
+				String property = e.getPropertyName();
+				if (property == MutableCatalog.STRUCTURE_PROPERTY) {
+					invalidateReferences();
+				}
+			}
+		});
+
+		snapshotWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "CatalogSnapshotWriter");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
 	}
 
 	/**
-	 * Loads the catalogs listed in config.xml.
+	 * Loads the catalogs listed in config.xml. Catalogs are parsed
+	 * concurrently, but added to the default catalogs in the configured order.
+	 * Any catalogs that fail to load are skipped.
 	 *
 	 * @param listener the status listener to be informed about the progress of
 	 *            the operation
@@ -86,43 +139,88 @@ public abstract class CatalogManager {
 			status = listener;
 		}
 
-		status.setStatus(Resources.get().getString(
-		        "ellipsis",
-		        Resources.get().getString("loading",
-		                Resources.get().getString("catalogs"))));
+		String loadingCatalogs = Resources.get().getString("loading",
+		        Resources.get().getString("catalogs"));
+		status.setStatus(Resources.get().getString("ellipsis",
+		        loadingCatalogs));
 		defaultCatalogs.clear();
+		invalidateReferences();
 
-		for (URL catalogURL : ConfigManager.getConfig().getCatalogURLs()) {
-			String catalogName = catalogURL.getFile().substring(
-			        catalogURL.getFile().lastIndexOf("/"));
-			status.setStatus(Resources.get().getString(
-			        "details",
-			        Resources.get().getString("loading",
-			                Resources.get().getString("catalogs")), catalogName));
+		Config config = ConfigManager.getConfig();
+		List<URL> catalogURLs = new ArrayList<URL>(config.getCatalogURLs());
+		Set<File> loadOnStartup = config.getLoadOnStartupFiles(FilterManager.getFilters( FilterType.CATALOG));
+		for (File file : loadOnStartup) {
 			try {
-				loadDefault(catalogURL);
+				catalogURLs.add(file.toURI().toURL());
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
 		}
 
-		Config config = ConfigManager.getConfig();
-		Set<File> loadOnStartup = config.getLoadOnStartupFiles(FilterManager.getFilters( FilterType.CATALOG));
-		for (File file : loadOnStartup) {
+		if (!catalogURLs.isEmpty()) {
+			int threads = Math.min(catalogURLs.size(), Runtime.getRuntime()
+			        .availableProcessors());
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
 			try {
-				loadDefault(file.toURI().toURL());
-			} catch (Exception e) {
-				e.printStackTrace();
+				loadDefaultCatalogs(catalogURLs, executor, status,
+				        loadingCatalogs);
+			} finally {
+				executor.shutdownNow();
 			}
 		}
+
+		index.update();
 	}
 
-	private static void loadDefault(URL catalogURL) throws IOException,
-	        ParseException, SAXException {
-		assert catalogURL != null;
-		Catalog catalog = getCatalog(catalogURL);
-		if (!catalogs.contains(catalog)) {
-			defaultCatalogs.add(catalog);
+	/**
+	 * Loads the given catalogs using the given executor. Each catalog is added
+	 * to the default catalogs as soon as it and all catalogs before it are
+	 * loaded.
+	 */
+	private static void loadDefaultCatalogs(List<URL> catalogURLs,
+	        ExecutorService executor, StatusListener status,
+	        String loadingCatalogs) {
+		CompletionService<Catalog> completionService = new ExecutorCompletionService<Catalog>(
+		        executor);
+		List<Future<Catalog>> futures = new ArrayList<Future<Catalog>>();
+		for (final URL catalogURL : catalogURLs) {
+			futures.add(completionService.submit(new Callable<Catalog>() {
+				public Catalog call() throws Exception {
+					return getCatalog(catalogURL);
+				}
+			}));
+		}
+
+		int total = futures.size();
+		int next = 0;
+		for (int completed = 1; completed <= total; completed++) {
+			try {
+				completionService.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			status.setStatus(Resources.get().getString("details",
+			        loadingCatalogs,
+			        Resources.get().getString("fraction", completed, total)));
+
+			// attach completed catalogs in the configured order
+			while (next < total && futures.get(next).isDone()) {
+				try {
+					Catalog catalog = futures.get(next).get();
+					if (!catalogs.contains(catalog)) {
+						defaultCatalogs.add(catalog);
+						invalidateReferences();
+					}
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				next++;
+			}
 		}
 	}
 
@@ -136,6 +234,28 @@ public abstract class CatalogManager {
 		return catalogs;
 	}
 
+	/**
+	 * Returns an index of the words in the lyrics of the catalog returned by
+	 * {@link #getCatalog()}. The index is updated as needed when it's used to
+	 * search for lyrics.
+	 *
+	 * @return the lyric index
+	 */
+	public static LyricIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns an index of the bible references of the lyrics in the catalog
+	 * returned by {@link #getCatalog()}. The index is updated as needed when
+	 * it's used to search for lyrics.
+	 *
+	 * @return the bible reference index
+	 */
+	public static BibleRefIndex getBibleRefIndex() {
+		return bibleRefIndex;
+	}
+
 	/**
 	 * Receives notification that a catalog was opened by the user.
 	 *
@@ -144,6 +264,7 @@ public abstract class CatalogManager {
 	public static void open(Catalog catalog) {
 		if (!catalogs.contains(catalog)) {
 			openCatalogs.add(catalog);
+			invalidateReferences();
 		}
 	}
 
@@ -157,10 +278,49 @@ public abstract class CatalogManager {
 		boolean isOpen = openCatalogs.contains(catalog);
 		if (isOpen) {
 			openCatalogs.remove(catalog);
+			invalidateReferences();
 		}
 		return isOpen;
 	}
 
+	/**
+	 * Returns the lyric that the given reference refers to, in the catalog
+	 * returned by {@link #getCatalog()}. Resolved references are cached until
+	 * catalogs are opened or closed, or the contents of any catalog change.
+	 *
+	 * @param reference the reference
+	 * @return the lyric, or {@code null} if no matching lyric is found
+	 */
+	public static Lyric getLyric(LyricRef reference) {
+		int version;
+		synchronized (resolvedReferences) {
+			Lyric lyric = resolvedReferences.get(reference);
+			if (lyric != null || resolvedReferences.containsKey(reference)) {
+				return lyric;
+			}
+			version = resolvedReferencesVersion;
+		}
+
+		Lyric lyric = catalogs.getLyric(reference);
+
+		synchronized (resolvedReferences) {
+			if (version == resolvedReferencesVersion) {
+				resolvedReferences.put(reference, lyric);
+			}
+		}
+		return lyric;
+	}
+
+	/**
+	 * Clears the cache of resolved lyric references.
+	 */
+	private static void invalidateReferences() {
+		synchronized (resolvedReferences) {
+			resolvedReferences.clear();
+			resolvedReferencesVersion++;
+		}
+	}
+
 	/**
 	 * Returns the catalog at the given URL. Catalogs loaded using this method
 	 * are cached.
@@ -173,11 +333,98 @@ public abstract class CatalogManager {
 	 */
 	public static MutableCatalog getCatalog(URL catalogURL) throws IOException,
 	        ParseException, SAXException {
-		MutableCatalog catalog = cache.get(catalogURL);
+		MutableCatalog catalog;
+		synchronized (cache) {
+			catalog = cache.get(catalogURL);
+		}
 		if (catalog == null) {
-			catalog = CatalogIO.read(catalogURL);
-			cache.put(catalogURL, catalog);
+			catalog = readCatalog(catalogURL);
+			synchronized (cache) {
+				MutableCatalog cached = cache.get(catalogURL);
+				if (cached == null) {
+					cache.put(catalogURL, catalog);
+				} else {
+					catalog = cached;
+				}
+			}
+		}
+		return catalog;
+	}
+
+	/**
+	 * Reads the catalog at the given URL. For catalog files, a snapshot of the
+	 * parsed catalog is stored in the settings folder, which is used instead
+	 * of the file until the file is changed.
+	 *
+	 * @param catalogURL the location of the catalog
+	 * @return the catalog
+	 * @throws IOException if the catalog can't be read
+	 */
+	private static MutableCatalog readCatalog(URL catalogURL)
+	        throws IOException {
+		final File source;
+		try {
+			source = "file".equals(catalogURL.getProtocol()) ? new File(
+			        catalogURL.toURI()) : null;
+		} catch (URISyntaxException e) {
+			throw (IOException) new IOException().initCause(e);
 		}
+
+		if (source == null) {
+			return CatalogIO.read(catalogURL);
+		}
+
+		final File snapshotFile = getSnapshotFile(source);
+		try {
+			MutableCatalog catalog = CatalogSnapshot.read(snapshotFile, source);
+			if (catalog != null) {
+				return catalog;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		final long sourceLength = source.length();
+		final long sourceModified = source.lastModified();
+		MutableCatalog catalog = CatalogIO.read(catalogURL);
+
+		final CatalogSnapshot snapshot;
+		try {
+			snapshot = new CatalogSnapshot(catalog);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return catalog;
+		}
+
+		snapshotWriter.execute(new Runnable() {
+			public void run() {
+				try {
+					snapshot.write(snapshotFile, source, sourceLength,
+					        sourceModified);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+
 		return catalog;
 	}
+
+	/**
+	 * Returns the file used to store a snapshot of the catalog in the given
+	 * source file.
+	 *
+	 * @param source the catalog file
+	 * @return the snapshot file
+	 */
+	private static File getSnapshotFile(File source) {
+		File snapshotsFolder = new File(ConfigManager.getSettingsFolder(),
+		        "snapshots");
+		if (!snapshotsFolder.exists()) {
+			snapshotsFolder.mkdir();
+		}
+		String hash = Integer.toHexString(source.getAbsolutePath().hashCode());
+		return new File(snapshotsFolder, source.getName() + "-" + hash
+		        + ".snapshot");
+	}
 }
@@ -350,18 +350,18 @@ public class CompactPresentationUI extends JFrame
 		int fontSize = 8 * getToolkit().getScreenResolution() / 72;
 		timeLabel.setFont(new Font(Font.MONOSPACED, Font.BOLD, fontSize));
 
-		class Listener implements AmplitudeListener, GainListener
+		class Listener implements MeterListener
 		{
 			private DecimalFormat twoDigitFormat = new DecimalFormat("00");
 
 			private long startTimeMillis;
 
 			@Override
-			public void amplitudeChanged(int channel, double amplitude)
+			public void meterUpdated(AudioMeter.Snapshot snapshot)
 			{
 				if (recorder.isStarted())
 				{
-					volumeBar.setAmplitude(channel, amplitude);
+					volumeBar.setLevels(snapshot);
 
 					int seconds = (int) ((System.currentTimeMillis() - startTimeMillis) / 1000);
 					int minutes = seconds / 60;
@@ -373,17 +373,10 @@ public class CompactPresentationUI extends JFrame
 					        + twoDigitFormat.format(seconds) + '"');
 				}
 			}
-
-			@Override
-			public void gainChanged(int channel, double gain)
-			{
-				volumeBar.setGain(channel, gain);
-			}
 		}
 
 		final Listener listener = new Listener();
-		recorder.addAmplitudeListener(listener);
-		recorder.addGainListener(listener);
+		recorder.addMeterListener(listener);
 
 		final Action[] recordStopActions = new Action[2];
 
@@ -244,6 +244,10 @@ public class Main implements Runnable
 					ConfigManager.writeConfig();
 				}
 
+				// compiled copies of libraries are kept with the snapshots
+				LibraryManager.setCompiledFolder(new File(
+				        ConfigManager.getSettingsFolder(), "snapshots"));
+
 				if (argSet.contains("--record"))
 				{
 					break;
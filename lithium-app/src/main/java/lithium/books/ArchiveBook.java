@@ -20,14 +20,13 @@ package lithium.books;
 import java.io.*;
 import java.net.*;
 import java.util.*;
-import java.util.zip.*;
 import javax.xml.parsers.*;
 
 import org.w3c.dom.*;
 
 public class ArchiveBook implements Book {
 
-    private File archive;
+    private ArchiveLibrary library;
 
     private URI source;
 
@@ -35,9 +34,8 @@ public class ArchiveBook implements Book {
 
     private SortedMap<Integer, Chapter> chapters = null;
 
-    public ArchiveBook(File archive, URI source, String name)
-            throws IOException {
-        this.archive = archive;
+    public ArchiveBook(ArchiveLibrary library, URI source, String name) {
+        this.library = library;
         this.source = source;
         this.name = name;
     }
@@ -66,7 +64,7 @@ public class ArchiveBook implements Book {
         return chapters.get(number);
     }
 
-    private void ensureBookIsRead() {
+    private synchronized void ensureBookIsRead() {
         if (chapters == null) {
             chapters = new TreeMap<Integer, Chapter>();
             try {
@@ -78,15 +76,14 @@ public class ArchiveBook implements Book {
     }
 
     private void readBook() throws IOException {
-        ZipFile zip = new ZipFile(archive);
+        InputStream in = library.getInputStream(source.getPath());
+        if (in == null) {
+            throw new RuntimeException("Failed to read book: " + source.getPath());
+        }
         try {
-            ZipEntry entry = zip.getEntry(source.getPath());
-            if (entry == null) {
-                throw new RuntimeException("Failed to read book: " + source.getPath());
-            }
-            parseBook(zip.getInputStream(entry));
+            parseBook(in);
         } finally {
-            zip.close();
+            in.close();
         }
     }
 
@@ -120,7 +117,7 @@ public class ArchiveBook implements Book {
         try {
             URI chapterSource = source.resolve(element.getAttribute("src"));
             int number = Integer.parseInt(element.getAttribute("number"));
-            return new ArchiveChapter(archive, chapterSource, number);
+            return new ArchiveChapter(library, chapterSource, number);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
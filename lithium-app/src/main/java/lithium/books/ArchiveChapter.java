@@ -20,21 +20,20 @@ package lithium.books;
 import java.io.*;
 import java.net.*;
 import java.util.*;
-import java.util.zip.*;
 import javax.xml.parsers.*;
 
 import org.w3c.dom.*;
 
 public class ArchiveChapter implements Chapter {
 
-    private final File archive;
+    private final ArchiveLibrary library;
 
     private final URI source;
 
     private final int number;
 
-    public ArchiveChapter(File archive, URI source, int number) {
-        this.archive = archive;
+    public ArchiveChapter(ArchiveLibrary library, URI source, int number) {
+        this.library = library;
         this.source = source;
         this.number = number;
     }
@@ -49,7 +48,7 @@ public class ArchiveChapter implements Chapter {
 
     public SortedSet<Verse> getVerses() {
         try {
-            return readVerses();
+            return library.getVerses(this);
         } catch (IOException e) {
             return null;
         }
@@ -61,24 +60,24 @@ public class ArchiveChapter implements Chapter {
 
     public Verse getVerse(int number) {
         SortedSet<Verse> verses = getVerses();
+        if (verses == null) {
+            return null;
+        }
         SortedSet<Verse> tailSet = verses.tailSet(Verse.getStub(number));
         Iterator<Verse> iterator = tailSet.iterator();
         return iterator.hasNext() ? iterator.next() : null;
     }
 
-    private SortedSet<Verse> readVerses() throws IOException {
-        SortedSet<Verse> result = null;
-        ZipFile zip = new ZipFile(archive);
+    SortedSet<Verse> readVerses() throws IOException {
+        InputStream in = library.getInputStream(source.getPath());
+        if (in == null) {
+            throw new RuntimeException("Failed to read book: " + source.getPath());
+        }
         try {
-            ZipEntry entry = zip.getEntry(source.getPath());
-            if (entry == null) {
-                throw new RuntimeException("Failed to read book: " + source.getPath());
-            }
-            result = parseVerses(zip.getInputStream(entry));
+            return parseVerses(in);
         } finally {
-            zip.close();
+            in.close();
         }
-        return result;
     }
 
     private SortedSet<Verse> parseVerses(InputStream in) throws IOException {
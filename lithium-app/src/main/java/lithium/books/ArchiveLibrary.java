@@ -25,13 +25,34 @@ import javax.xml.parsers.*;
 
 import org.w3c.dom.*;
 
-public class ArchiveLibrary implements Library {
+/**
+ * A library stored in a zip archive. The archive is kept open until the
+ * library is closed, and recently used chapters are cached.
+ *
+ * @see LibraryManager
+ */
+public class ArchiveLibrary implements Library, Closeable {
+    /** The maximum number of chapters kept in memory. */
+    private static final int CHAPTER_CACHE_SIZE = 64;
+
     private final File archive;
 
+    private final ZipFile zip;
+
     private String name;
 
     private Map<String, Book> books;
 
+    /** Verses of recently used chapters. */
+    private final Map<ArchiveChapter, SortedSet<Verse>> chapterCache = new LinkedHashMap<ArchiveChapter, SortedSet<Verse>>(
+            CHAPTER_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<ArchiveChapter, SortedSet<Verse>> eldest) {
+            return size() > CHAPTER_CACHE_SIZE;
+        }
+    };
+
     public ArchiveLibrary(URI uri) throws IOException {
         this(getFile(uri));
     }
@@ -40,7 +61,13 @@ public class ArchiveLibrary implements Library {
         this.archive = source;
         books = new LinkedHashMap<String, Book>();
 
-        readCollection();
+        zip = new ZipFile(archive);
+        try {
+            readCollection();
+        } catch (IOException e) {
+            zip.close();
+            throw e;
+        }
     }
 
     private static File getFile(URI uri) throws IOException {
@@ -51,6 +78,10 @@ public class ArchiveLibrary implements Library {
         }
     }
 
+    public File getArchive() {
+        return archive;
+    }
+
     public String getName() {
         return name;
     }
@@ -89,13 +120,48 @@ public class ArchiveLibrary implements Library {
         return theChapter.getVerse(verse);
     }
 
+    /**
+     * Closes the archive. Chapters that aren't cached can no longer be read.
+     */
+    public void close() throws IOException {
+        synchronized (chapterCache) {
+            chapterCache.clear();
+        }
+        zip.close();
+    }
+
+    /**
+     * Returns an input stream to read the entry with the given path from the
+     * archive.
+     *
+     * @param path the path of the entry
+     * @return an input stream, or {@code null} if there is no such entry
+     */
+    InputStream getInputStream(String path) throws IOException {
+        ZipEntry entry = zip.getEntry(path);
+        return (entry == null) ? null : zip.getInputStream(entry);
+    }
+
+    /**
+     * Returns the verses of the given chapter, from the cache if possible.
+     */
+    SortedSet<Verse> getVerses(ArchiveChapter chapter) throws IOException {
+        synchronized (chapterCache) {
+            SortedSet<Verse> verses = chapterCache.get(chapter);
+            if (verses == null) {
+                verses = Collections.unmodifiableSortedSet(chapter.readVerses());
+                chapterCache.put(chapter, verses);
+            }
+            return verses;
+        }
+    }
+
     private void readCollection() throws IOException {
-        ZipFile zip = new ZipFile(archive);
+        InputStream in = getInputStream("collection.xml");
         try {
-            ZipEntry entry = zip.getEntry("collection.xml");
-            parseCollection(zip.getInputStream(entry));
+            parseCollection(in);
         } finally {
-            zip.close();
+            in.close();
         }
     }
 
@@ -131,12 +197,10 @@ public class ArchiveLibrary implements Library {
         try {
             URI source = new URI(null, element.getAttribute("src"), null);
             String name = element.getAttribute("name");
-            result = new ArchiveBook(archive, source, name);
+            result = new ArchiveBook(this, source, name);
 
         } catch (URISyntaxException e) {
             e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
 
         return result;
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.books;
+
+import java.util.*;
+
+/**
+ * A book in a {@link BinaryLibrary}.
+ */
+public class BinaryBook implements Book {
+    private final BinaryLibrary library;
+
+    private final String title;
+
+    /** Position of the book's chapter table. */
+    private final int chapterTable;
+
+    private SortedMap<Integer, Chapter> chapters = null;
+
+    BinaryBook(BinaryLibrary library, String title, int chapterTable) {
+        this.library = library;
+        this.title = title;
+        this.chapterTable = chapterTable;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Set<Chapter> getChapters() {
+        return new LinkedHashSet<Chapter>(getChapterMap().values());
+    }
+
+    public void addChapter(Chapter chapter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public Chapter getChapter(int number) {
+        return getChapterMap().get(number);
+    }
+
+    private synchronized SortedMap<Integer, Chapter> getChapterMap() {
+        if (chapters == null) {
+            chapters = new TreeMap<Integer, Chapter>();
+            int count = library.getInt(chapterTable);
+            for (int i = 0; i < count; i++) {
+                int entry = library.getChapterEntry(chapterTable, i);
+                int number = library.getInt(entry);
+                int verseCount = library.getInt(entry + 4);
+                int verseTable = library.getVerseBase()
+                        + library.getInt(entry + 8);
+                chapters.put(number, new BinaryChapter(library, number,
+                        verseCount, verseTable));
+            }
+        }
+        return chapters;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+}
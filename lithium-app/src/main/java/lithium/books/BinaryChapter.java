@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.books;
+
+import java.util.*;
+
+/**
+ * A chapter in a {@link BinaryLibrary}. Verses are read from the library when
+ * requested and aren't kept in memory.
+ */
+public class BinaryChapter implements Chapter {
+    private final BinaryLibrary library;
+
+    private final int number;
+
+    private final int verseCount;
+
+    /** Position of the chapter's verse table. */
+    private final int verseTable;
+
+    BinaryChapter(BinaryLibrary library, int number, int verseCount,
+            int verseTable) {
+        this.library = library;
+        this.number = number;
+        this.verseCount = verseCount;
+        this.verseTable = verseTable;
+    }
+
+    public String getTitle() {
+        return String.valueOf(number);
+    }
+
+    @Deprecated
+    public int getNumber() {
+        return number;
+    }
+
+    public Collection<Verse> getVerses() {
+        List<Verse> verses = new ArrayList<Verse>(verseCount);
+        for (int i = 0; i < verseCount; i++) {
+            verses.add(library.readVerse(library.getVerseEntry(verseTable, i)));
+        }
+        return Collections.unmodifiableList(verses);
+    }
+
+    public void addVerse(Verse verse) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the verse containing the given verse number, or the first verse
+     * after it if there is no such verse.
+     */
+    public Verse getVerse(int number) {
+        int index = indexOf(number);
+        return (index < verseCount) ? library.readVerse(library.getVerseEntry(
+                verseTable, index)) : null;
+    }
+
+    /**
+     * Returns the index of the verse containing the given verse number, or
+     * the first verse after it.
+     */
+    private int indexOf(int number) {
+        // verses are usually numbered consecutively, starting at 1
+        int guess = number - 1;
+        if (guess >= 0 && guess < verseCount
+                && getRangeStart(guess) == number) {
+            return guess;
+        }
+
+        // find the last verse starting at or before the given number
+        int low = 0;
+        int high = verseCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (getRangeStart(middle) <= number) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (high >= 0 && getRangeEnd(high) >= number) {
+            return high;
+        }
+        return high + 1;
+    }
+
+    private int getRangeStart(int index) {
+        return library.getInt(library.getVerseEntry(verseTable, index));
+    }
+
+    private int getRangeEnd(int index) {
+        return library.getInt(library.getVerseEntry(verseTable, index) + 4);
+    }
+}
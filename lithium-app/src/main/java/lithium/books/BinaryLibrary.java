@@ -0,0 +1,421 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.books;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import lithium.io.*;
+
+/**
+ * A library stored in a compact binary file, which is mapped into memory. Any
+ * verse can be read directly from the file, without parsing anything else.
+ *
+ * <p>
+ * The file starts with a header containing the name of the library, the
+ * location of each section and the title of each book with the location of its
+ * chapter table. The chapter tables list the number of each chapter and the
+ * location of its verse table, which in turn lists the range of each verse and
+ * the location of its fragments. Fragments are stored as their kind followed
+ * by their UTF-8 encoded text. All locations are relative to the start of the
+ * section they refer to.
+ *
+ * @see #write(Library, File, long, long)
+ * @author Gerrit Meinders
+ */
+public class BinaryLibrary implements Library, Closeable {
+    /** Identifies binary library files. */
+    private static final int MAGIC = 0x4c424942;
+
+    /** Version of the file format; increment on any change. */
+    private static final int VERSION = 1;
+
+    /** Size of a chapter table entry, in bytes. */
+    static final int CHAPTER_ENTRY_SIZE = 12;
+
+    /** Size of a verse table entry, in bytes. */
+    static final int VERSE_ENTRY_SIZE = 12;
+
+    private static final int TEXT = 0;
+    private static final int SMALL_CAPS = 1;
+    private static final int IMPLIED = 2;
+    private static final int LITERAL = 3;
+    private static final int ROLE = 4;
+    private static final int NOTE = 5;
+    private static final int PERICOPE_HEADER = 6;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+
+    /** The contents of the file. Only absolute get methods are used. */
+    private final ByteBuffer buffer;
+
+    private final long sourceLength;
+
+    private final long sourceModified;
+
+    private final int chapterBase;
+
+    private final int verseBase;
+
+    private final int dataBase;
+
+    private String name;
+
+    private Map<String, Book> books;
+
+    /**
+     * Opens the binary library stored in the given file.
+     *
+     * @param file the file
+     * @throws IOException if the file can't be read or isn't a binary library
+     */
+    public BinaryLibrary(File file) throws IOException {
+        this.file = file;
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } finally {
+            in.close();
+        }
+
+        try {
+            ByteBuffer header = buffer.duplicate();
+            DerivedFileHeader fileHeader = DerivedFileHeader.read(header);
+            if (!fileHeader.isFormat(MAGIC, VERSION)) {
+                throw new IOException("Not a binary library: " + file);
+            }
+            sourceLength = fileHeader.getSourceLength();
+            sourceModified = fileHeader.getSourceModified();
+            name = readString(header);
+            chapterBase = header.getInt();
+            verseBase = header.getInt();
+            dataBase = header.getInt();
+
+            books = new LinkedHashMap<String, Book>();
+            int bookCount = header.getInt();
+            for (int i = 0; i < bookCount; i++) {
+                String title = readString(header);
+                int chapterTable = chapterBase + header.getInt();
+                books.put(title, new BinaryBook(this, title, chapterTable));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt binary library: " + file, e);
+        }
+    }
+
+    /**
+     * Returns whether the given file contains a binary library.
+     *
+     * @param file the file
+     * @return {@code true} if the file is a binary library
+     */
+    public static boolean isBinaryLibrary(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the given library to a file in the binary format. The length and
+     * modification time of the file the library was read from are stored in
+     * the file, such that it can be used as a compiled copy of that file.
+     *
+     * @param library the library
+     * @param file the file to write to, which is replaced if it exists
+     * @param sourceLength the length of the library's source file
+     * @param sourceModified the modification time of the source file
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(Library library, File file, long sourceLength,
+            long sourceModified) throws IOException {
+        final ByteArrayOutputStream bookBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream chapterBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream verseBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+        DataOutputStream bookOut = new DataOutputStream(bookBytes);
+        DataOutputStream chapterOut = new DataOutputStream(chapterBytes);
+        DataOutputStream verseOut = new DataOutputStream(verseBytes);
+        DataOutputStream dataOut = new DataOutputStream(dataBytes);
+
+        Set<Book> books = library.getBooks();
+        bookOut.writeInt(books.size());
+        for (Book book : books) {
+            writeString(bookOut, book.getTitle());
+            bookOut.writeInt(chapterOut.size());
+
+            SortedMap<Integer, Chapter> chapters = new TreeMap<Integer, Chapter>();
+            for (Chapter chapter : book.getChapters()) {
+                chapters.put(getNumber(chapter), chapter);
+            }
+            chapterOut.writeInt(chapters.size());
+            for (Chapter chapter : chapters.values()) {
+                List<Verse> verses = new ArrayList<Verse>(chapter.getVerses());
+                Collections.sort(verses);
+                chapterOut.writeInt(getNumber(chapter));
+                chapterOut.writeInt(verses.size());
+                chapterOut.writeInt(verseOut.size());
+
+                for (Verse verse : verses) {
+                    verseOut.writeInt(verse.getRangeStart());
+                    verseOut.writeInt(verse.getRangeEnd());
+                    verseOut.writeInt(dataOut.size());
+
+                    List<Verse.Fragment> fragments = verse.getFragments();
+                    dataOut.writeInt(fragments.size());
+                    for (Verse.Fragment fragment : fragments) {
+                        writeFragment(dataOut, fragment);
+                    }
+                }
+            }
+        }
+        bookOut.close();
+        chapterOut.close();
+        verseOut.close();
+        dataOut.close();
+
+        final ByteArrayOutputStream nameBytes = new ByteArrayOutputStream();
+        DataOutputStream nameOut = new DataOutputStream(nameBytes);
+        writeString(nameOut, library.getName() == null ? "" : library.getName());
+        nameOut.close();
+
+        final int chapterBase = DerivedFileHeader.SIZE + nameBytes.size() + 4
+                + 4 + 4 + bookBytes.size();
+        final int verseBase = chapterBase + chapterBytes.size();
+        final int dataBase = verseBase + verseBytes.size();
+
+        DerivedFileHeader header = new DerivedFileHeader(MAGIC, VERSION,
+                sourceLength, sourceModified);
+        header.write(file, new DerivedFileHeader.Contents() {
+            public void writeTo(DataOutputStream out) throws IOException {
+                nameBytes.writeTo(out);
+                out.writeInt(chapterBase);
+                out.writeInt(verseBase);
+                out.writeInt(dataBase);
+                bookBytes.writeTo(out);
+                chapterBytes.writeTo(out);
+                verseBytes.writeTo(out);
+                dataBytes.writeTo(out);
+            }
+        });
+    }
+
+    /**
+     * Returns the number of the given chapter. Chapter numbers are deprecated
+     * in favor of titles, but chapters are stored by number, such that they
+     * can be found by {@link Book#getChapter(int)}.
+     */
+    @SuppressWarnings("deprecation")
+    private static int getNumber(Chapter chapter) {
+        return chapter.getNumber();
+    }
+
+    private static void writeFragment(DataOutputStream out,
+            Verse.Fragment fragment) throws IOException {
+        if (fragment instanceof Verse.PericopeHeader) {
+            out.writeByte(PERICOPE_HEADER);
+            writeString(out, ((Verse.PericopeHeader) fragment).getTitle());
+            return;
+        }
+
+        int kind;
+        if (fragment instanceof Verse.SmallCaps) {
+            kind = SMALL_CAPS;
+        } else if (fragment instanceof Verse.Implied) {
+            kind = IMPLIED;
+        } else if (fragment instanceof Verse.Literal) {
+            kind = LITERAL;
+        } else if (fragment instanceof Verse.Role) {
+            kind = ROLE;
+        } else if (fragment instanceof Verse.Note) {
+            kind = NOTE;
+        } else if (fragment instanceof Verse.Text) {
+            kind = TEXT;
+        } else {
+            throw new IOException("Unsupported fragment: "
+                    + fragment.getClass());
+        }
+        out.writeByte(kind);
+        writeString(out, ((Verse.Text) fragment).getText());
+    }
+
+    private static void writeString(DataOutputStream out, String string)
+            throws IOException {
+        byte[] bytes = string.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the length of the file that the library was compiled from.
+     */
+    public long getSourceLength() {
+        return sourceLength;
+    }
+
+    /**
+     * Returns the modification time of the file that the library was compiled
+     * from.
+     */
+    public long getSourceModified() {
+        return sourceModified;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Set<Book> getBooks() {
+        return new LinkedHashSet<Book>(books.values());
+    }
+
+    public void addBook(Book book) {
+        books.put(book.getTitle(), book);
+    }
+
+    public void removeBook(String name) {
+        books.remove(name);
+    }
+
+    public Book getBook(String name) {
+        return books.get(name);
+    }
+
+    @Deprecated
+    public Verse getVerse(String book, int chapter, int verse) {
+        Book theBook = getBook(book);
+        if (theBook == null) {
+            return null;
+        }
+
+        Chapter theChapter = theBook.getChapter(chapter);
+        if (theChapter == null) {
+            return null;
+        }
+
+        return theChapter.getVerse(verse);
+    }
+
+    /**
+     * Releases the library's books. The file remains mapped until the library
+     * is garbage collected.
+     */
+    public void close() {
+        books.clear();
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    int getInt(int index) {
+        return buffer.getInt(index);
+    }
+
+    /**
+     * Returns the absolute position of the given chapter table entry.
+     */
+    int getChapterEntry(int chapterTable, int index) {
+        return chapterTable + 4 + index * CHAPTER_ENTRY_SIZE;
+    }
+
+    /**
+     * Returns the absolute position of the given verse table entry.
+     */
+    int getVerseEntry(int verseTable, int index) {
+        return verseTable + index * VERSE_ENTRY_SIZE;
+    }
+
+    int getVerseBase() {
+        return verseBase;
+    }
+
+    /**
+     * Reads the verse described by the verse table entry at the given
+     * position.
+     */
+    Verse readVerse(int entry) {
+        int rangeStart = buffer.getInt(entry);
+        int rangeEnd = buffer.getInt(entry + 4);
+
+        ByteBuffer data = buffer.duplicate();
+        data.position(dataBase + buffer.getInt(entry + 8));
+        int fragmentCount = data.getInt();
+        List<Verse.Fragment> fragments = new ArrayList<Verse.Fragment>(
+                fragmentCount);
+        for (int i = 0; i < fragmentCount; i++) {
+            int kind = data.get();
+            String text = readString(data);
+            switch (kind) {
+            case TEXT:
+                fragments.add(new Verse.Text(text));
+                break;
+            case SMALL_CAPS:
+                fragments.add(new Verse.SmallCaps(text));
+                break;
+            case IMPLIED:
+                fragments.add(new Verse.Implied(text));
+                break;
+            case LITERAL:
+                fragments.add(new Verse.Literal(text));
+                break;
+            case ROLE:
+                fragments.add(new Verse.Role(text));
+                break;
+            case NOTE:
+                fragments.add(new Verse.Note(text));
+                break;
+            case PERICOPE_HEADER:
+                fragments.add(new Verse.PericopeHeader(text));
+                break;
+            default:
+                throw new IllegalStateException("fragment: " + kind);
+            }
+        }
+        return new Verse(rangeStart, rangeEnd, fragments);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        ByteBuffer bytes = buffer.slice();
+        bytes.limit(length);
+        buffer.position(buffer.position() + length);
+        return UTF8.decode(bytes).toString();
+    }
+}
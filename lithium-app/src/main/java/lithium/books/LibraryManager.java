@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.books;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Provides shared access to libraries, such that each library is only opened
+ * once and any cached contents can be reused by every view of it.
+ *
+ * <p>
+ * If a folder for compiled libraries is set, archive libraries are compiled
+ * into {@link BinaryLibrary binary libraries} in the background. The compiled
+ * copy is used instead of the archive until the archive is changed.
+ *
+ * @author Gerrit Meinders
+ */
+public abstract class LibraryManager {
+    /** Libraries opened so far, by URL. */
+    private static final Map<URL, Entry> libraries = new HashMap<URL, Entry>();
+
+    /** Folder containing compiled copies of archive libraries, if any. */
+    private static File compiledFolder = null;
+
+    /** Compiles archive libraries in the background. */
+    private static ExecutorService compiler = null;
+
+    /**
+     * Sets the folder where compiled copies of archive libraries are stored.
+     *
+     * @param folder the folder, or {@code null} to disable compilation
+     */
+    public static void setCompiledFolder(File folder) {
+        synchronized (libraries) {
+            compiledFolder = folder;
+        }
+    }
+
+    /**
+     * Returns the library stored at the given URL, opening it if needed. If
+     * the library's file was modified since it was opened, it's opened again.
+     * Libraries returned earlier remain usable.
+     *
+     * @param url the location of the library's file
+     * @return the library
+     * @throws IOException if the library can't be read
+     */
+    public static Library getLibrary(URL url) throws IOException {
+        synchronized (libraries) {
+            File file;
+            try {
+                file = new File(url.toURI());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("url: Expected a file, but was: " + url);
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+
+            Entry entry = libraries.get(url);
+            if (entry != null) {
+                if (file.lastModified() == entry.lastModified) {
+                    return entry.library;
+                }
+                /*
+                 * The previous library isn't closed, since it may still be in
+                 * use. Its file is released once it's no longer referenced.
+                 */
+                libraries.remove(url);
+            }
+
+            long lastModified = file.lastModified();
+            Library library = open(file);
+            libraries.put(url, new Entry(library, lastModified));
+            return library;
+        }
+    }
+
+    private static Library open(final File file) throws IOException {
+        if (BinaryLibrary.isBinaryLibrary(file)) {
+            return new BinaryLibrary(file);
+        }
+        if (compiledFolder == null) {
+            return new ArchiveLibrary(file);
+        }
+
+        final File compiledFile = getCompiledFile(file);
+        if (compiledFile.isFile()) {
+            try {
+                BinaryLibrary compiled = new BinaryLibrary(compiledFile);
+                if (compiled.getSourceLength() == file.length()
+                        && compiled.getSourceModified() == file.lastModified()) {
+                    return compiled;
+                }
+                compiled.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        final long sourceLength = file.length();
+        final long sourceModified = file.lastModified();
+        getCompiler().execute(new Runnable() {
+            public void run() {
+                try {
+                    ArchiveLibrary source = new ArchiveLibrary(file);
+                    try {
+                        BinaryLibrary.write(source, compiledFile,
+                                sourceLength, sourceModified);
+                    } finally {
+                        source.close();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+
+        return new ArchiveLibrary(file);
+    }
+
+    /**
+     * Returns the file used to store a compiled copy of the given archive.
+     */
+    private static File getCompiledFile(File archive) {
+        if (!compiledFolder.exists()) {
+            compiledFolder.mkdirs();
+        }
+        String hash = Integer.toHexString(archive.getAbsolutePath().hashCode());
+        return new File(compiledFolder, archive.getName() + "-" + hash
+                + ".library");
+    }
+
+    private static ExecutorService getCompiler() {
+        if (compiler == null) {
+            compiler = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "LibraryCompiler");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return compiler;
+    }
+
+    private static class Entry {
+        private final Library library;
+
+        private final long lastModified;
+
+        public Entry(Library library, long lastModified) {
+            this.library = library;
+            this.lastModified = lastModified;
+        }
+    }
+}
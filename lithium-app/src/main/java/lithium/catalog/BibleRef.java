@@ -73,15 +73,29 @@ public class BibleRef implements Comparable<BibleRef> {
         return ResourceBundle.getBundle("lithium.Bible", locale);
     }
 
-    private int book;
+    /** Number of bits used for each of the chapter and verse numbers. */
+    private static final int NUMBER_BITS = 16;
 
-    private Integer startChapter;
+    /** Mask to extract a chapter or verse number from a coordinate. */
+    private static final long NUMBER_MASK = (1L << NUMBER_BITS) - 1L;
 
-    private Integer endChapter;
+    /** Largest chapter or verse number that can be represented. */
+    private static final int MAX_NUMBER = (int) NUMBER_MASK - 2;
 
-    private Integer startVerse;
+    /**
+     * Coordinate of the first verse in the reference. The book is stored in
+     * the upper 32 bits, followed by the chapter and verse. Chapter and verse
+     * numbers are stored plus one, with zero indicating a whole book or
+     * chapter.
+     */
+    private final long start;
 
-    private Integer endVerse;
+    /**
+     * Coordinate of the last verse in the reference. Chapter and verse
+     * numbers are stored plus one, with {@link #NUMBER_MASK} indicating a
+     * whole book or chapter.
+     */
+    private final long end;
 
     /**
      * Constructs a new bible reference to the specified verses. The name of the
@@ -115,7 +129,9 @@ public class BibleRef implements Comparable<BibleRef> {
     }
 
     /**
-     * Constructs a new bible reference to the specified verses.
+     * Constructs a new bible reference to the specified verses. If only one
+     * of the chapters or verses is specified, it's used as both the start and
+     * the end.
      *
      * @param book the number of the book containing the verses
      * @param startChapter the number of the chapter containing the first verse
@@ -126,79 +142,85 @@ public class BibleRef implements Comparable<BibleRef> {
     public BibleRef(Integer book, Integer startChapter, Integer endChapter,
             Integer startVerse, Integer endVerse) {
         super();
-        setBookIndex(book);
-        setStartChapter(startChapter);
-        if (endChapter != null) {
-            setEndChapter(endChapter);
+        if (book == null || book < 0) {
+            throw new IllegalArgumentException("book: " + book);
+        }
+
+        if (startChapter == null) {
+            startChapter = endChapter;
+        } else if (endChapter == null) {
+            endChapter = startChapter;
         }
-        setStartVerse(startVerse);
-        if (endVerse != null) {
-            setEndVerse(endVerse);
+        if (startChapter != null) {
+            if (startChapter < 0 || startChapter > MAX_NUMBER) {
+                throw new IllegalArgumentException("startChapter: " + startChapter);
+            }
+            if (endChapter < startChapter || endChapter > MAX_NUMBER) {
+                throw new IllegalArgumentException("endChapter: " + endChapter
+                        + " (startChapter = " + startChapter + ")");
+            }
         }
-    }
 
-    private void setBookIndex(Integer book) {
-        if (book == null || book < 0) {
-            throw new IllegalArgumentException("book: " + book);
+        if (startVerse == null) {
+            startVerse = endVerse;
+        } else if (endVerse == null) {
+            endVerse = startVerse;
         }
-        this.book = book;
+        if (startVerse != null) {
+            if (startVerse < 0 || startVerse > MAX_NUMBER) {
+                throw new IllegalArgumentException("startVerse: " + startVerse);
+            }
+            if (endVerse > MAX_NUMBER
+                    || (endVerse < startVerse && (startChapter == null || startChapter
+                            .equals(endChapter)))) {
+                throw new IllegalArgumentException("endVerse: " + endVerse);
+            }
+        }
+
+        start = pack(book, startChapter == null ? 0 : startChapter + 1,
+                startVerse == null ? 0 : startVerse + 1);
+        end = pack(book, endChapter == null ? NUMBER_MASK : endChapter + 1,
+                endVerse == null ? NUMBER_MASK : endVerse + 1);
     }
 
     /**
-     * Set the number of the chapter containing the first verse. This method
-     * ensures that startChapter and endChapter are both either null or
-     * non-null.
+     * Constructs a bible reference from the given coordinates, as returned by
+     * {@link #getStart()} and {@link #getEnd()}.
      *
-     * @param startChapter the start chapter to be set, or {@code null}.
+     * @param start the coordinate of the first verse
+     * @param end the coordinate of the last verse
      */
-    private void setStartChapter(Integer startChapter) {
-        if (startChapter != null && startChapter < 0) {
-            throw new IllegalArgumentException("startChapter: " + startChapter);
-        }
-        this.startChapter = startChapter;
-        if (startChapter == null ^ endChapter == null) {
-            endChapter = startChapter;
-        }
+    BibleRef(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    private static long pack(long book, long chapter, long verse) {
+        return (book << (2 * NUMBER_BITS)) | (chapter << NUMBER_BITS) | verse;
     }
 
     /**
-     * Set the number of the chapter containing the last verse. This method
-     * ensures that startChapter and endChapter are both either null or
-     * non-null.
+     * Returns the coordinate of the first verse in the reference. Coordinates
+     * combine the book, chapter and verse into a single number that increases
+     * through the Bible. If the reference covers a whole book or chapter, the
+     * coordinate precedes any verse in it.
      *
-     * @param startChapter the end chapter to be set, or {@code null}.
+     * @return the coordinate of the first verse
      */
-    private void setEndChapter(Integer endChapter) {
-        if (endChapter != null && endChapter < startChapter) {
-            throw new IllegalArgumentException("endChapter: " + endChapter
-                    + " (startChapter = " + startChapter + ")");
-        }
-        this.endChapter = endChapter;
-        if (startChapter == null ^ endChapter == null) {
-            startChapter = endChapter;
-        }
-    }
-
-    private void setStartVerse(Integer startVerse) {
-        if (startVerse != null && endVerse != null && startChapter == endChapter
-                && endVerse < startVerse) {
-            throw new IllegalArgumentException("startVerse: " + startVerse);
-        }
-        this.startVerse = startVerse;
-        if (startVerse == null ^ endVerse == null) {
-            endVerse = startVerse;
-        }
+    public long getStart() {
+        return start;
     }
 
-    private void setEndVerse(Integer endVerse) {
-        if (startVerse != null && endVerse != null && startChapter == endChapter
-                && endVerse < startVerse) {
-            throw new IllegalArgumentException("endVerse: " + endVerse);
-        }
-        this.endVerse = endVerse;
-        if (startVerse == null ^ endVerse == null) {
-            startVerse = endVerse;
-        }
+    /**
+     * Returns the coordinate of the last verse in the reference. If the
+     * reference covers a whole book or chapter, the coordinate follows any
+     * verse in it.
+     *
+     * @return the coordinate of the last verse
+     * @see #getStart()
+     */
+    public long getEnd() {
+        return end;
     }
 
     /**
@@ -207,7 +229,8 @@ public class BibleRef implements Comparable<BibleRef> {
      * @return the number of the chapter, or {@code null}
      */
     public Integer getStartChapter() {
-        return startChapter;
+        int chapter = (int) ((start >>> NUMBER_BITS) & NUMBER_MASK);
+        return chapter == 0 ? null : chapter - 1;
     }
 
     /**
@@ -216,7 +239,8 @@ public class BibleRef implements Comparable<BibleRef> {
      * @return the number of the chapter, or {@code null}
      */
     public Integer getEndChapter() {
-        return endChapter;
+        int chapter = (int) ((end >>> NUMBER_BITS) & NUMBER_MASK);
+        return chapter == NUMBER_MASK ? null : chapter - 1;
     }
 
     /**
@@ -225,7 +249,8 @@ public class BibleRef implements Comparable<BibleRef> {
      * @return the number of the verse, or {@code null}
      */
     public Integer getStartVerse() {
-        return startVerse;
+        int verse = (int) (start & NUMBER_MASK);
+        return verse == 0 ? null : verse - 1;
     }
 
     /**
@@ -234,7 +259,8 @@ public class BibleRef implements Comparable<BibleRef> {
      * @return the number of the verse, or {@code null}
      */
     public Integer getEndVerse() {
-        return endVerse;
+        int verse = (int) (end & NUMBER_MASK);
+        return verse == NUMBER_MASK ? null : verse - 1;
     }
 
     /**
@@ -267,7 +293,7 @@ public class BibleRef implements Comparable<BibleRef> {
      */
     public String getBookReferenceName(Locale locale) {
         // try to find alternate name for references
-        String key = ResourceUtilities.getArrayElementKey("Bible.books", book);
+        String key = ResourceUtilities.getArrayElementKey("Bible.books", getBookIndex());
         key = ResourceUtilities.getKey(key, "ref");
         String bookRefName = ResourceUtilities.getRawString(getResourceBundle(locale), key);
         if (bookRefName == null) {
@@ -298,7 +324,7 @@ public class BibleRef implements Comparable<BibleRef> {
      */
     public String getBookName(Locale locale) {
         return ResourceUtilities.getStringArrayElement(getResourceBundle(locale),
-                "Bible.books", book);
+                "Bible.books", getBookIndex());
     }
 
     /**
@@ -307,7 +333,7 @@ public class BibleRef implements Comparable<BibleRef> {
      * @return the number of the book
      */
     public int getBookIndex() {
-        return book;
+        return (int) (start >>> (2 * NUMBER_BITS));
     }
 
     @Override
@@ -324,10 +350,14 @@ public class BibleRef implements Comparable<BibleRef> {
      */
     public String toString(Locale locale) {
         final String bookName = getBookReferenceName(locale);
+        final Integer startChapter = getStartChapter();
+        final Integer endChapter = getEndChapter();
+        final Integer startVerse = getStartVerse();
+        final Integer endVerse = getEndVerse();
         if (startChapter == null) {
             if (startVerse == null) {
                 return getBookName(locale);
-            } else if (startVerse == endVerse) {
+            } else if (startVerse.equals(endVerse)) {
                 // Bible.notations[5]={0} verse {1}
                 String key = ResourceUtilities.getArrayElementKey("Bible.notations", 5);
                 return ResourceUtilities.getString(getResourceBundle(locale), key, bookName,
@@ -338,13 +368,13 @@ public class BibleRef implements Comparable<BibleRef> {
                 return ResourceUtilities.getString(getResourceBundle(locale), key, bookName,
                         startVerse, endVerse);
             }
-        } else if (startChapter == endChapter) {
+        } else if (startChapter.equals(endChapter)) {
             if (startVerse == null) {
                 // Bible.notations[0]={0} {1}
                 String key = ResourceUtilities.getArrayElementKey("Bible.notations", 0);
                 return ResourceUtilities.getString(getResourceBundle(locale), key, bookName,
                         startChapter);
-            } else if (startVerse == endVerse) {
+            } else if (startVerse.equals(endVerse)) {
                 // Bible.notations[2]={0} {1}:{2}
                 String key = ResourceUtilities.getArrayElementKey("Bible.notations", 2);
                 return ResourceUtilities.getString(getResourceBundle(locale), key, bookName,
@@ -372,97 +402,42 @@ public class BibleRef implements Comparable<BibleRef> {
 
     @Override
     public boolean equals(final Object obj) {
-        final boolean result;
         if (obj instanceof BibleRef) {
             final BibleRef other = (BibleRef) obj;
-            result = book == other.book
-                    && (startChapter == null ? other.startChapter == null : startChapter
-                            .equals(other.startChapter))
-                    && (startVerse == null ? other.startVerse == null : startVerse
-                            .equals(other.startVerse))
-                    && (endChapter == null ? other.endChapter == null : endChapter
-                            .equals(other.endChapter))
-                    && (endVerse == null ? other.endVerse == null : endVerse
-                            .equals(other.endVerse));
+            return start == other.start && end == other.end;
         } else {
-            result = false;
+            return false;
         }
-        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (start ^ (start >>> 32)) * 31 + (int) (end ^ (end >>> 32));
     }
 
     /**
      * Compares two BibleRef objects, based on the position in the Bible of the
-     * verses they reference.
+     * verses they reference. References are ordered by their first verse, then
+     * by their last verse.
      *
      * @param b the other bible reference
      * @return a negative integer, zero, or a positive integer as this object is
      *         less than, equal to, or greater than the specified object
      */
     public int compareTo(BibleRef b) {
-        int result = book - b.book;
-        result *= 150;
-        if (startChapter != null && b.startChapter != null) {
-            result += startChapter - b.startChapter;
-        }
-        result *= 300;
-        if (startVerse != null && b.startVerse != null) {
-            result += startVerse - b.startVerse;
-        }
-        if (endVerse != null && b.endVerse != null) {
-            result += endVerse - b.endVerse;
-        }
-        return result;
-    }
-
-    private Integer maximum(final Integer a, final Integer b) {
-        if (a == null) {
-            return b;
-        } else {
-            return (b == null) ? a : Math.max(a, b);
-        }
-    }
-
-    private Integer minimum(final Integer a, final Integer b) {
-        if (a == null) {
-            return b;
-        } else {
-            return (b == null) ? a : Math.min(a, b);
-        }
-    }
-
-    private BibleRef intersection(final BibleRef other) {
-        final BibleRef result;
-
-        if (book == other.book) {
-            final Integer startChapter = maximum(this.startChapter, other.startChapter);
-
-            final Integer endChapter = minimum(this.endChapter, other.endChapter);
-
-            if (startChapter != null && startChapter > endChapter) {
-                result = null;
-
-            } else {
-                final Integer startVerse = (startChapter == this.startChapter)
-                        ? (startChapter == other.startChapter) ? maximum(this.startVerse,
-                                other.startVerse) : this.startVerse : other.startVerse;
-
-                final Integer endVerse = (endChapter == this.endChapter)
-                        ? (endChapter == other.endChapter) ? minimum(this.endVerse,
-                                other.endVerse) : this.endVerse : other.endVerse;
-
-                result = (startVerse != null && startVerse > endVerse) ? null : new BibleRef(
-                        book, startChapter, endChapter, startVerse, endVerse);
-            }
-        } else {
-            result = null;
-        }
-
-        return result;
+        int result = Long.compare(start, b.start);
+        return result == 0 ? Long.compare(end, b.end) : result;
     }
 
+    /**
+     * Returns whether this reference includes all verses of the given
+     * reference.
+     *
+     * @param other the other reference
+     * @return {@code true} if the other reference is contained in this one
+     */
     public boolean contains(final BibleRef other) {
-        final BibleRef intersection = intersection(other);
-        return intersection != null && intersection.equals(other);
+        return start <= other.start & other.end <= end;
     }
 
     private static Integer resolveBookIndex(String bookName, Locale locale) {
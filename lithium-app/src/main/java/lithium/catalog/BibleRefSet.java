@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.catalog;
+
+import java.util.*;
+
+/**
+ * A sorted set of bible references, stored as an array of their coordinates.
+ * References are created when iterating over the set, rather than kept in
+ * memory.
+ *
+ * @author Gerrit Meinders
+ */
+class BibleRefSet extends AbstractSet<BibleRef> {
+    /** Start and end coordinates of each reference, in ascending order. */
+    private long[] coordinates = new long[0];
+
+    /** Number of references in the set. */
+    private int size = 0;
+
+    /**
+     * Returns the index of the given reference, or {@code -(insertion point)
+     * - 1} if the set doesn't contain it.
+     */
+    private int indexOf(long start, long end) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleStart = coordinates[2 * middle];
+            long middleEnd = coordinates[2 * middle + 1];
+            if (middleStart < start || (middleStart == start && middleEnd < end)) {
+                low = middle + 1;
+            } else if (middleStart == start && middleEnd == end) {
+                return middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o instanceof BibleRef) {
+            BibleRef reference = (BibleRef) o;
+            return indexOf(reference.getStart(), reference.getEnd()) >= 0;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean add(BibleRef reference) {
+        int index = indexOf(reference.getStart(), reference.getEnd());
+        if (index >= 0) {
+            return false;
+        }
+        index = -index - 1;
+
+        if (2 * size == coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, Math.max(2, 4 * size));
+        }
+        System.arraycopy(coordinates, 2 * index, coordinates, 2 * index + 2,
+                2 * (size - index));
+        coordinates[2 * index] = reference.getStart();
+        coordinates[2 * index + 1] = reference.getEnd();
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o instanceof BibleRef) {
+            BibleRef reference = (BibleRef) o;
+            int index = indexOf(reference.getStart(), reference.getEnd());
+            if (index >= 0) {
+                removeAt(index);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(coordinates, 2 * index + 2, coordinates, 2 * index,
+                2 * (size - index - 1));
+        size--;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public Iterator<BibleRef> iterator() {
+        return new Iterator<BibleRef>() {
+            private int next = 0;
+
+            private boolean removable = false;
+
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            public BibleRef next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                removable = true;
+                BibleRef result = new BibleRef(coordinates[2 * next],
+                        coordinates[2 * next + 1]);
+                next++;
+                return result;
+            }
+
+            public void remove() {
+                if (!removable) {
+                    throw new IllegalStateException();
+                }
+                removable = false;
+                removeAt(--next);
+            }
+        };
+    }
+}
@@ -39,12 +39,54 @@ public class DefaultCatalog implements MutableCatalog, PropertyChangeListener
 	/** Provides support for bounds properties. */
 	private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
 
+	/**
+	 * Groups in the catalog that the catalog listens to, such that the indexes
+	 * below are invalidated when any of them changes.
+	 */
+	private Set<Group> observedGroups;
+
+	/**
+	 * Index of the groups in the catalog by name. Only the first group with a
+	 * given name in depth-first order is included. This and the other indexes
+	 * are {@code null} when they need to be rebuilt.
+	 */
+	private Map<String, Group> groupsByName;
+
+	/** Index of the direct sub-groups of each group by name. */
+	private Map<Group, Map<String, Group>> subGroupsByName;
+
+	/**
+	 * Index of the groups containing each lyric instance, in depth-first
+	 * order.
+	 */
+	private Map<Lyric, List<Group>> groupsByLyric;
+
+	/** Index of the groups containing references to each lyric. */
+	private Map<LyricRef, List<Group>> groupsByReference;
+
+	/** Position of each group in a depth-first traversal of the catalog. */
+	private Map<Group, Integer> groupOrder;
+
+	/** The groups in the catalog, in depth-first order. */
+	private List<Group> indexedGroups;
+
+	/** Number of nested bulk updates in progress. */
+	private int updateDepth = 0;
+
+	/** Whether the groups changed during the current bulk update. */
+	private boolean groupsChanged = false;
+
+	/** Whether the contents changed during the current bulk update. */
+	private boolean contentsChanged = false;
+
 	/** Constructs a new mutable catalog. */
 	public DefaultCatalog()
 	{
 		contents = new ContainerGroup("", "", "");
 		contents.addPropertyChangeListener(this);
 		typedGroups = new HashMap<TypedGroup.GroupType, TypedGroup>();
+		observedGroups = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+		observedGroups.add(contents);
 	}
 
 	/**
@@ -55,78 +97,203 @@ public class DefaultCatalog implements MutableCatalog, PropertyChangeListener
 	 */
 	public Group getGroup(String name)
 	{
-		return getGroup(name, contents);
+		updateIndexes();
+		return groupsByName.get(name);
 	}
 
 	/**
-	 * Finds the first occurance of a group with the given name using a depth
-	 * first search on a group hierarchy.
+	 * Returns the set of groups that contain the given lyric, including any
+	 * sub-groups that contain the lyric.
 	 *
-	 * @param name the group name
-	 * @param group the group to search in
-	 * @return the group found
+	 * @param lyric the lyric
+	 * @return the groups containing the lyric
+	 */
+	public Set<Group> getGroups(Lyric lyric)
+	{
+		return new LinkedHashSet<Group>(findGroups(lyric));
+	}
+
+	/**
+	 * Returns the groups that contain the given lyric, in depth-first order.
+	 * A reference lyric is also found by the lyric it refers to in this
+	 * catalog and by any other references to that lyric.
+	 *
+	 * @param lyric the lyric
+	 * @return the groups containing the lyric
 	 */
-	private Group getGroup(String name, Group group)
+	private Collection<Group> findGroups(Lyric lyric)
 	{
-		if (group.getName().equals(name))
+		updateLyricIndexes();
+
+		List<Group> groups = groupsByLyric.get(lyric);
+		if (lyric instanceof ReferenceLyric)
 		{
-			return group;
+			LyricRef reference = ((ReferenceLyric) lyric).getReference();
+			Lyric referenced = getLyric(reference);
+
+			SortedMap<Integer, Group> found = new TreeMap<Integer, Group>();
+			addGroups(found, groups);
+			addGroups(found, groupsByReference.get(reference));
+			if (referenced != null)
+			{
+				addGroups(found, groupsByLyric.get(referenced));
+			}
+			return found.values();
+		}
+		else if (groups == null)
+		{
+			return Collections.emptyList();
 		}
 		else
 		{
-			for (Group subGroup : group.getGroups())
+			return groups;
+		}
+	}
+
+	private void addGroups(SortedMap<Integer, Group> found, List<Group> groups)
+	{
+		if (groups != null)
+		{
+			for (Group group : groups)
 			{
-				Group result = getGroup(name, subGroup);
-				if (result != null)
-				{
-					return result;
-				}
+				found.put(groupOrder.get(group), group);
 			}
-			return null;
 		}
 	}
 
 	/**
-	 * Returns the set of groups that contain the given lyric, including any
-	 * sub-groups that contain the lyric.
-	 *
-	 * @param lyric the lyric
-	 * @return the groups containing the lyric
+	 * Rebuilds the indexes used to look up groups, if they were invalidated by
+	 * any changes to the groups in the catalog.
 	 */
-	public Set<Group> getGroups(Lyric lyric)
+	private void updateIndexes()
 	{
-		Set<Group> groups = new LinkedHashSet<Group>();
-		for (Group group : contents.getGroups())
+		if (groupsByName != null)
+		{
+			return;
+		}
+
+		groupsByName = new HashMap<String, Group>();
+		subGroupsByName = new IdentityHashMap<Group, Map<String, Group>>();
+		groupOrder = new IdentityHashMap<Group, Integer>();
+		indexedGroups = new ArrayList<Group>();
+		groupsByLyric = null;
+
+		Set<Group> groups = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+		indexGroup(contents, groups);
+
+		for (Group group : observedGroups)
 		{
-			getGroups(group, lyric, groups);
+			if (!groups.contains(group))
+			{
+				group.removePropertyChangeListener(this);
+			}
 		}
-		return groups;
+		for (Group group : groups)
+		{
+			if (!observedGroups.contains(group))
+			{
+				group.addPropertyChangeListener(this);
+			}
+		}
+		observedGroups = groups;
 	}
 
 	/**
-	 * Recursively searches through the group hierarchy of the given group,
-	 * adding any groups that contain the given lyric to the given set of
-	 * groups.
-	 *
-	 * @param group the group to search in
-	 * @param lyric the lyric to search for
-	 * @param found the set of groups found
-	 * @return the set of groups found
+	 * Rebuilds the indexes used to look up the groups containing a lyric, if
+	 * they were invalidated by any changes to the catalog.
 	 */
-	private Set<Group> getGroups(Group group, Lyric lyric, Set<Group> found)
+	private void updateLyricIndexes()
 	{
-		if (!found.contains(group))
+		updateIndexes();
+		if (groupsByLyric != null)
 		{
-			if (group.getLyrics().contains(lyric))
+			return;
+		}
+
+		groupsByLyric = new IdentityHashMap<Lyric, List<Group>>();
+		groupsByReference = new HashMap<LyricRef, List<Group>>();
+		for (Group group : indexedGroups)
+		{
+			if (group == contents)
 			{
-				found.add(group);
+				continue;
 			}
-			for (Group subGroup : group.getGroups())
+			for (Lyric lyric : group.getLyrics())
 			{
-				getGroups(subGroup, lyric, found);
+				addToIndex(groupsByLyric, lyric, group);
+				if (lyric instanceof ReferenceLyric)
+				{
+					addToIndex(groupsByReference,
+					        ((ReferenceLyric) lyric).getReference(), group);
+				}
 			}
 		}
-		return found;
+	}
+
+	/**
+	 * Adds the given group and its sub-groups to the indexes, in depth-first
+	 * order.
+	 *
+	 * @param group the group to be indexed
+	 * @param indexed the groups indexed so far
+	 */
+	private void indexGroup(Group group, Set<Group> indexed)
+	{
+		if (!indexed.add(group))
+		{
+			return;
+		}
+		groupOrder.put(group, groupOrder.size());
+		indexedGroups.add(group);
+
+		if (!groupsByName.containsKey(group.getName()))
+		{
+			groupsByName.put(group.getName(), group);
+		}
+
+		Map<String, Group> subGroups = new HashMap<String, Group>();
+		for (Group subGroup : group.getGroups())
+		{
+			if (!subGroups.containsKey(subGroup.getName()))
+			{
+				subGroups.put(subGroup.getName(), subGroup);
+			}
+		}
+		subGroupsByName.put(group, subGroups);
+
+		for (Group subGroup : group.getGroups())
+		{
+			indexGroup(subGroup, indexed);
+		}
+	}
+
+	private static <K> void addToIndex(Map<K, List<Group>> index, K key,
+	        Group group)
+	{
+		List<Group> groups = index.get(key);
+		if (groups == null)
+		{
+			groups = new ArrayList<Group>(1);
+			index.put(key, groups);
+		}
+		if (!groups.contains(group))
+		{
+			groups.add(group);
+		}
+	}
+
+	/**
+	 * Returns the direct sub-group of the given group with the given name.
+	 *
+	 * @param group the parent group
+	 * @param name the name of the sub-group
+	 * @return the sub-group, or <code>null</code> if not found
+	 */
+	private Group getSubGroup(Group group, String name)
+	{
+		updateIndexes();
+		Map<String, Group> subGroups = subGroupsByName.get(group);
+		return (subGroups == null) ? null : subGroups.get(name);
 	}
 
 	/**
@@ -279,14 +446,7 @@ public class DefaultCatalog implements MutableCatalog, PropertyChangeListener
 	 */
 	public Group getBundle(String name)
 	{
-		for (Group bundle : getBundles())
-		{
-			if (bundle.getName().equals(name))
-			{
-				return bundle;
-			}
-		}
-		return null;
+		return getSubGroup(getTypedGroup(GroupType.BUNDLES), name);
 	}
 
 	/**
@@ -299,11 +459,12 @@ public class DefaultCatalog implements MutableCatalog, PropertyChangeListener
 	 */
 	public Group getBundle(Lyric lyric)
 	{
-		for (Group bundle : getBundles())
+		Group bundles = getTypedGroup(GroupType.BUNDLES);
+		for (Group group : findGroups(lyric))
 		{
-			if (bundle.getLyrics().contains(lyric))
+			if (getSubGroup(bundles, group.getName()) == group)
 			{
-				return bundle;
+				return group;
 			}
 		}
 		return null;
@@ -374,14 +535,7 @@ public class DefaultCatalog implements MutableCatalog, PropertyChangeListener
 	 */
 	public Group getCategory(String name)
 	{
-		for (Group category : getCategories())
-		{
-			if (category.getName().equals(name))
-			{
-				return category;
-			}
-		}
-		return null;
+		return getSubGroup(getTypedGroup(GroupType.CATEGORIES), name);
 	}
 
 	/**
@@ -444,14 +598,7 @@ public class DefaultCatalog implements MutableCatalog, PropertyChangeListener
 	 */
 	public Group getCD(String name)
 	{
-		for (Group cd : getCDs())
-		{
-			if (cd.getName().equals(name))
-			{
-				return cd;
-			}
-		}
-		return null;
+		return getSubGroup(getTypedGroup(GroupType.CDS), name);
 	}
 
 	/**
@@ -511,18 +658,26 @@ public class DefaultCatalog implements MutableCatalog, PropertyChangeListener
 			return;
 		}
 
-		for (Group srcGroup : source.getGroups())
+		destination.beginUpdate();
+		try
 		{
-			Group destGroup = destination.getGroup(srcGroup.getName());
-			if (destGroup == null)
-			{
-				destination.addGroup(srcGroup);
-			}
-			else
+			for (Group srcGroup : source.getGroups())
 			{
-				merge(destGroup, srcGroup);
+				Group destGroup = destination.getGroup(srcGroup.getName());
+				if (destGroup == null)
+				{
+					destination.addGroup(srcGroup);
+				}
+				else
+				{
+					merge(destGroup, srcGroup);
+				}
 			}
 		}
+		finally
+		{
+			destination.endUpdate();
+		}
 	}
 
 	public static void merge(Group destination, Group source)
@@ -543,6 +698,20 @@ public class DefaultCatalog implements MutableCatalog, PropertyChangeListener
 			return;
 		}
 
+		destination.beginUpdate();
+		try
+		{
+			mergeImpl(destination, source, discardOlderVersions);
+		}
+		finally
+		{
+			destination.endUpdate();
+		}
+	}
+
+	private static void mergeImpl(Group destination, Group source,
+	        boolean discardOlderVersions)
+	{
 		int difference = source.getVersion().compareTo(destination.getVersion());
 		if (discardOlderVersions && difference > 0)
 		{
@@ -630,21 +799,111 @@ public class DefaultCatalog implements MutableCatalog, PropertyChangeListener
 	}
 
 	/**
-	 * Handles property changes from underlying groups.
+	 * Handles property changes from underlying groups. Any changes to the
+	 * structure of the catalog or to the names of groups invalidate the
+	 * catalog's indexes immediately, while change events for the catalog's
+	 * listeners are deferred until the end of any bulk update.
 	 *
 	 * @param e the event describing the change
 	 */
 	public void propertyChange(PropertyChangeEvent e)
 	{
 		final String name = e.getPropertyName();
-		if (name == Group.MODIFIED_PROPERTY)
+		if (name == Group.STRUCTURE_PROPERTY || name == Group.NAME_PROPERTY)
 		{
-			pcs.firePropertyChange(//
-			        MutableCatalog.MODIFIED_PROPERTY, null, null);
+			// invalidate indexes right away, even during a bulk update
+			if (name == Group.STRUCTURE_PROPERTY
+			        && e.getNewValue() == Group.LYRICS_PROPERTY)
+			{
+				groupsByLyric = null;
+			}
+			else
+			{
+				groupsByName = null;
+			}
+			pcs.firePropertyChange(MutableCatalog.STRUCTURE_PROPERTY, null,
+			        null);
+		}
+
+		if (name == Group.GROUPS_PROPERTY || name == Group.LYRICS_PROPERTY
+		        || name == Group.NAME_PROPERTY)
+		{
+			fireContentsChanged();
 		}
-		else if (name == Group.GROUPS_PROPERTY)
+
+		// only forward changes to the catalog itself
+		if (e.getSource() == contents)
+		{
+			if (name == Group.MODIFIED_PROPERTY)
+			{
+				pcs.firePropertyChange(//
+				        MutableCatalog.MODIFIED_PROPERTY, null, null);
+			}
+			else if (name == Group.GROUPS_PROPERTY)
+			{
+				if (updateDepth == 0)
+				{
+					pcs.firePropertyChange(MutableCatalog.GROUPS_PROPERTY,
+					        null, null);
+				}
+				else
+				{
+					groupsChanged = true;
+				}
+			}
+		}
+	}
+
+	private void fireContentsChanged()
+	{
+		if (updateDepth == 0)
 		{
-			pcs.firePropertyChange(MutableCatalog.GROUPS_PROPERTY, null, null);
+			pcs.firePropertyChange(MutableCatalog.CONTENTS_PROPERTY, null, null);
+		}
+		else
+		{
+			contentsChanged = true;
+		}
+	}
+
+	/**
+	 * Starts a bulk update of the catalog. Until the matching call to
+	 * {@link #endUpdate()}, changes to its groups or contents only fire
+	 * {@link MutableCatalog#STRUCTURE_PROPERTY} events. Instead, a single
+	 * event is fired for each changed property when the update ends. Bulk
+	 * updates may be nested.
+	 */
+	public void beginUpdate()
+	{
+		updateDepth++;
+	}
+
+	/**
+	 * Ends a bulk update of the catalog started by {@link #beginUpdate()}.
+	 *
+	 * @throws IllegalStateException if no bulk update is in progress
+	 */
+	public void endUpdate()
+	{
+		if (updateDepth == 0)
+		{
+			throw new IllegalStateException("no update in progress");
+		}
+		updateDepth--;
+		if (updateDepth == 0)
+		{
+			if (groupsChanged)
+			{
+				groupsChanged = false;
+				pcs.firePropertyChange(MutableCatalog.GROUPS_PROPERTY, null,
+				        null);
+			}
+			if (contentsChanged)
+			{
+				contentsChanged = false;
+				pcs.firePropertyChange(MutableCatalog.CONTENTS_PROPERTY, null,
+				        null);
+			}
 		}
 	}
 
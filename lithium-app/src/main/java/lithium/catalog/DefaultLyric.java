@@ -33,7 +33,7 @@ public class DefaultLyric extends Lyric {
     private String originalTitle;
     private String copyrights;
     private Set<String> keys = new LinkedHashSet<String>();
-    private Set<BibleRef> bibleRefs = new TreeSet<BibleRef>();
+    private Set<BibleRef> bibleRefs = new BibleRefSet();
 
     public DefaultLyric(int number, String title) {
         this.number = number;
@@ -44,6 +44,18 @@ public abstract class Group implements Comparable<Group>, PropertyChangeListener
     /** The property of the sub-groups in this group. */
     public static final String GROUPS_PROPERTY = "groups";
 
+    /** The name property. */
+    public static final String NAME_PROPERTY = "name";
+
+    /**
+     * This property indicates that lyrics or sub-groups were added to or
+     * removed from the group. Unlike {@link #LYRICS_PROPERTY} and
+     * {@link #GROUPS_PROPERTY}, it is fired for every change, even during a
+     * bulk update, such that indexes derived from the group can be invalidated
+     * right away. The new value is the name of the property that changed.
+     */
+    public static final String STRUCTURE_PROPERTY = "structure";
+
     /**
      * Creates a bundle, a group that can contain lyrics.
      *
@@ -97,9 +109,21 @@ public abstract class Group implements Comparable<Group>, PropertyChangeListener
     /** Indicates whether the group or any of its contents has been modified. */
     private boolean modified = false;
 
+    /** The number of modifications to the group or its lyrics. */
+    private int modificationCount = 0;
+
     /** The sub-groups contained in this group. */
     private SortedSet<Group> groups;
 
+    /** Number of nested bulk updates in progress. */
+    private int updateDepth = 0;
+
+    /** Whether the sub-groups changed during the current bulk update. */
+    private boolean groupsChanged = false;
+
+    /** Whether the lyrics changed during the current bulk update. */
+    private boolean lyricsChanged = false;
+
     /**
      * Constructs a new group with the given attributes.
      *
@@ -144,8 +168,10 @@ public abstract class Group implements Comparable<Group>, PropertyChangeListener
         if (name == null) {
             throw new NullPointerException("name");
         }
+        String oldValue = this.name;
         this.name = name;
         setModified(true);
+        pcs.firePropertyChange(NAME_PROPERTY, oldValue, name);
     }
 
     /**
@@ -186,6 +212,9 @@ public abstract class Group implements Comparable<Group>, PropertyChangeListener
      * @param modified whether the group was modified
      */
     public void setModified(boolean modified) {
+        if (modified) {
+            modificationCount++;
+        }
         if (this.modified != modified) {
             boolean oldValue = this.modified;
             this.modified = modified;
@@ -213,6 +242,19 @@ public abstract class Group implements Comparable<Group>, PropertyChangeListener
         }
     }
 
+    /**
+     * Returns the number of modifications to the group, its attributes, its
+     * set of sub-groups and its lyrics since the group was created. Changes
+     * inside sub-groups are only partially reflected, so sub-groups should be
+     * checked separately. This value may be used to determine whether the
+     * group has changed between calls to this method.
+     *
+     * @return the number of modifications since the group was created
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
     /**
      * Adds a sub-group to the group and notifies any registered listeners.
      *
@@ -225,7 +267,7 @@ public abstract class Group implements Comparable<Group>, PropertyChangeListener
         if (groups.add(group)) {
             group.addPropertyChangeListener(this);
             setModified(true);
-            pcs.firePropertyChange(GROUPS_PROPERTY, null, null);
+            fireGroupsChanged();
         }
     }
 
@@ -241,7 +283,7 @@ public abstract class Group implements Comparable<Group>, PropertyChangeListener
         if (groups.remove(group)) {
             group.removePropertyChangeListener(this);
             setModified(true);
-            pcs.firePropertyChange(GROUPS_PROPERTY, null, null);
+            fireGroupsChanged();
         }
     }
 
@@ -256,7 +298,7 @@ public abstract class Group implements Comparable<Group>, PropertyChangeListener
             }
             groups.clear();
             setModified(true);
-            pcs.firePropertyChange(GROUPS_PROPERTY, null, null);
+            fireGroupsChanged();
         }
     }
 
@@ -331,7 +373,7 @@ public abstract class Group implements Comparable<Group>, PropertyChangeListener
         Lyric oldValue = addLyricImpl(lyric);
         if (oldValue != lyric) {
             setModified(true);
-            pcs.firePropertyChange(LYRICS_PROPERTY, null, null);
+            fireLyricsChanged();
         }
     }
 
@@ -343,7 +385,7 @@ public abstract class Group implements Comparable<Group>, PropertyChangeListener
     public void removeLyric(Lyric lyric) {
         if (removeLyricImpl(lyric)) {
             setModified(true);
-            pcs.firePropertyChange(LYRICS_PROPERTY, null, null);
+            fireLyricsChanged();
         }
     }
 
@@ -370,7 +412,58 @@ public abstract class Group implements Comparable<Group>, PropertyChangeListener
                 removeLyricImpl(lyric);
             }
             setModified(true);
+            fireLyricsChanged();
+        }
+    }
+
+    /**
+     * Starts a bulk update of the group. Until the matching call to
+     * {@link #endUpdate()}, changes to the lyrics and sub-groups of the group
+     * only fire {@link #STRUCTURE_PROPERTY} events. Instead, a single event is
+     * fired for each changed property when the update ends. Bulk updates may
+     * be nested.
+     */
+    public void beginUpdate() {
+        updateDepth++;
+    }
+
+    /**
+     * Ends a bulk update of the group started by {@link #beginUpdate()}.
+     *
+     * @throws IllegalStateException if no bulk update is in progress
+     */
+    public void endUpdate() {
+        if (updateDepth == 0) {
+            throw new IllegalStateException("no update in progress");
+        }
+        updateDepth--;
+        if (updateDepth == 0) {
+            if (groupsChanged) {
+                groupsChanged = false;
+                pcs.firePropertyChange(GROUPS_PROPERTY, null, null);
+            }
+            if (lyricsChanged) {
+                lyricsChanged = false;
+                pcs.firePropertyChange(LYRICS_PROPERTY, null, null);
+            }
+        }
+    }
+
+    private void fireGroupsChanged() {
+        pcs.firePropertyChange(STRUCTURE_PROPERTY, null, GROUPS_PROPERTY);
+        if (updateDepth == 0) {
+            pcs.firePropertyChange(GROUPS_PROPERTY, null, null);
+        } else {
+            groupsChanged = true;
+        }
+    }
+
+    private void fireLyricsChanged() {
+        pcs.firePropertyChange(STRUCTURE_PROPERTY, null, LYRICS_PROPERTY);
+        if (updateDepth == 0) {
             pcs.firePropertyChange(LYRICS_PROPERTY, null, null);
+        } else {
+            lyricsChanged = true;
         }
     }
 
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.catalog;
+
+import java.util.*;
+
+/**
+ * A lyric that only keeps its number and title in memory. The rest of the
+ * lyric, its body, is loaded when first needed. A limited number of recently
+ * used bodies is kept in memory, shared by all lazy lyrics. Once a lyric is
+ * modified, its body is kept in memory until the lyric is discarded.
+ *
+ * @author Gerrit Meinders
+ */
+public class LazyLyric extends Lyric {
+    /** The maximum number of unmodified bodies kept in memory. */
+    private static final int CACHE_SIZE = 256;
+
+    /** Recently used bodies of unmodified lyrics. */
+    private static final Map<LazyLyric, Lyric> cache = new LinkedHashMap<LazyLyric, Lyric>(
+            CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LazyLyric, Lyric> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final int number;
+    private String title;
+
+    /** Loads the lyric's body. */
+    private final Loader loader;
+
+    /** Identifies the body to the loader. */
+    private final int key;
+
+    /** The body of the lyric, once it's modified. */
+    private Lyric body = null;
+
+    /**
+     * Constructs a new lazy lyric.
+     *
+     * @param number the number of the lyric
+     * @param title the title of the lyric
+     * @param loader the loader used to load the lyric's body
+     * @param key identifies the lyric's body to the loader
+     */
+    public LazyLyric(int number, String title, Loader loader, int key) {
+        this.number = number;
+        this.title = title;
+        this.loader = loader;
+        this.key = key;
+    }
+
+    /**
+     * Returns the body of the lyric, loading it if needed.
+     */
+    private Lyric getBody() {
+        if (body != null) {
+            return body;
+        }
+        synchronized (cache) {
+            Lyric result = cache.get(this);
+            if (result == null) {
+                result = loader.load(key);
+                cache.put(this, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns the body of the lyric, keeping it in memory, such that it can be
+     * modified.
+     */
+    private Lyric getModifiableBody() {
+        if (body == null) {
+            body = getBody();
+            synchronized (cache) {
+                cache.remove(this);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Returns whether the lyric's body is currently in memory.
+     *
+     * @return {@code true} if the body is loaded; {@code false} otherwise
+     */
+    public boolean isLoaded() {
+        if (body != null) {
+            return true;
+        }
+        synchronized (cache) {
+            return cache.containsKey(this);
+        }
+    }
+
+    @Override
+    public int getNumber() {
+        return number;
+    }
+
+    @Override
+    public void setTitle(String title) {
+        this.title = title.trim();
+        setModified(true);
+    }
+
+    @Override
+    public String getTitle() {
+        return title;
+    }
+
+    @Override
+    public void setText(String text) {
+        getModifiableBody().setText(text);
+        setModified(true);
+    }
+
+    @Override
+    public String getText() {
+        return getBody().getText();
+    }
+
+    @Override
+    public void setOriginalTitle(String originalTitle) {
+        getModifiableBody().setOriginalTitle(originalTitle);
+        setModified(true);
+    }
+
+    @Override
+    public String getOriginalTitle() {
+        return getBody().getOriginalTitle();
+    }
+
+    @Override
+    public void setCopyrights(String copyrights) {
+        getModifiableBody().setCopyrights(copyrights);
+        setModified(true);
+    }
+
+    @Override
+    public String getCopyrights() {
+        return getBody().getCopyrights();
+    }
+
+    @Override
+    public void setKeys(Set<String> keys) {
+        Lyric body = getModifiableBody();
+        int count = body.getModificationCount();
+        body.setKeys(keys);
+        if (body.getModificationCount() != count) {
+            setModified(true);
+        }
+    }
+
+    @Override
+    public Set<String> getKeys() {
+        return getBody().getKeys();
+    }
+
+    @Override
+    public void addKey(String key) {
+        Lyric body = getModifiableBody();
+        int count = body.getModificationCount();
+        body.addKey(key);
+        if (body.getModificationCount() != count) {
+            setModified(true);
+        }
+    }
+
+    @Override
+    public void removeKey(String key) {
+        Lyric body = getModifiableBody();
+        int count = body.getModificationCount();
+        body.removeKey(key);
+        if (body.getModificationCount() != count) {
+            setModified(true);
+        }
+    }
+
+    @Override
+    public void setBibleRefs(Set<BibleRef> bibleRefs) {
+        Lyric body = getModifiableBody();
+        int count = body.getModificationCount();
+        body.setBibleRefs(bibleRefs);
+        if (body.getModificationCount() != count) {
+            setModified(true);
+        }
+    }
+
+    @Override
+    public Set<BibleRef> getBibleRefs() {
+        return getBody().getBibleRefs();
+    }
+
+    @Override
+    public void addBibleRef(BibleRef bibleRef) {
+        Lyric body = getModifiableBody();
+        int count = body.getModificationCount();
+        body.addBibleRef(bibleRef);
+        if (body.getModificationCount() != count) {
+            setModified(true);
+        }
+    }
+
+    @Override
+    public void removeBibleRef(BibleRef bibleRef) {
+        Lyric body = getModifiableBody();
+        int count = body.getModificationCount();
+        body.removeBibleRef(bibleRef);
+        if (body.getModificationCount() != count) {
+            setModified(true);
+        }
+    }
+
+    /**
+     * Loads the bodies of lazy lyrics.
+     */
+    public interface Loader {
+        /**
+         * Loads the body of a lyric, i.e. its text, original title,
+         * copyrights, keys and bible references. The number and title of the
+         * returned lyric are ignored.
+         *
+         * @param key identifies the body to be loaded
+         * @return a lyric containing the body
+         */
+        Lyric load(int key);
+    }
+}
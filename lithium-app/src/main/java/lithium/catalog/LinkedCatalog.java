@@ -142,7 +142,13 @@ public class LinkedCatalog implements Catalog, PropertyChangeListener {
      * @return the group
      */
     public Group getGroup(String name) {
-        throw new AssertionError("not implemented");
+        for (Catalog catalog : catalogs) {
+            Group group = catalog.getGroup(name);
+            if (group != null) {
+                return group;
+            }
+        }
+        return null;
     }
 
     /**
@@ -152,7 +158,11 @@ public class LinkedCatalog implements Catalog, PropertyChangeListener {
      * @return the groups containing the lyric
      */
     public Set<Group> getGroups(Lyric lyric) {
-        throw new AssertionError("not implemented");
+        Set<Group> result = new LinkedHashSet<Group>();
+        for (Catalog catalog : catalogs) {
+            result.addAll(catalog.getGroups(lyric));
+        }
+        return result;
     }
 
     /**
@@ -161,7 +171,11 @@ public class LinkedCatalog implements Catalog, PropertyChangeListener {
      * @return the groups contained directly by the catalog
      */
     public Set<Group> getGroups() {
-        throw new AssertionError("not implemented");
+        Set<Group> result = new LinkedHashSet<Group>();
+        for (Catalog catalog : catalogs) {
+            result.addAll(catalog.getGroups());
+        }
+        return result;
     }
 
     /** @see Catalog#getBundle(String) */
@@ -187,7 +187,9 @@ public abstract class Lyric implements Comparable<Lyric>
 	}
 
 	/**
-	 * Sets whether the lyric is modified.
+	 * Sets whether the lyric is modified. Listeners are notified of every
+	 * modification, even if the lyric was already modified, such that they
+	 * can keep track of changes to its contents.
 	 *
 	 * @param modified whether the lyric is modified
 	 */
@@ -196,7 +198,9 @@ public abstract class Lyric implements Comparable<Lyric>
 		modificationCount++;
 		boolean oldValue = this.modified;
 		this.modified = modified;
-		pcs.firePropertyChange(MODIFIED_PROPERTY, oldValue, modified);
+		pcs.firePropertyChange(new PropertyChangeEvent(this,
+		        MODIFIED_PROPERTY, (oldValue == modified) ? null : oldValue,
+		        modified));
 	}
 
 	/**
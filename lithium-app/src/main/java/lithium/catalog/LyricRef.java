@@ -77,4 +77,9 @@ public class LyricRef {
             return false;
         }
     }
+
+    @Override
+    public int hashCode() {
+        return bundle.hashCode() * 31 + number;
+    }
 }
@@ -34,6 +34,19 @@ public interface MutableCatalog extends Catalog {
     /** The groups property. */
     public static final String GROUPS_PROPERTY = "groups";
 
+    /**
+     * This property indicates that groups or lyrics were added to or removed
+     * from any group in the catalog, or that a group was renamed.
+     */
+    public static final String CONTENTS_PROPERTY = "contents";
+
+    /**
+     * Like {@link #CONTENTS_PROPERTY}, but fired for every change, even during
+     * a bulk update, such that indexes derived from the catalog can be
+     * invalidated right away.
+     */
+    public static final String STRUCTURE_PROPERTY = "structure";
+
     /**
      * Returns whether the catalog was modified since the last load or save.
      *
@@ -129,4 +142,19 @@ public interface MutableCatalog extends Catalog {
      * @return <code>true</code> if the catalog contained the group
      */
     public boolean removeCD(String name);
+
+    /**
+     * Starts a bulk update of the catalog. Until the matching call to
+     * {@link #endUpdate()}, changes to its groups or contents only fire
+     * {@link #STRUCTURE_PROPERTY} events. Instead, a single event is fired for
+     * each changed property when the update ends. Bulk updates may be nested.
+     */
+    public void beginUpdate();
+
+    /**
+     * Ends a bulk update of the catalog started by {@link #beginUpdate()}.
+     *
+     * @throws IllegalStateException if no bulk update is in progress
+     */
+    public void endUpdate();
 }
@@ -66,7 +66,7 @@ public class ReferenceLyric extends Lyric implements PropertyChangeListener {
      * @return whether the lyric could be resolved
      */
     protected boolean obtainLyric() {
-        lyric = CatalogManager.getCatalog().getLyric(reference);
+        lyric = CatalogManager.getLyric(reference);
         boolean resolved = lyric != null;
         if (resolved) {
             lyric.addPropertyChangeListener(this);
@@ -235,6 +235,12 @@ public class ReferenceLyric extends Lyric implements PropertyChangeListener {
         pcs.firePropertyChange(myEvent);
     }
 
+	/**
+	 * Returns whether the given object is a reference lyric with the same
+	 * reference. A reference lyric is never equal to the lyric it refers to,
+	 * since that lyric is not equal to the reference either and their hash
+	 * codes differ.
+	 */
 	@Override
 	public boolean equals( Object obj )
 	{
@@ -247,21 +253,20 @@ public class ReferenceLyric extends Lyric implements PropertyChangeListener {
 			ReferenceLyric other = (ReferenceLyric)obj;
 			return reference.equals( other.reference );
 		}
-		else if ( obj instanceof Lyric )
-		{
-			Lyric lyric = CatalogManager.getCatalog().getLyric( reference );
-			return lyric != null && lyric.equals( obj );
-		}
 		else
 		{
 			return false;
 		}
 	}
 
+	/**
+	 * Returns a hash code based on the reference, consistent with
+	 * {@link #equals}. It doesn't change when the reference is resolved to a
+	 * different lyric (or none at all).
+	 */
 	@Override
 	public int hashCode()
 	{
-		Lyric lyric = CatalogManager.getCatalog().getLyric( reference );
-		return lyric == null ? 0 : lyric.hashCode();
+		return reference.hashCode();
 	}
 }
@@ -562,16 +562,11 @@ public class LyricView extends JLayeredPane implements PropertyChangeListener {
 
         } else if (content instanceof BibleRef) {
             BibleRef ref = (BibleRef) content;
-            ArchiveLibrary bible = null;
+            Library bible = null;
             try {
                 final List<URL> collectionURLs = config.getCollectionURLs();
                 if (!collectionURLs.isEmpty()) {
-                    final URL url = collectionURLs.get(0);
-                    try {
-                        bible = new ArchiveLibrary(url.toURI());
-                    } catch (URISyntaxException e) {
-                        throw new IOException(e);
-                    }
+                    bible = LibraryManager.getLibrary(collectionURLs.get(0));
                 }
             } catch (IOException e) {
                 // TODO Auto-generated catch block
@@ -596,7 +591,7 @@ public class LyricView extends JLayeredPane implements PropertyChangeListener {
     }
 
     private void updateBibleDocument(StyledDocument document, BibleRef ref,
-            ArchiveLibrary bible) {
+            Library bible) {
         try {
             document.insertString(document.getLength(), bible.getName() + "\n", document
                     .getStyle(SMALL));
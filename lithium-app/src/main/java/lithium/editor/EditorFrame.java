@@ -979,18 +979,18 @@ public class EditorFrame extends JFrame implements VetoableChangeListener,
 		        BorderFactory.createEmptyBorder(5, 5, 5, 5)));
 		timeLabel.setFont(new Font(Font.MONOSPACED, Font.BOLD, 14));
 
-		class Listener implements AmplitudeListener, GainListener
+		class Listener implements MeterListener
 		{
 			private DecimalFormat twoDigitFormat = new DecimalFormat("00");
 
 			private long startTimeMillis;
 
 			@Override
-			public void amplitudeChanged(int channel, double amplitude)
+			public void meterUpdated(AudioMeter.Snapshot snapshot)
 			{
 				if (recorder.isStarted())
 				{
-					volumeBar.setAmplitude(channel, amplitude);
+					volumeBar.setLevels(snapshot);
 
 					int seconds = (int) ((System.currentTimeMillis() - startTimeMillis) / 1000);
 					int minutes = seconds / 60;
@@ -1002,17 +1002,10 @@ public class EditorFrame extends JFrame implements VetoableChangeListener,
 					        + twoDigitFormat.format(seconds) + '"');
 				}
 			}
-
-			@Override
-			public void gainChanged(int channel, double gain)
-			{
-				volumeBar.setGain(channel, gain);
-			}
 		}
 
 		final Listener listener = new Listener();
-		recorder.addAmplitudeListener(listener);
-		recorder.addGainListener(listener);
+		recorder.addMeterListener(listener);
 
 		final Action[] recordStopActions = new Action[2];
 
@@ -22,7 +22,7 @@ import java.net.*;
 import lithium.books.*;
 
 /**
- * Renders cells containing a URL to an {@link ArchiveLibrary} using the
+ * Renders cells containing a URL to a {@link Library} using the
  * collection's title.
  *
  * @author Gerrit Meinders
@@ -34,8 +34,7 @@ public class LibraryListCellRenderer extends URLCellRenderer {
         if (value instanceof URL) {
             URL url = (URL) value;
             try {
-                final ArchiveLibrary collection = new ArchiveLibrary(url
-                        .toURI());
+                final Library collection = LibraryManager.getLibrary(url);
                 result = collection.getName();
             } catch (Exception e) {
                 result = super.getDisplayValue(value);
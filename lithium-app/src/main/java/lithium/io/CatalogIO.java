@@ -19,6 +19,7 @@ package lithium.io;
 
 import java.io.*;
 import java.net.*;
+import java.util.*;
 import java.util.concurrent.*;
 
 import lithium.catalog.*;
@@ -46,6 +47,14 @@ public class CatalogIO
 	/** Resource name of the schema for catalogs, version 1.0. */
 	public static final String CATALOG_V10_SCHEMA_LOCATION = "/lithium/io/catalog-1.0.xsd";
 
+	/**
+	 * Layouts of the files that catalogs were last written to, used to copy
+	 * unmodified groups when the catalog is saved again. Layouts refer to
+	 * groups only weakly, so they don't keep their catalog in memory.
+	 */
+	private static final Map<Catalog, CatalogLayout> layouts =
+	        Collections.synchronizedMap(new WeakHashMap<Catalog, CatalogLayout>());
+
 	/**
 	 * Reads a catalog from the specified file.
 	 *
@@ -120,16 +129,52 @@ public class CatalogIO
 	}
 
 	/**
-	 * Writes the given catalog to a given file.
+	 * Writes the given catalog to a given file. The catalog is first written
+	 * to a temporary file, which replaces the given file only if the catalog
+	 * was written successfully. If the catalog was previously written to a
+	 * file that hasn't changed since, groups that weren't modified are copied
+	 * from that file.
 	 *
 	 * @param catalog the catalog
 	 * @param file the file
 	 */
 	public static void write(Catalog catalog, File file) throws IOException
 	{
-		Task<Document> task = BuilderUtilities.createBuilderTask(
-		        new CatalogBuilder(catalog), file);
-		task.run();
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		boolean written = false;
+		try
+		{
+			StreamingCatalogBuilder builder = new StreamingCatalogBuilder(
+			        catalog);
+			builder.setPreviousLayout(layouts.get(catalog));
+
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(
+			        temp));
+			try
+			{
+				builder.setOutput(out);
+				run(new MonitoredTask<Void>(builder));
+			}
+			finally
+			{
+				out.close();
+			}
+
+			DerivedFileHeader.replace(temp, file);
+			written = true;
+
+			CatalogLayout layout = builder.getLayout();
+			layout.setFile(file);
+			layouts.put(catalog, layout);
+		}
+		finally
+		{
+			if (!written)
+			{
+				temp.delete();
+			}
+		}
 	}
 
 	/**
@@ -140,9 +185,33 @@ public class CatalogIO
 	 */
 	public static void write(Catalog catalog, Writer writer) throws IOException
 	{
-		Task<Document> task = BuilderUtilities.createBuilderTask(
-		        new CatalogBuilder(catalog), writer);
-		task.run();
+		run(BuilderUtilities.createBuilderTask(new StreamingCatalogBuilder(
+		        catalog), writer));
+	}
+
+	/**
+	 * Runs the given task, re-throwing any exception it throws.
+	 */
+	private static void run(Task<?> task) throws IOException
+	{
+		try
+		{
+			task.run();
+			task.get();
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+			throw (IOException) new IOException().initCause(cause);
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException();
+		}
 	}
 
 	/**
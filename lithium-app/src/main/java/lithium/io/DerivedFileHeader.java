@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.io;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+
+/**
+ * The header of a binary file derived from a source file, such as a catalog
+ * snapshot, a compiled library or a bible index. The header identifies the
+ * format of the file and the length and modification time of the source file
+ * it was derived from, such that out-of-date files can be detected.
+ *
+ * <p>
+ * Derived files are written to a temporary file first, which then replaces
+ * the existing file, if any, in a single atomic move where the file system
+ * supports it. Readers therefore never see a partially written file.
+ *
+ * @author Gerrit Meinders
+ */
+public class DerivedFileHeader
+{
+	/** Size of the header, in bytes. */
+	public static final int SIZE = 4 + 4 + 8 + 8;
+
+	private final int magic;
+
+	private final int version;
+
+	private final long sourceLength;
+
+	private final long sourceModified;
+
+	/**
+	 * Constructs a new header.
+	 *
+	 * @param magic the number identifying the file format
+	 * @param version the version of the file format
+	 * @param sourceLength the length of the source file
+	 * @param sourceModified the modification time of the source file
+	 */
+	public DerivedFileHeader(int magic, int version, long sourceLength,
+	        long sourceModified)
+	{
+		this.magic = magic;
+		this.version = version;
+		this.sourceLength = sourceLength;
+		this.sourceModified = sourceModified;
+	}
+
+	/**
+	 * Reads a header from the given buffer, starting at its current position.
+	 * The position of the buffer is advanced past the header.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the header
+	 * @throws BufferUnderflowException if the buffer is too short to contain
+	 *         a header
+	 */
+	public static DerivedFileHeader read(ByteBuffer buffer)
+	{
+		int magic = buffer.getInt();
+		int version = buffer.getInt();
+		long sourceLength = buffer.getLong();
+		long sourceModified = buffer.getLong();
+		return new DerivedFileHeader(magic, version, sourceLength,
+		        sourceModified);
+	}
+
+	/**
+	 * Returns whether the header belongs to a file of the given format.
+	 *
+	 * @param magic the number identifying the file format
+	 * @param version the version of the file format
+	 * @return whether the format matches
+	 */
+	public boolean isFormat(int magic, int version)
+	{
+		return (this.magic == magic) && (this.version == version);
+	}
+
+	/**
+	 * Returns whether the file is up-to-date with the given source file.
+	 *
+	 * @param source the source file
+	 * @return whether the source file's length and modification time are
+	 *         equal to those stored in the header
+	 */
+	public boolean isCurrent(File source)
+	{
+		return (sourceLength == source.length())
+		        && (sourceModified == source.lastModified());
+	}
+
+	public long getSourceLength()
+	{
+		return sourceLength;
+	}
+
+	public long getSourceModified()
+	{
+		return sourceModified;
+	}
+
+	/**
+	 * Writes a file starting with this header, followed by the given
+	 * contents. Any existing file is replaced once the new file is complete.
+	 *
+	 * @param file the file to write to
+	 * @param contents writes the contents following the header
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void write(File file, Contents contents)
+	throws IOException
+	{
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		boolean written = false;
+		try
+		{
+			DataOutputStream out = new DataOutputStream(
+			        new BufferedOutputStream(new FileOutputStream(temp)));
+			try
+			{
+				out.writeInt(magic);
+				out.writeInt(version);
+				out.writeLong(sourceLength);
+				out.writeLong(sourceModified);
+				contents.writeTo(out);
+			}
+			finally
+			{
+				out.close();
+			}
+
+			replace(temp, file);
+			written = true;
+		}
+		finally
+		{
+			if (!written)
+			{
+				temp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Moves the given file to the given target, replacing the target if it
+	 * exists. The move is atomic if the file system supports it.
+	 *
+	 * @param source the file to be moved
+	 * @param target the file to be replaced
+	 * @throws IOException if the file can't be moved
+	 */
+	public static void replace(File source, File target)
+	throws IOException
+	{
+		try
+		{
+			Files.move(source.toPath(), target.toPath(),
+			        StandardCopyOption.REPLACE_EXISTING,
+			        StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(source.toPath(), target.toPath(),
+			        StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Writes the contents of a derived file, following its header.
+	 */
+	public interface Contents
+	{
+		/**
+		 * Writes the contents to the given output stream.
+		 *
+		 * @param out the output stream
+		 * @throws IOException if an I/O error occurs
+		 */
+		void writeTo(DataOutputStream out)
+		throws IOException;
+	}
+}
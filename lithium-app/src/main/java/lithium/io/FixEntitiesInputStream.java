@@ -29,42 +29,88 @@ import java.io.*;
  * @author Gerrit Meinders
  */
 public class FixEntitiesInputStream extends FilterInputStream {
-    private byte[] insert = null;
-    private int insertIndex = 0;
+    /** Characters inserted after each '&' character. */
+    private static final byte[] INSERT = { (byte) 'a', (byte) 'm', (byte) 'p',
+            (byte) ';' };
+
+    /** Index of the next inserted character, if less than its length. */
+    private int insertIndex = INSERT.length;
+
+    /** Bytes read from the underlying stream, but not yet processed. */
+    private final byte[] buffer = new byte[8192];
+
+    private int bufferPosition = 0;
+
+    private int bufferLength = 0;
 
     public FixEntitiesInputStream(InputStream in) {
         super(in);
     }
 
     public int read() throws IOException {
-        int read;
-        if (insert == null) {
-            read = in.read();
-            if (read == '&') {
-                insert = new byte[] {
-                        (byte) 'a', (byte) 'm',
-                        (byte) 'p', (byte) ';'};
-                insertIndex = 0;
-            }
-        } else {
-            read = insert[insertIndex];
-            insertIndex++;
-            if (insertIndex == insert.length) {
-                insert = null;
-            }
-        }
-        return read;
+        byte[] b = new byte[1];
+        return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
     }
 
     public int read(byte[] b, int off, int len) throws IOException {
         if (len == 0) return 0;
 
-        int read = read();
-        if (read == -1) {
-            return -1;
-        } else {
-            b[off] = (byte) read;
-            return 1;
+        int count = 0;
+        while (count < len) {
+            if (insertIndex < INSERT.length) {
+                b[off + count++] = INSERT[insertIndex++];
+
+            } else {
+                if (bufferPosition == bufferLength) {
+                    if (count > 0) {
+                        // don't block when some bytes were read already
+                        break;
+                    }
+                    int read = in.read(buffer, 0, buffer.length);
+                    if (read == -1) {
+                        return -1;
+                    }
+                    bufferPosition = 0;
+                    bufferLength = read;
+                }
+
+                byte c = buffer[bufferPosition++];
+                b[off + count++] = c;
+                if (c == '&') {
+                    insertIndex = 0;
+                }
+            }
+        }
+        return count;
+    }
+
+    public long skip(long n) throws IOException {
+        byte[] skipped = new byte[(int) Math.min(n, buffer.length)];
+        long total = 0;
+        while (total < n) {
+            int read = read(skipped, 0, (int) Math.min(n - total,
+                    skipped.length));
+            if (read == -1) {
+                break;
+            }
+            total += read;
         }
+        return total;
+    }
+
+    public int available() throws IOException {
+        return (INSERT.length - insertIndex) + (bufferLength - bufferPosition);
+    }
+
+    public boolean markSupported() {
+        return false;
+    }
+
+    public void mark(int readlimit) {
+        // not supported
+    }
+
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
     }
 }
@@ -321,7 +321,7 @@ implements
 		if (startChapter != null)
 		{
 			element.setAttribute("chapter", "" + startChapter);
-			if (startChapter != endChapter)
+			if (!Objects.equals(startChapter, endChapter))
 			{
 				element.setAttribute("endChapter", "" + endChapter);
 			}
@@ -333,7 +333,8 @@ implements
 		if (startVerse != null)
 		{
 			element.setAttribute("verse", "" + startVerse);
-			if (startChapter != endChapter || startVerse != endVerse)
+			if (!Objects.equals(startChapter, endChapter)
+			        || !Objects.equals(startVerse, endVerse))
 			{
 				element.setAttribute("endVerse", "" + endVerse);
 			}
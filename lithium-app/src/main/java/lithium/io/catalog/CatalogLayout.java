@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.io.catalog;
+
+import java.io.*;
+import java.lang.ref.*;
+import java.util.*;
+
+import lithium.catalog.*;
+
+/**
+ * Describes where each group of a catalog is located in the file it was
+ * written to, allowing the next save to copy unmodified groups from that file
+ * instead of writing them again.
+ *
+ * @see StreamingCatalogBuilder#setPreviousLayout(CatalogLayout)
+ * @author Gerrit Meinders
+ */
+public class CatalogLayout
+{
+	/** Whether the file was written with indentation. */
+	private final boolean indent;
+
+	/**
+	 * The location of each group, by identity hash code. Groups are only
+	 * referenced weakly: they refer to their catalog through listeners, so a
+	 * layout kept for a catalog would otherwise keep the catalog in memory.
+	 */
+	private final Map<Integer, List<Location>> entries;
+
+	/** The file described by the layout. */
+	private File file = null;
+
+	/** The length of the file when the layout was attached to it. */
+	private long length;
+
+	/** The modification time of the file when the layout was attached. */
+	private long lastModified;
+
+	/**
+	 * Constructs a new, empty layout.
+	 *
+	 * @param indent whether the described file is indented
+	 */
+	CatalogLayout(boolean indent)
+	{
+		this.indent = indent;
+		entries = new HashMap<Integer, List<Location>>();
+	}
+
+	/**
+	 * Attaches the layout to the file it describes. This should be called
+	 * once the file is complete, since the file's current length and
+	 * modification time are used to detect any later changes to it.
+	 *
+	 * @param file the file
+	 */
+	public void setFile(File file)
+	{
+		this.file = file;
+		length = file.length();
+		lastModified = file.lastModified();
+	}
+
+	/**
+	 * Returns the file described by the layout.
+	 *
+	 * @return the file, or {@code null} if the layout isn't attached to a file
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Returns whether the layout still describes its file, i.e. the file
+	 * wasn't changed since the layout was attached to it.
+	 *
+	 * @return {@code true} if the layout is current; {@code false} otherwise
+	 */
+	public boolean isCurrent()
+	{
+		return file != null && file.length() == length
+		        && file.lastModified() == lastModified;
+	}
+
+	boolean isIndented()
+	{
+		return indent;
+	}
+
+	Entry get(Group group)
+	{
+		List<Location> locations = entries.get(System.identityHashCode(group));
+		if (locations != null)
+		{
+			for (Location location : locations)
+			{
+				if (location.group.get() == group)
+				{
+					return location.entry;
+				}
+			}
+		}
+		return null;
+	}
+
+	void put(Group group, Entry entry)
+	{
+		Integer key = System.identityHashCode(group);
+		List<Location> locations = entries.get(key);
+		if (locations == null)
+		{
+			locations = new ArrayList<Location>(1);
+			entries.put(key, locations);
+		}
+		for (Iterator<Location> i = locations.iterator(); i.hasNext();)
+		{
+			Group other = i.next().group.get();
+			if (other == group || other == null)
+			{
+				i.remove();
+			}
+		}
+		locations.add(new Location(group, entry));
+	}
+
+	/**
+	 * Associates a weakly referenced group with its entry.
+	 */
+	private static class Location
+	{
+		final Reference<Group> group;
+
+		final Entry entry;
+
+		Location(Group group, Entry entry)
+		{
+			this.group = new WeakReference<Group>(group);
+			this.entry = entry;
+		}
+	}
+
+	/**
+	 * The location of a single group within the file.
+	 */
+	static class Entry
+	{
+		/** Offset of the group's start tag, or -1 for an empty group. */
+		final long offset;
+
+		/** Length of the group's element, in bytes. */
+		final long length;
+
+		/** Nesting depth of the group's element, which affects indentation. */
+		final int depth;
+
+		/** Modification count of the group when it was written. */
+		final int modificationCount;
+
+		Entry(long offset, long length, int depth, int modificationCount)
+		{
+			this.offset = offset;
+			this.length = length;
+			this.depth = depth;
+			this.modificationCount = modificationCount;
+		}
+
+		Entry move(long delta)
+		{
+			return offset < 0 ? this : new Entry(offset + delta, length,
+			        depth, modificationCount);
+		}
+	}
+}
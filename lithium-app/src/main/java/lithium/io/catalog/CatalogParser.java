@@ -22,7 +22,8 @@ import java.text.*;
 import java.util.*;
 import javax.xml.*;
 import javax.xml.parsers.*;
-import javax.xml.transform.dom.*;
+import javax.xml.stream.*;
+import javax.xml.transform.stream.*;
 import javax.xml.validation.*;
 
 import lithium.catalog.*;
@@ -38,19 +39,35 @@ import static lithium.io.CatalogIO.*;
 /**
  * A parser for catalogs stored in Lithium's XML file format.
  *
+ * <p>
+ * Catalogs in the current format, i.e. with the {@link CatalogIO#NAMESPACE
+ * catalog namespace}, are parsed as a stream, creating groups and lyrics as
+ * their elements are read. Catalogs in the old format, identified by their
+ * DTD, are still parsed into a DOM tree first.
+ *
  * @author Gerrit Meinders
  */
 public class CatalogParser extends ConfigurationSupport
 implements Parser<MutableCatalog> {
+    /**
+     * Maximum number of characters read before the root element is found,
+     * while it's still possible to re-read the input for old catalogs.
+     */
+    private static final int READ_AHEAD_LIMIT = 1 << 20;
+
     /** The catalog being constructed by the parser. */
     protected MutableCatalog catalog;
 
     /** The input source of the parser. */
     private Reader in;
 
+    /** Whether catalogs are validated against the schema before parsing. */
+    private boolean validating;
+
     /** Constructs a new catalog parser. */
     public CatalogParser() {
         in = null;
+        validating = false;
     }
 
     /**
@@ -62,6 +79,27 @@ implements Parser<MutableCatalog> {
         this.in = in;
     }
 
+    /**
+     * Returns whether catalogs in version 1.0 of the format are validated
+     * against the schema.
+     *
+     * @return {@code true} if catalogs are validated; {@code false} otherwise
+     */
+    public boolean isValidating() {
+        return validating;
+    }
+
+    /**
+     * Sets whether catalogs in version 1.0 of the format are validated
+     * against the schema. Validation is performed as a separate pass over the
+     * input, before the catalog is parsed. It's disabled by default.
+     *
+     * @param validating whether catalogs should be validated
+     */
+    public void setValidating(boolean validating) {
+        this.validating = validating;
+    }
+
     /**
      * Constructs a catalog from the parser's input source.
      *
@@ -73,182 +111,147 @@ implements Parser<MutableCatalog> {
             throw new NullPointerException("input not set");
         }
 
-        Document document;
         try {
-            // open and parse source file
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            builder.setEntityResolver(new DefaultEntityResolver());
-            document = builder.parse(new InputSource(in));
-            in.close();
-
-        } catch (SAXException e) {
-            throw (IOException) new IOException().initCause(e);
-        } catch (ParserConfigurationException e) {
-            throw new AssertionError(e);
-        }
-
-        String namespace = document.getDocumentElement().getNamespaceURI();
-        if (NAMESPACE.equals(namespace)) {
-            return parseCatalog(document);
-        } else {
-            // use DTD for backward-compatibility
-            DocumentType doctype = document.getDoctype();
-            if (doctype == null) {
-                throw (IOException) new IOException().initCause(new ParseException(
-                        INVALID_DTD, 0));
-            }
-
-            String publicId = doctype.getPublicId();
-            if (PUBLIC_ID.equals(publicId)) {
-                return parseCatalog(document);
-            } else {
-                throw (IOException) new IOException().initCause(new ParseException(
-                        INVALID_DTD, 0));
-            }
-        }
-    }
-
-    private MutableCatalog parseCatalog(Document document) throws IOException {
-        catalog = new DefaultCatalog();
-
-        Element element = document.getDocumentElement();
-        if (element.hasAttribute("version")) {
-            String version = element.getAttribute("version");
-            if ("1.0".equals(version)) {
-                try {
-                    return parseCatalogV10(document);
-                } catch (SAXException e) {
-                    throw new IOException("Illegal catalog", e);
+            Reader input = in;
+            char[] contents = null;
+            if (validating) {
+                // buffer the input, since it's needed for two passes
+                CharArrayWriter buffer = new CharArrayWriter();
+                char[] chars = new char[8192];
+                int read;
+                while ((read = in.read(chars)) != -1) {
+                    buffer.write(chars, 0, read);
                 }
-            } else if ("0.9".equals(version)) {
-                return parseCatalogV09(document);
-            } else {
-                throw new IOException("Unsupported version: " + version);
+                in.close();
+                contents = buffer.toCharArray();
+                input = new CharArrayReader(contents);
             }
-        } else {
-            return parseOldCatalog(document);
-        }
-    }
 
-    @Deprecated
-    private MutableCatalog parseOldCatalog(Document document) {
-        Element element = document.getDocumentElement();
-        NodeList bundleElements = element.getElementsByTagName("bundle");
-        for (int i = 0; i < bundleElements.getLength(); i++) {
-            Element bundleElement = (Element) bundleElements.item(i);
-            Bundle bundle = parseBundle(bundleElement);
-            catalog.addBundle(bundle);
-        }
+            BufferedReader reader = new BufferedReader(input);
+            reader.mark(READ_AHEAD_LIMIT);
+            MutableCatalog result = parse(reader, contents);
+            reader.close();
+            return result;
 
-        NodeList categoryElements = element.getElementsByTagName("category");
-        for (int i = 0; i < categoryElements.getLength(); i++) {
-            Element categoryElement = (Element) categoryElements.item(i);
-            Category category = parseCategory(categoryElement);
-            catalog.addCategory(category);
+        } finally {
+            in.close();
         }
+    }
 
-        NodeList cdElements = element.getElementsByTagName("cd");
-        for (int i = 0; i < cdElements.getLength(); i++) {
-            Element cdElement = (Element) cdElements.item(i);
-            CD cd = parseCD(cdElement);
-            catalog.addCD(cd);
-        }
+    /**
+     * Parses a catalog from the given reader, which must be marked at the
+     * start of the input.
+     *
+     * @param reader the input to be parsed
+     * @param contents the entire input, if it should be validated; otherwise
+     *        {@code null}
+     */
+    private MutableCatalog parse(BufferedReader reader, char[] contents)
+            throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                Boolean.FALSE);
 
-        catalog.setModified(false);
+        try {
+            XMLStreamReader xml = factory.createXMLStreamReader(reader);
+            try {
+                while (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                    // skip prolog
+                }
 
-        return catalog;
-    }
+                if (!NAMESPACE.equals(xml.getNamespaceURI())) {
+                    // use DTD for backward-compatibility
+                    reader.reset();
+                    return parseDocument(reader);
+                }
 
-    private MutableCatalog parseCatalogV09(Document document) {
-        Element element = document.getDocumentElement();
-        NodeList children = element.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if (child instanceof Element) {
-                Element childElement = (Element) child;
-                String tagName = childElement.getTagName();
-                if ("group".equals(tagName)) {
-                    Group group = parseGroup(childElement, false);
-                    catalog.addGroup(group);
+                String version = xml.getAttributeValue(null, "version");
+                if ("1.0".equals(version)) {
+                    if (contents != null) {
+                        validate(new CharArrayReader(contents));
+                    }
+                    return parseCatalog(xml, true);
+                } else if ("0.9".equals(version)) {
+                    return parseCatalog(xml, false);
+                } else if (version == null) {
+                    reader.reset();
+                    return parseDocument(reader);
+                } else {
+                    throw new IOException("Unsupported version: " + version);
                 }
+
+            } finally {
+                xml.close();
             }
+
+        } catch (XMLStreamException e) {
+            throw (IOException) new IOException().initCause(e);
         }
-        catalog.setModified(false);
-        return catalog;
     }
 
     /**
-     * Parses a catalog document conforming to version 1.0 of the specification.
+     * Validates the given input against the catalog schema. The input is not
+     * parsed into a tree.
      *
-     * @param document Document to be parsed.
-     * @return Catalog stored in the given document.
-     * @throws SAXException If a SAX error occurs during parsing.
+     * @param reader the input to be validated, separate from the input being
+     *        parsed
+     * @throws IOException if the input can't be read or isn't valid
      */
-    private MutableCatalog parseCatalogV10(Document document) throws SAXException {
-        // Load the appropriate schema.
-        SchemaFactory schemaFactory = SchemaFactory
-                .newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-        Schema schema = schemaFactory.newSchema(getClass().getResource(
-                CatalogIO.CATALOG_V10_SCHEMA_LOCATION));
-        Validator schemaValidator = schema.newValidator();
-
-        // Validate the document using the schema.
-        DOMSource documentSource = new DOMSource(document);
-        DOMResult documentResult = new DOMResult(document);
+    private void validate(Reader reader) throws IOException {
+        Validator validator = SchemaHolder.SCHEMA.newValidator();
         try {
-            schemaValidator.validate(documentSource, documentResult);
-        } catch (IOException e) {
-            throw new AssertionError(e);
+            validator.validate(new StreamSource(reader));
+        } catch (SAXException e) {
+            throw new IOException("Illegal catalog", e);
         }
+    }
 
-        // Parse the document.
-        Element element = document.getDocumentElement();
-        NodeList children = element.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if (child instanceof Element) {
-                Element childElement = (Element) child;
-                String tagName = childElement.getTagName();
-                if ("group".equals(tagName)) {
-                    Group group = parseGroup(childElement, true);
-                    catalog.addGroup(group);
-                }
+    /**
+     * Parses the catalog element that the given reader is positioned at and
+     * its contents, in version 0.9 or 1.0 of the format.
+     *
+     * @param xml the reader
+     * @param version10 whether the catalog uses version 1.0 of the format
+     * @return the catalog
+     */
+    private MutableCatalog parseCatalog(XMLStreamReader xml, boolean version10)
+            throws XMLStreamException {
+        catalog = new DefaultCatalog();
+        while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("group".equals(xml.getLocalName())) {
+                Group group = parseGroup(xml, version10);
+                catalog.addGroup(group);
+            } else {
+                skipElement(xml);
             }
         }
         catalog.setModified(false);
         return catalog;
     }
 
-    private Group parseGroup(Element element, boolean version10) {
+    private Group parseGroup(XMLStreamReader xml, boolean version10)
+            throws XMLStreamException {
         // parse basic group attributes
-        String name = element.getAttribute("name");
+        String name = getAttribute(xml, "name");
         if (name.length() == 0) {
             name = null;
         }
-        String version = element.getAttribute("version");
-        String type;
-        if (element.hasAttribute("type")) {
-            type = element.getAttribute("type");
-        } else {
-            type = null;
-        }
+        String version = getAttribute(xml, "version");
+        String type = xml.getAttributeValue(null, "type");
 
         // parse sub-groups and lyrics
         Set<Group> groups = new LinkedHashSet<Group>();
         List<Lyric> lyrics = new ArrayList<Lyric>();
-        NodeList children = element.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if (child instanceof Element) {
-                Element childElement = (Element) child;
-                String tagName = childElement.getTagName();
-                if ("lyric".equals(tagName)) {
-                    lyrics.add(parseLyric(childElement, version10));
-                } else if ("group".equals(tagName)) {
-                    groups.add(parseGroup(childElement, version10));
-                }
+        while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String tagName = xml.getLocalName();
+            if ("lyric".equals(tagName)) {
+                lyrics.add(parseLyric(xml, version10));
+            } else if ("group".equals(tagName)) {
+                groups.add(parseGroup(xml, version10));
+            } else {
+                skipElement(xml);
             }
         }
 
@@ -288,6 +291,152 @@ implements Parser<MutableCatalog> {
         return group;
     }
 
+    private Lyric parseLyric(XMLStreamReader xml, boolean version10)
+            throws XMLStreamException {
+        int number = Integer.parseInt(getAttribute(xml, "number"));
+        String title = getAttribute(xml, "title");
+
+        String ref = xml.getAttributeValue(null, "ref");
+        if (ref != null) {
+            String refNumberValue = xml.getAttributeValue(null, "refNumber");
+            int refNumber = (refNumberValue == null) ? number
+                    : Integer.parseInt(refNumberValue);
+            skipElement(xml);
+            LyricRef reference = new LyricRef(ref, refNumber);
+            return new ReferenceLyric(number, reference);
+        }
+
+        Lyric lyric = new DefaultLyric(number, title);
+        String bibleRefName = version10 ? "bibleRef" : "bible-ref";
+
+        while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String tagName = xml.getLocalName();
+            if ("text".equals(tagName)) {
+                lyric.setText(xml.getElementText());
+            } else if ("originalTitle".equals(tagName)) {
+                lyric.setOriginalTitle(xml.getElementText());
+            } else if ("copyrights".equals(tagName)) {
+                lyric.setCopyrights(xml.getElementText());
+            } else if (bibleRefName.equals(tagName)) {
+                lyric.addBibleRef(parseBibleRef(xml));
+            } else if ("key".equals(tagName)) {
+                String key = xml.getAttributeValue(null, "name");
+                if (key == null) {
+                    key = xml.getElementText();
+                } else {
+                    skipElement(xml);
+                }
+                lyric.addKey(key);
+            } else {
+                skipElement(xml);
+            }
+        }
+
+        return lyric;
+    }
+
+    private BibleRef parseBibleRef(XMLStreamReader xml)
+            throws XMLStreamException {
+        int book = Integer.parseInt(getAttribute(xml, "book"));
+        Integer startChapter = getIntegerAttribute(xml, "chapter");
+        Integer endChapter = (startChapter == null) ? null
+                : getIntegerAttribute(xml, "endChapter");
+        Integer startVerse = getIntegerAttribute(xml, "verse");
+        Integer endVerse = (startVerse == null) ? null
+                : getIntegerAttribute(xml, "endVerse");
+        skipElement(xml);
+        return new BibleRef(book, startChapter, endChapter, startVerse, endVerse);
+    }
+
+    /**
+     * Returns the value of the given attribute of the current element, or an
+     * empty string if the attribute isn't set (like {@link Element#getAttribute}).
+     */
+    private static String getAttribute(XMLStreamReader xml, String name) {
+        String value = xml.getAttributeValue(null, name);
+        return (value == null) ? "" : value;
+    }
+
+    private static Integer getIntegerAttribute(XMLStreamReader xml, String name) {
+        String value = xml.getAttributeValue(null, name);
+        return (value == null) ? null : Integer.valueOf(value);
+    }
+
+    /**
+     * Skips the current element, including its contents, leaving the reader
+     * positioned at the element's end tag.
+     */
+    private static void skipElement(XMLStreamReader xml)
+            throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Parses a catalog in the old format, using its DTD.
+     */
+    private MutableCatalog parseDocument(Reader reader) throws IOException {
+        Document document;
+        try {
+            // open and parse source file
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            builder.setEntityResolver(new DefaultEntityResolver());
+            document = builder.parse(new InputSource(reader));
+
+        } catch (SAXException e) {
+            throw (IOException) new IOException().initCause(e);
+        } catch (ParserConfigurationException e) {
+            throw new AssertionError(e);
+        }
+
+        DocumentType doctype = document.getDoctype();
+        if (doctype == null || !PUBLIC_ID.equals(doctype.getPublicId())) {
+            throw (IOException) new IOException().initCause(new ParseException(
+                    INVALID_DTD, 0));
+        }
+
+        catalog = new DefaultCatalog();
+        return parseOldCatalog(document);
+    }
+
+    @Deprecated
+    private MutableCatalog parseOldCatalog(Document document) {
+        Element element = document.getDocumentElement();
+        NodeList bundleElements = element.getElementsByTagName("bundle");
+        for (int i = 0; i < bundleElements.getLength(); i++) {
+            Element bundleElement = (Element) bundleElements.item(i);
+            Bundle bundle = parseBundle(bundleElement);
+            catalog.addBundle(bundle);
+        }
+
+        NodeList categoryElements = element.getElementsByTagName("category");
+        for (int i = 0; i < categoryElements.getLength(); i++) {
+            Element categoryElement = (Element) categoryElements.item(i);
+            Category category = parseCategory(categoryElement);
+            catalog.addCategory(category);
+        }
+
+        NodeList cdElements = element.getElementsByTagName("cd");
+        for (int i = 0; i < cdElements.getLength(); i++) {
+            Element cdElement = (Element) cdElements.item(i);
+            CD cd = parseCD(cdElement);
+            catalog.addCD(cd);
+        }
+
+        catalog.setModified(false);
+
+        return catalog;
+    }
+
     @Deprecated
     private Bundle parseBundle(Element element) {
         String name = element.getAttribute("name");
@@ -418,4 +567,23 @@ implements Parser<MutableCatalog> {
         int lyricNumber = Integer.parseInt(element.getAttribute("number"));
         return new LyricRef(bundleName, lyricNumber);
     }
+
+    /**
+     * Holds the schema for version 1.0 of the catalog format, which is loaded
+     * when first needed and shared by all parsers.
+     */
+    private static class SchemaHolder {
+        static final Schema SCHEMA;
+
+        static {
+            SchemaFactory schemaFactory = SchemaFactory
+                    .newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            try {
+                SCHEMA = schemaFactory.newSchema(CatalogParser.class
+                        .getResource(CATALOG_V10_SCHEMA_LOCATION));
+            } catch (SAXException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
 }
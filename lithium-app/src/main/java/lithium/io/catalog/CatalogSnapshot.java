@@ -0,0 +1,528 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.io.catalog;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.zip.*;
+
+import lithium.catalog.*;
+import lithium.catalog.TypedGroup.*;
+import lithium.io.*;
+
+/**
+ * A binary snapshot of a parsed catalog, used to avoid parsing the catalog's
+ * XML source file again when it hasn't changed since the snapshot was taken.
+ *
+ * <p>
+ * A snapshot starts with a header that identifies the source file by its
+ * length, modification time and checksum, followed by a table of all distinct
+ * strings in the catalog and the groups and lyrics of the catalog, which refer
+ * to strings by their index in the table.
+ *
+ * @author Gerrit Meinders
+ */
+public class CatalogSnapshot {
+    /** Identifies snapshot files. */
+    private static final int MAGIC = 0x4c43534e;
+
+    /** Version of the snapshot format; increment on any change. */
+    private static final int VERSION = 1;
+
+    /** Size of the header, including the checksum, in bytes. */
+    private static final int HEADER_SIZE = DerivedFileHeader.SIZE + 8;
+
+    /** Value used to represent {@code null}. */
+    private static final int NULL = -1;
+
+    private static final int TYPED_GROUP = 0;
+    private static final int CONTAINER_GROUP = 1;
+    private static final int REFERENCE_GROUP = 2;
+    private static final int BUNDLE = 3;
+    private static final int CATEGORY = 4;
+    private static final int CD = 5;
+
+    private static final int DEFAULT_LYRIC = 0;
+    private static final int REFERENCE_LYRIC = 1;
+
+    /** Refers to a lyric that is contained in multiple groups. */
+    private static final int SHARED_LYRIC = 2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The encoded groups and lyrics of the catalog. */
+    private final byte[] contents;
+
+    /** The distinct strings referred to by the contents. */
+    private final List<String> strings;
+
+    /** Indices of the lyrics written so far, used to preserve sharing. */
+    private Map<Lyric, Integer> lyricIndices;
+
+    /**
+     * Creates a snapshot of the given catalog. The catalog shouldn't be
+     * modified while the snapshot is being created.
+     *
+     * @param catalog the catalog
+     * @throws IOException if the catalog contains groups or lyrics that can't
+     *             be stored in a snapshot
+     */
+    public CatalogSnapshot(Catalog catalog) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        Map<String, Integer> stringIndices = new HashMap<String, Integer>();
+        strings = new ArrayList<String>();
+        lyricIndices = new IdentityHashMap<Lyric, Integer>();
+
+        Set<Group> groups = catalog.getGroups();
+        out.writeInt(groups.size());
+        for (Group group : groups) {
+            writeGroup(out, group, stringIndices);
+        }
+        out.close();
+        contents = buffer.toByteArray();
+        lyricIndices = null;
+    }
+
+    /**
+     * Writes the snapshot to the given file, replacing any existing snapshot.
+     * The source file's length and modification time should be determined
+     * before the catalog is parsed. If the source file is changed while the
+     * snapshot is being written, the snapshot isn't written.
+     *
+     * @param file the snapshot file
+     * @param source the catalog's source file
+     * @param sourceLength the length of the source file
+     * @param sourceModified the modification time of the source file
+     * @return whether the snapshot was written
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean write(File file, File source, long sourceLength,
+            long sourceModified) throws IOException {
+        final long checksum = getChecksum(source);
+        DerivedFileHeader header = new DerivedFileHeader(MAGIC, VERSION,
+                sourceLength, sourceModified);
+        if (!header.isCurrent(source)) {
+            return false;
+        }
+
+        header.write(file, new DerivedFileHeader.Contents() {
+            public void writeTo(DataOutputStream out) throws IOException {
+                out.writeLong(checksum);
+
+                out.writeInt(strings.size());
+                for (String string : strings) {
+                    byte[] bytes = string.getBytes(UTF8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+                out.write(contents);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Reads the catalog from the given snapshot file, if the snapshot is
+     * up-to-date with the given source file. The bodies of lyrics are read
+     * from the snapshot when needed, so the snapshot stays mapped into memory
+     * while the catalog is in use.
+     *
+     * @param file the snapshot file
+     * @param source the catalog's source file
+     * @return the catalog, or {@code null} if the snapshot doesn't exist or
+     *         doesn't match the source file
+     * @throws IOException if an I/O error occurs or the snapshot is corrupt
+     */
+    public static MutableCatalog read(File file, File source)
+            throws IOException {
+        if (!file.isFile() || !source.isFile()) {
+            return null;
+        }
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+
+            /*
+             * Check the header before mapping the file, such that stale
+             * snapshots can be replaced, even on platforms where mapped files
+             * are locked.
+             */
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) == -1) {
+                    return null;
+                }
+            }
+            header.flip();
+            DerivedFileHeader fileHeader = DerivedFileHeader.read(header);
+            if (!fileHeader.isFormat(MAGIC, VERSION)
+                    || !fileHeader.isCurrent(source)
+                    || header.getLong() != getChecksum(source)) {
+                return null;
+            }
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE, channel.size() - HEADER_SIZE);
+            try {
+                return new SnapshotReader(buffer).readCatalog();
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt snapshot: " + file, e);
+            }
+
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Calculates a checksum of the contents of the given file.
+     */
+    private static long getChecksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(0x10000);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    private void writeGroup(DataOutputStream out, Group group,
+            Map<String, Integer> stringIndices) throws IOException {
+        if (group instanceof TypedGroup) {
+            out.writeByte(TYPED_GROUP);
+            out.writeByte(((TypedGroup) group).getType().ordinal());
+        } else if (group instanceof Bundle) {
+            out.writeByte(BUNDLE);
+        } else if (group instanceof Category) {
+            out.writeByte(CATEGORY);
+        } else if (group instanceof CD) {
+            out.writeByte(CD);
+        } else if (group.getClass() == ContainerGroup.class) {
+            out.writeByte(CONTAINER_GROUP);
+            writeString(out, group.getDisplayName(), stringIndices);
+        } else if (group.getClass() == ReferenceGroup.class) {
+            out.writeByte(REFERENCE_GROUP);
+            writeString(out, group.getDisplayName(), stringIndices);
+        } else {
+            throw new IOException("Unsupported group: " + group.getClass());
+        }
+        writeString(out, group.getName(), stringIndices);
+        writeString(out, group.getVersion(), stringIndices);
+
+        Set<Group> groups = group.getGroups();
+        out.writeInt(groups.size());
+        for (Group subGroup : groups) {
+            writeGroup(out, subGroup, stringIndices);
+        }
+
+        Collection<Lyric> lyrics = group.getLyrics();
+        out.writeInt(lyrics.size());
+        for (Lyric lyric : lyrics) {
+            writeLyric(out, lyric, stringIndices);
+        }
+    }
+
+    private void writeLyric(DataOutputStream out, Lyric lyric,
+            Map<String, Integer> stringIndices) throws IOException {
+        Integer index = lyricIndices.get(lyric);
+        if (index != null) {
+            out.writeByte(SHARED_LYRIC);
+            out.writeInt(index);
+            return;
+        }
+        lyricIndices.put(lyric, lyricIndices.size());
+
+        if (lyric instanceof ReferenceLyric) {
+            LyricRef reference = ((ReferenceLyric) lyric).getReference();
+            out.writeByte(REFERENCE_LYRIC);
+            out.writeInt(lyric.getNumber());
+            writeString(out, reference.getBundle(), stringIndices);
+            out.writeInt(reference.getNumber());
+
+        } else if (lyric instanceof DefaultLyric
+                || lyric instanceof LazyLyric) {
+            out.writeByte(DEFAULT_LYRIC);
+            out.writeInt(lyric.getNumber());
+            writeString(out, lyric.getTitle(), stringIndices);
+            writeString(out, lyric.getText(), stringIndices);
+            writeString(out, lyric.getOriginalTitle(), stringIndices);
+            writeString(out, lyric.getCopyrights(), stringIndices);
+
+            Set<String> keys = lyric.getKeys();
+            out.writeInt(keys.size());
+            for (String key : keys) {
+                writeString(out, key, stringIndices);
+            }
+
+            Set<BibleRef> bibleRefs = lyric.getBibleRefs();
+            out.writeInt(bibleRefs.size());
+            for (BibleRef bibleRef : bibleRefs) {
+                out.writeInt(bibleRef.getBookIndex());
+                writeInteger(out, bibleRef.getStartChapter());
+                writeInteger(out, bibleRef.getEndChapter());
+                writeInteger(out, bibleRef.getStartVerse());
+                writeInteger(out, bibleRef.getEndVerse());
+            }
+
+        } else {
+            throw new IOException("Unsupported lyric: " + lyric.getClass());
+        }
+    }
+
+    private void writeString(DataOutputStream out, String string,
+            Map<String, Integer> stringIndices) throws IOException {
+        if (string == null) {
+            out.writeInt(NULL);
+        } else {
+            Integer index = stringIndices.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                stringIndices.put(string, index);
+            }
+            out.writeInt(index);
+        }
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value)
+            throws IOException {
+        out.writeInt(value == null ? NULL : value);
+    }
+
+    /**
+     * Reads the contents of a snapshot. Lyrics are read as {@link LazyLyric}s,
+     * which are loaded from the snapshot when needed. Strings that are only
+     * used in the bodies of lyrics aren't kept in memory.
+     */
+    private static class SnapshotReader implements LazyLyric.Loader {
+        /** The snapshot, excluding its header. */
+        private final ByteBuffer buffer;
+
+        /** Position of each string in the string table. */
+        private final int[] stringOffsets;
+
+        /** Length of each string in the string table, in bytes. */
+        private final int[] stringLengths;
+
+        /** Strings that were decoded so far, excluding lyric bodies. */
+        private final String[] strings;
+
+        public SnapshotReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+
+            int count = buffer.getInt();
+            stringOffsets = new int[count];
+            stringLengths = new int[count];
+            strings = new String[count];
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                stringOffsets[i] = buffer.position();
+                stringLengths[i] = length;
+                buffer.position(buffer.position() + length);
+            }
+        }
+
+        public MutableCatalog readCatalog() {
+            MutableCatalog catalog = new DefaultCatalog();
+            List<Lyric> lyrics = new ArrayList<Lyric>();
+            int groupCount = buffer.getInt();
+            for (int i = 0; i < groupCount; i++) {
+                catalog.addGroup(readGroup(lyrics));
+            }
+            catalog.setModified(false);
+            return catalog;
+        }
+
+        private Group readGroup(List<Lyric> lyrics) {
+            int kind = buffer.get();
+            GroupType type = null;
+            String displayName = null;
+            switch (kind) {
+            case TYPED_GROUP:
+                type = GroupType.values()[buffer.get()];
+                break;
+            case CONTAINER_GROUP:
+            case REFERENCE_GROUP:
+                displayName = readString(buffer, true);
+                break;
+            }
+            String name = readString(buffer, true);
+            String version = readString(buffer, true);
+
+            Group group;
+            switch (kind) {
+            case TYPED_GROUP:
+                group = new TypedGroup(type, name, version);
+                break;
+            case CONTAINER_GROUP:
+                group = new ContainerGroup(displayName, name, version);
+                break;
+            case REFERENCE_GROUP:
+                group = new ReferenceGroup(displayName, name, version);
+                break;
+            case BUNDLE:
+                group = new Bundle(name, version);
+                break;
+            case CATEGORY:
+                group = new Category(name, version);
+                break;
+            case CD:
+                group = new CD(name, version);
+                break;
+            default:
+                throw new IllegalArgumentException("group: " + kind);
+            }
+
+            int groupCount = buffer.getInt();
+            for (int i = 0; i < groupCount; i++) {
+                group.addGroup(readGroup(lyrics));
+            }
+
+            int lyricCount = buffer.getInt();
+            for (int i = 0; i < lyricCount; i++) {
+                group.addLyric(readLyric(lyrics));
+            }
+
+            return group;
+        }
+
+        private Lyric readLyric(List<Lyric> lyrics) {
+            int kind = buffer.get();
+            if (kind == SHARED_LYRIC) {
+                return lyrics.get(buffer.getInt());
+            }
+
+            int number = buffer.getInt();
+            Lyric lyric;
+            if (kind == REFERENCE_LYRIC) {
+                String bundle = readString(buffer, true);
+                int referenceNumber = buffer.getInt();
+                lyric = new ReferenceLyric(number, new LyricRef(bundle,
+                        referenceNumber));
+
+            } else if (kind == DEFAULT_LYRIC) {
+                String title = readString(buffer, true);
+                lyric = new LazyLyric(number, title == null ? null
+                        : title.trim(), this, buffer.position());
+
+                // skip the body: text, original title and copyrights, keys
+                // and bible references
+                buffer.position(buffer.position() + 12);
+                int keyCount = buffer.getInt();
+                buffer.position(buffer.position() + 4 * keyCount);
+                int bibleRefCount = buffer.getInt();
+                buffer.position(buffer.position() + 20 * bibleRefCount);
+
+            } else {
+                throw new IllegalArgumentException("lyric: " + kind);
+            }
+
+            lyrics.add(lyric);
+            return lyric;
+        }
+
+        /**
+         * Loads the body of the lyric at the given position in the snapshot.
+         */
+        public Lyric load(int position) {
+            ByteBuffer buffer = this.buffer.duplicate();
+            buffer.position(position);
+
+            Lyric lyric = new DefaultLyric(0, "");
+            String text = readString(buffer, false);
+            if (text != null) {
+                lyric.setText(text);
+            }
+            lyric.setOriginalTitle(readString(buffer, false));
+            String copyrights = readString(buffer, false);
+            if (copyrights != null) {
+                lyric.setCopyrights(copyrights);
+            }
+
+            int keyCount = buffer.getInt();
+            for (int i = 0; i < keyCount; i++) {
+                lyric.addKey(readString(buffer, true));
+            }
+
+            int bibleRefCount = buffer.getInt();
+            for (int i = 0; i < bibleRefCount; i++) {
+                int book = buffer.getInt();
+                Integer startChapter = readInteger(buffer);
+                Integer endChapter = readInteger(buffer);
+                Integer startVerse = readInteger(buffer);
+                Integer endVerse = readInteger(buffer);
+
+                // omit implicit end values, like the parser
+                if (endChapter != null && endChapter.equals(startChapter)) {
+                    endChapter = null;
+                }
+                if (endVerse != null && endVerse.equals(startVerse)) {
+                    endVerse = null;
+                }
+                lyric.addBibleRef(new BibleRef(book, startChapter, endChapter,
+                        startVerse, endVerse));
+            }
+            return lyric;
+        }
+
+        /**
+         * Reads a string index from the given buffer and returns the string.
+         *
+         * @param buffer the buffer to read from
+         * @param keep whether the string should be kept in memory
+         */
+        private String readString(ByteBuffer buffer, boolean keep) {
+            int index = buffer.getInt();
+            if (index == NULL) {
+                return null;
+            }
+
+            synchronized (strings) {
+                String result = strings[index];
+                if (result == null) {
+                    ByteBuffer bytes = this.buffer.duplicate();
+                    bytes.position(stringOffsets[index]);
+                    bytes.limit(stringOffsets[index] + stringLengths[index]);
+                    result = UTF8.decode(bytes).toString();
+                    if (keep) {
+                        strings[index] = result;
+                    }
+                }
+                return result;
+            }
+        }
+
+        private static Integer readInteger(ByteBuffer buffer) {
+            int value = buffer.getInt();
+            return (value == NULL) ? null : Integer.valueOf(value);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package lithium.io.catalog;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.xml.parsers.*;
 
 import com.github.meinders.common.*;
@@ -47,11 +48,27 @@ import org.xml.sax.helpers.*;
 public class ClassicFormatParser extends GenericWorker<MutableCatalog> {
     private File source;
 
+    /** Maximum number of files parsed concurrently. */
+    private final int threads;
+
     /**
      * The common bundle name used for all bundle fragments, used to remove
      * spelling errors and other inconsistencies in bundle naming.
      */
-    private String commonName = null;
+    private volatile String commonName = null;
+
+    /** XML readers for each thread parsing files, which are reused. */
+    private final ThreadLocal<XMLReader> xmlReaders = new ThreadLocal<XMLReader>() {
+        @Override
+        protected XMLReader initialValue() {
+            try {
+                return SAXParserFactory.newInstance().newSAXParser()
+                        .getXMLReader();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
 
     /**
      * Constructs a new classic format parser for the given source.
@@ -59,8 +76,24 @@ public class ClassicFormatParser extends GenericWorker<MutableCatalog> {
      * @param source the file to be parsed
      */
     public ClassicFormatParser(File source) {
+        this(source, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new classic format parser for the given source, which
+     * parses up to the given number of files concurrently. The resulting
+     * catalog doesn't depend on the number of threads.
+     *
+     * @param source the file to be parsed
+     * @param threads the maximum number of files parsed concurrently
+     */
+    public ClassicFormatParser(File source, int threads) {
         super();
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
         this.source = source;
+        this.threads = threads;
     }
 
     @Override
@@ -70,32 +103,71 @@ public class ClassicFormatParser extends GenericWorker<MutableCatalog> {
 
         File[] files = source.listFiles(
                 new ExtensionFileFilter("", "opw", false));
+        Arrays.sort(files);
 
         MutableCatalog catalog = new DefaultCatalog();
+        if (files.length == 0) {
+            return catalog;
+        }
 
-        for (int i=0; i<files.length; i++) {
-            File file = files[i];
-
-            if (Thread.interrupted()) {
-                fireWorkerInterrupted();
-                return null;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+                files.length, threads));
+        catalog.beginUpdate();
+        try {
+            List<Future<Fragment>> fragments = new ArrayList<Future<Fragment>>();
+            for (int i=0; i<files.length; i++) {
+                final File file = files[i];
+                Callable<Fragment> task = new Callable<Fragment>() {
+                    public Fragment call() {
+                        return parse(file);
+                    }
+                };
+                /*
+                 * The first file parsed successfully determines the bundle
+                 * name used for all others, so files are parsed in advance
+                 * until that name is known.
+                 */
+                if (commonName == null) {
+                    FutureTask<Fragment> inline = new FutureTask<Fragment>(task);
+                    inline.run();
+                    fragments.add(inline);
+                } else {
+                    fragments.add(executor.submit(task));
+                }
             }
 
-            fireWorkerProgress(i, files.length, file.getName());
-            try {
-                Catalog fragment = parse(file);
-                Group bundle = fragment.getBundles().iterator().next();
+            // merge fragments in order of their files
+            for (int i=0; i<files.length; i++) {
+                File file = files[i];
 
-                if (commonName == null) {
-                    commonName = bundle.getName();
+                if (Thread.interrupted()) {
+                    fireWorkerInterrupted();
+                    return null;
                 }
-                bundle.setName(commonName);
-
-                DefaultCatalog.merge(catalog, fragment);
 
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+                fireWorkerProgress(i, files.length, file.getName());
+                Fragment fragment = fragments.get(i).get();
+                for (String warning : fragment.warnings) {
+                    fireWorkerWarning(warning);
+                }
+                if (fragment.error != null) {
+                    fireWorkerError(fragment.error);
+                }
+                if (fragment.catalog != null) {
+                    DefaultCatalog.merge(catalog, fragment.catalog);
+                }
             }
+
+        } catch (InterruptedException e) {
+            fireWorkerInterrupted();
+            return null;
+
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+
+        } finally {
+            executor.shutdownNow();
+            catalog.endUpdate();
         }
         return catalog;
     }
@@ -131,7 +203,13 @@ public class ClassicFormatParser extends GenericWorker<MutableCatalog> {
         return newText.toString();
     }
 
-    private MutableCatalog parse(File file) {
+    /**
+     * Parses the given file into a catalog fragment. The first file to be
+     * parsed determines the common bundle name used for all other files.
+     */
+    private Fragment parse(File file) {
+        Fragment fragment = new Fragment();
+
         // open inputstream to source file
         InputStream sourceIn;
         try {
@@ -139,8 +217,8 @@ public class ClassicFormatParser extends GenericWorker<MutableCatalog> {
                 new FileInputStream(file));
         } catch (IOException e) {
             // TODO: user friendly message
-            fireWorkerError(e);
-            return null;
+            fragment.error = e;
+            return fragment;
         }
 
         // create inputstream that produces correct XML
@@ -157,7 +235,8 @@ public class ClassicFormatParser extends GenericWorker<MutableCatalog> {
         xmlIn = new SequenceInputStream(xmlIn, endStream);
 
         try {
-            return parse(file, xmlIn);
+            parse(file, xmlIn, fragment);
+            return fragment;
 
         } finally {
             try {
@@ -168,25 +247,23 @@ public class ClassicFormatParser extends GenericWorker<MutableCatalog> {
         }
     }
 
-    private MutableCatalog parse(File file, InputStream xmlIn) {
+    private void parse(File file, InputStream xmlIn, Fragment fragment) {
         LineNumberReader in = new LineNumberReader(
                 new InputStreamReader(xmlIn));
 
         ClassicFormatHandler handler = new ClassicFormatHandler();
         try {
             // parse the file
-            SAXParserFactory spf = SAXParserFactory.newInstance();
-            SAXParser sp = spf.newSAXParser();
+            XMLReader reader = xmlReaders.get();
             InputSource source = new InputSource(in);
             source.setEncoding("CP1252");
-            ParserAdapter pa = new ParserAdapter(sp.getParser());
-            pa.setContentHandler(handler);
-            pa.parse(source);
+            reader.setContentHandler(handler);
+            reader.parse(source);
 
 	    } catch (Exception e) {
             // TODO: user friendly message
-            fireWorkerError(e);
-            return null;
+            fragment.error = e;
+            return;
         }
 
         // create Catalog object
@@ -197,6 +274,7 @@ public class ClassicFormatParser extends GenericWorker<MutableCatalog> {
             if (commonName == null) {
                 bundleName = handler.get("bundel").trim();
                 bundleName = capitalize(bundleName);
+                commonName = bundleName;
             } else {
                 bundleName = commonName;
             }
@@ -284,15 +362,14 @@ public class ClassicFormatParser extends GenericWorker<MutableCatalog> {
                     String message = Resources.get().getString(
                             "classicFormatParser.invalidBibleRef",
                             file.getName(), in.getLineNumber(), bibleRefString);
-                    fireWorkerWarning(message);
+                    fragment.warnings.add(message);
                 }
             }
 
-            return catalog;
+            fragment.catalog = catalog;
 
         } catch (NumberFormatException e) {
             e.printStackTrace();
-            return null;
         }
     }
 
@@ -301,6 +378,15 @@ public class ClassicFormatParser extends GenericWorker<MutableCatalog> {
         fireWorkerFinished();
     }
 
+    /**
+     * The result of parsing a single file.
+     */
+    private static class Fragment {
+        private MutableCatalog catalog = null;
+        private Exception error = null;
+        private List<String> warnings = new ArrayList<String>();
+    }
+
     private class ClassicFormatHandler extends DefaultHandler {
         private boolean insideRoot = false;
         private boolean insideElement = false;
@@ -0,0 +1,583 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.io.catalog;
+
+import java.io.*;
+import java.util.*;
+import javax.xml.stream.*;
+
+import lithium.catalog.*;
+import lithium.config.*;
+import lithium.io.*;
+
+import static lithium.io.CatalogIO.*;
+
+/**
+ * A builder that writes a catalog directly to its output in Lithium's
+ * XML-based catalog file format, version 1.0. Unlike {@link CatalogBuilder},
+ * no document is constructed in memory, so this builder should be preferred
+ * whenever only the serialized catalog is needed.
+ *
+ * <p>
+ * When writing to an output stream, the builder records the {@link
+ * CatalogLayout layout} of the output. Given the layout of a previous save,
+ * groups that weren't modified since are copied from the previous file as-is.
+ *
+ * @author Gerrit Meinders
+ */
+public class StreamingCatalogBuilder extends ConfigurationSupport
+implements
+        Builder<Void>
+{
+	/** The catalog being processed. */
+	protected Catalog catalog;
+
+	/** The writer that receives the output of the builder. */
+	private Writer out = null;
+
+	/** The stream that receives the output of the builder. */
+	private OutputStream outStream = null;
+
+	/** Add newlines and indentation to improve human-readability. */
+	private boolean indent = true;
+
+	/** Layout of the file the catalog was previously written to. */
+	private CatalogLayout previousLayout = null;
+
+	/** Layout of the output, if written to a stream. */
+	private CatalogLayout layout = null;
+
+	/** The stream being written to. */
+	private XMLStreamWriter writer;
+
+	/** Counts the bytes written to the output stream. */
+	private CountingOutputStream counter;
+
+	/** Provides access to the previously written file. */
+	private RandomAccessFile previousFile;
+
+	/** The current nesting depth of elements, used for indentation. */
+	private int depth;
+
+	/**
+	 * Constructs a new streaming catalog builder for the given catalog.
+	 *
+	 * @param catalog the catalog
+	 */
+	public StreamingCatalogBuilder(Catalog catalog)
+	{
+		this.catalog = catalog;
+	}
+
+	/** {@inheritDoc} */
+	public void setOutput(Writer out)
+	{
+		this.out = out;
+		outStream = null;
+	}
+
+	/**
+	 * Sets the output stream to which the catalog is written, encoded as
+	 * UTF-8. Unlike a writer, this allows the builder to record the layout of
+	 * the output and to copy unmodified groups from a previous layout.
+	 *
+	 * @param out the output stream
+	 */
+	public void setOutput(OutputStream out)
+	{
+		this.out = null;
+		outStream = out;
+	}
+
+	public void setIndent(boolean indent)
+	{
+		this.indent = indent;
+	}
+
+	/**
+	 * Sets the layout of the file that the catalog was last written to.
+	 * Groups that weren't modified since then are copied from that file, if
+	 * the file is still {@link CatalogLayout#isCurrent() current}.
+	 *
+	 * @param previousLayout the previous layout, or {@code null}
+	 */
+	public void setPreviousLayout(CatalogLayout previousLayout)
+	{
+		this.previousLayout = previousLayout;
+	}
+
+	/**
+	 * Returns the layout of the output written by the last call to
+	 * {@link #call()}, if the output was an output stream.
+	 *
+	 * @return the layout, or {@code null}
+	 */
+	public CatalogLayout getLayout()
+	{
+		return layout;
+	}
+
+	/**
+	 * Writes the catalog to the output. The output is flushed, but not
+	 * closed.
+	 *
+	 * @return {@code null}
+	 * @throws IOException if an I/O error occurs
+	 */
+	public Void call() throws IOException
+	{
+		if (out == null && outStream == null)
+		{
+			throw new IllegalStateException("output not set");
+		}
+
+		layout = null;
+		Writer target = out;
+		if (outStream != null)
+		{
+			counter = new CountingOutputStream(outStream);
+			target = new OutputStreamWriter(counter, "UTF-8");
+			layout = new CatalogLayout(indent);
+
+			if (previousLayout != null && previousLayout.isIndented() == indent
+			        && previousLayout.isCurrent())
+			{
+				previousFile = new RandomAccessFile(previousLayout.getFile(),
+				        "r");
+			}
+		}
+
+		try
+		{
+			XMLOutputFactory factory = XMLOutputFactory.newInstance();
+			writer = factory.createXMLStreamWriter(target);
+			depth = 0;
+
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.setDefaultNamespace(NAMESPACE);
+			startElement("catalog");
+			writer.writeDefaultNamespace(NAMESPACE);
+			writer.writeAttribute("version", "1.0");
+
+			Set<Group> groups = catalog.getGroups();
+			for (Group group : groups)
+			{
+				writeGroup(group);
+			}
+
+			endElement(!groups.isEmpty());
+			writer.writeEndDocument();
+			writer.flush();
+			writer.close();
+			target.flush();
+			if (outStream != null)
+			{
+				outStream.flush();
+			}
+		}
+		catch (XMLStreamException e)
+		{
+			layout = null;
+			throw (IOException) new IOException().initCause(e);
+		}
+		finally
+		{
+			writer = null;
+			counter = null;
+			if (previousFile != null)
+			{
+				previousFile.close();
+				previousFile = null;
+			}
+		}
+
+		if (catalog instanceof MutableCatalog)
+		{
+			((MutableCatalog) catalog).setModified(false);
+		}
+
+		return null;
+	}
+
+	private void writeGroup(Group group) throws XMLStreamException,
+	        IOException
+	{
+		Set<Group> subGroups = group.getGroups();
+		Collection<Lyric> lyrics = group.getLyrics();
+		boolean empty = subGroups.isEmpty() && lyrics.isEmpty();
+
+		long offset = -1;
+		if (empty)
+		{
+			emptyElement("group");
+		}
+		else
+		{
+			newLine();
+			if (counter != null)
+			{
+				offset = getPosition();
+				if (isUnmodified(group, depth)
+				        && previousLayout.get(group).offset >= 0)
+				{
+					copyGroup(group, offset);
+					return;
+				}
+			}
+			writer.writeStartElement(NAMESPACE, "group");
+			depth++;
+		}
+
+		if (group instanceof TypedGroup)
+		{
+			TypedGroup typedGroup = (TypedGroup) group;
+			String type = typedGroup.getType().toString().toLowerCase();
+			writer.writeAttribute("type", type);
+			if (!group.getName().equals(group.getDisplayName()))
+			{
+				writer.writeAttribute("name", group.getName());
+			}
+		}
+		else
+		{
+			writer.writeAttribute("name", group.getName());
+		}
+
+		if (group.getVersion().length() > 0)
+		{
+			writer.writeAttribute("version", group.getVersion());
+		}
+
+		if (!empty)
+		{
+			for (Group subGroup : subGroups)
+			{
+				writeGroup(subGroup);
+			}
+
+			if (group instanceof ReferenceGroup)
+			{
+				for (Lyric lyric : lyrics)
+				{
+					writeLyricRef(lyric.getNumber(), createLyricRef(lyric));
+				}
+			}
+			else
+			{
+				for (Lyric lyric : lyrics)
+				{
+					writeLyric(lyric);
+				}
+			}
+
+			endElement(true);
+		}
+
+		if (layout != null)
+		{
+			long length = empty ? 0 : getPosition() - offset;
+			layout.put(group, new CatalogLayout.Entry(offset, length, depth,
+			        group.getModificationCount()));
+		}
+	}
+
+	/**
+	 * Returns whether the given group and its sub-groups can be copied from
+	 * the previous file, i.e. none of them were modified since they were
+	 * written and their output doesn't depend on other groups.
+	 */
+	private boolean isUnmodified(Group group, int depth)
+	{
+		if (previousFile == null)
+		{
+			return false;
+		}
+
+		CatalogLayout.Entry entry = previousLayout.get(group);
+		if (entry == null || entry.depth != depth
+		        || entry.modificationCount != group.getModificationCount())
+		{
+			return false;
+		}
+
+		if (group instanceof ReferenceGroup)
+		{
+			// references to lyrics depend on the names of their bundles
+			for (Lyric lyric : group.getLyrics())
+			{
+				if (!(lyric instanceof ReferenceLyric))
+				{
+					return false;
+				}
+			}
+		}
+
+		for (Group subGroup : group.getGroups())
+		{
+			if (!isUnmodified(subGroup, depth + 1))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copies the given group from the previous file to the given position in
+	 * the output.
+	 */
+	private void copyGroup(Group group, long offset) throws IOException
+	{
+		CatalogLayout.Entry entry = previousLayout.get(group);
+		byte[] buffer = new byte[0x10000];
+		previousFile.seek(entry.offset);
+		for (long remaining = entry.length; remaining > 0;)
+		{
+			int length = (int) Math.min(remaining, buffer.length);
+			previousFile.readFully(buffer, 0, length);
+			counter.write(buffer, 0, length);
+			remaining -= length;
+		}
+		moveEntries(group, offset - entry.offset);
+	}
+
+	/**
+	 * Adds the previous layout of the given group and its sub-groups to the
+	 * layout of the output, moved by the given number of bytes.
+	 */
+	private void moveEntries(Group group, long delta)
+	{
+		layout.put(group, previousLayout.get(group).move(delta));
+		for (Group subGroup : group.getGroups())
+		{
+			moveEntries(subGroup, delta);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes written to the output stream, after writing
+	 * out any buffered output. Any open start tag is closed.
+	 */
+	private long getPosition() throws XMLStreamException
+	{
+		writer.writeCharacters("");
+		writer.flush();
+		return counter.getCount();
+	}
+
+	private LyricRef createLyricRef(Lyric lyric)
+	{
+		if (lyric instanceof ReferenceLyric)
+		{
+			return ((ReferenceLyric) lyric).getReference();
+		}
+		else
+		{
+			for (Group group : catalog.getGroups(lyric))
+			{
+				if (group instanceof ContainerGroup
+				        && (group.getLyric(lyric.getNumber()) == lyric))
+				{
+					return new LyricRef(group.getName(), lyric.getNumber());
+				}
+			}
+
+			throw new IllegalArgumentException(
+			        "no ContainerGroup found for lyric");
+		}
+	}
+
+	private void writeLyricRef(int number, LyricRef reference)
+	        throws XMLStreamException
+	{
+		emptyElement("lyric");
+		writer.writeAttribute("number", "" + number);
+		writer.writeAttribute("ref", reference.getBundle());
+		int refNumber = reference.getNumber();
+		if (refNumber != number)
+		{
+			writer.writeAttribute("refNumber", "" + refNumber);
+		}
+	}
+
+	private void writeLyric(Lyric lyric) throws XMLStreamException
+	{
+		if (lyric instanceof ReferenceLyric)
+		{
+			ReferenceLyric referenceLyric = (ReferenceLyric) lyric;
+			writeLyricRef(lyric.getNumber(), referenceLyric.getReference());
+			return;
+		}
+
+		startElement("lyric");
+		writer.writeAttribute("number", "" + lyric.getNumber());
+		writer.writeAttribute("title", lyric.getTitle());
+
+		String text = lyric.getText();
+		writeTextElement("text", text == null ? "" : text);
+
+		String originalTitle = lyric.getOriginalTitle();
+		if (originalTitle != null)
+		{
+			writeTextElement("originalTitle", originalTitle);
+		}
+
+		String copyrights = lyric.getCopyrights();
+		if (copyrights != null)
+		{
+			writeTextElement("copyrights", copyrights);
+		}
+
+		for (BibleRef bibleRef : lyric.getBibleRefs())
+		{
+			writeBibleRef(bibleRef);
+		}
+
+		for (String key : lyric.getKeys())
+		{
+			writeTextElement("key", key);
+		}
+
+		endElement(true);
+	}
+
+	private void writeBibleRef(BibleRef bibleRef) throws XMLStreamException
+	{
+		emptyElement("bibleRef");
+		writer.writeAttribute("book", "" + bibleRef.getBookIndex());
+
+		final Integer startChapter = bibleRef.getStartChapter();
+		final Integer endChapter = bibleRef.getEndChapter();
+
+		if (startChapter != null)
+		{
+			writer.writeAttribute("chapter", "" + startChapter);
+			if (!Objects.equals(startChapter, endChapter))
+			{
+				writer.writeAttribute("endChapter", "" + endChapter);
+			}
+		}
+
+		final Integer startVerse = bibleRef.getStartVerse();
+		final Integer endVerse = bibleRef.getEndVerse();
+
+		if (startVerse != null)
+		{
+			writer.writeAttribute("verse", "" + startVerse);
+			if (!Objects.equals(startChapter, endChapter)
+			        || !Objects.equals(startVerse, endVerse))
+			{
+				writer.writeAttribute("endVerse", "" + endVerse);
+			}
+		}
+	}
+
+	private void writeTextElement(String name, String text)
+	        throws XMLStreamException
+	{
+		newLine();
+		writer.writeStartElement(NAMESPACE, name);
+		writer.writeCharacters(text);
+		writer.writeEndElement();
+	}
+
+	private void emptyElement(String name) throws XMLStreamException
+	{
+		newLine();
+		writer.writeEmptyElement(NAMESPACE, name);
+	}
+
+	private void startElement(String name) throws XMLStreamException
+	{
+		newLine();
+		writer.writeStartElement(NAMESPACE, name);
+		depth++;
+	}
+
+	/**
+	 * Ends the current element.
+	 *
+	 * @param hasChildren whether child elements were written, in which case
+	 *            the end tag is placed on a new line
+	 */
+	private void endElement(boolean hasChildren) throws XMLStreamException
+	{
+		depth--;
+		if (hasChildren)
+		{
+			newLine();
+		}
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Starts a new line at the current depth, if indentation is enabled.
+	 */
+	private void newLine() throws XMLStreamException
+	{
+		if (indent)
+		{
+			StringBuilder whitespace = new StringBuilder(depth + 1);
+			whitespace.append('\n');
+			for (int i = 0; i < depth; i++)
+			{
+				whitespace.append('\t');
+			}
+			writer.writeCharacters(whitespace.toString());
+		}
+	}
+
+	/**
+	 * Counts the bytes written to an output stream. Flushing is left to the
+	 * underlying stream's owner, such that positions can be determined
+	 * without forcing buffered output to be written.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream
+	{
+		private long count = 0;
+
+		public CountingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		public long getCount()
+		{
+			return count;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush()
+		{
+		}
+	}
+}
@@ -117,12 +117,20 @@ public class OPSProImporter extends GenericWorker<MutableCatalog>
 			final DefaultCatalog catalog = new DefaultCatalog();
 
 			final ResultSet bundles = selectBundles.executeQuery();
-			while (bundles.next())
+			catalog.beginUpdate();
+			try
 			{
-				final String bundleID = bundles.getString(1);
-				final String bundleName = bundles.getString(2);
+				while (bundles.next())
+				{
+					final String bundleID = bundles.getString(1);
+					final String bundleName = bundles.getString(2);
 
-				constructBundle(db, catalog, bundleID, bundleName);
+					constructBundle(db, catalog, bundleID, bundleName);
+				}
+			}
+			finally
+			{
+				catalog.endUpdate();
 			}
 			db.close();
 
@@ -180,95 +188,103 @@ public class OPSProImporter extends GenericWorker<MutableCatalog>
 
 		final ResultSet lyrics = selectLyrics.executeQuery();
 
-		int lyricIndex = 0;
-		while (lyrics.next())
+		bundle.beginUpdate();
+		try
 		{
-			final DefaultLyric lyric = new DefaultLyric(
-			        lyrics.getInt("liednr"), lyrics.getString("titel"));
-
-			if (bundle.getLyric(lyric.getNumber()) != null)
+			int lyricIndex = 0;
+			while (lyrics.next())
 			{
-				fireWorkerWarning("Skipping duplicate lyric: "
-				        + lyric.getNumber() + " in bundle " + bundle.getName());
-				continue;
-			}
+				final DefaultLyric lyric = new DefaultLyric(
+				        lyrics.getInt("liednr"), lyrics.getString("titel"));
 
-			bundle.addLyric(lyric);
+				if (bundle.getLyric(lyric.getNumber()) != null)
+				{
+					fireWorkerWarning("Skipping duplicate lyric: "
+					        + lyric.getNumber() + " in bundle " + bundle.getName());
+					continue;
+				}
 
-			final String text = fixNewlines(lyrics.getString("tekst"));
-			parseText(lyric, text);
+				bundle.addLyric(lyric);
 
-			final String originalTitle = lyrics.getString("oorsprong");
-			if (!isFakeNull(originalTitle))
-			{
-				lyric.setOriginalTitle(originalTitle);
-			}
+				final String text = fixNewlines(lyrics.getString("tekst"));
+				parseText(lyric, text);
 
-			final String copyrights = fixNewlines(lyrics.getString("copyright"));
-			if (!isFakeNull(copyrights))
-			{
-				lyric.setCopyrights(copyrights);
-			}
+				final String originalTitle = lyrics.getString("oorsprong");
+				if (!isFakeNull(originalTitle))
+				{
+					lyric.setOriginalTitle(originalTitle);
+				}
 
-			final int cdNumber = lyrics.getInt("cd");
-			if (cdNumber > 0)
-			{
-				final String name = String.valueOf(cdNumber);
-				Group cd = catalog.getCD(name);
-				if (cd == null)
+				final String copyrights = fixNewlines(lyrics.getString("copyright"));
+				if (!isFakeNull(copyrights))
 				{
-					cd = new CD(name);
-					catalog.addCD(cd);
+					lyric.setCopyrights(copyrights);
 				}
-				cd.addLyric(lyric);
-			}
 
-			for (int i = 1; i <= 9; i++)
-			{
-				final String name = lyrics.getString("cat" + i);
-				if (!isFakeNull(name))
+				final int cdNumber = lyrics.getInt("cd");
+				if (cdNumber > 0)
 				{
-					Group category = catalog.getCategory(name);
-					if (category == null)
+					final String name = String.valueOf(cdNumber);
+					Group cd = catalog.getCD(name);
+					if (cd == null)
 					{
-						category = new Category(name);
-						catalog.addCategory(category);
+						cd = new CD(name);
+						catalog.addCD(cd);
 					}
-					category.addLyric(lyric);
+					cd.addLyric(lyric);
 				}
-			}
 
-			for (int i = 1; i <= 4; i++)
-			{
-				final String bibleRefText = lyrics.getString("bijbel" + i);
-				if (!isFakeNull(bibleRefText))
+				for (int i = 1; i <= 9; i++)
 				{
-					BibleRef bibleRef;
-					try
+					final String name = lyrics.getString("cat" + i);
+					if (!isFakeNull(name))
 					{
-						bibleRef = BibleRefParser.parse(bibleRefText);
-						lyric.addBibleRef(bibleRef);
+						Group category = catalog.getCategory(name);
+						if (category == null)
+						{
+							category = new Category(name);
+							catalog.addCategory(category);
+						}
+						category.addLyric(lyric);
 					}
-					catch (ParserException e)
+				}
+
+				for (int i = 1; i <= 4; i++)
+				{
+					final String bibleRefText = lyrics.getString("bijbel" + i);
+					if (!isFakeNull(bibleRefText))
 					{
-						System.out.println("Invalid bible reference: "
-						        + bibleRefText);
-						fireWorkerWarning(e);
+						BibleRef bibleRef;
+						try
+						{
+							bibleRef = BibleRefParser.parse(bibleRefText);
+							lyric.addBibleRef(bibleRef);
+						}
+						catch (ParserException e)
+						{
+							System.out.println("Invalid bible reference: "
+							        + bibleRefText);
+							fireWorkerWarning(e);
+						}
 					}
 				}
-			}
 
-			for (int i = 1; i <= 3; i++)
-			{
-				final String key = lyrics.getString("toonsrt" + i);
-				if (!isFakeNull(key))
+				for (int i = 1; i <= 3; i++)
 				{
-					lyric.addKey(key);
+					final String key = lyrics.getString("toonsrt" + i);
+					if (!isFakeNull(key))
+					{
+						lyric.addKey(key);
+					}
 				}
-			}
 
-			lyricIndex++;
-			fireWorkerProgress(lyricIndex, lyricCount);
+				lyricIndex++;
+				fireWorkerProgress(lyricIndex, lyricCount);
+			}
+		}
+		finally
+		{
+			bundle.endUpdate();
 		}
 	}
 
@@ -24,6 +24,7 @@ import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
 
 import lithium.*;
 import lithium.animation.*;
@@ -34,7 +35,7 @@ import lithium.remote.*;
 import lithium.text.*;
 
 public class RemoteConnectionHandler implements ConnectionHandler,
-        PropertyChangeListener, AmplitudeListener
+        PropertyChangeListener, MeterListener
 {
 	private final Socket socket;
 
@@ -46,10 +47,26 @@ public class RemoteConnectionHandler implements ConnectionHandler,
 
 	private final Recorder recorder;
 
-	private byte[] recorderLevels = new byte[2];
+	/**
+	 * Minimum time between recorder status messages caused by level changes,
+	 * in milliseconds.
+	 */
+	private static final long RECORDER_STATUS_INTERVAL = 1000L;
+
+	/**
+	 * Latest recorder levels. Replaced rather than modified, since the levels
+	 * are sent from a different thread than the one updating them.
+	 */
+	private volatile byte[] recorderLevels = new byte[2];
 
 	private long lastAmplitudeChanged = 0;
 
+	/**
+	 * Sends messages caused by level changes, such that the event dispatch
+	 * thread never blocks on the socket.
+	 */
+	private final ExecutorService sender;
+
 	public RemoteConnectionHandler(Socket socket, ViewModel viewModel,
 	        Recorder recorder)
 	{
@@ -57,6 +74,16 @@ public class RemoteConnectionHandler implements ConnectionHandler,
 		this.socket = socket;
 		this.viewModel = viewModel;
 		this.recorder = recorder;
+
+		sender = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "RemoteConnectionSender");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 	}
 
 	private void handleMessage(Message message) throws IOException
@@ -158,33 +185,58 @@ public class RemoteConnectionHandler implements ConnectionHandler,
 	}
 
 	@Override
-	public void amplitudeChanged(int channel, double amplitude)
+	public void meterUpdated(AudioMeter.Snapshot snapshot)
 	{
-		if (channel >= 2)
+		byte[] levels = new byte[recorderLevels.length];
+		int channels = Math.min(levels.length, snapshot.getChannels());
+		for (int channel = 0; channel < channels; channel++)
 		{
-			// ignore
+			levels[channel] = (byte) (snapshot.getPeak(channel) * 127);
 		}
-		else
+		recorderLevels = levels;
+
+		long currentTime = System.currentTimeMillis();
+		if (currentTime - lastAmplitudeChanged > RECORDER_STATUS_INTERVAL)
 		{
-			recorderLevels[channel] = (byte) (amplitude * 127);
+			lastAmplitudeChanged = currentTime;
 
-			long currentTime = System.currentTimeMillis();
-			if (lastAmplitudeChanged - currentTime > 1000L)
+			try
 			{
-				lastAmplitudeChanged = currentTime;
-
-				try
+				sender.execute(new Runnable()
 				{
-					sendRecorderStatus();
-				}
-				catch (IOException e)
-				{
-					e.printStackTrace();
-				}
+					public void run()
+					{
+						try
+						{
+							sendRecorderStatus();
+						}
+						catch (IOException e)
+						{
+							// also ends the connection's read loop
+							disconnect();
+						}
+					}
+				});
+			}
+			catch (RejectedExecutionException e)
+			{
+				// connection closed
 			}
 		}
 	}
 
+	private void disconnect()
+	{
+		try
+		{
+			socket.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
 	private void sendState() throws IOException
 	{
 		sendModelContent();
@@ -251,7 +303,7 @@ public class RemoteConnectionHandler implements ConnectionHandler,
 		{
 			viewModel.addPropertyChangeListener(this);
 		}
-		recorder.addAmplitudeListener(this);
+		recorder.addMeterListener(this);
 
 		try
 		{
@@ -285,7 +337,8 @@ public class RemoteConnectionHandler implements ConnectionHandler,
 			{
 				viewModel.removePropertyChangeListener(this);
 			}
-			recorder.removeAmplitudeListener(this);
+			recorder.removeMeterListener(this);
+			sender.shutdownNow();
 
 			if (in != null)
 			{
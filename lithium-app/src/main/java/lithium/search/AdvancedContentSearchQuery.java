@@ -18,7 +18,6 @@
 package lithium.search;
 
 import java.util.*;
-import java.util.regex.*;
 
 import lithium.*;
 import lithium.catalog.*;
@@ -30,27 +29,27 @@ import lithium.catalog.*;
  * as it would using a {@link ContentSearchQuery}.
  *
  * <p>
- * Lyrics matched by this kind of query should be registered with the
- * {@link CatalogManager}. For other lyrics, the matching behavior reverts to
- * that of a {@code ContentSearchQuery}.
+ * Relevance is calculated using the statistics kept by a {@link LyricIndex},
+ * by default the one provided by the {@link CatalogManager}. Lyrics that
+ * aren't in the index never match.
  *
  * @since 0.8
  * @version 0.9 (2006.12.26)
  * @author Gerrit Meinders
  */
 public class AdvancedContentSearchQuery extends ContentSearchQuery {
-    /** Text statistics about the search query. */
-    private TextStatistics queryStats;
+    /**
+     * The weight of each field of a lyric, indexed by the field constants of
+     * {@link LyricIndex}.
+     */
+    private static final double[] FIELD_WEIGHTS = { 4.0, 2.0, 3.0, 1.0 };
 
-    /** Text statistics about all known lyrics. */
-    private Map<Lyric, TextStatistics> lyricStats;
+    /** The relevance scores of the matching lyrics, before normalization. */
+    private Map<Lyric, Double> scores;
 
     /** The value that relevance scores are multiplied with. */
     private double multiplier = 1.0;
 
-    /** The value that is added to relevance scores. */
-    private double offset = 0.0;
-
     /**
      * Constructs a new content search query with the given search phrase,
      * method and flags indicating which parts of the lyrics are searched.
@@ -76,57 +75,24 @@ public class AdvancedContentSearchQuery extends ContentSearchQuery {
      */
     @Override
     public void compile() {
+        if (getIndex() == null) {
+            setIndex(CatalogManager.getIndex());
+        }
+
         if (getMethod() == Method.EXACT_PHRASE) {
             super.compile();
             return;
         }
 
-        queryStats = new TextStatistics();
-        queryStats.add(getWords());
-
-        double minimum = Double.POSITIVE_INFINITY;
-        double maximum = Double.NEGATIVE_INFINITY;
-        lyricStats = new HashMap<Lyric, TextStatistics>();
-
-        // construct lyric statics
-        for (Group bundle : CatalogManager.getCatalog().getBundles()) {
-            for (Lyric lyric : bundle.getLyrics()) {
-                TextStatistics statistics = new TextStatistics();
-                if (isTextSearched())
-                    statistics.add(lyric.getText(), 2);
-                if (isTitleSearched())
-                    statistics.add(lyric.getTitle(), 4);
-                if (isOriginalTitleSearched()) {
-                    String originalTitle = lyric.getOriginalTitle();
-                    if (originalTitle != null) {
-                        statistics.add(originalTitle, 3);
-                    }
-                }
-                if (isCopyrightsSearched()) {
-                    String copyrights = lyric.getCopyrights();
-                    if (copyrights != null) {
-                        statistics.add(copyrights);
-                    }
-                }
-                lyricStats.put(lyric, statistics);
-
-                double result = match(lyric);
-                if (result < minimum) {
-                    minimum = result;
-                }
-                if (result > maximum) {
-                    maximum = result;
-                }
-            }
-        }
+        LyricIndex index = getIndex();
+        index.update();
+        scores = index.rank(this, FIELD_WEIGHTS);
 
-        if (minimum == maximum) {
-            multiplier = 0.0;
-            offset = 1.0;
-        } else {
-            multiplier = 1.0 / (maximum - minimum);
-            offset = 0.0 - minimum;
+        double maximum = 0.0;
+        for (double score : scores.values()) {
+            maximum = Math.max(maximum, score);
         }
+        multiplier = (maximum == 0.0) ? 1.0 : 1.0 / maximum;
     }
 
     /**
@@ -142,111 +108,7 @@ public class AdvancedContentSearchQuery extends ContentSearchQuery {
             return super.match(lyric);
         }
 
-        TextStatistics lyricStat = lyricStats.get(lyric);
-        if (lyricStat == null) {
-            return super.match(lyric);
-        }
-
-        double wordCount = lyricStat.getWordCount();
-        if (wordCount == 0) {
-            return 0.0;
-        }
-
-        double result = 1.0;
-        switch (getMethod()) {
-        case ANY_WORD:
-            for (String word : queryStats.getWords()) {
-                result += lyricStat.getWordCount(word) / wordCount;
-            }
-            break;
-        case ALL_WORDS:
-            for (String word : queryStats.getWords()) {
-                double wordScore = lyricStat.getWordCount(word) / wordCount;
-                result = Math.min(result, wordScore);
-            }
-            break;
-        default:
-            throw new AssertionError("unknown method: " + getMethod());
-        }
-        return (result + offset) * multiplier;
-    }
-
-    /**
-     * This class provides several statistics about a collection of words.
-     */
-    private static class TextStatistics {
-        /** The pattern used to match words in the search query. */
-        private static Pattern wordPattern = Pattern.compile("[\\p{N}\\p{L}]+",
-                Pattern.CASE_INSENSITIVE);
-
-        /** The total number of words. */
-        private int wordCount;
-
-        /** The number of occurences of each word. */
-        private Map<String, Integer> wordCounts;
-
-        /** Constructs a new text statistics object. */
-        public TextStatistics() {
-            wordCount = 0;
-            wordCounts = new HashMap<String, Integer>();
-        }
-
-        /**
-         * Returns a set of all words for which statistics are available.
-         *
-         * @return the set of words
-         */
-        public Set<String> getWords() {
-            return wordCounts.keySet();
-        }
-
-        /**
-         * Returns the total number of words.
-         *
-         * @return the number of words
-         */
-        public int getWordCount() {
-            return wordCount;
-        }
-
-        /**
-         * Returns the number of occurances of the given word.
-         *
-         * @param word the word
-         * @return the number of occurances of the word.
-         */
-        public int getWordCount(String word) {
-            Integer wordCount = wordCounts.get(word);
-            return wordCount == null ? 0 : wordCount;
-        }
-
-        /**
-         * Processes the given text, adding statistics about it.
-         *
-         * @param text the text
-         */
-        public void add(String text) {
-            add(text, 1);
-        }
-
-        /**
-         * Processes the given text, adding statistics about it with the given
-         * weight. The weight is the number of occurances counted for each
-         * occurance of a word in the text.
-         *
-         * @param text the text
-         * @param weight the weight
-         */
-        public void add(String text, int weight) {
-            Matcher matcher = wordPattern.matcher(text);
-            while (matcher.find()) {
-                String word = text.substring(matcher.start(), matcher.end())
-                        .toLowerCase();
-                Integer count = wordCounts.get(word);
-                count = (count == null) ? weight : count + weight;
-                wordCounts.put(word, count);
-                wordCount += weight;
-            }
-        }
+        Double score = scores.get(lyric);
+        return (score == null) ? 0.0 : score * multiplier;
     }
 }
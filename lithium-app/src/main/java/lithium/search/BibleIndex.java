@@ -0,0 +1,1025 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.search;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import lithium.books.*;
+import lithium.io.*;
+
+/**
+ * An inverted index of the words in the verses of a library, stored in a file
+ * next to the library and mapped into memory when searched. For each word, the
+ * index contains a posting list with the verses containing the word and the
+ * positions at which the word occurs, such that phrases and words near each
+ * other can be found without reading any verses.
+ *
+ * <p>
+ * The file starts with a header containing the length and modification time
+ * of the library file, the titles of the books and the location of each
+ * section. The verse table lists the book, chapter, verse number and length
+ * of each verse. The term table lists each word, in sorted order, with the
+ * location of its posting list and the number of verses containing it.
+ * Posting lists are stored as variable-length integers: for each verse, the
+ * difference from the previous verse, the number of occurrences and the
+ * differences between successive positions.
+ *
+ * <p>
+ * As with {@link LyricIndex}, each word of a query matches any indexed word
+ * that starts with it, and results are ranked using Okapi BM25.
+ *
+ * <p>
+ * The index is currently only available through this API; the application
+ * doesn't offer a way to search the text of libraries yet.
+ *
+ * @since 0.9
+ * @author Gerrit Meinders
+ */
+public class BibleIndex
+{
+	/** Identifies index files. */
+	private static final int MAGIC = 0x4c424958;
+
+	/** Version of the file format; increment on any change. */
+	private static final int VERSION = 1;
+
+	/** Size of a verse table entry, in bytes. */
+	private static final int VERSE_ENTRY_SIZE = 16;
+
+	/** Size of a term table entry, in bytes. */
+	private static final int TERM_ENTRY_SIZE = 12;
+
+	/** BM25 parameter controlling term frequency saturation. */
+	private static final double K1 = 1.2;
+
+	/** BM25 parameter controlling document length normalization. */
+	private static final double B = 0.75;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Indices opened so far, by the URL of their library. Indices are opened
+	 * or created outside of the lock on this map, such that creating one index
+	 * doesn't block access to others.
+	 */
+	private static final Map<URL, Future<BibleIndex>> indices = new HashMap<URL, Future<BibleIndex>>();
+
+	/** The contents of the index file. Only absolute get methods are used. */
+	private final ByteBuffer buffer;
+
+	/** The header identifying the library the index was created from. */
+	private final DerivedFileHeader fileHeader;
+
+	private final int verseBase;
+
+	private final int termBase;
+
+	private final int stringBase;
+
+	private final int postingBase;
+
+	private final String[] bookTitles;
+
+	/** Total number of words in all verses. */
+	private final long totalLength;
+
+	private final int verseCount;
+
+	private final int termCount;
+
+	/**
+	 * Returns the index of the library stored at the given URL. The index is
+	 * created if it doesn't exist yet and re-created if the library was
+	 * modified since the index was created. While an index is being created,
+	 * other threads requesting the same index wait for it, but the indices of
+	 * other libraries remain available.
+	 *
+	 * @param url the location of the library's file
+	 * @return the index
+	 * @throws IOException if the library can't be read or the index can't be
+	 *         written
+	 */
+	public static BibleIndex getIndex(final URL url)
+	throws IOException
+	{
+		final File file;
+		try
+		{
+			file = new File(url.toURI());
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("url: Expected a file, but was: " + url);
+		}
+		catch (URISyntaxException e)
+		{
+			throw new IOException(e);
+		}
+
+		while (true)
+		{
+			Future<BibleIndex> future;
+			FutureTask<BibleIndex> task = null;
+			synchronized (indices)
+			{
+				future = indices.get(url);
+				if (future == null)
+				{
+					task = new FutureTask<BibleIndex>(new Callable<BibleIndex>()
+					{
+						public BibleIndex call()
+						throws IOException
+						{
+							return open(url, file);
+						}
+					});
+					future = task;
+					indices.put(url, future);
+				}
+			}
+
+			if (task != null)
+			{
+				task.run();
+			}
+
+			BibleIndex index;
+			try
+			{
+				index = future.get();
+			}
+			catch (InterruptedException e)
+			{
+				throw new InterruptedIOException();
+			}
+			catch (ExecutionException e)
+			{
+				remove(url, future);
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException)
+				{
+					throw (IOException) cause;
+				}
+				else if (cause instanceof RuntimeException)
+				{
+					throw (RuntimeException) cause;
+				}
+				else if (cause instanceof Error)
+				{
+					throw (Error) cause;
+				}
+				else
+				{
+					throw new IOException(cause);
+				}
+			}
+
+			if (index.isCurrent(file))
+			{
+				return index;
+			}
+
+			// the library was modified since; try again
+			remove(url, future);
+		}
+	}
+
+	/**
+	 * Removes the given index from the map of opened indices, unless it was
+	 * already replaced.
+	 */
+	private static void remove(URL url, Future<BibleIndex> future)
+	{
+		synchronized (indices)
+		{
+			if (indices.get(url) == future)
+			{
+				indices.remove(url);
+			}
+		}
+	}
+
+	/**
+	 * Opens the index of the given library file, creating it if it doesn't
+	 * exist or is out-of-date.
+	 */
+	private static BibleIndex open(URL url, File file)
+	throws IOException
+	{
+		File indexFile = getIndexFile(file);
+		BibleIndex index = null;
+		if (indexFile.isFile())
+		{
+			try
+			{
+				index = new BibleIndex(indexFile);
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		if ((index == null) || !index.isCurrent(file))
+		{
+			long sourceLength = file.length();
+			long sourceModified = file.lastModified();
+			write(LibraryManager.getLibrary(url), indexFile, sourceLength,
+			        sourceModified);
+			index = new BibleIndex(indexFile);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the file used to store the index of the given library file.
+	 *
+	 * @param library the library file
+	 * @return the index file
+	 */
+	public static File getIndexFile(File library)
+	{
+		return new File(library.getPath() + ".index");
+	}
+
+	/**
+	 * Creates an index of the given library and writes it to a file. The
+	 * length and modification time of the file the library was read from are
+	 * stored in the index, to detect when it's out-of-date.
+	 *
+	 * @param library the library to be indexed
+	 * @param file the file to write to, which is replaced if it exists
+	 * @param sourceLength the length of the library's file
+	 * @param sourceModified the modification time of the library's file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void write(Library library, File file, long sourceLength,
+	        long sourceModified)
+	throws IOException
+	{
+		List<String> bookTitles = new ArrayList<String>();
+		final ByteArrayOutputStream verseBytes = new ByteArrayOutputStream();
+		DataOutputStream verseOut = new DataOutputStream(verseBytes);
+		SortedMap<String, PostingWriter> postings = new TreeMap<String, PostingWriter>();
+		long totalLength = 0L;
+
+		int verseIndex = 0;
+		for (Book book : library.getBooks())
+		{
+			int bookIndex = bookTitles.size();
+			bookTitles.add(book.getTitle());
+
+			SortedMap<Integer, Chapter> chapters = new TreeMap<Integer, Chapter>();
+			for (Chapter chapter : book.getChapters())
+			{
+				chapters.put(getNumber(chapter), chapter);
+			}
+
+			for (Chapter chapter : chapters.values())
+			{
+				List<Verse> verses = new ArrayList<Verse>(chapter.getVerses());
+				Collections.sort(verses);
+				for (Verse verse : verses)
+				{
+					List<String> words = LyricIndex.getWords(getText(verse));
+					verseOut.writeInt(bookIndex);
+					verseOut.writeInt(getNumber(chapter));
+					verseOut.writeInt(verse.getRangeStart());
+					verseOut.writeInt(words.size());
+					totalLength += words.size();
+
+					Map<String, IntList> positions = new LinkedHashMap<String, IntList>();
+					for (int i = 0; i < words.size(); i++)
+					{
+						IntList list = positions.get(words.get(i));
+						if (list == null)
+						{
+							list = new IntList();
+							positions.put(words.get(i), list);
+						}
+						list.add(i);
+					}
+
+					for (Map.Entry<String, IntList> entry : positions.entrySet())
+					{
+						PostingWriter posting = postings.get(entry.getKey());
+						if (posting == null)
+						{
+							posting = new PostingWriter();
+							postings.put(entry.getKey(), posting);
+						}
+						posting.add(verseIndex, entry.getValue());
+					}
+					verseIndex++;
+				}
+			}
+		}
+		verseOut.close();
+
+		final ByteArrayOutputStream termBytes = new ByteArrayOutputStream();
+		final ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+		final ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+		DataOutputStream termOut = new DataOutputStream(termBytes);
+		DataOutputStream stringOut = new DataOutputStream(stringBytes);
+		for (Map.Entry<String, PostingWriter> entry : postings.entrySet())
+		{
+			PostingWriter posting = entry.getValue();
+			termOut.writeInt(stringOut.size());
+			termOut.writeInt(postingBytes.size());
+			termOut.writeInt(posting.documentFrequency);
+			writeString(stringOut, entry.getKey());
+			posting.bytes.writeTo(postingBytes);
+		}
+		termOut.close();
+		stringOut.close();
+
+		final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		DataOutputStream headerOut = new DataOutputStream(headerBytes);
+		headerOut.writeInt(bookTitles.size());
+		for (String title : bookTitles)
+		{
+			writeString(headerOut, title);
+		}
+		headerOut.writeLong(totalLength);
+		headerOut.writeInt(verseIndex);
+		headerOut.writeInt(postings.size());
+		headerOut.close();
+
+		final int verseBase = DerivedFileHeader.SIZE + 4 + 4 + 4 + 4
+		        + headerBytes.size();
+		final int termBase = verseBase + verseBytes.size();
+		final int stringBase = termBase + termBytes.size();
+		final int postingBase = stringBase + stringBytes.size();
+
+		DerivedFileHeader header = new DerivedFileHeader(MAGIC, VERSION,
+		        sourceLength, sourceModified);
+		header.write(file, new DerivedFileHeader.Contents()
+		{
+			public void writeTo(DataOutputStream out)
+			throws IOException
+			{
+				out.writeInt(verseBase);
+				out.writeInt(termBase);
+				out.writeInt(stringBase);
+				out.writeInt(postingBase);
+				headerBytes.writeTo(out);
+				verseBytes.writeTo(out);
+				termBytes.writeTo(out);
+				stringBytes.writeTo(out);
+				postingBytes.writeTo(out);
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of the given chapter. Chapter numbers are deprecated
+	 * in favor of titles, but there's no other way to identify the chapter of
+	 * a verse, as bible references do.
+	 */
+	@SuppressWarnings("deprecation")
+	private static int getNumber(Chapter chapter)
+	{
+		return chapter.getNumber();
+	}
+
+	/**
+	 * Returns the text of the given verse that is indexed, which excludes
+	 * notes and pericope headers.
+	 */
+	private static String getText(Verse verse)
+	{
+		StringBuilder builder = new StringBuilder();
+		for (Verse.Fragment fragment : verse.getFragments())
+		{
+			if ((fragment instanceof Verse.Text)
+			        && !(fragment instanceof Verse.Note))
+			{
+				builder.append(((Verse.Text) fragment).getText());
+			}
+			builder.append(' ');
+		}
+		return builder.toString();
+	}
+
+	private static void writeString(DataOutputStream out, String string)
+	throws IOException
+	{
+		byte[] bytes = string.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer, int position)
+	{
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.position(position + 4);
+		bytes.limit(position + 4 + buffer.getInt(position));
+		return UTF8.decode(bytes).toString();
+	}
+
+	/**
+	 * Opens the index stored in the given file.
+	 *
+	 * @param file the index file
+	 * @throws IOException if the file can't be read or isn't an index
+	 */
+	public BibleIndex(File file)
+	throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = in.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+			        channel.size());
+		}
+		finally
+		{
+			in.close();
+		}
+
+		try
+		{
+			ByteBuffer header = buffer.duplicate();
+			DerivedFileHeader fileHeader = DerivedFileHeader.read(header);
+			if (!fileHeader.isFormat(MAGIC, VERSION))
+			{
+				throw new IOException("Not a bible index: " + file);
+			}
+			this.fileHeader = fileHeader;
+			verseBase = header.getInt();
+			termBase = header.getInt();
+			stringBase = header.getInt();
+			postingBase = header.getInt();
+
+			bookTitles = new String[header.getInt()];
+			for (int i = 0; i < bookTitles.length; i++)
+			{
+				bookTitles[i] = readString(header, header.position());
+				header.position(header.position() + 4
+				        + header.getInt(header.position()));
+			}
+			totalLength = header.getLong();
+			verseCount = header.getInt();
+			termCount = header.getInt();
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException("Corrupt bible index: " + file, e);
+		}
+	}
+
+	/**
+	 * Returns whether the index is up-to-date with the given library file.
+	 */
+	private boolean isCurrent(File library)
+	{
+		return fileHeader.isCurrent(library);
+	}
+
+	/**
+	 * Returns the verses matching the given words, in order of decreasing
+	 * relevance. The results are ranked when this method is called, but only
+	 * sorted as far as they are retrieved from the iterator.
+	 *
+	 * @param words the words to search for
+	 * @param method specifies how the words are matched
+	 * @return the matching verses
+	 */
+	public Iterator<Hit> find(String words, ContentSearchQuery.Method method)
+	{
+		switch (method)
+		{
+		case ANY_WORD:
+			return find(words, false, -1);
+		case ALL_WORDS:
+			return find(words, true, -1);
+		case EXACT_PHRASE:
+			return find(words, true, 0);
+		default:
+			throw new AssertionError("unknown method: " + method);
+		}
+	}
+
+	/**
+	 * Returns the verses containing all of the given words, in any order, such
+	 * that at most {@code distance} other words occur between the first and
+	 * last of them. Results are returned in order of decreasing relevance.
+	 *
+	 * @param words the words to search for
+	 * @param distance the maximum number of words between the query words
+	 * @return the matching verses
+	 */
+	public Iterator<Hit> findNear(String words, int distance)
+	{
+		if (distance < 0)
+		{
+			throw new IllegalArgumentException("distance: " + distance);
+		}
+		int wordCount = new HashSet<String>(LyricIndex.getWords(words)).size();
+		return find(words, true, distance + wordCount);
+	}
+
+	/**
+	 * Finds the verses matching the given words.
+	 *
+	 * @param words the words to search for
+	 * @param all whether all words must occur in a verse
+	 * @param window {@code -1} if the positions of the words don't matter;
+	 *        {@code 0} if the words must occur as a phrase; otherwise the
+	 *        maximum span of the words
+	 */
+	private Iterator<Hit> find(String words, boolean all, int window)
+	{
+		List<String> queryWords = LyricIndex.getWords(words);
+		if (window != 0)
+		{
+			queryWords = new ArrayList<String>(new LinkedHashSet<String>(
+			        queryWords));
+		}
+
+		List<Cursor> cursors = new ArrayList<Cursor>();
+		for (String word : queryWords)
+		{
+			cursors.add(lookup(word));
+		}
+
+		List<Hit> hits = new ArrayList<Hit>();
+		if (!cursors.isEmpty())
+		{
+			double averageLength = (double) totalLength
+			        / Math.max(1, verseCount);
+			for (Cursor cursor : cursors)
+			{
+				cursor.next();
+			}
+
+			while (true)
+			{
+				int verse = Integer.MAX_VALUE;
+				int maximum = -1;
+				for (Cursor cursor : cursors)
+				{
+					verse = Math.min(verse, cursor.verse);
+					maximum = Math.max(maximum, cursor.verse);
+				}
+				if (all ? maximum == Integer.MAX_VALUE
+				        : verse == Integer.MAX_VALUE)
+				{
+					break;
+				}
+
+				if (all && (verse != maximum))
+				{
+					for (Cursor cursor : cursors)
+					{
+						cursor.advance(maximum);
+					}
+					continue;
+				}
+
+				if ((window < 0) || (window == 0 ? containsPhrase(cursors)
+				        : containsWithin(cursors, window)))
+				{
+					hits.add(new Hit(verse, score(verse, cursors,
+					        averageLength)));
+				}
+
+				for (Cursor cursor : cursors)
+				{
+					if (cursor.verse == verse)
+					{
+						cursor.next();
+					}
+				}
+			}
+		}
+
+		final PriorityQueue<Hit> queue = new PriorityQueue<Hit>(hits);
+		return new Iterator<Hit>()
+		{
+			public boolean hasNext()
+			{
+				return !queue.isEmpty();
+			}
+
+			public Hit next()
+			{
+				if (queue.isEmpty())
+				{
+					throw new NoSuchElementException();
+				}
+				return queue.poll();
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Scores the given verse using BM25, based on the cursors positioned at
+	 * that verse.
+	 */
+	private double score(int verse, List<Cursor> cursors, double averageLength)
+	{
+		int length = buffer.getInt(verseBase + verse * VERSE_ENTRY_SIZE + 12);
+		double lengthNorm = 1.0 - B + B * length
+		        / Math.max(averageLength, 1.0);
+
+		double score = 0.0;
+		for (Cursor cursor : cursors)
+		{
+			if (cursor.verse == verse)
+			{
+				double frequency = cursor.positions.length;
+				double documentFrequency = cursor.documentFrequency;
+				double idf = Math.log(1.0
+				        + (verseCount - documentFrequency + 0.5)
+				        / (documentFrequency + 0.5));
+				score += idf * frequency * (K1 + 1.0)
+				        / (frequency + K1 * lengthNorm);
+			}
+		}
+		return score;
+	}
+
+	/**
+	 * Returns whether the words of the given cursors occur consecutively, in
+	 * the order of the query.
+	 */
+	private boolean containsPhrase(List<Cursor> cursors)
+	{
+		candidates: for (int start : cursors.get(0).positions)
+		{
+			for (int i = 1; i < cursors.size(); i++)
+			{
+				if (Arrays.binarySearch(cursors.get(i).positions, start + i) < 0)
+				{
+					continue candidates;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the words of the given cursors all occur within a span
+	 * of the given number of words. The smallest span is found by repeatedly
+	 * advancing past the earliest of the current positions.
+	 */
+	private boolean containsWithin(List<Cursor> cursors, int window)
+	{
+		int[] indices = new int[cursors.size()];
+		while (true)
+		{
+			int first = 0;
+			int minimum = Integer.MAX_VALUE;
+			int maximum = Integer.MIN_VALUE;
+			for (int i = 0; i < indices.length; i++)
+			{
+				int position = cursors.get(i).positions[indices[i]];
+				if (position < minimum)
+				{
+					minimum = position;
+					first = i;
+				}
+				maximum = Math.max(maximum, position);
+			}
+
+			if (maximum - minimum < window)
+			{
+				return true;
+			}
+			if (++indices[first] == cursors.get(first).positions.length)
+			{
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Returns a cursor over the posting lists of all words starting with the
+	 * given prefix.
+	 */
+	private Cursor lookup(String prefix)
+	{
+		int low = 0;
+		int high = termCount;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (getTerm(middle).compareTo(prefix) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		List<Cursor> matches = new ArrayList<Cursor>();
+		for (int term = low; (term < termCount)
+		        && getTerm(term).startsWith(prefix); term++)
+		{
+			int entry = termBase + term * TERM_ENTRY_SIZE;
+			matches.add(new TermCursor(postingBase + buffer.getInt(entry + 4),
+			        buffer.getInt(entry + 8)));
+		}
+		return (matches.size() == 1) ? matches.get(0) : new UnionCursor(
+		        matches);
+	}
+
+	private String getTerm(int term)
+	{
+		return readString(buffer, stringBase
+		        + buffer.getInt(termBase + term * TERM_ENTRY_SIZE));
+	}
+
+	/**
+	 * Iterates over the verses in a posting list, in ascending order, along
+	 * with the positions of the word in each verse.
+	 */
+	private abstract static class Cursor
+	{
+		/** The current verse, or {@link Integer#MAX_VALUE} at the end. */
+		int verse = -1;
+
+		/** Positions of the word in the current verse, in ascending order. */
+		int[] positions;
+
+		/** The number of verses in the posting list. */
+		int documentFrequency;
+
+		/**
+		 * Moves to the next verse.
+		 */
+		abstract void next();
+
+		/**
+		 * Moves to the first verse at or after the given verse.
+		 */
+		void advance(int target)
+		{
+			while (verse < target)
+			{
+				next();
+			}
+		}
+	}
+
+	/**
+	 * A cursor over the posting list of a single word, which is decoded from
+	 * the index file as needed.
+	 */
+	private class TermCursor
+	extends Cursor
+	{
+		private final ByteBuffer data;
+
+		private int remaining;
+
+		TermCursor(int position, int documentFrequency)
+		{
+			data = buffer.duplicate();
+			data.position(position);
+			this.documentFrequency = documentFrequency;
+			remaining = documentFrequency;
+		}
+
+		@Override
+		void next()
+		{
+			if (remaining == 0)
+			{
+				verse = Integer.MAX_VALUE;
+				positions = null;
+				return;
+			}
+			remaining--;
+
+			verse = (verse < 0 ? 0 : verse) + readVarInt(data);
+			positions = new int[readVarInt(data)];
+			int position = 0;
+			for (int i = 0; i < positions.length; i++)
+			{
+				position += readVarInt(data);
+				positions[i] = position;
+			}
+		}
+	}
+
+	/**
+	 * A cursor over the combined posting lists of several words.
+	 */
+	private static class UnionCursor
+	extends Cursor
+	{
+		private final List<Cursor> cursors;
+
+		UnionCursor(List<Cursor> cursors)
+		{
+			this.cursors = cursors;
+			for (Cursor cursor : cursors)
+			{
+				documentFrequency += cursor.documentFrequency;
+				cursor.next();
+			}
+		}
+
+		@Override
+		void next()
+		{
+			verse = Integer.MAX_VALUE;
+			for (Cursor cursor : cursors)
+			{
+				verse = Math.min(verse, cursor.verse);
+			}
+			if (verse == Integer.MAX_VALUE)
+			{
+				positions = null;
+				return;
+			}
+
+			IntList list = new IntList();
+			for (Cursor cursor : cursors)
+			{
+				if (cursor.verse == verse)
+				{
+					for (int position : cursor.positions)
+					{
+						list.add(position);
+					}
+					cursor.next();
+				}
+			}
+			positions = list.toArray();
+			Arrays.sort(positions);
+		}
+	}
+
+	private static int readVarInt(ByteBuffer data)
+	{
+		int result = 0;
+		int shift = 0;
+		int b;
+		do
+		{
+			b = data.get();
+			result |= (b & 0x7f) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+		return result;
+	}
+
+	/**
+	 * Builds a posting list while a library is being indexed.
+	 */
+	private static class PostingWriter
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		int documentFrequency = 0;
+
+		private int lastVerse = 0;
+
+		void add(int verse, IntList positions)
+		{
+			writeVarInt(verse - lastVerse);
+			lastVerse = verse;
+			documentFrequency++;
+
+			int[] values = positions.toArray();
+			writeVarInt(values.length);
+			int last = 0;
+			for (int position : values)
+			{
+				writeVarInt(position - last);
+				last = position;
+			}
+		}
+
+		private void writeVarInt(int value)
+		{
+			while ((value & ~0x7f) != 0)
+			{
+				bytes.write((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			bytes.write(value);
+		}
+	}
+
+	/**
+	 * A growable array of integers.
+	 */
+	private static class IntList
+	{
+		private int[] values = new int[4];
+
+		private int size = 0;
+
+		public void add(int value)
+		{
+			if (size == values.length)
+			{
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		public int[] toArray()
+		{
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * A verse matching a query, along with its relevance. Hits are ordered
+	 * by decreasing relevance, then by their order in the library.
+	 */
+	public class Hit
+	implements Comparable<Hit>
+	{
+		private final int verse;
+
+		private final double score;
+
+		private Hit(int verse, double score)
+		{
+			this.verse = verse;
+			this.score = score;
+		}
+
+		/**
+		 * Returns the title of the book containing the verse.
+		 */
+		public String getBook()
+		{
+			return bookTitles[buffer.getInt(verseBase + verse
+			        * VERSE_ENTRY_SIZE)];
+		}
+
+		/**
+		 * Returns the number of the chapter containing the verse.
+		 */
+		public int getChapter()
+		{
+			return buffer.getInt(verseBase + verse * VERSE_ENTRY_SIZE + 4);
+		}
+
+		/**
+		 * Returns the number of the verse, i.e. the start of its range.
+		 */
+		public int getVerse()
+		{
+			return buffer.getInt(verseBase + verse * VERSE_ENTRY_SIZE + 8);
+		}
+
+		/**
+		 * Returns the relevance of the verse to the query.
+		 */
+		public double getScore()
+		{
+			return score;
+		}
+
+		public int compareTo(Hit other)
+		{
+			int difference = Double.compare(other.score, score);
+			return (difference == 0) ? verse - other.verse : difference;
+		}
+
+		@Override
+		public String toString()
+		{
+			return getBook() + " " + getChapter() + ":" + getVerse();
+		}
+	}
+}
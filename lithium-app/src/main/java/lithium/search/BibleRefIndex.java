@@ -0,0 +1,450 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.search;
+
+import java.beans.*;
+import java.util.*;
+
+import lithium.catalog.*;
+
+/**
+ * An index of the bible references of the lyrics in a catalog's bundles, used
+ * to find the lyrics referring to part of the Bible without checking every
+ * reference of every lyric.
+ *
+ * <p>
+ * Each reference is an interval of verse coordinates, as returned by
+ * {@link BibleRef#getStart()} and {@link BibleRef#getEnd()}. The intervals
+ * are kept in an array sorted by start, which doubles as an implicit binary
+ * search tree: the middle element of each range is the root of that range.
+ * For each root, the maximum end of the intervals in its range is stored,
+ * such that intervals overlapping a query can be found without visiting
+ * ranges that end before the query starts.
+ *
+ * <p>
+ * Like {@link LyricIndex}, the index tracks changes to bundles and lyrics
+ * through property change events. Changed lyrics are re-indexed by
+ * {@link #update()}, which is called before each search. Changes are queued
+ * under a separate lock, so listeners aren't blocked by an update.
+ *
+ * @since 0.9
+ * @author Gerrit Meinders
+ */
+public class BibleRefIndex
+implements PropertyChangeListener
+{
+	/** The catalog being indexed. */
+	private final Catalog catalog;
+
+	/** The bible references of each indexed lyric. */
+	private final Map<Lyric, BibleRef[]> lyricRefs;
+
+	/**
+	 * The lyrics indexed for each bundle. Groups are compared by identity,
+	 * since equal names don't imply equal contents.
+	 */
+	private final Map<Group, Set<Lyric>> groupLyrics;
+
+	/**
+	 * Number of indexed bundles containing each lyric. A lyric is only
+	 * removed from the index when it's no longer contained in any of them.
+	 */
+	private final Map<Lyric, Integer> bundleCounts;
+
+	/** Bundles whose lyrics may have been added or removed. */
+	private final Set<Group> modifiedGroups;
+
+	/** Lyrics whose references may have been changed. */
+	private final Set<Lyric> modifiedLyrics;
+
+	/** Lock guarding the changes reported since the last update. */
+	private final Object changeLock = new Object();
+
+	/** Bundles reported as modified since the last update. */
+	private final Set<Group> pendingGroups;
+
+	/** Lyrics reported as modified since the last update. */
+	private final Set<Lyric> pendingLyrics;
+
+	/** Whether the intervals must be rebuilt from {@link #lyricRefs}. */
+	private boolean intervalsChanged = false;
+
+	/** Start of each interval, in ascending order. */
+	private long[] starts = new long[0];
+
+	/** End of each interval, inclusive. */
+	private long[] ends = new long[0];
+
+	/** Maximum end of the intervals in the range rooted at each interval. */
+	private long[] maximumEnds = new long[0];
+
+	/** The lyric of each interval. */
+	private Lyric[] lyrics = new Lyric[0];
+
+	/**
+	 * Constructs a new index of the given catalog. The index is initially
+	 * empty, until {@link #update()} is called.
+	 *
+	 * @param catalog the catalog to be indexed
+	 */
+	public BibleRefIndex(Catalog catalog)
+	{
+		this.catalog = catalog;
+		lyricRefs = new HashMap<Lyric, BibleRef[]>();
+		groupLyrics = new IdentityHashMap<Group, Set<Lyric>>();
+		bundleCounts = new HashMap<Lyric, Integer>();
+		modifiedGroups = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+		modifiedLyrics = new HashSet<Lyric>();
+		pendingGroups = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+		pendingLyrics = new HashSet<Lyric>();
+	}
+
+	/**
+	 * Brings the index up-to-date with the catalog, indexing any bundles that
+	 * were added and lyrics that were added or changed since the last update.
+	 */
+	public synchronized void update()
+	{
+		synchronized (changeLock)
+		{
+			for (Group group : pendingGroups)
+			{
+				if (groupLyrics.containsKey(group))
+				{
+					modifiedGroups.add(group);
+				}
+			}
+			pendingGroups.clear();
+
+			for (Lyric lyric : pendingLyrics)
+			{
+				if (bundleCounts.containsKey(lyric))
+				{
+					modifiedLyrics.add(lyric);
+				}
+			}
+			pendingLyrics.clear();
+		}
+
+		Set<Group> bundles = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+		bundles.addAll(catalog.getBundles());
+
+		for (Iterator<Map.Entry<Group, Set<Lyric>>> i = groupLyrics.entrySet().iterator(); i.hasNext();)
+		{
+			Map.Entry<Group, Set<Lyric>> entry = i.next();
+			Group group = entry.getKey();
+			if (!bundles.contains(group))
+			{
+				group.removePropertyChangeListener(this);
+				for (Lyric lyric : entry.getValue())
+				{
+					removeFromBundle(lyric);
+				}
+				modifiedGroups.remove(group);
+				i.remove();
+			}
+		}
+
+		for (Group bundle : bundles)
+		{
+			if (!groupLyrics.containsKey(bundle))
+			{
+				bundle.addPropertyChangeListener(this);
+				groupLyrics.put(bundle, new HashSet<Lyric>());
+				modifiedGroups.add(bundle);
+			}
+		}
+
+		for (Group group : modifiedGroups)
+		{
+			Set<Lyric> indexed = groupLyrics.get(group);
+			Set<Lyric> current = new HashSet<Lyric>(group.getLyrics());
+			for (Iterator<Lyric> i = indexed.iterator(); i.hasNext();)
+			{
+				Lyric lyric = i.next();
+				if (!current.contains(lyric))
+				{
+					removeFromBundle(lyric);
+					i.remove();
+				}
+			}
+			for (Lyric lyric : current)
+			{
+				if (indexed.add(lyric))
+				{
+					addToBundle(lyric);
+				}
+			}
+		}
+		modifiedGroups.clear();
+
+		for (Lyric lyric : modifiedLyrics)
+		{
+			Set<BibleRef> refs = lyric.getBibleRefs();
+			BibleRef[] array = refs.toArray(new BibleRef[refs.size()]);
+			BibleRef[] previous = lyricRefs.put(lyric, array);
+			if ((previous == null) ? array.length > 0 : !Arrays.equals(
+			        previous, array))
+			{
+				intervalsChanged = true;
+			}
+		}
+		modifiedLyrics.clear();
+
+		if (intervalsChanged)
+		{
+			buildIntervals();
+			intervalsChanged = false;
+		}
+	}
+
+	/**
+	 * Counts another bundle containing the given lyric. The lyric is indexed
+	 * by the next update if it wasn't already.
+	 */
+	private void addToBundle(Lyric lyric)
+	{
+		Integer count = bundleCounts.get(lyric);
+		if (count == null)
+		{
+			lyric.addPropertyChangeListener(this);
+			modifiedLyrics.add(lyric);
+			bundleCounts.put(lyric, 1);
+		}
+		else
+		{
+			bundleCounts.put(lyric, count + 1);
+		}
+	}
+
+	/**
+	 * Counts one less bundle containing the given lyric, removing the lyric
+	 * from the index if no other bundle contains it.
+	 */
+	private void removeFromBundle(Lyric lyric)
+	{
+		int count = bundleCounts.get(lyric);
+		if (count > 1)
+		{
+			bundleCounts.put(lyric, count - 1);
+		}
+		else
+		{
+			bundleCounts.remove(lyric);
+			remove(lyric);
+		}
+	}
+
+	/**
+	 * Removes the given lyric from the index and stops listening for changes.
+	 */
+	private void remove(Lyric lyric)
+	{
+		lyric.removePropertyChangeListener(this);
+		BibleRef[] refs = lyricRefs.remove(lyric);
+		if ((refs != null) && (refs.length > 0))
+		{
+			intervalsChanged = true;
+		}
+		modifiedLyrics.remove(lyric);
+	}
+
+	/**
+	 * Rebuilds the sorted intervals and their maximum ends from the
+	 * references of all indexed lyrics.
+	 */
+	private void buildIntervals()
+	{
+		List<Interval> intervals = new ArrayList<Interval>();
+		for (Map.Entry<Lyric, BibleRef[]> entry : lyricRefs.entrySet())
+		{
+			for (BibleRef reference : entry.getValue())
+			{
+				intervals.add(new Interval(reference, entry.getKey()));
+			}
+		}
+		Collections.sort(intervals);
+
+		int size = intervals.size();
+		starts = new long[size];
+		ends = new long[size];
+		maximumEnds = new long[size];
+		lyrics = new Lyric[size];
+		for (int i = 0; i < size; i++)
+		{
+			Interval interval = intervals.get(i);
+			starts[i] = interval.start;
+			ends[i] = interval.end;
+			lyrics[i] = interval.lyric;
+		}
+		buildMaximumEnds(0, size);
+	}
+
+	/**
+	 * Computes the maximum end of the intervals in the given range and stores
+	 * it at the root of the range.
+	 */
+	private long buildMaximumEnds(int low, int high)
+	{
+		if (low >= high)
+		{
+			return Long.MIN_VALUE;
+		}
+		int middle = (low + high) >>> 1;
+		long maximum = Math.max(ends[middle], Math.max(buildMaximumEnds(low,
+		        middle), buildMaximumEnds(middle + 1, high)));
+		maximumEnds[middle] = maximum;
+		return maximum;
+	}
+
+	/**
+	 * Returns the lyrics with a bible reference that is contained in the given
+	 * reference, as determined by {@link BibleRef#contains(BibleRef)}.
+	 *
+	 * @param reference the reference
+	 * @return the matching lyrics
+	 */
+	public synchronized Set<Lyric> find(BibleRef reference)
+	{
+		long start = reference.getStart();
+		long end = reference.getEnd();
+
+		int low = 0;
+		int high = starts.length;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (starts[middle] < start)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		Set<Lyric> result = new HashSet<Lyric>();
+		for (int i = low; (i < starts.length) && (starts[i] <= end); i++)
+		{
+			if (ends[i] <= end)
+			{
+				result.add(lyrics[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the lyrics with a bible reference that shares at least one verse
+	 * with the given reference.
+	 *
+	 * @param reference the reference
+	 * @return the matching lyrics
+	 */
+	public synchronized Set<Lyric> findIntersecting(BibleRef reference)
+	{
+		Set<Lyric> result = new HashSet<Lyric>();
+		findIntersecting(reference.getStart(), reference.getEnd(), 0,
+		        starts.length, result);
+		return result;
+	}
+
+	private void findIntersecting(long start, long end, int low, int high,
+	        Set<Lyric> result)
+	{
+		if (low >= high)
+		{
+			return;
+		}
+		int middle = (low + high) >>> 1;
+		if (maximumEnds[middle] < start)
+		{
+			return;
+		}
+
+		findIntersecting(start, end, low, middle, result);
+		if (starts[middle] <= end)
+		{
+			if (ends[middle] >= start)
+			{
+				result.add(lyrics[middle]);
+			}
+			findIntersecting(start, end, middle + 1, high, result);
+		}
+	}
+
+	/**
+	 * Marks bundles and lyrics as out-of-date when they are changed. The
+	 * changes are applied by the next update.
+	 *
+	 * @param e the property change event
+	 */
+	public void propertyChange(PropertyChangeEvent e)
+	{
+		Object source = e.getSource();
+		String property = e.getPropertyName();
+		if (source instanceof Group)
+		{
+			if ((property == Group.STRUCTURE_PROPERTY)
+			        && (e.getNewValue() == Group.LYRICS_PROPERTY))
+			{
+				synchronized (changeLock)
+				{
+					pendingGroups.add((Group) source);
+				}
+			}
+		}
+		else if (source instanceof Lyric)
+		{
+			if ((property == Lyric.MODIFIED_PROPERTY)
+			        && Boolean.TRUE.equals(e.getNewValue()))
+			{
+				synchronized (changeLock)
+				{
+					pendingLyrics.add((Lyric) source);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The interval of verses covered by a bible reference of a lyric.
+	 */
+	private static class Interval
+	implements Comparable<Interval>
+	{
+		final long start;
+
+		final long end;
+
+		final Lyric lyric;
+
+		Interval(BibleRef reference, Lyric lyric)
+		{
+			start = reference.getStart();
+			end = reference.getEnd();
+			this.lyric = lyric;
+		}
+
+		public int compareTo(Interval other)
+		{
+			return Long.compare(start, other.start);
+		}
+	}
+}
@@ -17,6 +17,8 @@
 
 package lithium.search;
 
+import java.util.*;
+
 import lithium.catalog.*;
 
 /**
@@ -31,6 +33,12 @@ public class BibleSearchQuery implements SearchQuery {
     /** The reference to search for. */
     private BibleRef reference;
 
+    /** The index used to find matching lyrics, if any. */
+    private BibleRefIndex index;
+
+    /** The lyrics found using the index, if any. */
+    private Set<Lyric> indexMatches;
+
     /**
      * Constructs a new search query that searches for the given bible
      * reference.
@@ -42,11 +50,36 @@ public class BibleSearchQuery implements SearchQuery {
     }
 
     /**
-     * Bible search queries require no initialization, so this method does
-     * nothing.
+     * Returns the index used to find matching lyrics.
+     *
+     * @return the index, or {@code null} if the references of each lyric are
+     *         matched separately
+     */
+    public BibleRefIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Sets the index used to find matching lyrics. Lyrics that aren't in the
+     * index never match.
+     *
+     * @param index the index, or {@code null} to match the references of each
+     *        lyric separately
+     */
+    public void setIndex(BibleRefIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Finds the matching lyrics using the index, if any.
      */
     public void compile() {
-        // no initialization required
+        if (index == null) {
+            indexMatches = null;
+        } else {
+            index.update();
+            indexMatches = index.find(reference);
+        }
     }
 
     /**
@@ -57,6 +90,10 @@ public class BibleSearchQuery implements SearchQuery {
      * @return a double in the range from 0.0 (worst) to 1.0 (best).
      */
     public double match(Lyric lyric) {
+        if (indexMatches != null) {
+            return indexMatches.contains(lyric) ? 1.0 : 0.0;
+        }
+
         double result = 0.0;
         for (BibleRef reference : lyric.getBibleRefs()) {
             double thisResult = this.reference.contains(reference) ? 1.0 : 0.0;
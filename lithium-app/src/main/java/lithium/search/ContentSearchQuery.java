@@ -17,6 +17,7 @@
 
 package lithium.search;
 
+import java.util.*;
 import java.util.regex.*;
 
 import lithium.catalog.*;
@@ -88,6 +89,12 @@ public class ContentSearchQuery implements SearchQuery {
     /** The compiled regular expression used to match the search phrase. */
     private Pattern pattern;
 
+    /** The index used to find matching lyrics, if any. */
+    private LyricIndex index;
+
+    /** The lyrics found using the index, if any. */
+    private Set<Lyric> indexMatches;
+
     /**
      * Constructs a new content search query with the given search phrase,
      * method and flags indicating which parts of the lyrics are searched.
@@ -166,13 +173,41 @@ public class ContentSearchQuery implements SearchQuery {
         return copyrightsSearched;
     }
 
+    /**
+     * Returns the index used to find matching lyrics.
+     *
+     * @return the index, or {@code null} if lyrics are matched using a
+     *         regular expression
+     */
+    public LyricIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Sets the index used to find matching lyrics. Using an index, each word
+     * of the search phrase matches any word in the lyric that starts with it.
+     * Lyrics that aren't in the index never match.
+     *
+     * @param index the index, or {@code null} to match lyrics using a regular
+     *        expression
+     */
+    public void setIndex(LyricIndex index) {
+        this.index = index;
+    }
+
     /**
      * Performs lengthy initialization of the query, for example compiling a
      * regular expression.
      */
     public void compile() {
-        pattern = Pattern.compile(method.createRegularExpression(words),
-                CASE_INSENSITIVE | DOTALL | UNICODE_CASE);
+        if (index == null) {
+            pattern = Pattern.compile(method.createRegularExpression(words),
+                    CASE_INSENSITIVE | DOTALL | UNICODE_CASE);
+            indexMatches = null;
+        } else {
+            index.update();
+            indexMatches = index.find(this);
+        }
     }
 
     /**
@@ -183,6 +218,10 @@ public class ContentSearchQuery implements SearchQuery {
      * @return a double in the range from 0.0 (worst) to 1.0 (best).
      */
     public double match(Lyric lyric) {
+        if (indexMatches != null) {
+            return indexMatches.contains(lyric) ? 1.0 : 0.0;
+        }
+
         boolean matches = false;
         matches |= isTitleSearched() && match(lyric.getTitle());
         matches |= isTextSearched() && match(lyric.getText());
@@ -74,6 +74,14 @@ public abstract class LyricFinder extends
 		Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
 
 		fireWorkerStarted();
+		if (query instanceof ContentSearchQuery)
+		{
+			((ContentSearchQuery) query).setIndex(CatalogManager.getIndex());
+		}
+		else if (query instanceof BibleSearchQuery)
+		{
+			((BibleSearchQuery) query).setIndex(CatalogManager.getBibleRefIndex());
+		}
 		query.compile();
 		Catalog catalog = CatalogManager.getCatalog();
 		Set<Group> bundles = catalog.getBundles();
@@ -0,0 +1,691 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.search;
+
+import java.beans.*;
+import java.util.*;
+import java.util.regex.*;
+
+import lithium.catalog.*;
+
+/**
+ * An inverted index of the words in the lyrics of a catalog's bundles, used
+ * to evaluate content search queries without scanning the text of every
+ * lyric. For each word, the index contains a posting list with the lyrics
+ * containing the word and the positions at which the word occurs.
+ *
+ * <p>
+ * The index is kept up-to-date incrementally: changes to the bundles and
+ * lyrics are reported through property change events, which mark the
+ * affected groups and lyrics as out-of-date. These are re-indexed by
+ * {@link #update()}, which is called before each search. Changes are queued
+ * under a separate lock, so listeners aren't blocked while the index is being
+ * updated or searched.
+ *
+ * <p>
+ * Besides positions, the index keeps the length of each field of each lyric
+ * and the total length of each field. Together with the posting lists, these
+ * statistics allow search results to be ranked using Okapi BM25 (or rather
+ * its field-weighted variant, BM25F) without processing the lyrics again.
+ *
+ * @since 0.9
+ * @author Gerrit Meinders
+ */
+public class LyricIndex
+implements PropertyChangeListener
+{
+	/** Field containing the title of a lyric. */
+	public static final int TITLE = 0;
+
+	/** Field containing the text of a lyric. */
+	public static final int TEXT = 1;
+
+	/** Field containing the original title of a lyric. */
+	public static final int ORIGINAL_TITLE = 2;
+
+	/** Field containing the copyrights of a lyric. */
+	public static final int COPYRIGHTS = 3;
+
+	/**
+	 * Number of bits used for the word index of a position. The remaining
+	 * bits specify the field.
+	 */
+	private static final int FIELD_SHIFT = 24;
+
+	/** Number of fields that are indexed. */
+	private static final int FIELD_COUNT = 4;
+
+	/** BM25 parameter controlling term frequency saturation. */
+	private static final double K1 = 1.2;
+
+	/** BM25 parameter controlling document length normalization. */
+	private static final double B = 0.75;
+
+	/** The pattern used to match words. */
+	private static final Pattern WORD_PATTERN = Pattern.compile("[\\p{N}\\p{L}]+");
+
+	/** The catalog being indexed. */
+	private final Catalog catalog;
+
+	/**
+	 * Posting lists for each word, sorted by word to allow for prefix
+	 * matching. Positions are stored in ascending order.
+	 */
+	private final NavigableMap<String, Map<Lyric, int[]>> postings;
+
+	/** Statistics about each indexed lyric. */
+	private final Map<Lyric, Document> documents;
+
+	/** Total number of words in each field, over all indexed lyrics. */
+	private final long[] totalFieldLengths;
+
+	/**
+	 * The lyrics indexed for each bundle. Groups are compared by identity,
+	 * since equal names don't imply equal contents.
+	 */
+	private final Map<Group, Set<Lyric>> groupLyrics;
+
+	/**
+	 * Number of indexed bundles containing each lyric. A lyric is only
+	 * removed from the index when it's no longer contained in any of them.
+	 */
+	private final Map<Lyric, Integer> bundleCounts;
+
+	/** Bundles whose lyrics may have been added or removed. */
+	private final Set<Group> modifiedGroups;
+
+	/** Lyrics whose contents may have been changed. */
+	private final Set<Lyric> modifiedLyrics;
+
+	/** Lock guarding the changes reported since the last update. */
+	private final Object changeLock = new Object();
+
+	/** Bundles reported as modified since the last update. */
+	private final Set<Group> pendingGroups;
+
+	/** Lyrics reported as modified since the last update. */
+	private final Set<Lyric> pendingLyrics;
+
+	/**
+	 * Constructs a new index of the given catalog. The index is initially
+	 * empty, until {@link #update()} is called.
+	 *
+	 * @param catalog the catalog to be indexed
+	 */
+	public LyricIndex(Catalog catalog)
+	{
+		this.catalog = catalog;
+		postings = new TreeMap<String, Map<Lyric, int[]>>();
+		documents = new HashMap<Lyric, Document>();
+		totalFieldLengths = new long[FIELD_COUNT];
+		groupLyrics = new IdentityHashMap<Group, Set<Lyric>>();
+		bundleCounts = new HashMap<Lyric, Integer>();
+		modifiedGroups = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+		modifiedLyrics = new HashSet<Lyric>();
+		pendingGroups = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+		pendingLyrics = new HashSet<Lyric>();
+	}
+
+	/**
+	 * Splits the given text into lower case words, as they are stored in the
+	 * index.
+	 *
+	 * @param text the text
+	 * @return the words in the text
+	 */
+	public static List<String> getWords(String text)
+	{
+		List<String> words = new ArrayList<String>();
+		if (text != null)
+		{
+			Matcher matcher = WORD_PATTERN.matcher(text);
+			while (matcher.find())
+			{
+				words.add(matcher.group().toLowerCase());
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Brings the index up-to-date with the catalog, indexing any bundles that
+	 * were added and lyrics that were added or changed since the last update.
+	 */
+	public synchronized void update()
+	{
+		synchronized (changeLock)
+		{
+			for (Group group : pendingGroups)
+			{
+				if (groupLyrics.containsKey(group))
+				{
+					modifiedGroups.add(group);
+				}
+			}
+			pendingGroups.clear();
+
+			for (Lyric lyric : pendingLyrics)
+			{
+				if (bundleCounts.containsKey(lyric))
+				{
+					modifiedLyrics.add(lyric);
+				}
+			}
+			pendingLyrics.clear();
+		}
+
+		Set<Group> bundles = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+		bundles.addAll(catalog.getBundles());
+
+		for (Iterator<Map.Entry<Group, Set<Lyric>>> i = groupLyrics.entrySet().iterator(); i.hasNext();)
+		{
+			Map.Entry<Group, Set<Lyric>> entry = i.next();
+			Group group = entry.getKey();
+			if (!bundles.contains(group))
+			{
+				group.removePropertyChangeListener(this);
+				for (Lyric lyric : entry.getValue())
+				{
+					removeFromBundle(lyric);
+				}
+				modifiedGroups.remove(group);
+				i.remove();
+			}
+		}
+
+		for (Group bundle : bundles)
+		{
+			if (!groupLyrics.containsKey(bundle))
+			{
+				bundle.addPropertyChangeListener(this);
+				groupLyrics.put(bundle, new HashSet<Lyric>());
+				modifiedGroups.add(bundle);
+			}
+		}
+
+		for (Group group : modifiedGroups)
+		{
+			Set<Lyric> indexed = groupLyrics.get(group);
+			Set<Lyric> current = new HashSet<Lyric>(group.getLyrics());
+			for (Iterator<Lyric> i = indexed.iterator(); i.hasNext();)
+			{
+				Lyric lyric = i.next();
+				if (!current.contains(lyric))
+				{
+					removeFromBundle(lyric);
+					i.remove();
+				}
+			}
+			for (Lyric lyric : current)
+			{
+				if (indexed.add(lyric))
+				{
+					addToBundle(lyric);
+				}
+			}
+		}
+		modifiedGroups.clear();
+
+		for (Lyric lyric : modifiedLyrics)
+		{
+			if (documents.containsKey(lyric))
+			{
+				removePostings(lyric);
+			}
+			add(lyric);
+		}
+		modifiedLyrics.clear();
+	}
+
+	/**
+	 * Adds the given lyric to the index.
+	 */
+	private void add(Lyric lyric)
+	{
+		Document document = new Document();
+		Map<String, IntList> positions = new HashMap<String, IntList>();
+		addField(document, positions, TITLE, lyric.getTitle());
+		addField(document, positions, TEXT, lyric.getText());
+		addField(document, positions, ORIGINAL_TITLE, lyric.getOriginalTitle());
+		addField(document, positions, COPYRIGHTS, lyric.getCopyrights());
+
+		for (Map.Entry<String, IntList> entry : positions.entrySet())
+		{
+			String word = entry.getKey();
+			Map<Lyric, int[]> posting = postings.get(word);
+			if (posting == null)
+			{
+				posting = new HashMap<Lyric, int[]>();
+				postings.put(word, posting);
+			}
+			posting.put(lyric, entry.getValue().toArray());
+		}
+		document.words = positions.keySet();
+		documents.put(lyric, document);
+
+		for (int field = 0; field < FIELD_COUNT; field++)
+		{
+			totalFieldLengths[field] += document.fieldLengths[field];
+		}
+	}
+
+	private void addField(Document document, Map<String, IntList> positions,
+	        int field, String text)
+	{
+		List<String> words = getWords(text);
+		document.fieldLengths[field] = words.size();
+		for (int i = 0; i < words.size(); i++)
+		{
+			String word = words.get(i);
+			IntList list = positions.get(word);
+			if (list == null)
+			{
+				list = new IntList();
+				positions.put(word, list);
+			}
+			list.add((field << FIELD_SHIFT) | i);
+		}
+	}
+
+	/**
+	 * Counts another bundle containing the given lyric. The lyric is indexed
+	 * by the next update if it wasn't already.
+	 */
+	private void addToBundle(Lyric lyric)
+	{
+		Integer count = bundleCounts.get(lyric);
+		if (count == null)
+		{
+			lyric.addPropertyChangeListener(this);
+			modifiedLyrics.add(lyric);
+			bundleCounts.put(lyric, 1);
+		}
+		else
+		{
+			bundleCounts.put(lyric, count + 1);
+		}
+	}
+
+	/**
+	 * Counts one less bundle containing the given lyric, removing the lyric
+	 * from the index if no other bundle contains it.
+	 */
+	private void removeFromBundle(Lyric lyric)
+	{
+		int count = bundleCounts.get(lyric);
+		if (count > 1)
+		{
+			bundleCounts.put(lyric, count - 1);
+		}
+		else
+		{
+			bundleCounts.remove(lyric);
+			remove(lyric);
+		}
+	}
+
+	/**
+	 * Removes the given lyric from the index and stops listening for changes.
+	 */
+	private void remove(Lyric lyric)
+	{
+		lyric.removePropertyChangeListener(this);
+		removePostings(lyric);
+		modifiedLyrics.remove(lyric);
+	}
+
+	private void removePostings(Lyric lyric)
+	{
+		Document document = documents.remove(lyric);
+		if (document != null)
+		{
+			for (int field = 0; field < FIELD_COUNT; field++)
+			{
+				totalFieldLengths[field] -= document.fieldLengths[field];
+			}
+
+			for (String word : document.words)
+			{
+				Map<Lyric, int[]> posting = postings.get(word);
+				posting.remove(lyric);
+				if (posting.isEmpty())
+				{
+					postings.remove(word);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the lyrics matching the given query. Each word of the query
+	 * matches any indexed word that starts with it.
+	 *
+	 * @param query the query
+	 * @return the matching lyrics
+	 */
+	public synchronized Set<Lyric> find(ContentSearchQuery query)
+	{
+		int fieldMask = getFieldMask(query);
+
+		List<String> words = getWords(query.getWords());
+		if (words.isEmpty())
+		{
+			return new HashSet<Lyric>(documents.keySet());
+		}
+
+		List<Map<Lyric, int[]>> matches = new ArrayList<Map<Lyric, int[]>>();
+		for (String word : words)
+		{
+			matches.add(lookup(word, fieldMask));
+		}
+
+		Set<Lyric> result = new HashSet<Lyric>();
+		switch (query.getMethod())
+		{
+		case ANY_WORD:
+			for (Map<Lyric, int[]> match : matches)
+			{
+				result.addAll(match.keySet());
+			}
+			break;
+
+		case ALL_WORDS:
+			result.addAll(intersect(matches));
+			break;
+
+		case EXACT_PHRASE:
+			for (Lyric lyric : intersect(matches))
+			{
+				if (containsPhrase(lyric, matches))
+				{
+					result.add(lyric);
+				}
+			}
+			break;
+
+		default:
+			throw new AssertionError("unknown method: " + query.getMethod());
+		}
+		return result;
+	}
+
+	/**
+	 * Ranks the lyrics matching the given query using BM25F. Each searched
+	 * field contributes to the term frequencies and document lengths
+	 * according to its weight. Only the {@code ANY_WORD} and
+	 * {@code ALL_WORDS} methods are supported; the order of words is not
+	 * taken into account.
+	 *
+	 * @param query the query
+	 * @param fieldWeights the weight of each field, indexed by field
+	 * @return the score of each matching lyric
+	 */
+	public synchronized Map<Lyric, Double> rank(ContentSearchQuery query,
+	        double[] fieldWeights)
+	{
+		int fieldMask = getFieldMask(query);
+
+		double averageLength = 0.0;
+		for (int field = 0; field < FIELD_COUNT; field++)
+		{
+			if ((fieldMask & (1 << field)) != 0)
+			{
+				averageLength += fieldWeights[field] * totalFieldLengths[field];
+			}
+		}
+		averageLength /= Math.max(1, documents.size());
+
+		List<Map<Lyric, int[]>> matches = new ArrayList<Map<Lyric, int[]>>();
+		for (String word : new LinkedHashSet<String>(getWords(query.getWords())))
+		{
+			matches.add(lookup(word, fieldMask));
+		}
+
+		Set<Lyric> candidates;
+		switch (query.getMethod())
+		{
+		case ANY_WORD:
+			candidates = new HashSet<Lyric>();
+			for (Map<Lyric, int[]> match : matches)
+			{
+				candidates.addAll(match.keySet());
+			}
+			break;
+
+		case ALL_WORDS:
+			candidates = matches.isEmpty() ? new HashSet<Lyric>()
+			        : intersect(matches);
+			break;
+
+		default:
+			throw new IllegalArgumentException("unsupported method: "
+			        + query.getMethod());
+		}
+
+		Map<Lyric, Double> scores = new HashMap<Lyric, Double>();
+		for (Lyric lyric : candidates)
+		{
+			int[] fieldLengths = documents.get(lyric).fieldLengths;
+			double length = 0.0;
+			for (int field = 0; field < FIELD_COUNT; field++)
+			{
+				if ((fieldMask & (1 << field)) != 0)
+				{
+					length += fieldWeights[field] * fieldLengths[field];
+				}
+			}
+			double lengthNorm = 1.0 - B + B * length
+			        / Math.max(averageLength, 1.0);
+
+			double score = 0.0;
+			for (Map<Lyric, int[]> match : matches)
+			{
+				int[] positions = match.get(lyric);
+				if (positions != null)
+				{
+					double frequency = 0.0;
+					for (int position : positions)
+					{
+						frequency += fieldWeights[position >>> FIELD_SHIFT];
+					}
+					double documentFrequency = match.size();
+					double idf = Math.log(1.0
+					        + (documents.size() - documentFrequency + 0.5)
+					        / (documentFrequency + 0.5));
+					score += idf * frequency * (K1 + 1.0)
+					        / (frequency + K1 * lengthNorm);
+				}
+			}
+			scores.put(lyric, score);
+		}
+		return scores;
+	}
+
+	private int getFieldMask(ContentSearchQuery query)
+	{
+		int fieldMask = 0;
+		fieldMask |= query.isTitleSearched() ? 1 << TITLE : 0;
+		fieldMask |= query.isTextSearched() ? 1 << TEXT : 0;
+		fieldMask |= query.isOriginalTitleSearched() ? 1 << ORIGINAL_TITLE
+		        : 0;
+		fieldMask |= query.isCopyrightsSearched() ? 1 << COPYRIGHTS : 0;
+		return fieldMask;
+	}
+
+	/**
+	 * Returns the positions of all words starting with the given prefix, in
+	 * the given fields.
+	 *
+	 * @param prefix the prefix
+	 * @param fieldMask bit mask of the fields to be searched
+	 * @return the matching positions, in ascending order, for each lyric
+	 */
+	private Map<Lyric, int[]> lookup(String prefix, int fieldMask)
+	{
+		Map<Lyric, IntList> positions = new HashMap<Lyric, IntList>();
+		for (Map<Lyric, int[]> posting : postings.subMap(prefix, true,
+		        prefix + Character.MAX_VALUE, false).values())
+		{
+			for (Map.Entry<Lyric, int[]> entry : posting.entrySet())
+			{
+				for (int position : entry.getValue())
+				{
+					if ((fieldMask & (1 << (position >>> FIELD_SHIFT))) != 0)
+					{
+						IntList list = positions.get(entry.getKey());
+						if (list == null)
+						{
+							list = new IntList();
+							positions.put(entry.getKey(), list);
+						}
+						list.add(position);
+					}
+				}
+			}
+		}
+
+		Map<Lyric, int[]> result = new HashMap<Lyric, int[]>();
+		for (Map.Entry<Lyric, IntList> entry : positions.entrySet())
+		{
+			int[] array = entry.getValue().toArray();
+			Arrays.sort(array);
+			result.put(entry.getKey(), array);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the lyrics that occur in all of the given matches.
+	 */
+	private Set<Lyric> intersect(List<Map<Lyric, int[]>> matches)
+	{
+		Map<Lyric, int[]> smallest = matches.get(0);
+		for (Map<Lyric, int[]> match : matches)
+		{
+			if (match.size() < smallest.size())
+			{
+				smallest = match;
+			}
+		}
+
+		Set<Lyric> result = new HashSet<Lyric>();
+		candidates: for (Lyric lyric : smallest.keySet())
+		{
+			for (Map<Lyric, int[]> match : matches)
+			{
+				if (!match.containsKey(lyric))
+				{
+					continue candidates;
+				}
+			}
+			result.add(lyric);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns whether the matched words occur consecutively in the given
+	 * lyric, in the order of the query.
+	 */
+	private boolean containsPhrase(Lyric lyric, List<Map<Lyric, int[]>> matches)
+	{
+		candidates: for (int start : matches.get(0).get(lyric))
+		{
+			for (int i = 1; i < matches.size(); i++)
+			{
+				int[] positions = matches.get(i).get(lyric);
+				if (Arrays.binarySearch(positions, start + i) < 0)
+				{
+					continue candidates;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Marks bundles and lyrics as out-of-date when they are changed. The
+	 * changes are applied by the next update.
+	 *
+	 * @param e the property change event
+	 */
+	public void propertyChange(PropertyChangeEvent e)
+	{
+		Object source = e.getSource();
+		String property = e.getPropertyName();
+		if (source instanceof Group)
+		{
+			if ((property == Group.STRUCTURE_PROPERTY)
+			        && (e.getNewValue() == Group.LYRICS_PROPERTY))
+			{
+				synchronized (changeLock)
+				{
+					pendingGroups.add((Group) source);
+				}
+			}
+		}
+		else if (source instanceof Lyric)
+		{
+			if ((property == Lyric.MODIFIED_PROPERTY)
+			        && Boolean.TRUE.equals(e.getNewValue()))
+			{
+				synchronized (changeLock)
+				{
+					pendingLyrics.add((Lyric) source);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Statistics about an indexed lyric.
+	 */
+	private static class Document
+	{
+		/** The distinct words in the lyric. */
+		Set<String> words;
+
+		/** The number of words in each field. */
+		final int[] fieldLengths = new int[FIELD_COUNT];
+	}
+
+	/**
+	 * A growable array of integers.
+	 */
+	private static class IntList
+	{
+		private int[] values = new int[4];
+
+		private int size = 0;
+
+		public void add(int value)
+		{
+			if (size == values.length)
+			{
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		public int[] toArray()
+		{
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
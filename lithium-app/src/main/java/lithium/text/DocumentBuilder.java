@@ -105,21 +105,13 @@ public class DocumentBuilder
 		{
 			// FIXME: This isn't really the place for I/O.
 			BibleRef ref = (BibleRef)content;
-			ArchiveLibrary bible = null;
+			Library bible = null;
 			try
 			{
 				final List<URL> collectionURLs = config.getCollectionURLs();
 				if ( !collectionURLs.isEmpty() )
 				{
-					final URL url = collectionURLs.get( 0 );
-					try
-					{
-						bible = new ArchiveLibrary( url.toURI() );
-					}
-					catch ( URISyntaxException e )
-					{
-						throw new IOException( e );
-					}
+					bible = LibraryManager.getLibrary( collectionURLs.get( 0 ) );
 				}
 			}
 			catch ( IOException e )
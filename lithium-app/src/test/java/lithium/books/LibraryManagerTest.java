@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.books;
+
+import java.io.*;
+import java.net.*;
+import java.util.zip.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test of the library manager and the libraries it provides.
+ *
+ * @author Gerrit Meinders
+ */
+public class LibraryManagerTest extends TestCase {
+	private File archive;
+
+	@Override
+	protected void setUp() throws Exception {
+		archive = File.createTempFile("LibraryManagerTest", ".zip");
+		writeArchive("In the beginning");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		archive.delete();
+	}
+
+	/*
+	 * Chapters and verses can only be looked up by number through deprecated
+	 * methods, which these tests use for brevity.
+	 */
+	@SuppressWarnings("deprecation")
+	public void testSharedLibrary() throws IOException {
+		URL url = archive.toURI().toURL();
+		Library library = LibraryManager.getLibrary(url);
+		assertEquals("Test", library.getName());
+		assertSame(library, LibraryManager.getLibrary(url));
+
+		Chapter chapter = library.getBook("Genesis").getChapter(1);
+		assertEquals("In the beginning", chapter.getVerse(1).getText());
+		assertEquals("God created", chapter.getVerse(2).getText());
+		assertSame("cached chapter", chapter.getVerses(), chapter.getVerses());
+
+		// modified archives are opened again
+		long lastModified = archive.lastModified();
+		writeArchive("In the beginning, modified");
+		archive.setLastModified(lastModified + 2000);
+		Library modified = LibraryManager.getLibrary(url);
+		assertNotSame(library, modified);
+		assertEquals("In the beginning, modified", modified.getVerse(
+		        "Genesis", 1, 1).getText());
+	}
+
+	@SuppressWarnings("deprecation")
+	public void testReplacedLibraryRemainsUsable() throws IOException {
+		URL url = archive.toURI().toURL();
+		Library library = LibraryManager.getLibrary(url);
+
+		// replace the archive, like an installer would
+		File original = archive;
+		archive = File.createTempFile("LibraryManagerTest", ".zip");
+		writeArchive("In the beginning, replaced");
+		assertTrue(archive.renameTo(original));
+		archive = original;
+		archive.setLastModified(archive.lastModified() + 2000);
+		assertNotSame(library, LibraryManager.getLibrary(url));
+
+		assertEquals("In the beginning", library.getVerse("Genesis", 1, 1)
+		        .getText());
+	}
+
+	@SuppressWarnings("deprecation")
+	public void testBinaryLibrary() throws IOException {
+		File binary = File.createTempFile("LibraryManagerTest", ".library");
+		try {
+			ArchiveLibrary source = new ArchiveLibrary(archive);
+			try {
+				BinaryLibrary.write(source, binary, archive.length(),
+				        archive.lastModified());
+			} finally {
+				source.close();
+			}
+			assertFalse(BinaryLibrary.isBinaryLibrary(archive));
+			assertTrue(BinaryLibrary.isBinaryLibrary(binary));
+
+			Library library = LibraryManager.getLibrary(binary.toURI().toURL());
+			assertTrue(library instanceof BinaryLibrary);
+			assertEquals("Test", library.getName());
+			assertEquals(archive.length(),
+			        ((BinaryLibrary) library).getSourceLength());
+
+			Chapter chapter = library.getBook("Genesis").getChapter(1);
+			assertEquals(2, chapter.getVerses().size());
+			assertEquals("In the beginning", chapter.getVerse(1).getText());
+			assertEquals("God created", library.getVerse("Genesis", 1, 2)
+			        .getText());
+			assertNull(library.getVerse("Genesis", 2, 1));
+		} finally {
+			binary.delete();
+		}
+	}
+
+	private void writeArchive(String firstVerse) throws IOException {
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+		try {
+			writeEntry(out, "collection.xml", "<collection name=\"Test\">"
+			        + "<book name=\"Genesis\" src=\"Genesis/book.xml\"/>"
+			        + "</collection>");
+			writeEntry(out, "Genesis/book.xml", "<book name=\"Genesis\">"
+			        + "<chapter number=\"1\" src=\"1.xml\"/></book>");
+			writeEntry(out, "Genesis/1.xml", "<chapter>"
+			        + "<verse range=\"1\">" + firstVerse + "</verse>"
+			        + "<verse range=\"2\">God created</verse></chapter>");
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeEntry(ZipOutputStream out, String name, String contents)
+	        throws IOException {
+		out.putNextEntry(new ZipEntry(name));
+		out.write(contents.getBytes("UTF-8"));
+		out.closeEntry();
+	}
+}
@@ -1,5 +1,8 @@
 package lithium.catalog;
 
+import java.beans.*;
+import java.util.*;
+
 import junit.framework.*;
 
 /**
@@ -157,6 +160,46 @@ public abstract class AbstractGroupTest extends TestCase {
 		assertTrue(group.isModified());
 	}
 
+	public void testBulkUpdate() {
+		final List<String> events = new ArrayList<String>();
+		final List<Object> structureEvents = new ArrayList<Object>();
+		group.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent e) {
+				if (e.getPropertyName() == Group.STRUCTURE_PROPERTY) {
+					structureEvents.add(e.getNewValue());
+				} else {
+					events.add(e.getPropertyName());
+				}
+			}
+		});
+
+		group.beginUpdate();
+		group.beginUpdate();
+		for (int i = 1; i <= 10; i++) {
+			group.addLyric(createLyric(i));
+		}
+		group.endUpdate();
+		group.addGroup(createSecondaryGroup(1));
+		assertEquals(Arrays.asList(Group.MODIFIED_PROPERTY), events);
+
+		// structure changes are reported immediately
+		assertEquals(11, structureEvents.size());
+		assertEquals(Group.LYRICS_PROPERTY, structureEvents.get(0));
+		assertEquals(Group.GROUPS_PROPERTY, structureEvents.get(10));
+
+		group.endUpdate();
+		assertEquals(Arrays.asList(Group.MODIFIED_PROPERTY,
+		        Group.GROUPS_PROPERTY, Group.LYRICS_PROPERTY), events);
+		assertEquals(10, group.getLyrics().size());
+
+		try {
+			group.endUpdate();
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
 	public void testGetLyricByNumber() {
 		Lyric first = createLyric(1);
 		Lyric second = createLyric(2);
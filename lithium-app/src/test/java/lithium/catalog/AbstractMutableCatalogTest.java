@@ -1,5 +1,7 @@
 package lithium.catalog;
 
+import java.util.*;
+
 /**
  * Unit tests for implementations of the MutableCatalog interface.
  * 
@@ -130,6 +132,22 @@ public abstract class AbstractMutableCatalogTest extends AbstractCatalogTest {
 		assertTrue(catalog.getGroups(lyric).size() == 2);
 	}
 
+	public void testGetGroupsByReferenceLyric() {
+		Group bundle = createGroup(1);
+		Group category = createGroup(2);
+		catalog.addGroup(bundle);
+		catalog.addGroup(category);
+		Lyric lyric = createLyric(1);
+		bundle.addLyric(lyric);
+		Lyric reference = new ReferenceLyric(new LyricRef(bundle.getName(), 1));
+		category.addLyric(reference);
+
+		// resolved by the catalog itself, not the open catalogs
+		assertEquals(Arrays.asList(bundle, category), new ArrayList<Group>(
+		        catalog.getGroups(reference)));
+		assertEquals(Collections.singleton(bundle), catalog.getGroups(lyric));
+	}
+
 	public void testGetLyricByReference() {
 		Group first = createGroup(1);
 		Group second = createGroup(2);
@@ -149,4 +167,50 @@ public abstract class AbstractMutableCatalogTest extends AbstractCatalogTest {
 		assertTrue(catalog.getLyric(new LyricRef(third.getName(),
 		        otherLyric.getNumber())) == otherLyric);
 	}
+
+	public void testLookupsAfterChanges() {
+		Group first = createGroup(1);
+		Group second = createGroup(2);
+		catalog.addGroup(first);
+		catalog.addGroup(second);
+		Lyric lyric = createLyric(1);
+		assertNull(catalog.getGroup("renamed"));
+		assertTrue(catalog.getGroups(lyric).isEmpty());
+
+		// changes to sub-groups after previous lookups
+		Group third = createGroup(3);
+		first.addGroup(third);
+		third.addLyric(lyric);
+		assertTrue(catalog.getGroup(third.getName()) == third);
+		assertEquals(Collections.singleton(third), catalog.getGroups(lyric));
+
+		third.setName("renamed");
+		assertTrue(catalog.getGroup("renamed") == third);
+		assertTrue(catalog.getLyric(new LyricRef("renamed", 1)) == lyric);
+
+		third.removeLyric(lyric);
+		second.addLyric(lyric);
+		assertEquals(Collections.singleton(second), catalog.getGroups(lyric));
+
+		first.removeGroup(third);
+		assertNull(catalog.getGroup("renamed"));
+	}
+
+	public void testLookupsDuringBulkUpdate() {
+		Group first = createGroup(1);
+		catalog.addGroup(first);
+		Lyric lyric = createLyric(1);
+		assertTrue(catalog.getGroups(lyric).isEmpty());
+
+		catalog.beginUpdate();
+		first.beginUpdate();
+		Group second = createGroup(2);
+		first.addGroup(second);
+		first.addLyric(lyric);
+		assertTrue(catalog.getGroup(second.getName()) == second);
+		assertEquals(Collections.singleton(first), catalog.getGroups(lyric));
+		assertTrue(catalog.getLyric(new LyricRef(first.getName(), 1)) == lyric);
+		first.endUpdate();
+		catalog.endUpdate();
+	}
 }
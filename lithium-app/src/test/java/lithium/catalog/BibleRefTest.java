@@ -1,5 +1,7 @@
 package lithium.catalog;
 
+import java.util.*;
+
 import org.junit.*;
 
 import static org.junit.Assert.*;
@@ -167,4 +169,44 @@ public class BibleRefTest {
 		        new BibleRef(1, 1, 2, 1, 10).contains(new BibleRef(1, 2, 3, 11,
 		                2)));
 	}
+
+	@Test
+	public void getters() {
+		BibleRef ref = new BibleRef(18, 119, null, 176, null);
+		assertEquals(18, ref.getBookIndex());
+		assertEquals(Integer.valueOf(119), ref.getStartChapter());
+		assertEquals(Integer.valueOf(119), ref.getEndChapter());
+		assertEquals(Integer.valueOf(176), ref.getStartVerse());
+		assertEquals(Integer.valueOf(176), ref.getEndVerse());
+
+		BibleRef book = new BibleRef(18, null, null, null, null);
+		assertNull(book.getStartChapter());
+		assertNull(book.getEndVerse());
+	}
+
+	@Test
+	public void order() {
+		BibleRef book = new BibleRef(1, null, null, null, null);
+		BibleRef chapter = new BibleRef(1, 2, null, null, null);
+		BibleRef verse = new BibleRef(1, 2, null, 3, null);
+		BibleRef verses = new BibleRef(1, 2, null, 3, 5);
+		BibleRef nextBook = new BibleRef(2, 1, null, 1, null);
+		List<BibleRef> expected = Arrays.asList(book, chapter, verse, verses,
+		        nextBook);
+
+		List<BibleRef> sorted = new ArrayList<BibleRef>(expected);
+		Collections.reverse(sorted);
+		Collections.sort(sorted);
+		assertEquals(expected, sorted);
+
+		Set<BibleRef> set = new BibleRefSet();
+		for (int i = expected.size() - 1; i >= 0; i--) {
+			assertTrue(set.add(expected.get(i)));
+		}
+		assertFalse(set.add(new BibleRef(1, 2, null, 3, null)));
+		assertEquals(expected, new ArrayList<BibleRef>(set));
+		assertTrue(set.remove(verse));
+		assertFalse(set.contains(verse));
+		assertEquals(4, set.size());
+	}
 }
@@ -0,0 +1,77 @@
+package lithium.catalog;
+
+import java.util.*;
+
+import junit.framework.*;
+import lithium.*;
+
+/**
+ * Unit test of reference lyrics and the resolution of their references.
+ *
+ * @author Gerrit Meinders
+ */
+public class ReferenceLyricTest extends TestCase {
+	private DefaultCatalog catalog;
+
+	private Group bundle;
+
+	@Override
+	protected void setUp() throws Exception {
+		catalog = new DefaultCatalog();
+		bundle = new ContainerGroup("Group.displayName", "bundle", "1.0");
+		bundle.addLyric(new DefaultLyric(1, "first"));
+		catalog.addBundle(bundle);
+		CatalogManager.open(catalog);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		CatalogManager.close(catalog);
+	}
+
+	public void testResolution() {
+		ReferenceLyric reference = new ReferenceLyric(new LyricRef("bundle", 1));
+		assertEquals("first", reference.getTitle());
+		assertEquals("first", reference.getTitle());
+
+		// changes to the catalog contents
+		bundle.addLyric(new DefaultLyric(1, "replaced"));
+		assertEquals("replaced", reference.getTitle());
+		bundle.removeLyric(1);
+		assertNull(reference.getTitle());
+		bundle.addLyric(new DefaultLyric(1, "added"));
+		assertEquals("added", reference.getTitle());
+		bundle.setName("renamed");
+		assertNull(reference.getTitle());
+		bundle.setName("bundle");
+
+		// closing the catalog
+		CatalogManager.close(catalog);
+		assertNull(reference.getTitle());
+		CatalogManager.open(catalog);
+		assertEquals("added", reference.getTitle());
+	}
+
+	public void testHashCode() {
+		ReferenceLyric reference = new ReferenceLyric(new LyricRef("bundle", 2));
+		Set<Lyric> lyrics = new HashSet<Lyric>();
+		lyrics.add(reference);
+
+		bundle.addLyric(new DefaultLyric(2, "second"));
+		assertEquals("second", reference.getTitle());
+		assertTrue(lyrics.contains(reference));
+		assertTrue(lyrics.remove(reference));
+	}
+
+	public void testEquals() {
+		ReferenceLyric reference = new ReferenceLyric(new LyricRef("bundle", 1));
+		Lyric lyric = bundle.getLyric(1);
+		assertEquals("first", reference.getTitle());
+		assertFalse(reference.equals(lyric));
+		assertFalse(lyric.equals(reference));
+
+		ReferenceLyric other = new ReferenceLyric(3, new LyricRef("bundle", 1));
+		assertEquals(reference, other);
+		assertEquals(reference.hashCode(), other.hashCode());
+	}
+}
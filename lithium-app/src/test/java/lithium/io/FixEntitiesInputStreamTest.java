@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.io;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Unit test of {@link FixEntitiesInputStream}.
+ *
+ * @author Gerrit Meinders
+ */
+public class FixEntitiesInputStreamTest extends TestCase {
+	/** Size of the internal buffer of the stream being tested. */
+	private static final int BUFFER_SIZE = 8192;
+
+	private byte[] data;
+
+	private byte[] expected;
+
+	/**
+	 * Creates data with '&' characters on both sides of each boundary of the
+	 * stream's internal buffer, as well as at random positions.
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		Random random = new Random(0);
+		data = new byte[3 * BUFFER_SIZE + 100];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ((random.nextInt(20) == 0) ? '&'
+			        : 'a' + random.nextInt(26));
+		}
+		for (int i = 1; i <= 3; i++) {
+			data[i * BUFFER_SIZE - 1] = '&';
+			data[i * BUFFER_SIZE] = '&';
+		}
+		data[data.length - 1] = '&';
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte b : data) {
+			out.write(b);
+			if (b == '&') {
+				out.write("amp;".getBytes("US-ASCII"));
+			}
+		}
+		expected = out.toByteArray();
+	}
+
+	public void testRead() throws IOException {
+		InputStream in = new FixEntitiesInputStream(new ByteArrayInputStream(
+		        data));
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != -1) {
+			actual.write(b);
+		}
+		assertEquals(expected, actual.toByteArray());
+	}
+
+	/**
+	 * Tests bulk reads of random lengths, such that reads end at any position
+	 * within an inserted entity.
+	 */
+	public void testReadBlocks() throws IOException {
+		InputStream in = new FixEntitiesInputStream(new ByteArrayInputStream(
+		        data));
+		assertEquals(expected, readBlocks(in, new Random(1), 10));
+	}
+
+	/**
+	 * Tests bulk reads larger than the internal buffer.
+	 */
+	public void testReadLargeBlocks() throws IOException {
+		InputStream in = new FixEntitiesInputStream(new ByteArrayInputStream(
+		        data));
+		assertEquals(expected, readBlocks(in, new Random(2), 3 * BUFFER_SIZE));
+	}
+
+	/**
+	 * Tests bulk reads from an underlying stream that returns fewer bytes
+	 * than requested, such that the internal buffer is refilled at arbitrary
+	 * positions.
+	 */
+	public void testReadShortUnderlyingReads() throws IOException {
+		final Random random = new Random(3);
+		InputStream underlying = new FilterInputStream(
+		        new ByteArrayInputStream(data)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, random.nextInt(7) + 1));
+			}
+		};
+		InputStream in = new FixEntitiesInputStream(underlying);
+		assertEquals(expected, readBlocks(in, new Random(4), 100));
+	}
+
+	public void testSkip() throws IOException {
+		InputStream in = new FixEntitiesInputStream(new ByteArrayInputStream(
+		        data));
+		int skipped = BUFFER_SIZE + 2;
+		assertEquals(skipped, in.skip(skipped));
+
+		byte[] remainder = readBlocks(in, new Random(5), 1000);
+		assertEquals(Arrays.copyOfRange(expected, skipped, expected.length),
+		        remainder);
+	}
+
+	private byte[] readBlocks(InputStream in, Random random, int maximumLength)
+	        throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[maximumLength + 2];
+		while (true) {
+			int offset = random.nextInt(2);
+			int length = random.nextInt(maximumLength) + 1;
+			int read = in.read(buffer, offset, length);
+			if (read == -1) {
+				break;
+			}
+			assertTrue("Unexpected read count: " + read, (read > 0)
+			        && (read <= length));
+			result.write(buffer, offset, read);
+		}
+		assertEquals(0, in.read(buffer, 0, 0));
+		return result.toByteArray();
+	}
+
+	private void assertEquals(byte[] expected, byte[] actual) {
+		assertEquals("Unexpected length", expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] != actual[i]) {
+				fail("Unexpected byte at " + i + ": '" + (char) actual[i]
+				        + "' (expected: '" + (char) expected[i] + "')");
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package lithium.io.catalog;
 
 import java.io.*;
+import java.lang.ref.*;
 import java.net.*;
 import java.util.*;
 
@@ -63,6 +64,50 @@ public class CatalogIOTest extends TestCase {
 		verifyCatalog(catalog, referenceCatalog);
 	}
 
+	public void testValidatingInput() throws IOException {
+		Writer stringWriter = new StringWriter();
+		CatalogIO.write(referenceCatalog, stringWriter);
+
+		CatalogParser parser = new CatalogParser();
+		parser.setValidating(true);
+		parser.setInput(new StringReader(stringWriter.toString()));
+		verifyCatalog(parser.call(), referenceCatalog);
+
+		parser.setInput(new StringReader(stringWriter.toString().replace(
+		        "<text>", "<invalid/><text>")));
+		try {
+			parser.call();
+			fail("expected IOException for invalid catalog");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testValidatingLargeInput() throws IOException {
+		// larger than the parser's read-ahead limit of 1M characters
+		DefaultCatalog large = new DefaultCatalog();
+		for (int i = 0; i < 20000; i++) {
+			Group bundle = Group.createBundle();
+			bundle.setName("bundle " + i);
+			bundle.setVersion("1");
+			Lyric lyric = new DefaultLyric(1, "lyric " + i);
+			lyric.setText(createText("text of lyric " + i + ", line 1",
+			        "text of lyric " + i + ", line 2"));
+			bundle.addLyric(lyric);
+			large.addBundle(bundle);
+		}
+		Writer stringWriter = new StringWriter();
+		CatalogIO.write(large, stringWriter);
+		assertTrue(stringWriter.toString().length() > 1 << 20);
+
+		CatalogParser parser = new CatalogParser();
+		parser.setValidating(true);
+		parser.setInput(new StringReader(stringWriter.toString()));
+		Catalog catalog = parser.call();
+		assertEquals(20000, catalog.getBundles().size());
+		assertNotNull(catalog.getBundle("bundle 19999").getLyric(1));
+	}
+
 	public void testNewFormatOutputToFile() throws IOException {
 		File file = File.createTempFile("test", null);
 
@@ -78,6 +123,116 @@ public class CatalogIOTest extends TestCase {
 		verifyCatalog(catalog, referenceCatalog);
 	}
 
+	public void testNewFormatOutputReplacesFile() throws IOException {
+		File directory = File.createTempFile("test", null);
+		directory.delete();
+		directory.mkdir();
+		File file = new File(directory, "catalog.xml");
+		try {
+			Writer out = new FileWriter(file);
+			out.write("previous contents");
+			out.close();
+
+			CatalogIO.write(referenceCatalog, file);
+			verifyCatalog(CatalogIO.read(file), referenceCatalog);
+			assertEquals("temporary file left behind", 1,
+			        directory.list().length);
+		} finally {
+			file.delete();
+			directory.delete();
+		}
+	}
+
+	public void testIncrementalOutput() throws IOException {
+		File file = File.createTempFile("test", null);
+		try {
+			CatalogIO.write(referenceCatalog, file);
+
+			/*
+			 * Change an unmodified group in the file, such that the file still
+			 * appears unchanged. The change should then be copied.
+			 */
+			long lastModified = file.lastModified();
+			String original = readFile(file);
+			writeFile(file, original.replace("text 3, line 1", "text 3, line X"));
+			file.setLastModified(lastModified);
+
+			Group bundle = ((DefaultCatalog) referenceCatalog).getBundle("bundle 1");
+			bundle.getLyric(2).setTitle("modified lyric 2");
+			CatalogIO.write(referenceCatalog, file);
+
+			StringWriter expected = new StringWriter();
+			CatalogIO.write(referenceCatalog, expected);
+			assertEquals(expected.toString().replace("text 3, line 1",
+			        "text 3, line X"), readFile(file));
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testBibleRefRangesAboveIntegerCache() throws IOException {
+		DefaultCatalog catalog = new DefaultCatalog();
+		Group bundle = new ContainerGroup("Bundle", "bundle", "1.0");
+		Lyric lyric = new DefaultLyric(1, "lyric");
+		lyric.addBibleRef(new BibleRef(18, 119, null, 130, null));
+		bundle.addLyric(lyric);
+		catalog.addBundle(bundle);
+
+		// single chapter and verse numbers above 127 are distinct objects
+		StringWriter writer = new StringWriter();
+		CatalogIO.write(catalog, writer);
+		assertTrue(writer.toString().contains("verse=\"130\""));
+		assertFalse(writer.toString().contains("endChapter"));
+		assertFalse(writer.toString().contains("endVerse"));
+
+		org.w3c.dom.Element bibleRef = (org.w3c.dom.Element) CatalogIO.buildDocument(
+		        catalog, false).getElementsByTagNameNS("*", "bibleRef").item(0);
+		assertEquals("130", bibleRef.getAttribute("verse"));
+		assertFalse(bibleRef.hasAttribute("endChapter"));
+		assertFalse(bibleRef.hasAttribute("endVerse"));
+	}
+
+	public void testLayoutDoesNotRetainCatalog() throws IOException {
+		File file = File.createTempFile("test", null);
+		try {
+			Catalog catalog = createReferenceCatalog();
+			CatalogIO.write(catalog, file);
+			Reference<Catalog> reference = new WeakReference<Catalog>(catalog);
+			catalog = null;
+
+			for (int i = 0; i < 10 && reference.get() != null; i++) {
+				System.gc();
+			}
+			assertNull("catalog retained after write", reference.get());
+		} finally {
+			file.delete();
+		}
+	}
+
+	private String readFile(File file) throws IOException {
+		Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			StringBuilder result = new StringBuilder();
+			char[] buffer = new char[0x1000];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				result.append(buffer, 0, read);
+			}
+			return result.toString();
+		} finally {
+			in.close();
+		}
+	}
+
+	private void writeFile(File file, String contents) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			out.write(contents);
+		} finally {
+			out.close();
+		}
+	}
+
 	/*
 	 * Like any real-life test, it just won't work. This is due to changes since
 	 * the old catalog version was created.
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.io.catalog;
+
+import java.io.*;
+import java.util.*;
+
+import com.github.meinders.common.*;
+import junit.framework.*;
+import lithium.*;
+import lithium.catalog.*;
+import lithium.io.*;
+
+/**
+ * Unit test of catalog snapshots.
+ *
+ * @author Gerrit Meinders
+ */
+public class CatalogSnapshotTest extends TestCase {
+	private File source;
+
+	private File snapshotFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		Resources.set(new ResourceUtilities(
+		        ResourceBundle.getBundle("lithium.Resources")));
+		source = File.createTempFile("CatalogSnapshotTest", ".xml");
+		snapshotFile = File.createTempFile("CatalogSnapshotTest", ".snapshot");
+		snapshotFile.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		source.delete();
+		snapshotFile.delete();
+	}
+
+	public void testNewFormat() throws IOException {
+		testSnapshot("newCatalogFormat.xml");
+	}
+
+	public void testOldFormat() throws IOException {
+		testSnapshot("oldCatalogFormat.xml");
+	}
+
+	public void testStaleSnapshot() throws IOException {
+		copy("newCatalogFormat.xml", source);
+		MutableCatalog catalog = CatalogIO.read(source);
+		CatalogSnapshot snapshot = new CatalogSnapshot(catalog);
+		assertTrue(snapshot.write(snapshotFile, source, source.length(),
+		        source.lastModified()));
+
+		Writer out = new FileWriter(source, true);
+		out.write(' ');
+		out.close();
+		assertNull("stale snapshot", CatalogSnapshot.read(snapshotFile,
+		        source));
+
+		assertFalse("source changed while writing", snapshot.write(
+		        snapshotFile, source, 0, source.lastModified()));
+	}
+
+	public void testLazyLyrics() throws IOException {
+		copy("newCatalogFormat.xml", source);
+		MutableCatalog catalog = CatalogIO.read(source);
+		new CatalogSnapshot(catalog).write(snapshotFile, source,
+		        source.length(), source.lastModified());
+
+		MutableCatalog result = CatalogSnapshot.read(snapshotFile, source);
+		LazyLyric lyric = (LazyLyric) result.getBundle("bundle 1").getLyric(2);
+		assertEquals("lyric 2", lyric.getTitle());
+		assertFalse("loaded before use", lyric.isLoaded());
+		assertEquals("original lyric 2", lyric.getOriginalTitle());
+		assertTrue("loaded after use", lyric.isLoaded());
+
+		lyric.setText("modified");
+		assertTrue("modified", lyric.isModified());
+		for (int i = 0; i < 1000; i++) {
+			new LazyLyric(i, "other", new LazyLyric.Loader() {
+				public Lyric load(int key) {
+					return new DefaultLyric(0, "");
+				}
+			}, i).getText();
+		}
+		assertEquals("modified", lyric.getText());
+	}
+
+	private void testSnapshot(String resource) throws IOException {
+		copy(resource, source);
+		MutableCatalog catalog = CatalogIO.read(source);
+		assertNull("no snapshot yet", CatalogSnapshot.read(snapshotFile,
+		        source));
+
+		CatalogSnapshot snapshot = new CatalogSnapshot(catalog);
+		assertTrue(snapshot.write(snapshotFile, source, source.length(),
+		        source.lastModified()));
+
+		MutableCatalog result = CatalogSnapshot.read(snapshotFile, source);
+		assertNotNull("snapshot", result);
+		assertFalse("modified", result.isModified());
+		assertEquals(toString(catalog), toString(result));
+	}
+
+	private void copy(String resource, File file) throws IOException {
+		InputStream in = getClass().getResourceAsStream(resource);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			byte[] buffer = new byte[0x1000];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	private String toString(Catalog catalog) throws IOException {
+		StringWriter writer = new StringWriter();
+		CatalogIO.write(catalog, writer);
+		return writer.toString();
+	}
+}
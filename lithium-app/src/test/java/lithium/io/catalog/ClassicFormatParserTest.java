@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.io.catalog;
+
+import java.io.*;
+import java.util.*;
+
+import com.github.meinders.common.*;
+import junit.framework.*;
+import lithium.*;
+import lithium.catalog.*;
+
+/**
+ * Unit test of {@link ClassicFormatParser}.
+ *
+ * @author Gerrit Meinders
+ */
+public class ClassicFormatParserTest extends TestCase {
+	private static final int FILE_COUNT = 50;
+
+	/** Folder containing the classic format files. */
+	private File folder;
+
+	@Override
+	protected void setUp() throws IOException {
+		// ensure resources are loaded
+		Resources.set(new ResourceUtilities(
+		        ResourceBundle.getBundle("lithium.Resources")));
+
+		folder = File.createTempFile("ClassicFormatParserTest", "");
+		folder.delete();
+		folder.mkdir();
+
+		for (int i = 1; i <= FILE_COUNT; i++) {
+			/*
+			 * The first file determines the bundle name used for all others,
+			 * even when they're parsed before it.
+			 */
+			String bundleName = (i == 1) ? "OPWEKKING" : "Opwekking " + i;
+			StringBuilder text = new StringBuilder();
+			for (int j = 0; j < 20 * i; j++) {
+				text.append("Regel ").append(j).append(" van lied ").append(i);
+				text.append((j % 7 == 0) ? " & refrein  \n" : "\n");
+			}
+			writeFile(new File(folder, String.format("%03d.opw", i)),
+			        "<bundel>" + bundleName + "</bundel>\n"
+			                + "<versie>1.0</versie>\n"
+			                + "<nummer>" + i + "</nummer>\n"
+			                + "<titel>Lied " + i + " een & twee</titel>\n"
+			                + "<tekst>" + text + "</tekst>\n"
+			                + "<copyrights>Copyright & co " + i + "</copyrights>\n"
+			                + "<cd>" + (1 + i / 10) + "</cd>\n"
+			                + "<categorie1>Categorie " + (i % 3) + "</categorie1>\n"
+			                + "<categorie2>Categorie " + (3 + i % 4) + "</categorie2>\n"
+			                + "<toonsoort1>" + (char) ('A' + i % 7) + "</toonsoort1>\n"
+			                + "<bijbel1>Psalm " + i + ":1-3</bijbel1>\n");
+		}
+	}
+
+	@Override
+	protected void tearDown() {
+		for (File file : folder.listFiles()) {
+			file.delete();
+		}
+		folder.delete();
+	}
+
+	/**
+	 * Tests that parsing files concurrently results in the same catalog as
+	 * parsing them one at a time.
+	 */
+	public void testParallelParse() {
+		MutableCatalog sequential = new ClassicFormatParser(folder, 1)
+		        .construct();
+		MutableCatalog parallel = new ClassicFormatParser(folder, 4)
+		        .construct();
+
+		assertEquals(FILE_COUNT, sequential.getBundle("Opwekking")
+		        .getLyrics().size());
+		assertEquals(describe(sequential), describe(parallel));
+	}
+
+	/**
+	 * Returns a description of the groups and lyrics in the given catalog,
+	 * which is independent of the order in which they were added.
+	 */
+	private String describe(Catalog catalog) {
+		Set<String> groups = new TreeSet<String>();
+		for (Group group : catalog.getGroups()) {
+			groups.add(describe(group));
+		}
+		return groups.toString();
+	}
+
+	private String describe(Group group) {
+		Set<String> contents = new TreeSet<String>();
+		for (Group child : group.getGroups()) {
+			contents.add(describe(child));
+		}
+		for (Lyric lyric : group.getLyrics()) {
+			contents.add(lyric.getNumber() + " " + lyric.getTitle() + "\n"
+			        + lyric.getText() + "\n" + lyric.getCopyrights() + "\n"
+			        + lyric.getOriginalTitle() + "\n" + lyric.getKeys() + "\n"
+			        + lyric.getBibleRefs());
+		}
+		return group.getName() + " " + group.getVersion() + " " + contents;
+	}
+
+	private void writeFile(File file, String contents) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file),
+		        "CP1252");
+		try {
+			out.write(contents);
+		} finally {
+			out.close();
+		}
+	}
+}
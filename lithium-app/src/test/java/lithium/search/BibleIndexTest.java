@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.search;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+import lithium.books.*;
+
+public class BibleIndexTest extends TestCase {
+	private static final String[] PSALM = {
+	        "The Lord is my shepherd; I shall not want.",
+	        "He maketh me to lie down in green pastures: he leadeth me beside the still waters.",
+	        "He restoreth my soul: he leadeth me in the paths of righteousness for his name's sake.",
+	        "Yea, though I walk through the valley of the shadow of death, I will fear no evil: for thou art with me; thy rod and thy staff they comfort me." };
+
+	private MemoryLibrary library;
+
+	private File file;
+
+	private BibleIndex index;
+
+	@Override
+	protected void setUp() throws Exception {
+		MemoryChapter chapter = new MemoryChapter(23);
+		for (int i = 0; i < PSALM.length; i++) {
+			chapter.addVerse(new Verse(i + 1, PSALM[i]));
+		}
+		MemoryBook book = new MemoryBook("Psalms");
+		book.addChapter(chapter);
+		library = new MemoryLibrary("Test");
+		library.addBook(book);
+
+		file = File.createTempFile("BibleIndexTest", ".index");
+		BibleIndex.write(library, file, 0L, 0L);
+		index = new BibleIndex(file);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testMethods() {
+		assertEquals(Arrays.asList(1, 3), find("shepherd soul",
+		        ContentSearchQuery.Method.ANY_WORD));
+		assertEquals(Arrays.asList(2, 3), find("he leadeth",
+		        ContentSearchQuery.Method.ALL_WORDS));
+		assertEquals(Arrays.asList(4), find("valley of the shadow",
+		        ContentSearchQuery.Method.EXACT_PHRASE));
+		assertEquals(Arrays.asList(), find("shadow the valley",
+		        ContentSearchQuery.Method.EXACT_PHRASE));
+
+		// words match as a prefix
+		assertEquals(Arrays.asList(2), find("past green",
+		        ContentSearchQuery.Method.ALL_WORDS));
+	}
+
+	public void testNear() {
+		assertEquals(Arrays.asList(4), verses(index.findNear("death valley", 4)));
+		assertEquals(Arrays.asList(), verses(index.findNear("death valley", 3)));
+		assertEquals(Arrays.asList(3), verses(index.findNear("soul my", 0)));
+	}
+
+	public void testRanking() {
+		Iterator<BibleIndex.Hit> hits = index.find("me",
+		        ContentSearchQuery.Method.ANY_WORD);
+		BibleIndex.Hit best = hits.next();
+		assertEquals("Psalms", best.getBook());
+		assertEquals(23, best.getChapter());
+		assertEquals(2, best.getVerse());
+
+		double score = best.getScore();
+		while (hits.hasNext()) {
+			BibleIndex.Hit hit = hits.next();
+			assertTrue("ranked", hit.getScore() <= score);
+			score = hit.getScore();
+		}
+	}
+
+	public void testGetIndex() throws Exception {
+		final File libraryFile = File.createTempFile("BibleIndexTest",
+		        ".library");
+		File indexFile = BibleIndex.getIndexFile(libraryFile);
+		try {
+			BinaryLibrary.write(library, libraryFile, 0L, 0L);
+			final URL url = libraryFile.toURI().toURL();
+
+			// concurrent requests share a single index
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			List<Future<BibleIndex>> futures = new ArrayList<Future<BibleIndex>>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(executor.submit(new Callable<BibleIndex>() {
+					public BibleIndex call() throws IOException {
+						return BibleIndex.getIndex(url);
+					}
+				}));
+			}
+			executor.shutdown();
+			BibleIndex shared = futures.get(0).get();
+			for (Future<BibleIndex> future : futures) {
+				assertSame(shared, future.get());
+			}
+			assertTrue(indexFile.isFile());
+			assertEquals(Arrays.asList(1), verses(shared.find("shepherd",
+			        ContentSearchQuery.Method.ANY_WORD)));
+
+			// modified libraries are indexed again
+			libraryFile.setLastModified(libraryFile.lastModified() + 2000);
+			BibleIndex modified = BibleIndex.getIndex(url);
+			assertNotSame(shared, modified);
+			assertSame(modified, BibleIndex.getIndex(url));
+		} finally {
+			indexFile.delete();
+			libraryFile.delete();
+		}
+	}
+
+	private List<Integer> find(String words, ContentSearchQuery.Method method) {
+		List<Integer> result = verses(index.find(words, method));
+		Collections.sort(result);
+		return result;
+	}
+
+	private List<Integer> verses(Iterator<BibleIndex.Hit> hits) {
+		List<Integer> result = new ArrayList<Integer>();
+		while (hits.hasNext()) {
+			result.add(hits.next().getVerse());
+		}
+		return result;
+	}
+}
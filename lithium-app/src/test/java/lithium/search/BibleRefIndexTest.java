@@ -0,0 +1,191 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.search;
+
+import java.util.*;
+
+import junit.framework.*;
+import lithium.catalog.*;
+
+public class BibleRefIndexTest extends TestCase {
+	private static final int PSALMS = 18;
+
+	private static final int ROMANS = 44;
+
+	private Group bundle;
+
+	private DefaultCatalog catalog;
+
+	private BibleRefIndex index;
+
+	@Override
+	protected void setUp() throws Exception {
+		bundle = new ContainerGroup("Group 1", "Group 1", "1.0");
+		addLyric(0, new BibleRef(PSALMS, 23, null, null, null));
+		addLyric(1, new BibleRef(PSALMS, 23, null, 1, 3));
+		addLyric(2, new BibleRef(ROMANS, 8, null, 28, 39));
+		addLyric(3, new BibleRef(ROMANS, 8, null, 38, null));
+		addLyric(4, new BibleRef(ROMANS, 7, 9, 1, 5));
+		addLyric(5, new BibleRef(ROMANS, null, null, null, null));
+
+		catalog = new DefaultCatalog();
+		catalog.addBundle(bundle);
+		index = new BibleRefIndex(catalog);
+		index.update();
+	}
+
+	public void testFind() {
+		assertEquals(set(0, 1), numbers(index.find(new BibleRef(PSALMS, 23,
+		        null, null, null))));
+		assertEquals(set(2, 3), numbers(index.find(new BibleRef(ROMANS, 8,
+		        null, null, null))));
+		assertEquals(set(2, 3, 4, 5), numbers(index.find(new BibleRef(ROMANS,
+		        null, null, null, null))));
+		assertEquals(set(), numbers(index.find(new BibleRef(PSALMS, 22, null,
+		        null, null))));
+	}
+
+	public void testFindIntersecting() {
+		assertEquals(set(2, 3, 4, 5), numbers(index.findIntersecting(
+		        new BibleRef(ROMANS, 8, null, 28, 39))));
+		assertEquals(set(0, 1), numbers(index.findIntersecting(new BibleRef(
+		        PSALMS, 23, null, 2, null))));
+		assertEquals(set(4, 5), numbers(index.findIntersecting(new BibleRef(
+		        ROMANS, 9, null, 1, null))));
+	}
+
+	public void testUpdate() {
+		bundle.getLyric(0).removeBibleRef(new BibleRef(PSALMS, 23, null, null,
+		        null));
+		bundle.getLyric(2).addBibleRef(new BibleRef(PSALMS, 23, null, 4, null));
+		bundle.removeLyric(1);
+		index.update();
+
+		assertEquals(set(2), numbers(index.find(new BibleRef(PSALMS, 23, null,
+		        null, null))));
+	}
+
+	public void testChangeDuringUpdate() throws Exception {
+		final Lyric lyric = bundle.getLyric(0);
+		Thread editor = new Thread() {
+			@Override
+			public void run() {
+				lyric.addBibleRef(new BibleRef(ROMANS, 8, null, 1, null));
+			}
+		};
+
+		// holding the index's lock simulates an update in progress
+		synchronized (index) {
+			editor.start();
+			editor.join(5000);
+			assertFalse("change blocked by update", editor.isAlive());
+		}
+
+		index.update();
+		assertEquals(set(0, 2, 3), numbers(index.find(new BibleRef(ROMANS, 8,
+		        null, null, null))));
+	}
+
+	public void testFindIntersectingNested() {
+		bundle.removeLyrics();
+		int[][] verses = { { 1, 39 }, { 5, 30 }, { 10, 20 }, { 12, 14 },
+		        { 15, 25 }, { 18, 35 }, { 36, 38 }, { 2, 3 }, { 13, 13 },
+		        { 28, 39 } };
+		for (int i = 0; i < verses.length; i++) {
+			addLyric(i, new BibleRef(ROMANS, 8, null, verses[i][0],
+			        verses[i][1]));
+		}
+		index.update();
+
+		assertEquals(set(0, 1, 2, 3, 8), numbers(index.findIntersecting(
+		        new BibleRef(ROMANS, 8, null, 13, null))));
+		assertEquals(set(0, 6, 9), numbers(index.findIntersecting(
+		        new BibleRef(ROMANS, 8, null, 36, 39))));
+		assertEquals(set(), numbers(index.findIntersecting(new BibleRef(
+		        ROMANS, 9, null, null, null))));
+
+		for (int start = 1; start <= 39; start++) {
+			for (int end = start; end <= 39; end++) {
+				Set<Integer> expected = new HashSet<Integer>();
+				for (int i = 0; i < verses.length; i++) {
+					if (verses[i][0] <= end && verses[i][1] >= start) {
+						expected.add(i);
+					}
+				}
+				assertEquals(start + "-" + end, expected, numbers(
+				        index.findIntersecting(new BibleRef(ROMANS, 8, null,
+				                start, end))));
+			}
+		}
+	}
+
+	public void testLyricInMultipleBundles() {
+		Lyric lyric = bundle.getLyric(1);
+		Group other = new ContainerGroup("Group 2", "Group 2", "1.0");
+		other.addLyric(lyric);
+		catalog.addBundle(other);
+		index.update();
+
+		bundle.removeLyric(1);
+		index.update();
+		assertEquals(set(0, 1), numbers(index.find(new BibleRef(PSALMS, 23,
+		        null, null, null))));
+
+		// changes are still tracked
+		lyric.addBibleRef(new BibleRef(ROMANS, 8, null, 1, null));
+		index.update();
+		assertEquals(set(1, 2, 3), numbers(index.find(new BibleRef(ROMANS, 8,
+		        null, null, null))));
+
+		other.removeLyric(lyric);
+		index.update();
+		assertEquals(set(0), numbers(index.find(new BibleRef(PSALMS, 23, null,
+		        null, null))));
+	}
+
+	public void testMatchesQuery() {
+		BibleSearchQuery query = new BibleSearchQuery(new BibleRef(ROMANS, 8,
+		        null, null, null));
+		query.setIndex(index);
+		query.compile();
+		for (Lyric lyric : bundle.getLyrics()) {
+			BibleSearchQuery plain = new BibleSearchQuery(new BibleRef(ROMANS,
+			        8, null, null, null));
+			plain.compile();
+			assertEquals(plain.match(lyric), query.match(lyric));
+		}
+	}
+
+	private void addLyric(int number, BibleRef reference) {
+		Lyric lyric = new DefaultLyric(number, "Lyric " + number);
+		lyric.addBibleRef(reference);
+		bundle.addLyric(lyric);
+	}
+
+	private Set<Integer> numbers(Set<Lyric> lyrics) {
+		Set<Integer> result = new HashSet<Integer>();
+		for (Lyric lyric : lyrics) {
+			result.add(lyric.getNumber());
+		}
+		return result;
+	}
+
+	private Set<Integer> set(Integer... numbers) {
+		return new HashSet<Integer>(Arrays.asList(numbers));
+	}
+}
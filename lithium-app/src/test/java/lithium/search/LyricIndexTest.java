@@ -0,0 +1,179 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.search;
+
+import java.util.*;
+
+import junit.framework.*;
+import lithium.catalog.*;
+
+public class LyricIndexTest extends TestCase {
+	private static final String[] TITLES = {
+	        "Patience in Britain and Solitaire in America",
+	        "Why Human Rights Requires Free Software",
+	        "Testing Requires A Comprehensive Program",
+	        "JUnit, Testing Resources for Extreme Programming",
+	        "Linux Scalability Effort Homepage",
+	        "testing requires more time and hardware" };
+
+	private Group bundle;
+
+	private DefaultCatalog catalog;
+
+	private LyricIndex index;
+
+	@Override
+	protected void setUp() throws Exception {
+		bundle = new ContainerGroup("Group 1", "Group 1", "1.0");
+		for (int i = 0; i < TITLES.length; i++) {
+			bundle.addLyric(new DefaultLyric(i, TITLES[i]));
+		}
+
+		catalog = new DefaultCatalog();
+		catalog.addBundle(bundle);
+		index = new LyricIndex(catalog);
+		index.update();
+	}
+
+	public void testMethods() {
+		assertEquals(set(0, 1, 2, 3, 5), find("testing requires patience",
+		        ContentSearchQuery.Method.ANY_WORD));
+		assertEquals(set(2, 5), find("testing requires",
+		        ContentSearchQuery.Method.ALL_WORDS));
+		assertEquals(set(2, 5), find("testing requires",
+		        ContentSearchQuery.Method.EXACT_PHRASE));
+		assertEquals(set(), find("requires testing",
+		        ContentSearchQuery.Method.EXACT_PHRASE));
+
+		// words match as a prefix
+		assertEquals(set(3), find("program extreme",
+		        ContentSearchQuery.Method.ALL_WORDS));
+	}
+
+	public void testFields() {
+		bundle.getLyric(4).setText("Patience is a virtue");
+
+		ContentSearchQuery query = new ContentSearchQuery("patience",
+		        ContentSearchQuery.Method.ANY_WORD, false, true, false, false);
+		index.update();
+		assertEquals(set(4), numbers(index.find(query)));
+	}
+
+	public void testUpdate() {
+		bundle.getLyric(4).setTitle("Testing is required");
+		bundle.removeLyric(5);
+		bundle.addLyric(new DefaultLyric(6, "More testing"));
+		index.update();
+
+		assertEquals(set(2, 3, 4, 6), find("testing",
+		        ContentSearchQuery.Method.ANY_WORD));
+		assertEquals(set(1, 2, 4), find("require",
+		        ContentSearchQuery.Method.ANY_WORD));
+
+		// further changes to a modified lyric
+		bundle.getLyric(4).setTitle("Linux");
+		index.update();
+		assertEquals(set(2, 3, 6), find("testing",
+		        ContentSearchQuery.Method.ANY_WORD));
+	}
+
+	public void testLyricInMultipleBundles() {
+		Lyric lyric = bundle.getLyric(5);
+		Group other = new ContainerGroup("Group 2", "Group 2", "1.0");
+		other.addLyric(lyric);
+		catalog.addBundle(other);
+		index.update();
+
+		bundle.removeLyric(5);
+		index.update();
+		assertEquals(set(2, 5), find("testing requires",
+		        ContentSearchQuery.Method.ALL_WORDS));
+
+		// changes are still tracked
+		lyric.setTitle("Linux testing");
+		index.update();
+		assertEquals(set(4, 5), find("linux",
+		        ContentSearchQuery.Method.ANY_WORD));
+
+		other.removeLyric(lyric);
+		index.update();
+		assertEquals(set(4), find("linux", ContentSearchQuery.Method.ANY_WORD));
+	}
+
+	public void testChangeDuringUpdate() throws Exception {
+		final Lyric lyric = bundle.getLyric(4);
+		Thread editor = new Thread() {
+			@Override
+			public void run() {
+				lyric.setTitle("Testing is required");
+			}
+		};
+
+		// holding the index's lock simulates an update in progress
+		synchronized (index) {
+			editor.start();
+			editor.join(5000);
+			assertFalse("change blocked by update", editor.isAlive());
+		}
+
+		index.update();
+		assertEquals(set(2, 3, 4, 5), find("testing",
+		        ContentSearchQuery.Method.ANY_WORD));
+	}
+
+	public void testRank() {
+		double[] weights = { 1.0, 1.0, 1.0, 1.0 };
+
+		ContentSearchQuery query = new ContentSearchQuery("testing requires",
+		        ContentSearchQuery.Method.ANY_WORD, true, true, false, false);
+		Map<Lyric, Double> scores = index.rank(query, weights);
+		assertEquals(set(1, 2, 3, 5), numbers(scores.keySet()));
+
+		double both = scores.get(bundle.getLyric(2));
+		assertTrue("more matching words should rank higher",
+		        both > scores.get(bundle.getLyric(1)));
+		assertTrue("more matching words should rank higher",
+		        both > scores.get(bundle.getLyric(3)));
+
+		// shorter field should rank higher for the same term frequency
+		assertTrue("shorter lyric should rank higher",
+		        both > scores.get(bundle.getLyric(5)));
+
+		query = new ContentSearchQuery("testing requires",
+		        ContentSearchQuery.Method.ALL_WORDS, true, true, false, false);
+		assertEquals(set(2, 5), numbers(index.rank(query, weights).keySet()));
+	}
+
+	private Set<Integer> find(String words, ContentSearchQuery.Method method) {
+		ContentSearchQuery query = new ContentSearchQuery(words, method, true,
+		        true, false, false);
+		return numbers(index.find(query));
+	}
+
+	private Set<Integer> numbers(Set<Lyric> lyrics) {
+		Set<Integer> result = new TreeSet<Integer>();
+		for (Lyric lyric : lyrics) {
+			result.add(lyric.getNumber());
+		}
+		return result;
+	}
+
+	private Set<Integer> set(Integer... numbers) {
+		return new TreeSet<Integer>(Arrays.asList(numbers));
+	}
+}
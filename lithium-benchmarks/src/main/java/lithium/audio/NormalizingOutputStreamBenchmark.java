@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.sound.sampled.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the number of samples per second processed by
+ * {@link NormalizingOutputStream}, for 48 kHz stereo audio written in blocks
+ * or one byte at a time, using window sizes from 0.1 to 10 seconds. To keep up with real-time
+ * recording, the stream must process at least 96,000 samples per second.
+ *
+ * <p>
+ * Run with {@code java -jar lithium-benchmarks/target/benchmarks.jar}.
+ *
+ * @author Gerrit Meinders
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class NormalizingOutputStreamBenchmark
+{
+	/**
+	 * Number of samples written per benchmark invocation, i.e. one second of
+	 * 48 kHz stereo audio.
+	 */
+	private static final int SAMPLES = 48000 * 2;
+
+	/**
+	 * Number of bytes written to the stream at once.
+	 */
+	private static final int BLOCK_SIZE = 8192;
+
+	/**
+	 * Duration of the normalization window, in seconds.
+	 */
+	@Param( { "0.1", "0.5", "1", "2", "5", "10" })
+	public double windowSize;
+
+	/**
+	 * Whether channels are normalized individually.
+	 */
+	@Param( { "false", "true" })
+	public boolean perChannel;
+
+	/**
+	 * Whether true peak limiting is enabled.
+	 */
+	@Param( { "false", "true" })
+	public boolean truePeak;
+
+	private byte[] data;
+
+	private NormalizingOutputStream out;
+
+	@Setup
+	public void setUp()
+	{
+		AudioFormat audioFormat = new AudioFormat(
+		        AudioFormat.Encoding.PCM_SIGNED, 48000, 16, 2, 4, 48000, false);
+
+		/*
+		 * Alternating loud and quiet random noise, such that the gain keeps
+		 * changing.
+		 */
+		Random random = new Random(0);
+		data = new byte[SAMPLES * 2];
+		for (int i = 0; i < SAMPLES; i++)
+		{
+			int amplitude = (i / 24000) % 2 == 0 ? 30000 : 300;
+			int sample = random.nextInt(2 * amplitude + 1) - amplitude;
+			data[2 * i] = (byte) sample;
+			data[2 * i + 1] = (byte) (sample >> 8);
+		}
+
+		out = new NormalizingOutputStream(new NullOutputStream(), audioFormat,
+		        windowSize, 10.0, perChannel);
+		out.setTruePeakLimiting(truePeak);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public void write() throws IOException
+	{
+		for (int offset = 0; offset < data.length; offset += BLOCK_SIZE)
+		{
+			out.write(data, offset, Math.min(BLOCK_SIZE, data.length - offset));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public void writeBytes() throws IOException
+	{
+		for (byte b : data)
+		{
+			out.write(b & 0xff);
+		}
+	}
+
+	/**
+	 * This output stream discards any data written to it.
+	 */
+	private static class NullOutputStream extends OutputStream
+	{
+		@Override
+		public void write(int b) throws IOException
+		{
+			// Discard written data.
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			// Discard written data.
+		}
+	}
+}
@@ -19,9 +19,12 @@ package lithium;
 
 import java.io.*;
 import java.util.*;
+import javax.sound.sampled.*;
 
 /**
- * Allows command-line options for LAME to be specified.
+ * Allows command-line options for LAME to be specified. The same options can
+ * also be expressed as an audio format, for use with an MP3 encoder provided
+ * through the Java Sound API.
  *
  * @author Gerrit Meinders
  */
@@ -31,6 +34,12 @@ public class Mp3Options
 		STEREO, JOINT_STEREO, MONO
 	}
 
+	/**
+	 * Encoding used by Java Sound service providers for MPEG-1 Layer 3 audio.
+	 */
+	public static final AudioFormat.Encoding MPEG1L3 = new AudioFormat.Encoding(
+	        "MPEG1L3");
+
 	private Mode mode;
 
 	private BitRate bitRate;
@@ -97,12 +106,38 @@ public class Mp3Options
 		return command.toArray(new String[command.size()]);
 	}
 
+	/**
+	 * Returns the MP3 audio format that audio in the given format should be
+	 * converted to by an encoder provided through the Java Sound API, such as
+	 * the LAME encoder included with Tritonus. The bit rate is specified using
+	 * the standard {@code bitrate}, {@code vbr} and {@code quality} format
+	 * properties.
+	 *
+	 * @param source Format of the audio to be encoded.
+	 *
+	 * @return MP3 audio format.
+	 */
+	public AudioFormat getAudioFormat(AudioFormat source) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		if (bitRate != null) {
+			bitRate.apply(properties);
+		}
+
+		int channels = (mode == Mode.MONO) ? 1 : source.getChannels();
+
+		return new AudioFormat(MPEG1L3, source.getSampleRate(),
+		        AudioSystem.NOT_SPECIFIED, channels, AudioSystem.NOT_SPECIFIED,
+		        AudioSystem.NOT_SPECIFIED, false, properties);
+	}
+
 	public abstract static class BitRate {
 		BitRate() {
 			/* Prevent subclassing outside of this package. */
 		}
 
 		abstract void apply(Collection<String> command);
+
+		abstract void apply(Map<String, Object> properties);
 	}
 
 	public static final class ConstantBitRate extends BitRate
@@ -125,6 +160,14 @@ public class Mp3Options
 				command.add("-b" + bitRate);
 			}
 		}
+
+		@Override
+		void apply(Map<String, Object> properties) {
+			properties.put("vbr", Boolean.FALSE);
+			if (bitRate != null) {
+				properties.put("bitrate", bitRate * 1000);
+			}
+		}
 	}
 
 	public static final class AverageBitRate extends BitRate
@@ -144,6 +187,12 @@ public class Mp3Options
 			command.add("--abr");
 			command.add(String.valueOf(bitRate));
 		}
+
+		@Override
+		void apply(Map<String, Object> properties) {
+			properties.put("vbr", Boolean.TRUE);
+			properties.put("bitrate", bitRate * 1000);
+		}
 	}
 
 	public static final class VariableBitRate extends BitRate
@@ -165,5 +214,14 @@ public class Mp3Options
 				command.add("-V" + quality);
 			}
 		}
+
+		@Override
+		void apply(Map<String, Object> properties) {
+			properties.put("vbr", Boolean.TRUE);
+			if (quality != null) {
+				// LAME: 0 (best) to 9 (worst); Java Sound: 1 to 100 (best)
+				properties.put("quality", 100 - 10 * quality);
+			}
+		}
 	}
 }
@@ -27,6 +27,8 @@ public class RecorderConfig {
 
 	private String mixerName;
 
+	private List<Track> tracks;
+
 	private AudioFormat audioFormat;
 
 	private boolean normalize;
@@ -37,6 +39,8 @@ public class RecorderConfig {
 
 	private boolean normalizePerChannel;
 
+	private boolean truePeakLimiting;
+
 	private EncodingFormat encodingFormat;
 
 	private File storageFolder;
@@ -45,12 +49,14 @@ public class RecorderConfig {
 
 	public RecorderConfig() {
 		mixerName = null;
+		tracks = new ArrayList<Track>();
 		audioFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100,
 		        16, 2, 4, 44100, false);
 		normalize = false;
 		windowSize = 2.0;
 		maximumGain = 10.0;
 		normalizePerChannel = false;
+		truePeakLimiting = false;
 		encodingFormat = null;
 		storageFolder = new File(".");
 		namingScheme = new NamingScheme();
@@ -59,11 +65,16 @@ public class RecorderConfig {
 
 	public RecorderConfig(RecorderConfig original) {
 		mixerName = original.mixerName;
+		tracks = new ArrayList<Track>();
+		for (Track track : original.tracks) {
+			tracks.add(new Track(track));
+		}
 		audioFormat = original.audioFormat;
 		normalize = original.normalize;
 		maximumGain = original.maximumGain;
 		windowSize = original.windowSize;
 		normalizePerChannel = original.normalizePerChannel;
+		truePeakLimiting = original.truePeakLimiting;
 		encodingFormat = (original.encodingFormat == null) ? null
 		        : original.encodingFormat.clone();
 		storageFolder = original.storageFolder;
@@ -78,6 +89,22 @@ public class RecorderConfig {
 	    this.mixerName = mixerName;
     }
 
+	/**
+	 * Returns the tracks to be recorded concurrently. Each track is recorded
+	 * from its own mixer into a separate file, using the same audio format,
+	 * normalization and encoding settings. If no tracks are specified, a
+	 * single recording is made from the mixer given by {@link #getMixerName()}.
+	 *
+	 * @return Tracks to be recorded.
+	 */
+	public List<Track> getTracks() {
+		return tracks;
+	}
+
+	public void setTracks(List<Track> tracks) {
+		this.tracks = tracks;
+	}
+
 	/**
 	 * Returns the format that audio is recorded in. If an encoding format is
 	 * specified (see {@link #getEncodingFormat()}), this format is not
@@ -125,6 +152,20 @@ public class RecorderConfig {
 		this.normalizePerChannel = normalizePerChannel;
 	}
 
+	/**
+	 * Returns whether normalization limits the gain such that the true peak
+	 * level, i.e. the peak level between samples, stays below -1 dBTP.
+	 *
+	 * @return Whether true peak limiting is enabled.
+	 */
+	public boolean isTruePeakLimiting() {
+		return truePeakLimiting;
+	}
+
+	public void setTruePeakLimiting(boolean truePeakLimiting) {
+		this.truePeakLimiting = truePeakLimiting;
+	}
+
 	/**
 	 * Returns the format used to encode audio recordings before they are
 	 * written to storage.
@@ -155,6 +196,54 @@ public class RecorderConfig {
 		this.namingScheme = namingScheme;
 	}
 
+	/**
+	 * Specifies a single track of a multi-track recording.
+	 *
+	 * @author Gerrit Meinders
+	 */
+	public static class Track {
+		private String name;
+
+		private String mixerName;
+
+		public Track(String name, String mixerName) {
+			this.name = name;
+			this.mixerName = mixerName;
+		}
+
+		public Track(Track original) {
+			name = original.name;
+			mixerName = original.mixerName;
+		}
+
+		/**
+		 * Returns the name of the track, which is appended to the names of
+		 * the files that the track is stored in.
+		 *
+		 * @return Name of the track, or {@code null} if the track is unnamed.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Returns the name of the mixer to record the track from.
+		 *
+		 * @return Name of the mixer, or {@code null} for the default mixer.
+		 */
+		public String getMixerName() {
+			return mixerName;
+		}
+
+		public void setMixerName(String mixerName) {
+			this.mixerName = mixerName;
+		}
+	}
+
 	/**
 	 * Specifies the format used to encode audio recordings.
 	 *
@@ -170,17 +259,61 @@ public class RecorderConfig {
 			}
 		}
 
+		/**
+		 * Returns the file name extension for files in this format.
+		 *
+		 * @return File name extension, including the leading period.
+		 */
+		public abstract String getExtension();
+
 		public static final class Wave extends EncodingFormat {
 			public Wave() {
 				// TODO: Add format options.
 			}
+
+			@Override
+			public String getExtension() {
+				return ".wav";
+			}
 		}
 
 		public static final class MP3 extends EncodingFormat {
+			/**
+			 * Specifies how MP3 encoding is performed.
+			 */
+			public enum Encoder {
+				/**
+				 * Runs LAME as a separate process.
+				 */
+				EXTERNAL,
+
+				/**
+				 * Encodes within the application, using an encoder provided
+				 * through the Java Sound API.
+				 */
+				JAVA_SOUND
+			}
+
 			private Mp3Options options;
 
+			private Encoder encoder;
+
 			public MP3() {
 				options = new Mp3Options();
+				encoder = Encoder.EXTERNAL;
+			}
+
+			@Override
+			public String getExtension() {
+				return ".mp3";
+			}
+
+			public Encoder getEncoder() {
+				return encoder;
+			}
+
+			public void setEncoder(Encoder encoder) {
+				this.encoder = encoder;
 			}
 
 			public Mp3Options getOptions() {
@@ -230,6 +363,65 @@ public class RecorderConfig {
 				storageFolder = new File(".").getAbsoluteFile();
 			}
 
+			StringBuilder name = getName(storageFolder);
+			appendExtension(name, format);
+			return new File(storageFolder, name.toString());
+		}
+
+		/**
+		 * Returns a file for each of the given tracks. The names of the files
+		 * only differ in the track name that is appended to them, such that
+		 * the files of a single multi-track recording are easily recognized.
+		 * Tracks that are unnamed, or whose name was already used by a
+		 * previous track, get their (one-based) track number appended
+		 * instead, such that every track is stored in a separate file. Only
+		 * a single unnamed track is stored without any suffix.
+		 *
+		 * @param storageFolder Folder to store the files in.
+		 * @param format Format of the files.
+		 * @param tracks Tracks to get files for.
+		 *
+		 * @return Files for the given tracks, in the same order.
+		 */
+		public List<File> getFiles(File storageFolder, EncodingFormat format,
+		        List<Track> tracks) {
+			if (storageFolder == null) {
+				storageFolder = new File(".").getAbsoluteFile();
+			}
+
+			StringBuilder name = getName(storageFolder);
+			int nameLength = name.length();
+
+			List<File> result = new ArrayList<File>(tracks.size());
+			Set<String> usedSuffixes = new HashSet<String>();
+			for (int i = 0; i < tracks.size(); i++) {
+				name.setLength(nameLength);
+
+				String suffix = tracks.get(i).getName();
+				if ((tracks.size() > 1) || (suffix != null)) {
+					/*
+					 * Suffixes are compared ignoring case, because most file
+					 * systems do so as well.
+					 */
+					if ((suffix == null)
+					        || !usedSuffixes.add(suffix.toLowerCase())) {
+						String base = (suffix == null) ? "" : suffix + separator;
+						int number = i + 1;
+						do {
+							suffix = base + number;
+							number += tracks.size();
+						} while (!usedSuffixes.add(suffix.toLowerCase()));
+					}
+					name.append(separator);
+					name.append(suffix);
+				}
+				appendExtension(name, format);
+				result.add(new File(storageFolder, name.toString()));
+			}
+			return result;
+		}
+
+		private StringBuilder getName(File storageFolder) {
 			StringBuilder name = new StringBuilder();
 
 			if (elements.isEmpty()) {
@@ -246,13 +438,13 @@ public class RecorderConfig {
 				}
 			}
 
-			if (format instanceof EncodingFormat.MP3) {
-				name.append(".mp3");
-			} else if (format instanceof EncodingFormat.Wave) {
-				name.append(".wav");
-			}
+			return name;
+		}
 
-			return new File(storageFolder, name.toString());
+		private void appendExtension(StringBuilder name, EncodingFormat format) {
+			if (format != null) {
+				name.append(format.getExtension());
+			}
 		}
 
 		public abstract static class Element {
@@ -409,6 +409,9 @@ extends JDialog
 		final String[] formatValues = {
 		"recorder.format.wave", "recorder.format.mp3"
 		};
+		final String[] encoderValues = {
+		"recorder.encoder.external", "recorder.encoder.javaSound"
+		};
 		final String[] modeValues = {
 		"recorder.mode.stereo",
 		"recorder.mode.jointStereo", "recorder.mode.mono"
@@ -425,6 +428,7 @@ extends JDialog
 			mixerValues[ i ] = mixerInfo[ i ].getName();
 		}
 
+		RecorderConfig.EncodingFormat.MP3.Encoder encoder = RecorderConfig.EncodingFormat.MP3.Encoder.EXTERNAL;
 		Mp3Options.Mode mode = null;
 		String bitRateType = bitRateTypeValues[ 0 ];
 		Integer bitRate = null;
@@ -432,6 +436,7 @@ extends JDialog
 
 		if ( encodingFormat instanceof RecorderConfig.EncodingFormat.MP3 )
 		{
+			encoder = ( (RecorderConfig.EncodingFormat.MP3)encodingFormat ).getEncoder();
 			final Mp3Options options = ( (RecorderConfig.EncodingFormat.MP3)encodingFormat ).getOptions();
 			mode = options.getMode();
 			final Mp3Options.BitRate bitRateObject = options.getBitRate();
@@ -456,6 +461,7 @@ extends JDialog
 		                                                                                 : scopeValues[ 0 ] );
 		final String formatValue = ( encodingFormat instanceof RecorderConfig.EncodingFormat.MP3 ) ? formatValues[ 1 ]
 		                                                                                           : formatValues[ 0 ];
+		final String encoderValue = encoderValues[ encoder.ordinal() ];
 		final String modeValue = ( mode == null ) ? modeValues[ 0 ]
 		                                          : modeValues[ mode.ordinal() ];
 
@@ -474,9 +480,11 @@ extends JDialog
 		final JTextField maximumGainField = createField( recorderConfig.getMaximumGain() );
 		final JTextField windowSizeField = createField( recorderConfig.getWindowSize() );
 		final JComboBox scopeField = createField( scopeValue, scopeValues );
+		final JCheckBox truePeakField = createField( recorderConfig.isTruePeakLimiting() );
 
 		final JCheckBox encodeField = createField( encodingFormat != null );
 		final JComboBox formatField = createField( formatValue, formatValues );
+		final JComboBox encoderField = createField( encoderValue, encoderValues );
 		final JComboBox modeField = createField( modeValue, modeValues );
 		final JComboBox bitRateTypeField = createField( bitRateType,
 		                                                bitRateTypeValues );
@@ -496,9 +504,11 @@ extends JDialog
 		form.addField( "recorder.maximumGain", maximumGainField );
 		form.addField( "recorder.windowSize", windowSizeField );
 		form.addField( "recorder.scope", scopeField );
+		form.addField( "recorder.truePeak", truePeakField );
 		form.addSeparator();
 		form.addField( "recorder.encode", encodeField );
 		form.addField( "recorder.format", formatField );
+		form.addField( "recorder.encoder", encoderField );
 		form.addField( "recorder.mode", modeField );
 		form.addField( "recorder.bitRateType", bitRateTypeField );
 		form.addField( "recorder.bitRate", bitRateField );
@@ -518,6 +528,7 @@ extends JDialog
 				form.setEnabled( maximumGainField, normalize );
 				form.setEnabled( windowSizeField, normalize );
 				form.setEnabled( scopeField, normalize );
+				form.setEnabled( truePeakField, normalize );
 			}
 		};
 
@@ -534,6 +545,7 @@ extends JDialog
 				final boolean vbr = bitRateTypeField.getSelectedIndex() == 2;
 
 				form.setEnabled( formatField, encode );
+				form.setEnabled( encoderField, encode && mp3 );
 				form.setEnabled( modeField, encode && mp3 );
 				form.setEnabled( bitRateTypeField, encode && mp3 );
 				form.setEnabled( bitRateField, encode && mp3 && !vbr );
@@ -586,6 +598,8 @@ extends JDialog
 							final RecorderConfig.EncodingFormat.MP3 mp3Format = new RecorderConfig.EncodingFormat.MP3();
 							encodingFormat = mp3Format;
 
+							mp3Format.setEncoder( RecorderConfig.EncodingFormat.MP3.Encoder.values()[ encoderField.getSelectedIndex() ] );
+
 							final Mp3Options options = mp3Format.getOptions();
 							switch ( modeField.getSelectedIndex() )
 							{
@@ -655,6 +669,7 @@ extends JDialog
 				recorderConfig.setMaximumGain( Double.parseDouble( maximumGainField.getText() ) );
 				recorderConfig.setWindowSize( Double.parseDouble( windowSizeField.getText() ) );
 				recorderConfig.setNormalizePerChannel( scopeField.getSelectedIndex() == 1 );
+				recorderConfig.setTruePeakLimiting( truePeakField.isSelected() );
 				recorderConfig.setEncodingFormat( encodingFormat );
 				recorderConfig.setStorageFolder( new File(
 				storageFolderField.getText() ) );
@@ -273,6 +273,20 @@ implements Builder<Document>
 		recordElement.setAttribute("byte-order",
 		        audioFormat.isBigEndian() ? "big-endian" : "little-endian");
 
+		for (RecorderConfig.Track track : recorderConfig.getTracks())
+		{
+			Element trackElement = document.createElement("track");
+			recordElement.appendChild(trackElement);
+			if (track.getName() != null)
+			{
+				trackElement.setAttribute("name", track.getName());
+			}
+			if (track.getMixerName() != null)
+			{
+				trackElement.setAttribute("mixer", track.getMixerName());
+			}
+		}
+
 		/*
 		 * Audio recorder: normalization
 		 */
@@ -283,6 +297,10 @@ implements Builder<Document>
 
 			normalizeElement.setAttribute("scope",
 			        recorderConfig.isNormalizePerChannel() ? "channel" : "all");
+			if (recorderConfig.isTruePeakLimiting())
+			{
+				normalizeElement.setAttribute("true-peak", "true");
+			}
 
 			Element maximumGainElement = document.createElement("maximum-gain");
 			maximumGainElement.appendChild(document.createTextNode(String.valueOf(recorderConfig.getMaximumGain())));
@@ -316,6 +334,11 @@ implements Builder<Document>
 				EncodingFormat.MP3 mp3Format = (EncodingFormat.MP3) encodingFormat;
 				Mp3Options options = mp3Format.getOptions();
 
+				if (mp3Format.getEncoder() == EncodingFormat.MP3.Encoder.JAVA_SOUND)
+				{
+					mp3Element.setAttribute("encoder", "java-sound");
+				}
+
 				Mode mode = options.getMode();
 				if (mode != null)
 				{
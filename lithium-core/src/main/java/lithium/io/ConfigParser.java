@@ -440,6 +440,19 @@ implements Parser<Config>
 			}
 			recorderConfig.setAudioFormat(audioFormat);
 
+			NodeList trackNodes = (NodeList) xpath.evaluate("cfg:track",
+			        recordElement, NODESET);
+			for (int i = 0; i < trackNodes.getLength(); i++)
+			{
+				Element trackElement = (Element) trackNodes.item(i);
+				String trackName = trackElement.getAttribute("name");
+				String trackMixer = trackElement.getAttribute("mixer");
+				recorderConfig.getTracks().add(
+				        new RecorderConfig.Track(
+				                trackName.isEmpty() ? null : trackName,
+				                trackMixer.isEmpty() ? null : trackMixer));
+			}
+
 			/*
 			 * Audio recorder: normalization settings.
 			 */
@@ -455,6 +468,7 @@ implements Parser<Config>
 
 				recorderConfig.setNormalize(true);
 				recorderConfig.setNormalizePerChannel("channel".equals(scope));
+				recorderConfig.setTruePeakLimiting(Boolean.parseBoolean(normalizeElement.getAttribute("true-peak")));
 				recorderConfig.setMaximumGain(maxGain);
 				recorderConfig.setWindowSize(windowSize);
 			}
@@ -480,6 +494,11 @@ implements Parser<Config>
 					RecorderConfig.EncodingFormat.MP3 format = new RecorderConfig.EncodingFormat.MP3();
 					Mp3Options options = format.getOptions();
 
+					if ("java-sound".equals(formatElement.getAttribute("encoder")))
+					{
+						format.setEncoder(RecorderConfig.EncodingFormat.MP3.Encoder.JAVA_SOUND);
+					}
+
 					String mode = xpath.evaluate("mode", formatElement);
 					if ("stereo".equals(mode))
 					{
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+import lithium.RecorderConfig.*;
+
+/**
+ * Unit test of the recorder settings.
+ *
+ * @author Gerrit Meinders
+ */
+public class RecorderConfigTest extends TestCase {
+	private final File folder = new File("recordings");
+
+	private NamingScheme namingScheme;
+
+	@Override
+	protected void setUp() {
+		namingScheme = new NamingScheme();
+		namingScheme.getElements().add(
+		        new NamingScheme.StringElement("recording"));
+	}
+
+	public void testSingleUnnamedTrack() {
+		assertEquals(files("recording.wav"), namingScheme.getFiles(folder,
+		        new EncodingFormat.Wave(), tracks((String) null)));
+	}
+
+	public void testUnnamedTracks() {
+		assertEquals(files("recording-1.wav", "recording-2.wav"),
+		        namingScheme.getFiles(folder, new EncodingFormat.Wave(),
+		                tracks(null, null)));
+	}
+
+	public void testDuplicateTrackNames() {
+		assertEquals(files("recording-left.wav", "recording-Left-2.wav",
+		        "recording-3.wav", "recording-2.wav", "recording-2-5.wav"),
+		        namingScheme.getFiles(folder, new EncodingFormat.Wave(),
+		                tracks("left", "Left", null, "2", "2")));
+	}
+
+	private List<Track> tracks(String... names) {
+		List<Track> result = new ArrayList<Track>();
+		for (String name : names) {
+			result.add(new Track(name, null));
+		}
+		return result;
+	}
+
+	private List<File> files(String... names) {
+		List<File> result = new ArrayList<File>();
+		for (String name : names) {
+			result.add(new File(folder, name));
+		}
+		return result;
+	}
+}
@@ -18,6 +18,7 @@
 package lithium.io;
 
 import java.io.*;
+import java.util.*;
 
 import junit.framework.*;
 import lithium.*;
@@ -83,4 +84,30 @@ public class ConfigBuilderTest extends TestCase {
    			referenceIn.close();
 		}
 	}
+
+	public void testRecorderTracks() throws IOException {
+		Config config = new Config();
+		RecorderConfig recorderConfig = config.getRecorderConfig();
+		recorderConfig.getTracks().add(new RecorderConfig.Track("vocals", "Mixer 1"));
+		recorderConfig.getTracks().add(new RecorderConfig.Track(null, null));
+		recorderConfig.setNormalize(true);
+		recorderConfig.setTruePeakLimiting(true);
+
+		Writer buffer = new StringWriter();
+		ConfigBuilder builder = new ConfigBuilder(config);
+		builder.setOutput(buffer);
+		builder.call();
+
+		ConfigParser parser = new ConfigParser();
+		parser.setInput(new StringReader(buffer.toString()));
+		RecorderConfig parsed = parser.call().getRecorderConfig();
+
+		List<RecorderConfig.Track> tracks = parsed.getTracks();
+		assertEquals(2, tracks.size());
+		assertEquals("vocals", tracks.get(0).getName());
+		assertEquals("Mixer 1", tracks.get(0).getMixerName());
+		assertNull(tracks.get(1).getName());
+		assertNull(tracks.get(1).getMixerName());
+		assertTrue(parsed.isTruePeakLimiting());
+	}
 }
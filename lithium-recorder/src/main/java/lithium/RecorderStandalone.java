@@ -39,13 +39,19 @@ implements Runnable
 
 	/**
 	 * Starts the application from the AWT event thread with the given
-	 * arguments.
+	 * arguments. If the first argument is {@code --batch}, existing recordings
+	 * are processed instead, without showing a user interface.
 	 *
 	 * @param args the command-line arguments
 	 */
 	public static void main(final String[] args)
 	{
 		configureAWT();
+		if ((args.length > 0) && "--batch".equals(args[0]))
+		{
+			BatchProcessor.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		SwingUtilities.invokeLater( new RecorderStandalone( args ) );
 	}
 
@@ -280,6 +286,8 @@ implements Runnable
 		out.println( "  -? --help         displays this help message" );
 		out.println("  -o --disable-overrides");
 		out.println("                    disables the automatic loading of overrides on startup");
+		out.println("  --batch [--threads=N] source-folder [target-folder]");
+		out.println("                    normalizes and encodes all wave files in a folder");
 		out.println();
 		out.println("Additional options (via config.xml) are:");
 
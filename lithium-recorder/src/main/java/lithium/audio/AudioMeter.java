@@ -0,0 +1,278 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Collects peak level, RMS level and gain for each channel of an audio stream.
+ * The audio thread accumulates levels in primitive fields and periodically
+ * commits them to atomic slots, from which another thread (typically the
+ * event dispatch thread) takes snapshots at its own rate. This avoids posting
+ * an event for every update.
+ *
+ * @author Gerrit Meinders
+ */
+public class AudioMeter
+{
+	private final int channels;
+
+	/**
+	 * Maximum amplitude of the sample format, used to scale levels to the
+	 * range from 0 to 1.
+	 */
+	private final double maximumAmplitude;
+
+	/**
+	 * Number of frames between commits.
+	 */
+	private final int framesPerCommit;
+
+	/**
+	 * Number of frames since the last commit.
+	 */
+	private int frames;
+
+	/**
+	 * Peak amplitude for each channel since the last commit.
+	 */
+	private final int[] peaks;
+
+	/**
+	 * Sum of squared samples for each channel since the last commit.
+	 */
+	private final long[] sumsOfSquares;
+
+	/**
+	 * Current gain for each channel.
+	 */
+	private final double[] gains;
+
+	/**
+	 * Peak amplitude for each channel since the last snapshot.
+	 */
+	private final AtomicIntegerArray peakSlots;
+
+	/**
+	 * Sum of squared samples for each channel since the last snapshot.
+	 */
+	private final AtomicLongArray sumOfSquaresSlots;
+
+	/**
+	 * Number of frames since the last snapshot.
+	 */
+	private final AtomicLong frameCount;
+
+	/**
+	 * Most recently committed gain for each channel, stored as raw long bits.
+	 */
+	private final AtomicLongArray gainSlots;
+
+	/**
+	 * Constructs a new audio meter.
+	 *
+	 * @param channels Number of channels.
+	 * @param maximumAmplitude Maximum amplitude of the sample format.
+	 * @param framesPerCommit Number of frames between commits, which limits
+	 *            how recent the levels in a snapshot are.
+	 */
+	public AudioMeter(int channels, int maximumAmplitude, int framesPerCommit)
+	{
+		this.channels = channels;
+		this.maximumAmplitude = maximumAmplitude;
+		this.framesPerCommit = Math.max(1, framesPerCommit);
+		frames = 0;
+
+		peaks = new int[channels];
+		sumsOfSquares = new long[channels];
+		gains = new double[channels];
+
+		peakSlots = new AtomicIntegerArray(channels);
+		sumOfSquaresSlots = new AtomicLongArray(channels);
+		frameCount = new AtomicLong();
+		gainSlots = new AtomicLongArray(channels);
+
+		long unity = Double.doubleToRawLongBits(1.0);
+		for (int i = 0; i < channels; i++)
+		{
+			gains[i] = 1.0;
+			gainSlots.set(i, unity);
+		}
+	}
+
+	/**
+	 * Returns the number of channels.
+	 *
+	 * @return Number of channels.
+	 */
+	public int getChannels()
+	{
+		return channels;
+	}
+
+	/**
+	 * Adds the given sample to the levels of the given channel. Must only be
+	 * called by the audio thread.
+	 *
+	 * @param channel Channel that the sample belongs to.
+	 * @param sample Sample to be added.
+	 */
+	public void add(int channel, int sample)
+	{
+		int amplitude = Math.abs(sample);
+		if (amplitude > peaks[channel])
+		{
+			peaks[channel] = amplitude;
+		}
+		sumsOfSquares[channel] += (long) sample * sample;
+
+		if ((channel == channels - 1) && (++frames == framesPerCommit))
+		{
+			commit();
+		}
+	}
+
+	/**
+	 * Sets the gain currently applied to the given channel. Must only be
+	 * called by the audio thread.
+	 *
+	 * @param channel Channel to set the gain for.
+	 * @param gain Gain applied to the channel.
+	 */
+	public void setGain(int channel, double gain)
+	{
+		gains[channel] = gain;
+	}
+
+	/**
+	 * Makes the levels accumulated by the audio thread available to
+	 * snapshots.
+	 */
+	private void commit()
+	{
+		for (int i = 0; i < channels; i++)
+		{
+			int peak = peaks[i];
+			int current;
+			do
+			{
+				current = peakSlots.get(i);
+			}
+			while ((peak > current) && !peakSlots.compareAndSet(i, current, peak));
+
+			sumOfSquaresSlots.addAndGet(i, sumsOfSquares[i]);
+			gainSlots.lazySet(i, Double.doubleToRawLongBits(gains[i]));
+
+			peaks[i] = 0;
+			sumsOfSquares[i] = 0;
+		}
+		frameCount.addAndGet(frames);
+		frames = 0;
+	}
+
+	/**
+	 * Returns the levels since the previous snapshot, and resets them.
+	 *
+	 * @return Snapshot of the current levels.
+	 */
+	public Snapshot takeSnapshot()
+	{
+		long count = frameCount.getAndSet(0);
+
+		double[] peakLevels = new double[channels];
+		double[] rmsLevels = new double[channels];
+		double[] gainLevels = new double[channels];
+		for (int i = 0; i < channels; i++)
+		{
+			peakLevels[i] = peakSlots.getAndSet(i, 0) / maximumAmplitude;
+			long sumOfSquares = sumOfSquaresSlots.getAndSet(i, 0);
+			rmsLevels[i] = (count == 0) ? 0.0 : Math.sqrt((double) sumOfSquares
+			        / count) / maximumAmplitude;
+			gainLevels[i] = Double.longBitsToDouble(gainSlots.get(i));
+		}
+
+		return new Snapshot(peakLevels, rmsLevels, gainLevels);
+	}
+
+	/**
+	 * Levels of all channels at a certain time.
+	 *
+	 * @author Gerrit Meinders
+	 */
+	public static class Snapshot
+	{
+		private final double[] peaks;
+
+		private final double[] rmsLevels;
+
+		private final double[] gains;
+
+		Snapshot(double[] peaks, double[] rmsLevels, double[] gains)
+		{
+			this.peaks = peaks;
+			this.rmsLevels = rmsLevels;
+			this.gains = gains;
+		}
+
+		/**
+		 * Returns the number of channels.
+		 *
+		 * @return Number of channels.
+		 */
+		public int getChannels()
+		{
+			return peaks.length;
+		}
+
+		/**
+		 * Returns the peak level of the given channel.
+		 *
+		 * @param channel Channel index.
+		 *
+		 * @return Peak level, from 0 to 1.
+		 */
+		public double getPeak(int channel)
+		{
+			return peaks[channel];
+		}
+
+		/**
+		 * Returns the RMS level of the given channel.
+		 *
+		 * @param channel Channel index.
+		 *
+		 * @return RMS level, from 0 to 1.
+		 */
+		public double getRMS(int channel)
+		{
+			return rmsLevels[channel];
+		}
+
+		/**
+		 * Returns the gain applied to the given channel.
+		 *
+		 * @param channel Channel index.
+		 *
+		 * @return Gain.
+		 */
+		public double getGain(int channel)
+		{
+			return gains[channel];
+		}
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Ring buffer for audio data, shared by a single producer thread and a single
+ * consumer thread without any locking. Data is always written and read in
+ * whole frames.
+ *
+ * <p>
+ * To avoid copying, the backing array is accessed directly: the producer
+ * writes into the region given by {@link #getWriteOffset()} and
+ * {@link #getWritableLength()} and then calls {@link #commitWrite(int)}.
+ * The consumer does the same using the corresponding read methods.
+ *
+ * @author Gerrit Meinders
+ */
+public class AudioRingBuffer
+{
+	/**
+	 * Maximum time that the consumer waits for new data before checking
+	 * again, in nanoseconds.
+	 */
+	private static final long WAIT_TIMEOUT = 10000000L;
+
+	/**
+	 * Backing array, with a length that is a multiple of the frame size.
+	 */
+	private final byte[] buffer;
+
+	/**
+	 * Number of bytes in each frame.
+	 */
+	private final int frameSize;
+
+	/**
+	 * Total number of bytes written to the buffer. Only modified by the
+	 * producer.
+	 */
+	private final AtomicLong writePosition;
+
+	/**
+	 * Total number of bytes read from the buffer. Only modified by the
+	 * consumer.
+	 */
+	private final AtomicLong readPosition;
+
+	/**
+	 * Number of frames that were dropped because the buffer was full.
+	 */
+	private final AtomicLong overrunCount;
+
+	/**
+	 * Indicates that no more data will be written to the buffer.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Thread waiting for data to become available, if any.
+	 */
+	private volatile Thread consumer;
+
+	/**
+	 * Constructs a new ring buffer.
+	 *
+	 * @param capacity Minimum capacity of the buffer, in bytes. The actual
+	 *            capacity is rounded up to a whole number of frames.
+	 * @param frameSize Number of bytes in each frame.
+	 */
+	public AudioRingBuffer(int capacity, int frameSize)
+	{
+		if (frameSize <= 0)
+		{
+			throw new IllegalArgumentException("frameSize: " + frameSize);
+		}
+		if (capacity < frameSize)
+		{
+			throw new IllegalArgumentException("capacity: " + capacity);
+		}
+
+		this.frameSize = frameSize;
+		buffer = new byte[(capacity + frameSize - 1) / frameSize * frameSize];
+		writePosition = new AtomicLong();
+		readPosition = new AtomicLong();
+		overrunCount = new AtomicLong();
+		closed = false;
+	}
+
+	/**
+	 * Returns the backing array of the buffer.
+	 *
+	 * @return Backing array.
+	 */
+	public byte[] array()
+	{
+		return buffer;
+	}
+
+	/**
+	 * Returns the number of bytes in each frame.
+	 *
+	 * @return Frame size.
+	 */
+	public int getFrameSize()
+	{
+		return frameSize;
+	}
+
+	/**
+	 * Returns the capacity of the buffer.
+	 *
+	 * @return Capacity, in bytes.
+	 */
+	public int getCapacity()
+	{
+		return buffer.length;
+	}
+
+	/**
+	 * Returns the number of bytes that can currently be read.
+	 *
+	 * @return Number of bytes in the buffer.
+	 */
+	public int available()
+	{
+		return (int) (writePosition.get() - readPosition.get());
+	}
+
+	/**
+	 * Returns the index in the backing array where the producer should write
+	 * the next frame.
+	 *
+	 * @return Write offset.
+	 */
+	public int getWriteOffset()
+	{
+		return (int) (writePosition.get() % buffer.length);
+	}
+
+	/**
+	 * Returns the number of bytes that the producer may write at the
+	 * {@link #getWriteOffset() write offset} without wrapping around.
+	 *
+	 * @return Number of contiguous free bytes.
+	 */
+	public int getWritableLength()
+	{
+		long write = writePosition.get();
+		int free = buffer.length - (int) (write - readPosition.get());
+		return Math.min(free, buffer.length - (int) (write % buffer.length));
+	}
+
+	/**
+	 * Makes the given number of bytes, written by the producer at the write
+	 * offset, available to the consumer.
+	 *
+	 * @param length Number of bytes written.
+	 *
+	 * @throws IllegalArgumentException if the length isn't a whole number of
+	 *             frames, or exceeds the writable length.
+	 */
+	public void commitWrite(int length)
+	{
+		if ((length < 0) || (length % frameSize != 0)
+		        || (length > getWritableLength()))
+		{
+			throw new IllegalArgumentException("length: " + length);
+		}
+
+		writePosition.lazySet(writePosition.get() + length);
+
+		Thread waiting = consumer;
+		if (waiting != null)
+		{
+			LockSupport.unpark(waiting);
+		}
+	}
+
+	/**
+	 * Records that the producer dropped the given number of frames, because
+	 * the buffer was full.
+	 *
+	 * @param frames Number of dropped frames.
+	 */
+	public void addOverrun(long frames)
+	{
+		overrunCount.addAndGet(frames);
+	}
+
+	/**
+	 * Returns the number of frames that were dropped because the consumer
+	 * didn't keep up with the producer.
+	 *
+	 * @return Number of dropped frames.
+	 */
+	public long getOverrunCount()
+	{
+		return overrunCount.get();
+	}
+
+	/**
+	 * Returns the index in the backing array where the consumer should read
+	 * the next frame.
+	 *
+	 * @return Read offset.
+	 */
+	public int getReadOffset()
+	{
+		return (int) (readPosition.get() % buffer.length);
+	}
+
+	/**
+	 * Returns the number of bytes that the consumer may read at the
+	 * {@link #getReadOffset() read offset} without wrapping around.
+	 *
+	 * @return Number of contiguous readable bytes.
+	 */
+	public int getReadableLength()
+	{
+		long read = readPosition.get();
+		int readable = (int) (writePosition.get() - read);
+		return Math.min(readable, buffer.length - (int) (read % buffer.length));
+	}
+
+	/**
+	 * Releases the given number of bytes, read by the consumer at the read
+	 * offset, to be overwritten by the producer.
+	 *
+	 * @param length Number of bytes read.
+	 *
+	 * @throws IllegalArgumentException if the length exceeds the readable
+	 *             length.
+	 */
+	public void commitRead(int length)
+	{
+		if ((length < 0) || (length > getReadableLength()))
+		{
+			throw new IllegalArgumentException("length: " + length);
+		}
+
+		readPosition.lazySet(readPosition.get() + length);
+	}
+
+	/**
+	 * Indicates that no more data will be written to the buffer. Data that
+	 * was already written can still be read.
+	 */
+	public void close()
+	{
+		closed = true;
+
+		Thread waiting = consumer;
+		if (waiting != null)
+		{
+			LockSupport.unpark(waiting);
+		}
+	}
+
+	/**
+	 * Returns whether the buffer is closed.
+	 *
+	 * @return Whether the buffer is closed.
+	 */
+	public boolean isClosed()
+	{
+		return closed;
+	}
+
+	/**
+	 * Waits until data is available to the consumer, or until the buffer is
+	 * closed.
+	 *
+	 * @return {@code true} if data is available; {@code false} if the buffer
+	 *         is closed and all data has been read.
+	 *
+	 * @throws InterruptedIOException if the current thread is interrupted
+	 *             while waiting.
+	 */
+	public boolean awaitData() throws InterruptedIOException
+	{
+		consumer = Thread.currentThread();
+		try
+		{
+			while (available() == 0)
+			{
+				if (closed)
+				{
+					/*
+					 * Data may have been committed right before closing.
+					 */
+					return available() > 0;
+				}
+
+				LockSupport.parkNanos(this, WAIT_TIMEOUT);
+
+				if (Thread.interrupted())
+				{
+					throw new InterruptedIOException();
+				}
+			}
+			return true;
+		}
+		finally
+		{
+			consumer = null;
+		}
+	}
+
+	/**
+	 * Discards the given number of bytes from the buffer, waiting for data to
+	 * become available if needed.
+	 *
+	 * @param length Number of bytes to discard.
+	 *
+	 * @return Number of bytes discarded, which is less than the given length
+	 *         only if the buffer was closed.
+	 *
+	 * @throws InterruptedIOException if the current thread is interrupted
+	 *             while waiting.
+	 */
+	public long skip(long length) throws InterruptedIOException
+	{
+		long remaining = length;
+		while ((remaining > 0) && awaitData())
+		{
+			int skipped = (int) Math.min(remaining, getReadableLength());
+			commitRead(skipped);
+			remaining -= skipped;
+		}
+		return length - remaining;
+	}
+
+	/**
+	 * Writes all data from the buffer to the given output stream in blocks,
+	 * until the buffer is closed and all data has been read. The output
+	 * stream is not closed.
+	 *
+	 * @param out Output stream to write to.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void drainTo(OutputStream out) throws IOException
+	{
+		while (awaitData())
+		{
+			int length = getReadableLength();
+			out.write(buffer, getReadOffset(), length);
+			commitRead(length);
+		}
+		out.flush();
+	}
+}
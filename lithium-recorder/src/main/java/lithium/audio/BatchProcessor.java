@@ -0,0 +1,566 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.sound.sampled.*;
+
+import lithium.*;
+import lithium.RecorderConfig.*;
+
+/**
+ * Processes existing wave files using the same normalization and encoding as
+ * the recorder, e.g. to reprocess recordings with different settings. Files
+ * are read using memory-mapped I/O and processed in parallel, by a fixed
+ * number of worker threads.
+ *
+ * @author Gerrit Meinders
+ */
+public class BatchProcessor
+{
+	/**
+	 * Maximum size of each memory-mapped region of an input file.
+	 */
+	private static final int MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * Number of bytes passed to the output stream at once, between updates of
+	 * the progress counters.
+	 */
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	/**
+	 * Time between progress reports, in milliseconds.
+	 */
+	private static final long REPORT_INTERVAL = 1000;
+
+	private final Recorder recorder;
+
+	private final EncodingFormat encodingFormat;
+
+	private final int threads;
+
+	/**
+	 * Number of bytes of input read so far.
+	 */
+	private final AtomicLong processedBytes;
+
+	/**
+	 * Duration of the audio processed so far, in microseconds.
+	 */
+	private final AtomicLong processedAudio;
+
+	private final AtomicInteger completedFiles;
+
+	/**
+	 * Constructs a new batch processor.
+	 *
+	 * @param config Configuration that specifies normalization and encoding
+	 *            settings, as for recording.
+	 * @param threads Number of files to process at the same time.
+	 */
+	public BatchProcessor(Config config, int threads)
+	{
+		if (threads <= 0)
+		{
+			throw new IllegalArgumentException("threads: " + threads);
+		}
+
+		recorder = new Recorder(config);
+
+		EncodingFormat encodingFormat = config.getRecorderConfig().getEncodingFormat();
+		this.encodingFormat = (encodingFormat == null) ? new EncodingFormat.Wave()
+		        : encodingFormat;
+		this.threads = threads;
+
+		processedBytes = new AtomicLong();
+		processedAudio = new AtomicLong();
+		completedFiles = new AtomicInteger();
+	}
+
+	/**
+	 * Processes all wave files in a folder.
+	 *
+	 * <pre>
+	 * --batch [--threads=N] source-folder [target-folder]
+	 * </pre>
+	 *
+	 * By default, results are written to a folder named 'normalized' within
+	 * the source folder.
+	 *
+	 * @param args Command-line arguments.
+	 */
+	public static void main(String[] args)
+	{
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<String> folders = new ArrayList<String>();
+		for (String argument : args)
+		{
+			if (argument.startsWith("--threads="))
+			{
+				try
+				{
+					threads = Integer.parseInt(argument.substring("--threads=".length()));
+				}
+				catch (NumberFormatException e)
+				{
+					threads = 0;
+				}
+			}
+			else
+			{
+				folders.add(argument);
+			}
+		}
+
+		if (folders.isEmpty() || (folders.size() > 2) || (threads <= 0))
+		{
+			System.err.println("Usage: --batch [--threads=N] source-folder [target-folder]");
+			System.exit(1);
+			return;
+		}
+
+		File sourceFolder = new File(folders.get(0));
+		File targetFolder = (folders.size() == 2) ? new File(folders.get(1))
+		        : new File(sourceFolder, "normalized");
+
+		File[] sources = sourceFolder.listFiles(new FileFilter()
+		{
+			public boolean accept(File file)
+			{
+				return file.isFile()
+				        && file.getName().toLowerCase().endsWith(".wav");
+			}
+		});
+		if (sources == null)
+		{
+			System.err.println("Not a folder: " + sourceFolder);
+			System.exit(1);
+			return;
+		}
+		Arrays.sort(sources);
+
+		Config config;
+		if (ConfigManager.readConfig())
+		{
+			config = ConfigManager.getConfig();
+		}
+		else
+		{
+			config = Config.createDefaultConfig();
+		}
+
+		int failed;
+		try
+		{
+			BatchProcessor processor = new BatchProcessor(config, threads);
+			failed = processor.process(Arrays.asList(sources), targetFolder);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			failed = 1;
+		}
+
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Processes the given wave files, reporting progress while doing so.
+	 *
+	 * @param sources Wave files to be processed.
+	 * @param targetFolder Folder to write the results to.
+	 *
+	 * @return Number of files that could not be processed.
+	 *
+	 * @throws IOException if the target folder can't be created.
+	 * @throws InterruptedException if the current thread is interrupted while
+	 *             waiting for the files to be processed.
+	 */
+	public int process(List<File> sources, File targetFolder)
+	        throws IOException, InterruptedException
+	{
+		if (!targetFolder.isDirectory() && !targetFolder.mkdirs())
+		{
+			throw new IOException("Failed to create folder: " + targetFolder);
+		}
+
+		processedBytes.set(0);
+		processedAudio.set(0);
+		completedFiles.set(0);
+
+		long totalBytes = 0;
+		for (File source : sources)
+		{
+			totalBytes += source.length();
+		}
+
+		System.out.println("Processing " + sources.size() + " files using "
+		        + threads + " threads");
+
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		try
+		{
+			for (File source : sources)
+			{
+				File target = new File(targetFolder, getTargetName(source));
+				results.add(executor.submit(new Job(source, target)));
+			}
+			executor.shutdown();
+
+			while (!executor.awaitTermination(REPORT_INTERVAL,
+			        TimeUnit.MILLISECONDS))
+			{
+				report(sources.size(), totalBytes, System.nanoTime() - start);
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		report(sources.size(), totalBytes, System.nanoTime() - start);
+
+		int failed = 0;
+		for (int i = 0; i < results.size(); i++)
+		{
+			try
+			{
+				results.get(i).get();
+			}
+			catch (ExecutionException e)
+			{
+				failed++;
+				System.err.println("Failed to process " + sources.get(i) + ": "
+				        + e.getCause());
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Returns the name of the file that the given file is processed into.
+	 */
+	private String getTargetName(File source)
+	{
+		String name = source.getName();
+		int extension = name.lastIndexOf('.');
+		if (extension != -1)
+		{
+			name = name.substring(0, extension);
+		}
+		return name + encodingFormat.getExtension();
+	}
+
+	/**
+	 * Prints the current progress and throughput.
+	 *
+	 * @param totalFiles Number of files being processed.
+	 * @param totalBytes Total size of the files being processed.
+	 * @param elapsed Time elapsed since processing started, in nanoseconds.
+	 */
+	private void report(int totalFiles, long totalBytes, long elapsed)
+	{
+		long bytes = processedBytes.get();
+		double seconds = Math.max(elapsed, 1) / 1000000000.0;
+		double megabytes = bytes / (1024.0 * 1024.0);
+
+		System.out.println(String.format(Locale.US,
+		        "%d/%d files, %.1f of %.1f MB (%.0f%%), %.1f MB/s, %.1fx real-time",
+		        completedFiles.get(), totalFiles, megabytes,
+		        totalBytes / (1024.0 * 1024.0),
+		        (totalBytes == 0) ? 100.0 : 100.0 * bytes / totalBytes,
+		        megabytes / seconds, processedAudio.get() / 1000000.0
+		                / seconds));
+	}
+
+	/**
+	 * Processes a single file.
+	 */
+	private class Job
+	implements Callable<Void>
+	{
+		private final File source;
+
+		private final File target;
+
+		Job(File source, File target)
+		{
+			this.source = source;
+			this.target = target;
+		}
+
+		public Void call() throws IOException
+		{
+			if (source.getCanonicalFile().equals(target.getCanonicalFile()))
+			{
+				throw new IOException("Target is the same as the source: "
+				        + target);
+			}
+
+			FileInputStream in = new FileInputStream(source);
+			try
+			{
+				FileChannel channel = in.getChannel();
+				WaveHeader header = new WaveHeader(channel);
+				AudioFormat audioFormat = header.getFormat();
+
+				OutputStream fileOut = recorder.createFileOutput(target,
+				        audioFormat, encodingFormat);
+				FilterAudioOutputStream out = null;
+				try
+				{
+					out = recorder.createOutput(fileOut, audioFormat,
+					        encodingFormat);
+					copy(channel, header.getDataOffset(),
+					        header.getDataLength(), out,
+					        audioFormat.getFrameSize()
+					                * (double) audioFormat.getFrameRate());
+				}
+				finally
+				{
+					if (out == null)
+					{
+						fileOut.close();
+					}
+					else
+					{
+						out.close();
+					}
+				}
+
+				processedBytes.addAndGet(source.length()
+				        - header.getDataLength());
+			}
+			finally
+			{
+				in.close();
+			}
+
+			completedFiles.incrementAndGet();
+			return null;
+		}
+
+		/**
+		 * Writes the given part of a file to the output stream, one mapped
+		 * region at a time. Each region is passed to the output stream as a
+		 * buffer, such that samples are decoded straight from the mapped
+		 * memory.
+		 *
+		 * @param channel File to read from.
+		 * @param offset Position of the first byte to be written.
+		 * @param length Number of bytes to be written.
+		 * @param out Output stream to write to.
+		 * @param byteRate Number of bytes per second of audio.
+		 */
+		private void copy(FileChannel channel, long offset, long length,
+		        FilterAudioOutputStream out, double byteRate)
+		        throws IOException
+		{
+			long end = offset + length;
+			for (long position = offset; position < end; position += MAPPED_REGION_SIZE)
+			{
+				MappedByteBuffer region = channel.map(
+				        FileChannel.MapMode.READ_ONLY, position,
+				        Math.min(MAPPED_REGION_SIZE, end - position));
+				int regionEnd = region.limit();
+				while (region.hasRemaining())
+				{
+					int blockLength = Math.min(BLOCK_SIZE, region.remaining());
+					region.limit(region.position() + blockLength);
+					out.write(region);
+					region.limit(regionEnd);
+
+					processedBytes.addAndGet(blockLength);
+					processedAudio.addAndGet((long) (blockLength * 1000000.0 / byteRate));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Locates the format and data chunks of a wave file. Both standard and
+	 * RF64 files are supported. If the size of the data chunk is zero or
+	 * exceeds the file, as for an interrupted recording, the data is assumed
+	 * to extend to the end of the file.
+	 */
+	static class WaveHeader
+	{
+		private static final int CHUNK_HEADER_SIZE = 8;
+
+		private AudioFormat format;
+
+		private long dataOffset;
+
+		private long dataLength;
+
+		/**
+		 * Reads the header of the given wave file.
+		 *
+		 * @param channel File to read from.
+		 *
+		 * @throws IOException if the file can't be read or isn't a PCM wave
+		 *             file.
+		 */
+		WaveHeader(FileChannel channel)
+		        throws IOException
+		{
+			long fileSize = channel.size();
+			ByteBuffer buffer = ByteBuffer.allocate(28);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			read(channel, buffer, 0, 12);
+			String riffId = getId(buffer);
+			buffer.getInt();
+			if (!("RIFF".equals(riffId) || "RF64".equals(riffId))
+			        || !"WAVE".equals(getId(buffer)))
+			{
+				throw new IOException("Not a wave file");
+			}
+
+			long rf64DataSize = -1;
+			long position = 12;
+			while (position + CHUNK_HEADER_SIZE <= fileSize)
+			{
+				read(channel, buffer, position, CHUNK_HEADER_SIZE);
+				String id = getId(buffer);
+				long size = buffer.getInt() & 0xffffffffL;
+				position += CHUNK_HEADER_SIZE;
+
+				if ("ds64".equals(id))
+				{
+					read(channel, buffer, position, 16);
+					buffer.getLong(); // RIFF size
+					rf64DataSize = buffer.getLong();
+				}
+				else if ("fmt ".equals(id))
+				{
+					read(channel, buffer, position, 16);
+					int formatTag = buffer.getShort() & 0xffff;
+					int channels = buffer.getShort() & 0xffff;
+					int sampleRate = buffer.getInt();
+					buffer.getInt(); // byte rate
+					int blockAlign = buffer.getShort() & 0xffff;
+					int bitsPerSample = buffer.getShort() & 0xffff;
+
+					// WAVE_FORMAT_PCM or WAVE_FORMAT_EXTENSIBLE
+					if ((formatTag != 1) && (formatTag != 0xfffe))
+					{
+						throw new IOException("Unsupported wave format: "
+						        + formatTag);
+					}
+
+					format = new AudioFormat(
+					        (bitsPerSample == 8) ? AudioFormat.Encoding.PCM_UNSIGNED
+					                : AudioFormat.Encoding.PCM_SIGNED,
+					        sampleRate, bitsPerSample, channels, blockAlign,
+					        sampleRate, false);
+				}
+				else if ("data".equals(id))
+				{
+					if ((size == 0xffffffffL) && (rf64DataSize != -1))
+					{
+						size = rf64DataSize;
+					}
+					dataOffset = position;
+					dataLength = fileSize - position;
+					if (size != 0)
+					{
+						dataLength = Math.min(size, dataLength);
+					}
+					break;
+				}
+
+				position += size + (size % 2);
+			}
+
+			if (format == null)
+			{
+				throw new IOException("Missing format chunk");
+			}
+			if (dataOffset == 0)
+			{
+				throw new IOException("Missing data chunk");
+			}
+
+			dataLength -= dataLength % format.getFrameSize();
+		}
+
+		private static void read(FileChannel channel, ByteBuffer buffer,
+		        long position, int length)
+		        throws IOException
+		{
+			buffer.clear();
+			buffer.limit(length);
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer, position + buffer.position()) == -1)
+				{
+					throw new EOFException();
+				}
+			}
+			buffer.flip();
+		}
+
+		private static String getId(ByteBuffer buffer)
+		{
+			char[] id = new char[4];
+			for (int i = 0; i < id.length; i++)
+			{
+				id[i] = (char) buffer.get();
+			}
+			return new String(id);
+		}
+
+		/**
+		 * Returns the format of the audio in the file.
+		 *
+		 * @return Audio format.
+		 */
+		public AudioFormat getFormat()
+		{
+			return format;
+		}
+
+		/**
+		 * Returns the position of the first audio byte in the file.
+		 *
+		 * @return Position of the audio data.
+		 */
+		public long getDataOffset()
+		{
+			return dataOffset;
+		}
+
+		/**
+		 * Returns the length of the audio data, in whole frames.
+		 *
+		 * @return Length of the audio data, in bytes.
+		 */
+		public long getDataLength()
+		{
+			return dataLength;
+		}
+	}
+}
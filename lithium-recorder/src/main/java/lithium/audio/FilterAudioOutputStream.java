@@ -18,6 +18,7 @@
 package lithium.audio;
 
 import java.io.*;
+import java.nio.*;
 import javax.sound.sampled.*;
 
 import lithium.*;
@@ -28,6 +29,13 @@ import lithium.*;
  * {@link #writeSample(int)} method to do whather processing is needed before
  * actually writing the sample.
  *
+ * <p>
+ * Data written in blocks, using {@link #write(byte[], int, int)} or
+ * {@link #write(ByteBuffer)}, is decoded into a reusable sample buffer and passed to {@link #writeSamples} instead.
+ * Sub-classes that override {@link #writeSample(int)} should override
+ * {@link #writeSamples} as well, such that both methods process samples in the
+ * same way.
+ *
  * @author Gerrit Meinders
  */
 public abstract class FilterAudioOutputStream extends FilterOutputStream
@@ -37,6 +45,22 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 	 */
 	protected final SampleFormat sampleFormat;
 
+	/**
+	 * Maximum number of samples decoded and processed at once by
+	 * {@link #write(byte[], int, int)}.
+	 */
+	private static final int BLOCK_SIZE = 4096;
+
+	/**
+	 * Buffer that written data is decoded into.
+	 */
+	private final int[] sampleBuffer;
+
+	/**
+	 * Buffer that processed samples are encoded into.
+	 */
+	private final byte[] encodeBuffer;
+
 	/**
 	 * Constructs a new normalizing output stream for data in the specified
 	 * audio format.
@@ -51,6 +75,8 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 		super(out);
 
 		sampleFormat = getSampleFormat(format);
+		sampleBuffer = new int[BLOCK_SIZE];
+		encodeBuffer = new byte[BLOCK_SIZE * sampleFormat.getSampleSize()];
 	}
 
 	@Override
@@ -62,6 +88,90 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 		}
 	}
 
+	@Override
+	public final void write(byte[] b, int off, int len) throws IOException
+	{
+		if ((off | len | (off + len) | (b.length - (off + len))) < 0)
+		{
+			throw new IndexOutOfBoundsException();
+		}
+
+		int end = off + len;
+		int position = off;
+
+		/*
+		 * Complete any sample that was partially written before.
+		 */
+		while ((position < end) && sampleFormat.isPartial())
+		{
+			write(b[position++] & 0xff);
+		}
+
+		/*
+		 * Decode and process whole samples in blocks.
+		 */
+		int sampleSize = sampleFormat.getSampleSize();
+		int sampleCount = (end - position) / sampleSize;
+		while (sampleCount > 0)
+		{
+			int blockSize = Math.min(sampleCount, BLOCK_SIZE);
+			sampleFormat.decode(b, position, sampleBuffer, 0, blockSize);
+			writeSamples(sampleBuffer, 0, blockSize);
+			position += blockSize * sampleSize;
+			sampleCount -= blockSize;
+		}
+
+		/*
+		 * Keep any remaining bytes of an incomplete sample.
+		 */
+		while (position < end)
+		{
+			write(b[position++] & 0xff);
+		}
+	}
+
+	/**
+	 * Writes the remaining bytes of the given buffer to this output stream.
+	 * Samples are decoded directly from the buffer, without first copying its
+	 * contents to an array. This is particularly useful for memory-mapped
+	 * files. When this method returns, the buffer's position is equal to its
+	 * limit.
+	 *
+	 * @param source Buffer containing the data to be written.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public final void write(ByteBuffer source) throws IOException
+	{
+		/*
+		 * Complete any sample that was partially written before.
+		 */
+		while (source.hasRemaining() && sampleFormat.isPartial())
+		{
+			write(source.get() & 0xff);
+		}
+
+		/*
+		 * Decode and process whole samples in blocks.
+		 */
+		int sampleCount = source.remaining() / sampleFormat.getSampleSize();
+		while (sampleCount > 0)
+		{
+			int blockSize = Math.min(sampleCount, BLOCK_SIZE);
+			sampleFormat.decode(source, sampleBuffer, 0, blockSize);
+			writeSamples(sampleBuffer, 0, blockSize);
+			sampleCount -= blockSize;
+		}
+
+		/*
+		 * Keep any remaining bytes of an incomplete sample.
+		 */
+		while (source.hasRemaining())
+		{
+			write(source.get() & 0xff);
+		}
+	}
+
 	/**
 	 * Writes the given sample to the underlying output stream, possibly after
 	 * processing it. The sample need not be written immediately, to allow for
@@ -80,6 +190,36 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 		sampleFormat.write(out, sample);
 	}
 
+	/**
+	 * Writes the given samples to the underlying output stream, possibly after
+	 * processing them. This is the block equivalent of
+	 * {@link #writeSample(int)}. Implementations may modify the contents of
+	 * the given array within the specified range.
+	 *
+	 * <p>
+	 * The implementation in {@link FilterAudioOutputStream} encodes the
+	 * samples as is and writes them to the underlying output stream at once.
+	 *
+	 * @param samples Array containing the samples to be written.
+	 * @param offset Index of the first sample to be written.
+	 * @param length Number of samples to be written.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	protected void writeSamples(int[] samples, int offset, int length)
+	        throws IOException
+	{
+		int sampleSize = sampleFormat.getSampleSize();
+		while (length > 0)
+		{
+			int blockSize = Math.min(length, BLOCK_SIZE);
+			sampleFormat.encode(samples, offset, blockSize, encodeBuffer, 0);
+			out.write(encodeBuffer, 0, blockSize * sampleSize);
+			offset += blockSize;
+			length -= blockSize;
+		}
+	}
+
 	/**
 	 * Returns the sample format for the given audio format.
 	 *
@@ -111,6 +251,18 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 				        "format: unsupported sample size");
 			}
 		}
+		else if (format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED)
+		{
+			if (format.getSampleSizeInBits() == 8)
+			{
+				return new PCM8U();
+			}
+			else
+			{
+				throw new IllegalArgumentException(
+				        "format: unsupported sample size");
+			}
+		}
 		else
 		{
 			throw new IllegalArgumentException("format: unsupported encoding");
@@ -159,6 +311,66 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 		 */
 		void write(OutputStream out, int sample) throws IOException;
 
+		/**
+		 * Returns the number of bytes used to encode a single sample.
+		 *
+		 * @return Sample size, in bytes.
+		 */
+		int getSampleSize();
+
+		/**
+		 * Returns whether bytes were passed to {@link #update} that do not
+		 * yet form a complete sample.
+		 *
+		 * @return Whether the current sample is incomplete.
+		 */
+		boolean isPartial();
+
+		/**
+		 * Decodes samples from the given data. The data must start at a
+		 * sample boundary. The current sample, as used by {@link #get} and
+		 * {@link #update}, is not affected.
+		 *
+		 * @param source Data to be decoded.
+		 * @param sourceOffset Index of the first byte to be decoded.
+		 * @param samples Array to store the decoded samples in.
+		 * @param offset Index in {@code samples} of the first decoded
+		 *            sample.
+		 * @param length Number of samples to be decoded.
+		 */
+		void decode(byte[] source, int sourceOffset, int[] samples,
+		        int offset, int length);
+
+		/**
+		 * Decodes samples from the given buffer, starting at its current
+		 * position, which must be at a sample boundary. The position of the
+		 * buffer is advanced past the decoded samples. The current sample, as
+		 * used by {@link #get} and {@link #update}, is not affected.
+		 *
+		 * @param source Buffer to be decoded.
+		 * @param samples Array to store the decoded samples in.
+		 * @param offset Index in {@code samples} of the first decoded
+		 *            sample.
+		 * @param length Number of samples to be decoded.
+		 */
+		void decode(ByteBuffer source, int[] samples, int offset, int length);
+
+		/**
+		 * Encodes samples to this sample format.
+		 *
+		 * @param samples Samples to be encoded.
+		 * @param offset Index of the first sample to be encoded.
+		 * @param length Number of samples to be encoded.
+		 * @param target Array to store the encoded data in.
+		 * @param targetOffset Index in {@code target} of the first encoded
+		 *            byte.
+		 *
+		 * @throws IllegalArgumentException if any of the samples is invalid
+		 *             for this sample format.
+		 */
+		void encode(int[] samples, int offset, int length, byte[] target,
+		        int targetOffset);
+
 		/**
 		 * Returns the maximum amplitude that can be expressed using this sample
 		 * format, which is always a positive value. If the maximum amplitude
@@ -198,6 +410,18 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 			return buffer;
 		}
 
+		@Override
+		public int getSampleSize()
+		{
+			return 2;
+		}
+
+		@Override
+		public boolean isPartial()
+		{
+			return !complete;
+		}
+
 		@Override
 		public int getMaximumAmplitude()
 		{
@@ -238,6 +462,46 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 			out.write(sample);
 			out.write(sample >> 8);
 		}
+
+		@Override
+		public void decode(byte[] source, int sourceOffset, int[] samples,
+		        int offset, int length)
+		{
+			int end = offset + length;
+			for (int i = offset, j = sourceOffset; i < end; i++, j += 2)
+			{
+				samples[i] = (source[j + 1] << 8) | (source[j] & 0xff);
+			}
+		}
+
+		@Override
+		public void decode(ByteBuffer source, int[] samples, int offset,
+		        int length)
+		{
+			int end = offset + length;
+			for (int i = offset; i < end; i++)
+			{
+				int low = source.get() & 0xff;
+				samples[i] = (source.get() << 8) | low;
+			}
+		}
+
+		@Override
+		public void encode(int[] samples, int offset, int length,
+		        byte[] target, int targetOffset)
+		{
+			int end = offset + length;
+			for (int i = offset, j = targetOffset; i < end; i++, j += 2)
+			{
+				int sample = samples[i];
+				if (sample >= 0x8000 || sample < -0x8000)
+				{
+					throw new IllegalArgumentException("sample: " + sample);
+				}
+				target[j] = (byte) sample;
+				target[j + 1] = (byte) (sample >> 8);
+			}
+		}
 	}
 
 	/**
@@ -265,6 +529,46 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 			out.write(sample >> 8);
 			out.write(sample);
 		}
+
+		@Override
+		public void decode(byte[] source, int sourceOffset, int[] samples,
+		        int offset, int length)
+		{
+			int end = offset + length;
+			for (int i = offset, j = sourceOffset; i < end; i++, j += 2)
+			{
+				samples[i] = (source[j] << 8) | (source[j + 1] & 0xff);
+			}
+		}
+
+		@Override
+		public void decode(ByteBuffer source, int[] samples, int offset,
+		        int length)
+		{
+			int end = offset + length;
+			for (int i = offset; i < end; i++)
+			{
+				int high = source.get() << 8;
+				samples[i] = high | (source.get() & 0xff);
+			}
+		}
+
+		@Override
+		public void encode(int[] samples, int offset, int length,
+		        byte[] target, int targetOffset)
+		{
+			int end = offset + length;
+			for (int i = offset, j = targetOffset; i < end; i++, j += 2)
+			{
+				int sample = samples[i];
+				if (sample >= 0x8000 || sample < -0x8000)
+				{
+					throw new IllegalArgumentException("sample: " + sample);
+				}
+				target[j] = (byte) (sample >> 8);
+				target[j + 1] = (byte) sample;
+			}
+		}
 	}
 
 	/**
@@ -285,7 +589,7 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 		@Override
 		public boolean update(int b)
 		{
-			buffer = b;
+			buffer = (byte) b;
 			return true;
 		}
 
@@ -299,6 +603,56 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 			out.write(sample);
 		}
 
+		@Override
+		public int getSampleSize()
+		{
+			return 1;
+		}
+
+		@Override
+		public boolean isPartial()
+		{
+			return false;
+		}
+
+		@Override
+		public void decode(byte[] source, int sourceOffset, int[] samples,
+		        int offset, int length)
+		{
+			int end = offset + length;
+			for (int i = offset, j = sourceOffset; i < end; i++, j++)
+			{
+				samples[i] = source[j];
+			}
+		}
+
+		@Override
+		public void decode(ByteBuffer source, int[] samples, int offset,
+		        int length)
+		{
+			int end = offset + length;
+			for (int i = offset; i < end; i++)
+			{
+				samples[i] = source.get();
+			}
+		}
+
+		@Override
+		public void encode(int[] samples, int offset, int length,
+		        byte[] target, int targetOffset)
+		{
+			int end = offset + length;
+			for (int i = offset, j = targetOffset; i < end; i++, j++)
+			{
+				int sample = samples[i];
+				if (sample >= 0x80 || sample < -0x80)
+				{
+					throw new IllegalArgumentException("sample: " + sample);
+				}
+				target[j] = (byte) sample;
+			}
+		}
+
 		@Override
 		public int getMaximumAmplitude()
 		{
@@ -313,6 +667,70 @@ public abstract class FilterAudioOutputStream extends FilterOutputStream
 		}
 	}
 
+	/**
+	 * Uncompressed audio (PCM), 8-bit unsigned, as used by 8-bit WAV files.
+	 * Samples are offset by {@code 0x80}, such that they are signed once
+	 * decoded, like those of every other sample format.
+	 *
+		 * @author Gerrit Meinders
+	 */
+	private static class PCM8U extends PCM8
+	{
+		@Override
+		public boolean update(int b)
+		{
+			return super.update(b ^ 0x80);
+		}
+
+		@Override
+		public void write(OutputStream out, int sample) throws IOException
+		{
+			if (sample >= 0x80 || sample < -0x80)
+			{
+				throw new IllegalArgumentException("sample: " + sample);
+			}
+			out.write(sample ^ 0x80);
+		}
+
+		@Override
+		public void decode(byte[] source, int sourceOffset, int[] samples,
+		        int offset, int length)
+		{
+			int end = offset + length;
+			for (int i = offset, j = sourceOffset; i < end; i++, j++)
+			{
+				samples[i] = (source[j] & 0xff) - 0x80;
+			}
+		}
+
+		@Override
+		public void decode(ByteBuffer source, int[] samples, int offset,
+		        int length)
+		{
+			int end = offset + length;
+			for (int i = offset; i < end; i++)
+			{
+				samples[i] = (source.get() & 0xff) - 0x80;
+			}
+		}
+
+		@Override
+		public void encode(int[] samples, int offset, int length,
+		        byte[] target, int targetOffset)
+		{
+			int end = offset + length;
+			for (int i = offset, j = targetOffset; i < end; i++, j++)
+			{
+				int sample = samples[i];
+				if (sample >= 0x80 || sample < -0x80)
+				{
+					throw new IllegalArgumentException("sample: " + sample);
+				}
+				target[j] = (byte) (sample + 0x80);
+			}
+		}
+	}
+
 	/**
 	 * Writes state information about the object to the given log.
 	 *
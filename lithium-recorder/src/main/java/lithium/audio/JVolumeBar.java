@@ -110,6 +110,25 @@ public class JVolumeBar extends JComponent {
 		gains[channel] = gain;
 	}
 
+	/**
+	 * Sets the amplitude and gain of all channels at once, from the given
+	 * snapshot of audio levels. Channels beyond those shown by this component
+	 * are ignored.
+	 *
+	 * @param snapshot Audio levels to be shown.
+	 */
+	public void setLevels(AudioMeter.Snapshot snapshot) {
+		int count = Math.min(channels, snapshot.getChannels());
+		for (int i = 0; i < count; i++) {
+			double amplitude = snapshot.getPeak(i);
+			amplitudes[i] = Math.max(amplitudes[i] * 0.9, amplitude);
+			peaks[i] = Math.max(peaks[i] * 0.99, amplitude);
+			gains[i] = snapshot.getGain(i);
+		}
+
+		repaint();
+	}
+
 	public void clear() {
 		for (int i = 0; i < amplitudes.length; i++) {
 			amplitudes[i] = 0.0;
@@ -0,0 +1,444 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.sound.sampled.*;
+
+/**
+ * Encodes an audio stream within the application, using a format conversion
+ * provided through the Java Sound API, and writes the result to the underlying
+ * output stream. This allows for MP3 encoding without starting a separate
+ * process, provided that a suitable service provider (e.g. Tritonus' LAME
+ * encoder) is available on the class path.
+ *
+ * <p>
+ * Written audio is collected into blocks, which are passed to a dedicated
+ * encoder thread through a bounded queue. When the encoder falls behind and
+ * all blocks are in use, writes block until a block is available again. The
+ * time that blocks spend waiting in the queue is measured, such that encoder
+ * latency can be monitored.
+ *
+ * @author Gerrit Meinders
+ */
+public class JavaSoundEncoderOutputStream extends FilterOutputStream {
+	/**
+	 * Default size of each block, in bytes.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 16384;
+
+	/**
+	 * Default number of blocks.
+	 */
+	public static final int DEFAULT_BLOCK_COUNT = 64;
+
+	/**
+	 * Blocks that may be filled with audio to be encoded.
+	 */
+	private final BlockingQueue<Block> freeBlocks;
+
+	/**
+	 * Blocks filled with audio, waiting to be encoded.
+	 */
+	private final BlockingQueue<Block> queuedBlocks;
+
+	/**
+	 * Block currently being filled.
+	 */
+	private Block current;
+
+	private final Thread encoderThread;
+
+	/**
+	 * Exception or error thrown by the encoder thread, if any.
+	 */
+	private volatile Throwable encoderException;
+
+	private boolean closed;
+
+	/**
+	 * Number of blocks taken from the queue by the encoder.
+	 */
+	private final AtomicLong encodedBlocks;
+
+	/**
+	 * Total time that encoded blocks spent in the queue, in nanoseconds.
+	 */
+	private final AtomicLong totalLatency;
+
+	/**
+	 * Maximum time that any block spent in the queue, in nanoseconds.
+	 */
+	private final AtomicLong maximumLatency;
+
+	/**
+	 * Total time spent waiting for a free block, in nanoseconds.
+	 */
+	private long stallTime;
+
+	/**
+	 * Constructs a new encoder output stream using default buffer sizes.
+	 *
+	 * @param out Output stream to write encoded data to.
+	 * @param sourceFormat Format of the audio written to the stream.
+	 * @param targetFormat Format to encode the audio to.
+	 *
+	 * @throws IOException if the conversion is not supported.
+	 */
+	public JavaSoundEncoderOutputStream(OutputStream out,
+	        AudioFormat sourceFormat, AudioFormat targetFormat)
+	        throws IOException {
+		this(out, sourceFormat, targetFormat, DEFAULT_BLOCK_SIZE,
+		        DEFAULT_BLOCK_COUNT);
+	}
+
+	/**
+	 * Constructs a new encoder output stream.
+	 *
+	 * @param out Output stream to write encoded data to.
+	 * @param sourceFormat Format of the audio written to the stream.
+	 * @param targetFormat Format to encode the audio to.
+	 * @param blockSize Size of each block, in bytes.
+	 * @param blockCount Maximum number of blocks queued for encoding.
+	 *
+	 * @throws IOException if the conversion is not supported.
+	 */
+	public JavaSoundEncoderOutputStream(OutputStream out,
+	        AudioFormat sourceFormat, AudioFormat targetFormat, int blockSize,
+	        int blockCount) throws IOException {
+		super(out);
+
+		if (!isSupported(sourceFormat, targetFormat)) {
+			throw new IOException("Conversion not supported: " + sourceFormat
+			        + " to " + targetFormat);
+		}
+
+		freeBlocks = new ArrayBlockingQueue<Block>(blockCount);
+		queuedBlocks = new ArrayBlockingQueue<Block>(blockCount + 1);
+		for (int i = 0; i < blockCount; i++) {
+			freeBlocks.add(new Block(blockSize));
+		}
+
+		encodedBlocks = new AtomicLong();
+		totalLatency = new AtomicLong();
+		maximumLatency = new AtomicLong();
+
+		AudioInputStream source = new AudioInputStream(new QueueInputStream(),
+		        sourceFormat, AudioSystem.NOT_SPECIFIED);
+		AudioInputStream encoded = AudioSystem.getAudioInputStream(
+		        targetFormat, source);
+
+		encoderThread = new Thread(new Encoder(encoded), "Encoder");
+		encoderThread.start();
+	}
+
+	/**
+	 * Returns whether audio in the given source format can be encoded to the
+	 * given target format by any of the installed service providers.
+	 *
+	 * @param sourceFormat Format of the audio to be encoded.
+	 * @param targetFormat Format to encode the audio to.
+	 *
+	 * @return Whether the conversion is supported.
+	 */
+	public static boolean isSupported(AudioFormat sourceFormat,
+	        AudioFormat targetFormat) {
+		return AudioSystem.isConversionSupported(targetFormat, sourceFormat);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureBlock();
+		current.data[current.length++] = (byte) b;
+		if (current.length == current.data.length) {
+			submitBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			ensureBlock();
+			int length = Math.min(len, current.data.length - current.length);
+			System.arraycopy(b, off, current.data, current.length, length);
+			current.length += length;
+			off += length;
+			len -= length;
+
+			if (current.length == current.data.length) {
+				submitBlock();
+			}
+		}
+	}
+
+	/**
+	 * Passes any buffered audio to the encoder. The encoder may not have
+	 * processed the audio when this method returns.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if ((current != null) && (current.length > 0)) {
+			submitBlock();
+		}
+	}
+
+	/**
+	 * Encodes any remaining audio, waits for the encoder to finish and closes
+	 * the underlying output stream. The underlying stream is closed even if
+	 * the encoder failed, in which case the cause is thrown afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			try {
+				flush();
+				queuedBlocks.put(Block.END);
+				encoderThread.join();
+			} catch (InterruptedException e) {
+				encoderThread.interrupt();
+				throw new InterruptedIOException();
+			}
+
+			checkEncoder();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the number of blocks of audio passed to the encoder so far.
+	 *
+	 * @return Number of encoded blocks.
+	 */
+	public long getEncodedBlockCount() {
+		return encodedBlocks.get();
+	}
+
+	/**
+	 * Returns the average time that blocks of audio have been waiting to be
+	 * encoded.
+	 *
+	 * @return Average latency, in milliseconds.
+	 */
+	public double getAverageLatency() {
+		long blocks = encodedBlocks.get();
+		return (blocks == 0) ? 0.0 : totalLatency.get() / 1000000.0 / blocks;
+	}
+
+	/**
+	 * Returns the longest time that any block of audio has been waiting to be
+	 * encoded.
+	 *
+	 * @return Maximum latency, in milliseconds.
+	 */
+	public double getMaximumLatency() {
+		return maximumLatency.get() / 1000000.0;
+	}
+
+	/**
+	 * Returns the number of blocks of audio currently waiting to be encoded.
+	 *
+	 * @return Number of queued blocks.
+	 */
+	public int getQueuedBlockCount() {
+		return queuedBlocks.size();
+	}
+
+	/**
+	 * Returns the total time that writes to this stream were blocked, because
+	 * the encoder couldn't keep up.
+	 *
+	 * @return Stall time, in milliseconds.
+	 */
+	public long getStallTime() {
+		return stallTime / 1000000L;
+	}
+
+	/**
+	 * Ensures that there is a block available to write to, waiting for the
+	 * encoder if needed.
+	 */
+	private void ensureBlock() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		checkEncoder();
+
+		if (current == null) {
+			current = freeBlocks.poll();
+			if (current == null) {
+				long start = System.nanoTime();
+				try {
+					while (current == null) {
+						current = freeBlocks.poll(100, TimeUnit.MILLISECONDS);
+						checkEncoder();
+					}
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				} finally {
+					stallTime += System.nanoTime() - start;
+				}
+			}
+			current.length = 0;
+		}
+	}
+
+	/**
+	 * Passes the current block to the encoder.
+	 */
+	private void submitBlock() throws IOException {
+		current.timestamp = System.nanoTime();
+		try {
+			queuedBlocks.put(current);
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		current = null;
+	}
+
+	/**
+	 * Throws the exception that caused the encoder to fail, if any.
+	 */
+	private void checkEncoder() throws IOException {
+		Throwable exception = encoderException;
+		if (exception != null) {
+			throw new IOException("Encoder failed", exception);
+		}
+	}
+
+	/**
+	 * Block of audio data.
+	 */
+	private static class Block {
+		/**
+		 * Marks the end of the stream.
+		 */
+		static final Block END = new Block(0);
+
+		final byte[] data;
+
+		int length;
+
+		/**
+		 * Time when the block was queued, as given by
+		 * {@link System#nanoTime()}.
+		 */
+		long timestamp;
+
+		Block(int size) {
+			data = new byte[size];
+		}
+	}
+
+	/**
+	 * Provides the queued blocks as an input stream to the converter, and
+	 * returns them to the pool of free blocks once read.
+	 */
+	private class QueueInputStream extends InputStream {
+		private Block block;
+
+		private int offset;
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+
+			if (block == null) {
+				try {
+					block = queuedBlocks.take();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+
+				if (block == Block.END) {
+					queuedBlocks.add(Block.END);
+					block = null;
+					return -1;
+				}
+
+				long latency = System.nanoTime() - block.timestamp;
+				encodedBlocks.incrementAndGet();
+				totalLatency.addAndGet(latency);
+				long maximum;
+				do {
+					maximum = maximumLatency.get();
+				} while ((latency > maximum)
+				        && !maximumLatency.compareAndSet(maximum, latency));
+
+				offset = 0;
+			}
+
+			int length = Math.min(len, block.length - offset);
+			System.arraycopy(block.data, offset, b, off, length);
+			offset += length;
+
+			if (offset == block.length) {
+				freeBlocks.add(block);
+				block = null;
+			}
+
+			return length;
+		}
+	}
+
+	/**
+	 * Reads encoded audio from the converter and writes it to the underlying
+	 * output stream.
+	 */
+	private class Encoder implements Runnable {
+		private final AudioInputStream encoded;
+
+		Encoder(AudioInputStream encoded) {
+			this.encoded = encoded;
+		}
+
+		@Override
+		public void run() {
+			byte[] buffer = new byte[DEFAULT_BLOCK_SIZE];
+			try {
+				try {
+					int read;
+					while ((read = encoded.read(buffer)) != -1) {
+						out.write(buffer, 0, read);
+					}
+				} finally {
+					encoded.close();
+				}
+			} catch (Throwable e) {
+				// includes runtime exceptions from the codec provider, which
+				// would otherwise leave the writer waiting for free blocks
+				encoderException = e;
+			}
+		}
+	}
+}
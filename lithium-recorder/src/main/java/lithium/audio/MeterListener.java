@@ -1,5 +1,5 @@
 /*
- * Copyright 2008 Gerrit Meinders
+ * Copyright 2013 Gerrit Meinders
  *
  * This program is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,8 +17,14 @@
 
 package lithium.audio;
 
-public interface AmplitudeListener {
+/**
+ * Receives the levels of an audio stream, published at a fixed rate on the
+ * event dispatch thread.
+ *
+ * @author Gerrit Meinders
+ */
+public interface MeterListener {
 
-	void amplitudeChanged(int channel, double amplitude);
+	void meterUpdated(AudioMeter.Snapshot snapshot);
 
 }
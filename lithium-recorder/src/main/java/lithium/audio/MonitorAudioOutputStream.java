@@ -18,32 +18,47 @@
 package lithium.audio;
 
 import java.io.*;
-import java.util.*;
 import javax.sound.sampled.*;
-import javax.swing.*;
 
 import lithium.*;
 
+/**
+ * Monitors the levels of the audio written to the stream, which are made
+ * available through an {@link AudioMeter}.
+ *
+ * @author Gerrit Meinders
+ */
 public class MonitorAudioOutputStream extends FilterAudioOutputStream
 {
+	/**
+	 * Number of times per second that levels are committed to the meter.
+	 */
+	private static final int COMMIT_RATE = 100;
+
 	private int channel;
 
 	private int channels;
 
-	private int samples;
-
-	private int samplesPerUpdate;
-
-	private Collection<AmplitudeListener> amplitudeListeners;
+	private final AudioMeter meter;
 
 	public MonitorAudioOutputStream(OutputStream out, AudioFormat format)
 	{
 		super(out, format);
 		channel = 0;
 		channels = format.getChannels();
-		samples = 0;
-		samplesPerUpdate = (int) format.getSampleRate() / 30;
-		amplitudeListeners = new ArrayList<AmplitudeListener>();
+		meter = new AudioMeter(channels, sampleFormat.getMaximumAmplitude(),
+		        (int) format.getSampleRate() / COMMIT_RATE);
+	}
+
+	/**
+	 * Returns the meter that provides the levels of the audio written to the
+	 * stream.
+	 *
+	 * @return Audio meter.
+	 */
+	public AudioMeter getMeter()
+	{
+		return meter;
 	}
 
 	@Override
@@ -68,56 +83,40 @@ public class MonitorAudioOutputStream extends FilterAudioOutputStream
 		super.writeSample(sample);
 	}
 
-	protected void monitorSampleOnWrite(int sample)
-	{
-		monitorSample(sample);
-	}
-
-	protected void monitorSample(int sample)
+	@Override
+	protected void writeSamples(int[] samples, int offset, int length)
+	        throws IOException
 	{
-		if (samples % samplesPerUpdate == 0)
+		int end = offset + length;
+		for (int i = offset; i < end; i++)
 		{
-			fireEvents(channel, sample);
-		}
-
-		channel++;
-		channel %= channels;
-
-		if (channel == 0)
-		{
-			samples++;
+			monitorSampleOnWrite(samples[i]);
 		}
+		super.writeSamples(samples, offset, length);
 	}
 
-	protected void fireEvents(int channel, int sample)
+	/**
+	 * Returns the channel that the next sample written to the stream
+	 * originates from.
+	 *
+	 * @return Index of the current channel.
+	 */
+	protected int getSourceChannel()
 	{
-		double maximum = sampleFormat.getMaximumAmplitude();
-		double amplitude = Math.abs(sample / maximum);
-		fireAmplitudeChange(channel, amplitude);
+		return channel;
 	}
 
-	public void addAmplitudeListener(AmplitudeListener amplitudeListener)
+	protected void monitorSampleOnWrite(int sample)
 	{
-		amplitudeListeners.add(amplitudeListener);
+		monitorSample(sample);
 	}
 
-	public void removeAmplitudeListener(AmplitudeListener amplitudeListener)
+	protected void monitorSample(int sample)
 	{
-		amplitudeListeners.remove(amplitudeListener);
-	}
+		meter.add(channel, sample);
 
-	protected void fireAmplitudeChange(final int channel, final double amplitude)
-	{
-		SwingUtilities.invokeLater(new Runnable()
-		{
-			public void run()
-			{
-				for (AmplitudeListener listener : amplitudeListeners)
-				{
-					listener.amplitudeChanged(channel, amplitude);
-				}
-			}
-		});
+		channel++;
+		channel %= channels;
 	}
 
 	@Override
@@ -126,7 +125,5 @@ public class MonitorAudioOutputStream extends FilterAudioOutputStream
 		super.writeState(log);
 		log.writeDetails("channel", channel);
 		log.writeDetails("channels", channels);
-		log.writeDetails("samples", samples);
-		log.writeDetails("samplesPerUpdate", samplesPerUpdate);
 	}
 }
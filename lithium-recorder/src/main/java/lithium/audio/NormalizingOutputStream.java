@@ -18,11 +18,8 @@
 package lithium.audio;
 
 import java.io.*;
-import java.util.*;
 import javax.sound.sampled.*;
-import javax.swing.*;
 
-import com.github.meinders.common.util.*;
 import lithium.*;
 
 /**
@@ -30,20 +27,68 @@ import lithium.*;
  * normalized samples are written to the underlying output stream in the same
  * format.
  *
+ * <p>
+ * Samples are delayed by a window of configurable size, which allows the gain
+ * to be reduced before a peak is written. The peak amplitude in the window is
+ * tracked in constant time per sample (see {@link RollingPeak}) and the gain
+ * is updated once per block of samples, rather than for each sample.
+ *
  * @author Gerrit Meinders
  */
 public class NormalizingOutputStream extends MonitorAudioOutputStream
 {
 	/**
-	 * Rolling window of samples that have been read but have not been
-	 * normalized and written yet.
+	 * Indicates that no sample is written as a result of processing a sample,
+	 * because the window is not yet full. This value is outside the range of
+	 * any supported sample format.
+	 */
+	private static final int NO_SAMPLE = Integer.MIN_VALUE;
+
+	/**
+	 * Maximum number of samples per channel for which the same gain update
+	 * applies.
+	 */
+	private static final int GAIN_BLOCK_SIZE = 64;
+
+	/**
+	 * Default maximum true peak level, relative to the maximum amplitude of
+	 * the sample format (i.e. -1 dBTP).
+	 */
+	public static final double DEFAULT_TRUE_PEAK_CEILING = 0.891;
+
+	/**
+	 * Number of samples used to interpolate the signal between two samples,
+	 * when estimating the true peak level.
+	 */
+	private static final int INTERPOLATION_TAPS = 8;
+
+	/**
+	 * Weights used to interpolate the signal at 1/4, 1/2 and 3/4 between the
+	 * middle two of {@link #INTERPOLATION_TAPS} samples, i.e. four times
+	 * oversampling using a Lanczos kernel.
+	 */
+	private static final double[][] INTERPOLATION_WEIGHTS = createInterpolationWeights();
+
+	/**
+	 * Samples that have been read but have not been normalized and written
+	 * yet, in a circular buffer.
+	 */
+	private final int[] window;
+
+	/**
+	 * Index in {@link #window} of the oldest sample.
+	 */
+	private int windowOffset;
+
+	/**
+	 * Number of samples in {@link #window}.
 	 */
-	private RollingWindow window;
+	private int windowLength;
 
 	/**
 	 * Provides the maximum amplitude in the rolling window for each channel.
 	 */
-	private RollingMaximum[] rollingMaximums;
+	private RollingPeak[] rollingPeaks;
 
 	/**
 	 * Specifies the gain applied to each channel.
@@ -51,14 +96,20 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 	private Gain[] gains;
 
 	/**
-	 * The index of the current channel.
+	 * Number of samples for each channel in a block, i.e. between gain
+	 * updates.
 	 */
-	private int channel;
+	private final int gainBlockSize;
 
 	/**
-	 * Registered amplitude listeners.
+	 * Number of samples processed in the current block, for all channels.
 	 */
-	private Collection<GainListener> gainListeners;
+	private int blockPosition;
+
+	/**
+	 * The index of the current channel.
+	 */
+	private int channel;
 
 	/**
 	 * Indicates whether DC offset in the written data should be corrected.
@@ -75,6 +126,24 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 	 */
 	private double dcOffsetFactor;
 
+	/**
+	 * Indicates whether the gain is limited such that the estimated true peak
+	 * level stays below {@link #truePeakCeiling}.
+	 */
+	private boolean truePeakLimiting;
+
+	/**
+	 * Maximum true peak level, relative to the maximum amplitude of the sample
+	 * format.
+	 */
+	private double truePeakCeiling;
+
+	/**
+	 * The most recent samples for each channel, used to estimate the true
+	 * peak level. The last element contains the most recent sample.
+	 */
+	private int[][] history;
+
 	/**
 	 * Constructs a new normalizing output stream for data in the specified
 	 * audio format.
@@ -93,18 +162,21 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 	        double windowSize, double maxGain, boolean normalizingPerChannel)
 	{
 		super(out, format);
-		gainListeners = new ArrayList<GainListener>();
 
 		int channels = format.getChannels();
-		int samplesPerWindow = (int) (format.getSampleRate() * channels * windowSize);
-		window = new RollingWindow(samplesPerWindow);
+		int framesPerWindow = Math.max(2,
+		        (int) (format.getSampleRate() * windowSize));
+		int samplesPerWindow = framesPerWindow * channels;
+		window = new int[samplesPerWindow];
+		windowOffset = 0;
+		windowLength = 0;
 		channel = 0;
 
 		int samplesPerWindowPerChannel;
 		if (normalizingPerChannel)
 		{
-			samplesPerWindowPerChannel = samplesPerWindow / channels;
-			rollingMaximums = new RollingMaximum[channels];
+			samplesPerWindowPerChannel = framesPerWindow;
+			rollingPeaks = new RollingPeak[channels];
 		}
 		else
 		{
@@ -113,20 +185,32 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 			 * channel.
 			 */
 			samplesPerWindowPerChannel = samplesPerWindow;
-			rollingMaximums = new RollingMaximum[1];
+			rollingPeaks = new RollingPeak[1];
 		}
 
-		gains = new Gain[rollingMaximums.length];
-		for (int i = 0; i < rollingMaximums.length; i++)
+		/*
+		 * Samples entering the window during a block may need to be output
+		 * at the end of the next block, so allow for at least two blocks.
+		 */
+		gainBlockSize = Math.min(GAIN_BLOCK_SIZE,
+		        samplesPerWindowPerChannel / 2);
+		blockPosition = 0;
+
+		gains = new Gain[rollingPeaks.length];
+		for (int i = 0; i < rollingPeaks.length; i++)
 		{
-			rollingMaximums[i] = new RollingMaximum(samplesPerWindowPerChannel);
-			gains[i] = new Gain(sampleFormat, samplesPerWindowPerChannel,
-			        maxGain);
+			rollingPeaks[i] = new RollingPeak(samplesPerWindowPerChannel);
+			gains[i] = new Gain(samplesPerWindowPerChannel - gainBlockSize,
+			        gainBlockSize, maxGain);
 		}
 
 		dcOffsetEnabled = true;
 		dcOffsets = new double[channels];
 		dcOffsetFactor = 1.0 / format.getSampleRate();
+
+		truePeakLimiting = false;
+		truePeakCeiling = DEFAULT_TRUE_PEAK_CEILING;
+		history = new int[channels][INTERPOLATION_TAPS];
 	}
 
 	/**
@@ -149,6 +233,57 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 		this.dcOffsetEnabled = dcOffsetEnabled;
 	}
 
+	/**
+	 * Returns whether the gain is limited to keep the true peak level, i.e.
+	 * the peak level of the reconstructed analog signal, below the true peak
+	 * ceiling.
+	 *
+	 * @return Whether true peak limiting is enabled.
+	 */
+	public boolean isTruePeakLimiting()
+	{
+		return truePeakLimiting;
+	}
+
+	/**
+	 * Sets whether the gain is limited to keep the true peak level below the
+	 * true peak ceiling. The true peak level is estimated by interpolating the
+	 * signal at four times the sample rate. Since peaks are detected as they
+	 * enter the normalization window, this limiter needs no additional
+	 * look-ahead.
+	 *
+	 * <p>
+	 * Should be set before any samples are written.
+	 *
+	 * @param truePeakLimiting Whether true peak limiting should be enabled.
+	 */
+	public void setTruePeakLimiting(boolean truePeakLimiting)
+	{
+		this.truePeakLimiting = truePeakLimiting;
+	}
+
+	/**
+	 * Returns the maximum true peak level.
+	 *
+	 * @return True peak ceiling, relative to the maximum amplitude of the
+	 *         sample format.
+	 */
+	public double getTruePeakCeiling()
+	{
+		return truePeakCeiling;
+	}
+
+	/**
+	 * Sets the maximum true peak level, when true peak limiting is enabled.
+	 *
+	 * @param truePeakCeiling True peak ceiling, relative to the maximum
+	 *            amplitude of the sample format.
+	 */
+	public void setTruePeakCeiling(double truePeakCeiling)
+	{
+		this.truePeakCeiling = truePeakCeiling;
+	}
+
 	/**
 	 * Returns the current DC offset for the given channel.
 	 *
@@ -164,13 +299,61 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 	@Override
 	protected void writeSample(int sourceChannel, int sample)
 	        throws IOException
+	{
+		int outputChannel = channel;
+		int output = normalizeSample(sourceChannel, sample);
+		if (output != NO_SAMPLE)
+		{
+			super.writeSample(outputChannel, output);
+		}
+	}
+
+	@Override
+	protected void writeSamples(int[] samples, int offset, int length)
+	        throws IOException
 	{
 		/*
-		 * Update gain level for this channel.
+		 * Every sample that leaves the window is written back to the array,
+		 * at or before the position of the sample being processed.
 		 */
-		RollingMaximum rollingMaximum = rollingMaximums[channel];
-		Gain gain = gains[channel];
-		gain.update(rollingMaximum);
+		int end = offset + length;
+		int outputEnd = offset;
+		for (int i = offset; i < end; i++)
+		{
+			int output = normalizeSample(getSourceChannel(), samples[i]);
+			if (output != NO_SAMPLE)
+			{
+				samples[outputEnd++] = output;
+			}
+		}
+
+		if (outputEnd > offset)
+		{
+			super.writeSamples(samples, offset, outputEnd - offset);
+		}
+	}
+
+	/**
+	 * Processes the given sample, returning the normalized sample that is
+	 * removed from the window as a result.
+	 *
+	 * @param sourceChannel The channel that the sample originates from.
+	 * @param sample The sample to be processed.
+	 *
+	 * @return Normalized sample to be written, or {@link #NO_SAMPLE} if the
+	 *         window wasn't full yet.
+	 */
+	private int normalizeSample(int sourceChannel, int sample)
+	{
+		/*
+		 * Update gain levels at the start of each block. All samples written
+		 * during the block are in the window at this point, so the rolling
+		 * peaks cover them.
+		 */
+		if (blockPosition == 0)
+		{
+			updateGains();
+		}
 
 		/*
 		 * Adjust sample for DC offset.
@@ -188,31 +371,133 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 		}
 
 		/*
-		 * Update the rolling window, writing the sample that is removed from
-		 * the window as output.
+		 * Update the rolling window, normalizing the sample that is removed
+		 * from the window as output.
 		 */
-		boolean windowFull = window.isFull();
-		int output = window.add(adjustedSample);
-		if (windowFull)
+		int result;
+		if (windowLength == window.length)
 		{
-			writeNormalizedSample(output);
+			result = normalize(window[windowOffset]);
 		}
+		else
+		{
+			windowLength++;
+			result = NO_SAMPLE;
+		}
+		window[windowOffset] = adjustedSample;
+		windowOffset = (windowOffset + 1 == window.length) ? 0
+		        : windowOffset + 1;
 
 		/*
-		 * Allow for volume events to be fired.
+		 * Update the levels shown to the user.
 		 */
+		getMeter().setGain(sourceChannel, gains[channel].get());
 		monitorSample(adjustedSample);
 
 		/*
-		 * Update the rolling maximum for this channel.
+		 * Update the rolling peak for this channel.
 		 */
-		rollingMaximum.remove(Math.abs(output));
-		rollingMaximum.add(Math.abs(adjustedSample));
+		int peak;
+		if (truePeakLimiting)
+		{
+			peak = getTruePeak(sourceChannel, adjustedSample);
+		}
+		else
+		{
+			peak = Math.abs(adjustedSample);
+		}
+		rollingPeaks[channel].add(peak);
+
+		gains[channel].next();
 
 		/*
 		 * Samples for different channels are interleaved.
 		 */
 		nextChannel();
+
+		if (++blockPosition == gainBlockSize * gains.length)
+		{
+			blockPosition = 0;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Updates the gain for each channel, based on the current rolling peaks.
+	 */
+	private void updateGains()
+	{
+		double maximumAmplitude = sampleFormat.getMaximumAmplitude();
+		if (truePeakLimiting)
+		{
+			maximumAmplitude *= truePeakCeiling;
+		}
+
+		for (int i = 0; i < gains.length; i++)
+		{
+			gains[i].update(maximumAmplitude, rollingPeaks[i].get());
+		}
+	}
+
+	/**
+	 * Returns an estimate of the true peak level of the signal around the
+	 * given sample, by interpolating between the previous samples. Since this
+	 * requires samples after the interpolated segment, the estimate lags a few
+	 * samples behind, which is negligible compared to the size of the window.
+	 *
+	 * @param sourceChannel The channel that the sample originates from.
+	 * @param sample The sample to be processed.
+	 *
+	 * @return Estimated true peak amplitude.
+	 */
+	private int getTruePeak(int sourceChannel, int sample)
+	{
+		int[] samples = history[sourceChannel];
+		System.arraycopy(samples, 1, samples, 0, INTERPOLATION_TAPS - 1);
+		samples[INTERPOLATION_TAPS - 1] = sample;
+
+		double peak = Math.max(Math.abs(samples[INTERPOLATION_TAPS / 2 - 1]),
+		        Math.abs(samples[INTERPOLATION_TAPS / 2]));
+		for (double[] weights : INTERPOLATION_WEIGHTS)
+		{
+			double interpolated = 0.0;
+			for (int i = 0; i < INTERPOLATION_TAPS; i++)
+			{
+				interpolated += weights[i] * samples[i];
+			}
+			peak = Math.max(peak, Math.abs(interpolated));
+		}
+		return (int) Math.ceil(peak);
+	}
+
+	/**
+	 * Returns the weights used to estimate the true peak level.
+	 *
+	 * @return Interpolation weights for each intermediate position.
+	 */
+	private static double[][] createInterpolationWeights()
+	{
+		int radius = INTERPOLATION_TAPS / 2;
+		double[][] result = new double[3][INTERPOLATION_TAPS];
+		for (int position = 0; position < result.length; position++)
+		{
+			double t = (position + 1) / 4.0;
+			double sum = 0.0;
+			for (int i = 0; i < INTERPOLATION_TAPS; i++)
+			{
+				double x = Math.PI * (t + radius - 1 - i);
+				double weight = Math.sin(x) / x * Math.sin(x / radius)
+				        / (x / radius);
+				result[position][i] = weight;
+				sum += weight;
+			}
+			for (int i = 0; i < INTERPOLATION_TAPS; i++)
+			{
+				result[position][i] /= sum;
+			}
+		}
+		return result;
 	}
 
 	@Override
@@ -228,6 +513,18 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 	 * @param sample Sample to be written with the current gain applied.
 	 */
 	private void writeNormalizedSample(int sample) throws IOException
+	{
+		super.writeSample(channel, normalize(sample));
+	}
+
+	/**
+	 * Applies the current gain to the given sample.
+	 *
+	 * @param sample Sample to apply the current gain to.
+	 *
+	 * @return Amplified sample, clamped to the range of the sample format.
+	 */
+	private int normalize(int sample)
 	{
 		Gain gain = gains[channel];
 		int amplified = (int) (sample * gain.get());
@@ -240,7 +537,7 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 			writeState(log);
 		}
 
-		super.writeSample(channel, clamped);
+		return clamped;
 	}
 
 	@Override
@@ -248,29 +545,26 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 	{
 		super.writeState(log);
 
-		log.writeDetails("window.window", window.getWindow());
-		log.writeDetails("window.capacity", window.getCapacity());
-		log.writeDetails("window.offset", window.getOffset());
+		log.writeDetails("window", window);
+		log.writeDetails("windowOffset", windowOffset);
+		log.writeDetails("windowLength", windowLength);
 
-		for (int i = 0; i < rollingMaximums.length; i++)
+		for (int i = 0; i < rollingPeaks.length; i++)
 		{
-			log.writeDetails("rollingMaximums[" + i + "].buffer",
-			        rollingMaximums[i].getBuffer());
-			log.writeDetails("rollingMaximums[" + i + "].minimumIndex",
-			        rollingMaximums[i].getMinimumIndex());
-			log.writeDetails("rollingMaximums[" + i + "].maximumIndex",
-			        rollingMaximums[i].getMaximumIndex());
+			log.writeDetails("rollingPeaks[" + i + "]", rollingPeaks[i].get());
 		}
 
 		for (int i = 0; i < gains.length; i++)
 		{
 			log.writeDetails("gains[" + i + "].gain", gains[i].gain);
+			log.writeDetails("gains[" + i + "].step", gains[i].step);
 			log.writeDetails("gains[" + i + "].maxGain", gains[i].maxGain);
-			log.writeDetails("gains[" + i + "].maxGainIncrease",
-			        gains[i].maxGainIncrease);
+			log.writeDetails("gains[" + i + "].maxBlockIncrease",
+			        gains[i].maxBlockIncrease);
 		}
 
 		log.writeDetails("channel", channel);
+		log.writeDetails("blockPosition", blockPosition);
 
 		log.writeDetails("dcOffsetEnabled", dcOffsetEnabled);
 		if (dcOffsetEnabled)
@@ -278,91 +572,92 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 			log.writeDetails("dcOffsetFactor", dcOffsetFactor);
 			log.writeDetails("dcOffsets", dcOffsets);
 		}
+
+		log.writeDetails("truePeakLimiting", truePeakLimiting);
+		if (truePeakLimiting)
+		{
+			log.writeDetails("truePeakCeiling", truePeakCeiling);
+		}
 	}
 
 	private void nextChannel()
 	{
 		channel++;
-		channel %= rollingMaximums.length;
+		channel %= rollingPeaks.length;
 	}
 
 	@Override
 	public void flush() throws IOException
 	{
-		while (!window.isEmpty())
+		while (windowLength > 0)
 		{
-			RollingMaximum rollingMaximum = rollingMaximums[channel];
-
-			int flushed = window.remove();
-			rollingMaximum.remove(Math.abs(flushed));
+			int flushed = window[windowOffset];
+			windowOffset = (windowOffset + 1 == window.length) ? 0
+			        : windowOffset + 1;
+			windowLength--;
 			writeNormalizedSample(flushed);
 
 			nextChannel();
 		}
-		super.flush();
-	}
-
-	@Override
-	protected void fireEvents(int sourceChannel, int sample)
-	{
-		fireGainChange(sourceChannel, gains[channel].get());
-		super.fireEvents(sourceChannel, sample);
-	}
-
-	public void addGainListener(GainListener gainListener)
-	{
-		gainListeners.add(gainListener);
-	}
-
-	public void removeGainListener(GainListener gainListener)
-	{
-		gainListeners.remove(gainListener);
-	}
 
-	protected void fireGainChange(final int channel, final double gain)
-	{
-		SwingUtilities.invokeLater(new Runnable()
+		for (int i = 0; i < rollingPeaks.length; i++)
 		{
-			public void run()
-			{
-				for (GainListener listener : gainListeners)
-				{
-					listener.gainChanged(channel, gain);
-				}
-			}
-		});
+			rollingPeaks[i].clear();
+			gains[i].step = 0.0;
+		}
+		blockPosition = 0;
+
+		super.flush();
 	}
 
 	/**
 	 * Specifies the gain (i.e. amplification) to be applied to audio samples.
-	 * The gain level may be updated based on the maximum amplitude of an audio
-	 * stream.
+	 * The gain level is updated once per block, based on the maximum amplitude
+	 * of an audio stream, and changes linearly from one sample to the next
+	 * within the block.
 	 *
-		 * @author Gerrit Meinders
+	 * @author Gerrit Meinders
 	 */
 	private static class Gain
 	{
-		private SampleFormat sampleFormat;
-
 		private double gain;
 
+		/**
+		 * Change in gain from one sample to the next, within the current
+		 * block.
+		 */
+		private double step;
+
 		private double maxGain;
 
-		private double maxGainIncrease;
+		/**
+		 * Factor by which the gain may increase during a single block.
+		 */
+		private double maxBlockIncrease;
+
+		/**
+		 * Fraction of the difference between the maximum gain and the
+		 * limited gain by which the gain decreases during a single block.
+		 */
+		private double blockDecreaseFactor;
+
+		private double inverseBlockSize;
 
 		/**
 		 * Constructs a new gain instance.
 		 *
-		 * @param sampleFormat The sample format of the audio stream.
 		 * @param windowSize The window size for smooth gain changes.
+		 * @param blockSize The number of samples in each block.
 		 * @param maxGain The maximum gain level.
 		 */
-		public Gain(SampleFormat sampleFormat, int windowSize, double maxGain)
+		public Gain(int windowSize, int blockSize, double maxGain)
 		{
-			this.sampleFormat = sampleFormat;
 			this.maxGain = maxGain;
 			gain = 1.0;
-			maxGainIncrease = 1.0 + 1.0 / windowSize;
+			step = 0.0;
+			maxBlockIncrease = Math.pow(1.0 + 1.0 / windowSize, blockSize);
+			blockDecreaseFactor = (double) blockSize / windowSize;
+			inverseBlockSize = 1.0 / blockSize;
 		}
 
 		/**
@@ -376,22 +671,31 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 		}
 
 		/**
-		 * Updates the gain level according to the given maximum amplitude.
-		 *
-		 * @param rollingMaximum Specifies the maximum amplitude.
+		 * Advances the gain level to the next sample.
 		 */
-		public void update(RollingMaximum rollingMaximum)
+		public void next()
 		{
-			int maximumAmplitude = sampleFormat.getMaximumAmplitude();
+			gain += step;
+		}
 
+		/**
+		 * Updates the gain level for the next block according to the given
+		 * maximum amplitude.
+		 *
+		 * @param maximumAmplitude Maximum amplitude of the output.
+		 * @param peak Maximum amplitude of the input.
+		 */
+		public void update(double maximumAmplitude, int peak)
+		{
 			// TODO: Gain below 1.0?! But it does happen.
 			// See unit test: testExtremeVolumeChanges
-			double clipGain = (double) maximumAmplitude / rollingMaximum.get();
+			double clipGain = maximumAmplitude / peak;
 			double limitedGain = Math.min(maxGain, clipGain);
 
+			double target;
 			if (limitedGain > gain)
 			{
-				gain = Math.min(gain * maxGainIncrease, limitedGain);
+				target = Math.min(gain * maxBlockIncrease, limitedGain);
 			}
 			else
 			{
@@ -399,9 +703,11 @@ public class NormalizingOutputStream extends MonitorAudioOutputStream
 				 * TODO: Instead of using maxGain as a reference, add a rolling
 				 * window to provide the actual gain one window size earlier.
 				 */
-				gain = Math.max(gain - (maxGain - limitedGain)
-				        / rollingMaximum.getWindowSize(), limitedGain);
+				target = Math.max(gain - (maxGain - limitedGain)
+				        * blockDecreaseFactor, limitedGain);
 			}
+
+			step = (target - gain) * inverseBlockSize;
 		}
 	}
 }
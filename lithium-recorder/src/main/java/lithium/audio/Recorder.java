@@ -17,18 +17,25 @@
 
 package lithium.audio;
 
+import java.awt.event.*;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
 import javax.sound.sampled.*;
-import javax.swing.*;
+import javax.swing.Timer;
 
-import com.github.meinders.common.util.*;
 import lithium.*;
 import lithium.RecorderConfig.*;
 
 /**
- * Provides a simple interface for recording audio.
+ * Provides a simple interface for recording audio. Multiple tracks may be
+ * recorded concurrently, each from its own mixer and into its own file. The
+ * tracks are aligned to a common start time, within the accuracy of the frame
+ * positions reported by their lines, such that they can be mixed afterwards.
+ *
+ * <p>
+ * Audio levels are only reported for the first track. Other tracks are
+ * recorded without being metered.
  *
  * @author Gerrit Meinders
  */
@@ -38,13 +45,38 @@ public class Recorder
 
 	private RecorderConfig recorderConfig;
 
-	private TargetDataLineInputStream recordIn;
+	/**
+	 * Amount of audio that is buffered between capturing and processing, in
+	 * seconds.
+	 */
+	private static final double CAPTURE_BUFFER_DURATION = 5.0;
+
+	private List<TargetDataLineCapture> captures;
+
+	/**
+	 * Time at which the current or last recording started.
+	 */
+	private long startTime;
 
 	private ExecutorService threadPool;
 
-	private Collection<AmplitudeListener> amplitudeListeners;
+	/**
+	 * Number of times per second that listeners are notified of the current
+	 * audio levels.
+	 */
+	private static final int METER_UPDATE_RATE = 30;
+
+	/**
+	 * Provides the audio levels of the first track of the current recording.
+	 */
+	private volatile AudioMeter meter;
+
+	/**
+	 * Periodically notifies meter listeners on the event dispatch thread.
+	 */
+	private final Timer meterTimer;
 
-	private Collection<GainListener> gainListeners;
+	private Collection<MeterListener> meterListeners;
 
 	public Recorder(Config config)
 	{
@@ -56,8 +88,22 @@ public class Recorder
 		this.config = config;
 		this.recorderConfig = recorderConfig;
 
-		amplitudeListeners = new ArrayList<AmplitudeListener>();
-		gainListeners = new ArrayList<GainListener>();
+		captures = Collections.emptyList();
+		startTime = 0;
+
+		meterListeners = new ArrayList<MeterListener>();
+
+		meterTimer = new Timer(1000 / METER_UPDATE_RATE, new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				AudioMeter currentMeter = meter;
+				if (currentMeter != null)
+				{
+					fireMeterUpdate(currentMeter.takeSnapshot());
+				}
+			}
+		});
 	}
 
 	public void setConfig(Config config)
@@ -71,7 +117,14 @@ public class Recorder
 		AudioFormat audioFormat = recorderConfig.getAudioFormat();
 		EncodingFormat encodingFormat = recorderConfig.getEncodingFormat();
 
-		List<InputStream> inputs = new ArrayList<InputStream>();
+		List<Track> tracks = recorderConfig.getTracks();
+		if (tracks.isEmpty())
+		{
+			tracks = Collections.singletonList(new Track(null,
+			        recorderConfig.getMixerName()));
+		}
+
+		List<TargetDataLineCapture> inputs = new ArrayList<TargetDataLineCapture>();
 		List<OutputStream> outputs = new ArrayList<OutputStream>();
 
 		/*
@@ -79,23 +132,164 @@ public class Recorder
 		 */
 		File storageFolder = recorderConfig.getStorageFolder();
 		NamingScheme namingScheme = recorderConfig.getNamingScheme();
-		File file = namingScheme.getFile(storageFolder, encodingFormat);
-		System.out.println("Writing output to " + file);
-		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		List<File> files = namingScheme.getFiles(storageFolder,
+		        encodingFormat, tracks);
+
+		System.out.println("Audio format: " + audioFormat);
+
+		try
+		{
+			for (int i = 0; i < tracks.size(); i++)
+			{
+				Track track = tracks.get(i);
+				File file = files.get(i);
+
+				/*
+				 * Recording
+				 */
+				Mixer.Info mixer = getMixer(track.getMixerName());
+				TargetDataLine targetDataLine = AudioSystem.getTargetDataLine(
+				        audioFormat, mixer);
+				System.out.println("Recording from " + targetDataLine);
+				inputs.add(new TargetDataLineCapture(targetDataLine,
+				        audioFormat, CAPTURE_BUFFER_DURATION));
+				System.out.println("Buffer size: "
+				        + targetDataLine.getBufferSize() + " bytes");
+
+				System.out.println("Writing output to " + file);
+				OutputStream out = createFileOutput(file, audioFormat,
+				        encodingFormat);
+				outputs.add(out);
+
+				/*
+				 * Replaces the file output stream only once the chain is
+				 * complete, such that the file is closed if that fails. Only
+				 * the first track is monitored.
+				 */
+				MonitorAudioOutputStream monitor = createOutput(out,
+				        audioFormat, encodingFormat);
+				outputs.set(i, monitor);
+				if (i == 0)
+				{
+					meter = monitor.getMeter();
+				}
+			}
+		}
+		catch (LineUnavailableException e)
+		{
+			close(inputs, outputs);
+			throw e;
+		}
+		catch (IOException e)
+		{
+			close(inputs, outputs);
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			close(inputs, outputs);
+			throw e;
+		}
 
 		/*
-		 * Recording
+		 * Connect inputs to outputs through their capture buffers.
 		 */
-		Mixer.Info mixer = getMixer(recorderConfig.getMixerName());
-		TargetDataLine targetDataLine = AudioSystem.getTargetDataLine(
-		        audioFormat, mixer);
-		System.out.println("Recording from " + targetDataLine);
-		System.out.println("Audio format: " + audioFormat);
-		System.out.println("Buffer size: " + targetDataLine.getBufferSize()
-		        + " bytes");
-		recordIn = new TargetDataLineInputStream(targetDataLine, audioFormat);
-		inputs.add(new BufferedInputStream(recordIn));
+		if (inputs.size() != outputs.size())
+		{
+			throw new AssertionError("inputs.size() != outputs.size(): "
+			        + inputs.size() + " != " + outputs.size());
+		}
+
+		threadPool = Executors.newFixedThreadPool(2 * inputs.size());
+
+		CountDownLatch aligned = new CountDownLatch(1);
+		List<BufferDrain> drains = new ArrayList<BufferDrain>();
+		for (int i = 0; i < inputs.size(); i++)
+		{
+			TargetDataLineCapture input = inputs.get(i);
+			BufferDrain drain = new BufferDrain(input.getBuffer(),
+			        outputs.get(i), aligned);
+			drains.add(drain);
+			threadPool.execute(input);
+			threadPool.execute(drain);
+		}
+
+		captures = inputs;
+
+		for (TargetDataLineCapture input : inputs)
+		{
+			input.start();
+		}
+
+		/*
+		 * Align the tracks by discarding any frames captured before a shared
+		 * start instant. Frame positions can't be sampled simultaneously, so
+		 * each position is extrapolated from the time it was sampled to the
+		 * time the last one was. Tracks are then aligned only as accurately as
+		 * the lines report their frame positions, which depends on the driver;
+		 * this is typically a few milliseconds, not a single sample.
+		 */
+		long[] framePositions = new long[inputs.size()];
+		long[] sampleTimes = new long[inputs.size()];
+		for (int i = 0; i < inputs.size(); i++)
+		{
+			framePositions[i] = inputs.get(i).getFramePosition();
+			sampleTimes[i] = System.nanoTime();
+		}
+		startTime = System.currentTimeMillis();
+		long start = sampleTimes[inputs.size() - 1];
+		for (int i = 0; i < inputs.size(); i++)
+		{
+			long elapsedFrames = Math.round((start - sampleTimes[i])
+			        * (double) audioFormat.getFrameRate() / 1.0e9);
+			drains.get(i).setSkippedBytes((framePositions[i] + elapsedFrames)
+			        * audioFormat.getFrameSize());
+		}
+		aligned.countDown();
+
+		meterTimer.start();
+	}
+
+	/**
+	 * Creates an output stream that stores audio in the given file.
+	 *
+	 * @param file File to write to.
+	 * @param audioFormat Format of the recorded audio.
+	 * @param encodingFormat Format to encode the audio to.
+	 *
+	 * @return Output stream to be passed to {@link #createOutput}.
+	 */
+	OutputStream createFileOutput(File file, AudioFormat audioFormat,
+	        EncodingFormat encodingFormat)
+	        throws IOException
+	{
+		OutputStream out;
+		if (encodingFormat instanceof EncodingFormat.Wave)
+		{
+			out = new WaveFileOutputStream(file, audioFormat);
+		}
+		else
+		{
+			out = new BufferedOutputStream(new FileOutputStream(file));
+		}
+		return out;
+	}
 
+	/**
+	 * Creates the chain of output streams that recorded audio is written to,
+	 * performing normalization and encoding as configured.
+	 *
+	 * @param out Output stream to store the recording. For wave files, the
+	 *            stream is expected to write the header itself.
+	 * @param audioFormat Format of the recorded audio.
+	 * @param encodingFormat Format to encode the audio to.
+	 *
+	 * @return Output stream to write recorded audio to.
+	 */
+	MonitorAudioOutputStream createOutput(OutputStream out,
+	        AudioFormat audioFormat, EncodingFormat encodingFormat)
+	        throws IOException
+	{
 		/*
 		 * Encoding
 		 */
@@ -106,23 +300,46 @@ public class Recorder
 				System.out.println("Encoding as MP3");
 				EncodingFormat.MP3 mp3Format = (EncodingFormat.MP3) encodingFormat;
 
-				File executable = config.getUtility(Config.UTILITY_LAME);
-				if (executable == null)
+				OutputStream encoderOut = null;
+				if (mp3Format.getEncoder() == EncodingFormat.MP3.Encoder.JAVA_SOUND)
 				{
-					// throw new RecordingException(new MissingUtilityException(
-					// Config.UTILITY_LAME));
+					AudioFormat mp3AudioFormat = mp3Format.getOptions().getAudioFormat(
+					        audioFormat);
+					if (JavaSoundEncoderOutputStream.isSupported(audioFormat,
+					        mp3AudioFormat))
+					{
+						encoderOut = new JavaSoundEncoderOutputStream(out,
+						        audioFormat, mp3AudioFormat);
+					}
+					else
+					{
+						System.out.println("No Java Sound encoder available for "
+						        + mp3AudioFormat + ", using LAME instead");
+					}
 				}
 
-				LameOutputStream lameOut = new LameOutputStream(out,
-				        mp3Format.getOptions(), executable);
+				if (encoderOut != null)
+				{
+					out = encoderOut;
+				}
+				else
+				{
+					File executable = config.getUtility(Config.UTILITY_LAME);
+					if (executable == null)
+					{
+						// throw new RecordingException(new MissingUtilityException(
+						// Config.UTILITY_LAME));
+					}
 
-				out = new WaveOutputStream(lameOut, audioFormat);
+					LameOutputStream lameOut = new LameOutputStream(out,
+					        mp3Format.getOptions(), executable);
 
+					out = new WaveOutputStream(lameOut, audioFormat);
+				}
 			}
 			else if (encodingFormat instanceof EncodingFormat.Wave)
 			{
 				System.out.println("Encoding as Wave");
-				out = new WaveOutputStream(out, audioFormat);
 			}
 		}
 
@@ -143,55 +360,40 @@ public class Recorder
 				normalizeOut.setDCOffsetEnabled(false);
 			}
 
-			out = normalizeOut;
-			monitor = normalizeOut;
-
-			normalizeOut.addGainListener(new GainListener()
-			{
-				public void gainChanged(int channel, double gain)
-				{
-					fireGainChange(channel, gain);
-				}
-			});
+			normalizeOut.setTruePeakLimiting(recorderConfig.isTruePeakLimiting());
 
+			monitor = normalizeOut;
 		}
 		else
 		{
 			monitor = new MonitorAudioOutputStream(out, audioFormat);
-			out = monitor;
 		}
 
-		/*
-		 * Monitor volume and forward volume events.
-		 */
-		monitor.addAmplitudeListener(new AmplitudeListener()
-		{
-			public void amplitudeChanged(int channel, double amplitude)
-			{
-				fireAmplitudeChange(channel, amplitude);
-			}
-		});
-
-		/*
-		 * Connect inputs to outputs with pipes.
-		 */
-		outputs.add(out);
+		return monitor;
+	}
 
-		if (inputs.size() != outputs.size())
+	/**
+	 * Closes the given inputs and outputs, after starting the recording
+	 * failed.
+	 */
+	private void close(List<TargetDataLineCapture> inputs,
+	        List<OutputStream> outputs)
+	{
+		for (TargetDataLineCapture input : inputs)
 		{
-			throw new AssertionError("inputs.size() != outputs.size(): "
-			        + inputs.size() + " != " + outputs.size());
+			input.close();
 		}
-
-		threadPool = Executors.newFixedThreadPool(inputs.size());
-
-		for (int i = 0; i < inputs.size(); i++)
+		for (OutputStream output : outputs)
 		{
-			Pipe pipe = new Pipe(inputs.get(i), outputs.get(i));
-			threadPool.execute(pipe);
+			try
+			{
+				output.close();
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
 		}
-
-		recordIn.start();
 	}
 
 	private Mixer.Info getMixer(String mixerName)
@@ -212,20 +414,67 @@ public class Recorder
 
 	public boolean isStarted()
 	{
-		return (recordIn != null) && recordIn.isStarted();
+		for (TargetDataLineCapture capture : captures)
+		{
+			if (capture.isStarted())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the time at which the current or last recording started. All
+	 * tracks of a recording are aligned to this time.
+	 *
+	 * @return Start time, in milliseconds since the epoch; {@code 0} if no
+	 *         recording was started.
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	/**
+	 * Returns the number of audio frames that were dropped during the current
+	 * or last recording, because processing couldn't keep up with capturing.
+	 * For a multi-track recording, this is the total for all tracks.
+	 *
+	 * @return Number of dropped frames.
+	 */
+	public long getOverrunCount()
+	{
+		long result = 0;
+		for (TargetDataLineCapture capture : captures)
+		{
+			result += capture.getBuffer().getOverrunCount();
+		}
+		return result;
 	}
 
 	public void stop() throws IOException
 	{
-		if (recordIn != null)
+		if (!captures.isEmpty())
 		{
 			System.out.println("Stop");
-			recordIn.stop();
+			for (TargetDataLineCapture capture : captures)
+			{
+				capture.stop();
+			}
 			System.out.println("Drain");
-			recordIn.drain();
+			for (TargetDataLineCapture capture : captures)
+			{
+				capture.drain();
+			}
 			System.out.println("Close");
-			recordIn.close();
+			for (TargetDataLineCapture capture : captures)
+			{
+				capture.close();
+			}
+			System.out.println("Dropped frames: " + getOverrunCount());
 		}
+		meterTimer.stop();
 		if (threadPool != null)
 		{
 			System.out.println("Shutdown");
@@ -234,51 +483,92 @@ public class Recorder
 		System.out.println("Recorder stopped.");
 	}
 
-	public void addAmplitudeListener(AmplitudeListener volumeListener)
+	/**
+	 * Writes all audio from a capture buffer to an output stream, which is
+	 * closed once the capture has ended. Before any audio is written, the
+	 * drain waits until the tracks of the recording are aligned and discards
+	 * any audio preceding the start of the recording.
+	 *
+	 * @author Gerrit Meinders
+	 */
+	private static class BufferDrain implements Runnable
 	{
-		amplitudeListeners.add(volumeListener);
-	}
+		private final AudioRingBuffer buffer;
 
-	public void removeAmplitudeListener(AmplitudeListener volumeListener)
-	{
-		amplitudeListeners.remove(volumeListener);
-	}
+		private final OutputStream out;
 
-	private void fireAmplitudeChange(final int channel, final double amplitude)
-	{
-		SwingUtilities.invokeLater(new Runnable()
+		private final CountDownLatch aligned;
+
+		private long skippedBytes;
+
+		public BufferDrain(AudioRingBuffer buffer, OutputStream out,
+		        CountDownLatch aligned)
+		{
+			this.buffer = buffer;
+			this.out = out;
+			this.aligned = aligned;
+			skippedBytes = 0;
+		}
+
+		/**
+		 * Sets the number of bytes to be discarded before writing any audio.
+		 * Must be called before the tracks are marked as aligned.
+		 *
+		 * @param skippedBytes Number of bytes to discard.
+		 */
+		public void setSkippedBytes(long skippedBytes)
 		{
-			public void run()
+			this.skippedBytes = skippedBytes;
+		}
+
+		public void run()
+		{
+			try
 			{
-				for (AmplitudeListener listener : amplitudeListeners)
+				try
+				{
+					aligned.await();
+					buffer.skip(skippedBytes);
+					buffer.drainTo(out);
+				}
+				finally
 				{
-					listener.amplitudeChanged(channel, amplitude);
+					out.close();
 				}
 			}
-		});
+			catch (InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
 	}
 
-	public void addGainListener(GainListener gainListener)
+	/**
+	 * Adds a listener that is periodically notified of the audio levels of
+	 * the current recording, on the event dispatch thread. For multi-track
+	 * recordings, only the levels of the first track are reported.
+	 *
+	 * @param meterListener Listener to be added.
+	 */
+	public void addMeterListener(MeterListener meterListener)
 	{
-		gainListeners.add(gainListener);
+		meterListeners.add(meterListener);
 	}
 
-	public void removeGainListener(GainListener gainListener)
+	public void removeMeterListener(MeterListener meterListener)
 	{
-		gainListeners.remove(gainListener);
+		meterListeners.remove(meterListener);
 	}
 
-	private void fireGainChange(final int channel, final double gain)
+	private void fireMeterUpdate(AudioMeter.Snapshot snapshot)
 	{
-		SwingUtilities.invokeLater(new Runnable()
+		for (MeterListener listener : meterListeners)
 		{
-			public void run()
-			{
-				for (GainListener listener : gainListeners)
-				{
-					listener.gainChanged(channel, gain);
-				}
-			}
-		});
+			listener.meterUpdated(snapshot);
+		}
 	}
 }
@@ -31,8 +31,6 @@ public class RecorderExperiments {
 		        44100, 16, 2, 4, 44100, false);
 
 		// testRecordingAndEncoding(format);
-		// testNormalization(format);
-		// testStreamNormalizationAndEncoding(format);
 		testGetRecordingInformation();
 	}
 
@@ -110,190 +108,6 @@ public class RecorderExperiments {
 		        + " seconds");
 	}
 
-	public static void testNormalization(AudioFormat format) throws IOException {
-		System.out.println("Loading source file...");
-		File source = new File("D:\\Code\\Java\\Eclipse\\opwViewer\\test.wav");
-		File result = new File(
-		        "D:\\Code\\Java\\Eclipse\\opwViewer\\test.output.wav");
-		InputStream in = new BufferedInputStream(new FileInputStream(source));
-		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
-		        new FileOutputStream(result)));
-		ByteArrayOutputStream bufferOut = new ByteArrayOutputStream(
-		        (int) source.length());
-
-		/* Skip header */
-		copyUntil(in, out, "data", 4);
-
-		/* Read several seconds */
-		int read;
-		while ((read = in.read()) != -1) {
-			bufferOut.write(read);
-		}
-
-		in.close();
-		bufferOut.flush();
-		bufferOut.close();
-		byte[] data = bufferOut.toByteArray();
-		System.out.println("Done.");
-
-		/*
-		 * Subdivide into frames and determine maximum per frame
-		 */
-		boolean bigEndian = format.isBigEndian();
-		int bytesPerSample = format.getSampleSizeInBits() / 8;
-		int channels = format.getChannels();
-		int samples = data.length / (channels * bytesPerSample);
-		int maxValue = (1 << (format.getSampleSizeInBits() - 1)) - 1;
-
-		int frameSize = 44100;// 1.0s / ...
-		int frameCount = samples / frameSize;
-		int[] frameMaximum = new int[frameCount];
-
-		for (int frameIndex = 0; frameIndex < frameCount; frameIndex++) {
-			for (int frameOffset = 0; frameOffset < frameSize; frameOffset++) {
-				for (int channel = 0; channel < channels; channel++) {
-					int sampleIndex = (frameIndex * frameSize + frameOffset);
-					int base = (sampleIndex * channels + channel)
-					        * bytesPerSample;
-					int sample = bigEndian ? (short) (data[base] << 8 | data[base + 1])
-					        : (short) (data[base + 1] << 8 | data[base]);
-
-					int absSample = Math.abs(sample);
-					if (absSample > frameMaximum[frameIndex]) {
-						frameMaximum[frameIndex] = absSample;
-					}
-				}
-			}
-		}
-
-		double maxGain = 20.0; // 10dB
-		double maxGainIncrease = 1.1; // +10%
-
-		double startGain = 1.0;
-		double endGain = 1.0;
-		for (int frameIndex = 0; frameIndex < frameCount; frameIndex++) {
-			int startMaximum = (frameIndex == 0) ? frameMaximum[frameIndex]
-			        : Math.max(frameMaximum[frameIndex - 1],
-			                frameMaximum[frameIndex]);
-			int endMaximum = (frameIndex == frameCount - 1) ? frameMaximum[frameIndex]
-			        : Math.max(frameMaximum[frameIndex],
-			                frameMaximum[frameIndex + 1]);
-
-			double maxStartGain = Math.min(endGain * maxGainIncrease, maxGain);
-			startGain = Math.min(
-			        Math.max(1.0, (maxValue * 0.97) / startMaximum),
-			        maxStartGain);
-			double maxEndGain = Math.min(startGain * maxGainIncrease, maxGain);
-			endGain = Math.min(Math.max(1.0, (maxValue * 0.97) / endMaximum),
-			        maxEndGain);
-
-			System.out.println("Frame " + frameIndex);
-			System.out.println(" - startLevel = '" + startGain + "'");
-			System.out.println(" - endLevel = '" + endGain + "'");
-
-			for (int frameOffset = 0; frameOffset < frameSize; frameOffset++) {
-				double gain = startGain + (endGain - startGain) * frameOffset
-				        / frameSize;
-
-				for (int channel = 0; channel < channels; channel++) {
-					int sampleIndex = (frameIndex * frameSize + frameOffset);
-					int base = (sampleIndex * channels + channel)
-					        * bytesPerSample;
-					int sample = bigEndian ? (short) (data[base] << 8 | data[base + 1] & 0xff)
-					        : (short) (data[base + 1] << 8 | data[base] & 0xff);
-
-					writeShortLE(out, (int) (sample * gain));
-				}
-			}
-		}
-
-		out.close();
-
-		// AudioClipView view = new AudioClipView(format, data);
-		// JFrame frame = new JFrame();
-		// frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
-		// frame.setLayout(new BorderLayout());
-		// frame.add(view);
-		// frame.setSize(new Dimension(1000, 400));
-		// frame.setVisible(true);
-	}
-
-	private static void testStreamNormalizationAndEncoding(AudioFormat format)
-	        throws IOException {
-		File source = new File("D:\\Code\\Java\\Eclipse\\opwViewer\\test3.wav");
-		File result = new File(
-		        "D:\\Code\\Java\\Eclipse\\opwViewer\\test3.output.mp3");
-
-		System.out.println("source = '" + source + "'");
-		System.out.println("result = '" + result + "'");
-
-		InputStream in = null;
-		OutputStream out = null;
-
-		try {
-			in = new BufferedInputStream(new FileInputStream(source));
-			out = new BufferedOutputStream(new FileOutputStream(result));
-
-			File executable = new File("D:\\lame-3.96.1\\lame.exe");
-
-			OutputStream encoder = new LameOutputStream(out,
-			        new Mp3Options(), executable);
-
-			copyUntil(in, encoder, "data", 4);
-			encoder.flush();
-
-			OutputStream normalizer = new NormalizingOutputStream(encoder,
-			        format, 2.0, 30.0, true);
-
-			Pipe pipe = new Pipe(in, normalizer);
-			pipe.call();
-
-		} finally {
-			if (in != null)
-				in.close();
-			if (out != null)
-				out.close();
-		}
-
-		System.out.println("Done.");
-	}
-
-	private static void copyUntil(InputStream in, OutputStream out,
-	        String string, int offset) throws IOException {
-		if (offset < 0) {
-			throw new IllegalArgumentException(
-			        "offset < 0: do i look like a magician?");
-		}
-
-		byte[] bytes;
-		try {
-			bytes = string.getBytes("UTF-8");
-		} catch (UnsupportedEncodingException e) {
-			throw new AssertionError(e);
-		}
-
-		int matchLength = 0;
-		while (matchLength != bytes.length) {
-			int read = in.read();
-			if (read == -1)
-				throw new EOFException();
-			out.write(read);
-			if (read == bytes[matchLength]) {
-				matchLength++;
-			} else {
-				matchLength = 0;
-			}
-		}
-
-		for (int i = 0; i < offset; i++) {
-			int read = in.read();
-			if (read == -1) {
-				throw new EOFException();
-			}
-			out.write(read);
-		}
-	}
-
 	private static void testRecordingAndEncoding(AudioFormat format)
 	        throws IOException {
 		final TargetDataLine targetDataLine;
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+/**
+ * Keeps track of the maximum of the most recently added values, in amortized
+ * constant time per value. Values are kept in a monotonic deque: a value is
+ * discarded as soon as a larger value is added after it, because it can no
+ * longer be the maximum of the window.
+ *
+ * @author Gerrit Meinders
+ */
+public class RollingPeak
+{
+	/**
+	 * Number of values in the window.
+	 */
+	private final int windowSize;
+
+	/**
+	 * Values in the deque, in decreasing order from head to tail.
+	 */
+	private final int[] values;
+
+	/**
+	 * Sequence numbers of the values in the deque, used to remove values
+	 * that are no longer in the window.
+	 */
+	private final long[] indices;
+
+	/**
+	 * Index of the first element of the deque in the backing arrays.
+	 */
+	private int head;
+
+	/**
+	 * Number of elements in the deque.
+	 */
+	private int size;
+
+	/**
+	 * Sequence number of the next value to be added.
+	 */
+	private long count;
+
+	/**
+	 * Constructs a new rolling peak.
+	 *
+	 * @param windowSize Number of values in the window.
+	 */
+	public RollingPeak(int windowSize)
+	{
+		if (windowSize <= 0)
+		{
+			throw new IllegalArgumentException("windowSize: " + windowSize);
+		}
+		this.windowSize = windowSize;
+		values = new int[windowSize];
+		indices = new long[windowSize];
+		clear();
+	}
+
+	/**
+	 * Returns the number of values in the window.
+	 *
+	 * @return Window size.
+	 */
+	public int getWindowSize()
+	{
+		return windowSize;
+	}
+
+	/**
+	 * Adds the given value to the window, removing the oldest value if the
+	 * window is full.
+	 *
+	 * @param value Value to be added.
+	 */
+	public void add(int value)
+	{
+		/*
+		 * Remove the head if it's no longer in the window.
+		 */
+		if ((size > 0) && (indices[head] <= count - windowSize))
+		{
+			head = (head + 1 == windowSize) ? 0 : head + 1;
+			size--;
+		}
+
+		/*
+		 * Remove values from the tail that can never be the maximum again.
+		 */
+		int tail = head + size - 1;
+		if (tail >= windowSize)
+		{
+			tail -= windowSize;
+		}
+		while ((size > 0) && (values[tail] <= value))
+		{
+			tail = (tail == 0) ? windowSize - 1 : tail - 1;
+			size--;
+		}
+
+		tail = (tail + 1 == windowSize) ? 0 : tail + 1;
+		if (size == 0)
+		{
+			head = tail;
+		}
+		values[tail] = value;
+		indices[tail] = count++;
+		size++;
+	}
+
+	/**
+	 * Returns the maximum value in the window.
+	 *
+	 * @return Maximum value, or {@code 0} if the window is empty.
+	 */
+	public int get()
+	{
+		return (size == 0) ? 0 : values[head];
+	}
+
+	/**
+	 * Removes all values from the window.
+	 */
+	public void clear()
+	{
+		head = 0;
+		size = 0;
+		count = 0;
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import javax.sound.sampled.*;
+
+/**
+ * Captures audio from a target data line into a ring buffer. The capture is
+ * performed by a dedicated thread, running {@link #run()}, which reads
+ * frame-aligned chunks directly into the buffer. Audio is then processed by
+ * another thread, draining the buffer, such that processing stalls don't
+ * cause the data line to overflow.
+ *
+ * <p>
+ * If the buffer is full, captured audio is discarded and counted as an
+ * overrun (see {@link AudioRingBuffer#getOverrunCount()}).
+ *
+ * @author Gerrit Meinders
+ */
+public class TargetDataLineCapture implements Runnable
+{
+	/**
+	 * Time to wait before trying again when no data was captured, in
+	 * milliseconds.
+	 */
+	private static final long RETRY_DELAY = 10;
+
+	private final TargetDataLine targetDataLine;
+
+	private final AudioRingBuffer buffer;
+
+	/**
+	 * Maximum number of bytes read from the data line at once.
+	 */
+	private final int chunkSize;
+
+	/**
+	 * Receives audio that doesn't fit into the buffer.
+	 */
+	private final byte[] discardBuffer;
+
+	private final Object startLock = new Object();
+
+	private volatile boolean started = false;
+
+	/**
+	 * Constructs a new capture for the given data line, which is opened
+	 * immediately.
+	 *
+	 * @param targetDataLine Data line to capture audio from.
+	 * @param audioFormat Audio format to open the data line with.
+	 * @param bufferDuration Amount of audio that the ring buffer can hold, in
+	 *            seconds.
+	 *
+	 * @throws LineUnavailableException if the data line can't be opened.
+	 */
+	public TargetDataLineCapture(TargetDataLine targetDataLine,
+	        AudioFormat audioFormat, double bufferDuration)
+	        throws LineUnavailableException
+	{
+		this.targetDataLine = targetDataLine;
+
+		targetDataLine.open(audioFormat);
+
+		int frameSize = audioFormat.getFrameSize();
+		chunkSize = Math.max(1, targetDataLine.getBufferSize() / 8
+		        / frameSize) * frameSize;
+		discardBuffer = new byte[chunkSize];
+
+		int bufferSize = (int) (audioFormat.getFrameRate() * bufferDuration)
+		        * frameSize;
+		buffer = new AudioRingBuffer(Math.max(bufferSize, 2 * chunkSize),
+		        frameSize);
+	}
+
+	/**
+	 * Returns the buffer that captured audio is written to.
+	 *
+	 * @return Ring buffer.
+	 */
+	public AudioRingBuffer getBuffer()
+	{
+		return buffer;
+	}
+
+	/**
+	 * Returns the data line that audio is captured from.
+	 *
+	 * @return Target data line.
+	 */
+	public TargetDataLine getTargetDataLine()
+	{
+		return targetDataLine;
+	}
+
+	public void start()
+	{
+		synchronized (startLock)
+		{
+			if (!started)
+			{
+				targetDataLine.start();
+				started = true;
+			}
+		}
+	}
+
+	public boolean isStarted()
+	{
+		return started;
+	}
+
+	public void stop()
+	{
+		synchronized (startLock)
+		{
+			if (started)
+			{
+				targetDataLine.stop();
+				started = false;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of frames captured by the data line since it was
+	 * opened.
+	 *
+	 * @return Frame position of the data line.
+	 */
+	public long getFramePosition()
+	{
+		return targetDataLine.getLongFramePosition();
+	}
+
+	public void drain()
+	{
+		targetDataLine.drain();
+	}
+
+	/**
+	 * Closes the data line. Once all remaining audio is captured, the buffer
+	 * is closed as well.
+	 */
+	public void close()
+	{
+		targetDataLine.close();
+	}
+
+	/**
+	 * Captures audio until the data line is closed.
+	 */
+	@Override
+	public void run()
+	{
+		int frameSize = buffer.getFrameSize();
+		byte[] array = buffer.array();
+
+		try
+		{
+			while (targetDataLine.isOpen())
+			{
+				int length = Math.min(buffer.getWritableLength(), chunkSize);
+
+				int read;
+				if (length == 0)
+				{
+					/*
+					 * The buffer is full. Keep reading from the line anyway,
+					 * to prevent it from overflowing, and drop the audio.
+					 */
+					read = targetDataLine.read(discardBuffer, 0, chunkSize);
+					buffer.addOverrun(read / frameSize);
+				}
+				else
+				{
+					read = targetDataLine.read(array, buffer.getWriteOffset(),
+					        length);
+					buffer.commitWrite(read);
+				}
+
+				if ((read == 0) && targetDataLine.isOpen())
+				{
+					try
+					{
+						Thread.sleep(RETRY_DELAY);
+					}
+					catch (InterruptedException e)
+					{
+						// Handled by enclosing while loop.
+					}
+				}
+			}
+		}
+		finally
+		{
+			System.out.println("Recording stream closed");
+			buffer.close();
+		}
+	}
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import javax.sound.sampled.*;
+
+/**
+ * Writes audio to a wave file, using a file channel. Unlike
+ * {@link WaveOutputStream}, which is meant for streaming, the sizes in the
+ * header are updated in place whenever a block of audio is written to the
+ * file and when the stream is flushed or closed. As a result, the file remains
+ * valid during a recording, up to the last block written.
+ *
+ * <p>
+ * Since a standard wave file is limited to 4 GB, space is reserved in the
+ * header for a 'ds64' chunk. When the file grows beyond the limit, the file is
+ * converted in place to the RF64 format (EBU Tech 3306), which is also
+ * understood by BW64 readers.
+ *
+ * @author Gerrit Meinders
+ */
+public class WaveFileOutputStream extends OutputStream {
+	/**
+	 * Maximum RIFF chunk size of a standard wave file.
+	 */
+	static final long MAXIMUM_RIFF_SIZE = 0xffffffffL;
+
+	/**
+	 * Default size of the buffer used to write to the file.
+	 */
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * Position of the RIFF chunk size.
+	 */
+	private static final int RIFF_SIZE_POSITION = 4;
+
+	/**
+	 * Position of the chunk reserved for the 'ds64' chunk.
+	 */
+	private static final int DS64_POSITION = 12;
+
+	/**
+	 * Size of the 'ds64' chunk's contents, without a table.
+	 */
+	private static final int DS64_SIZE = 28;
+
+	/**
+	 * Position of the data chunk size.
+	 */
+	private static final int DATA_SIZE_POSITION = DS64_POSITION + 8
+	        + DS64_SIZE + 8 + 16 + 4;
+
+	/**
+	 * Size of the header, i.e. the position of the first audio byte.
+	 */
+	private static final int HEADER_SIZE = DATA_SIZE_POSITION + 4;
+
+	private final FileChannel channel;
+
+	private final ByteBuffer buffer;
+
+	private final int frameSize;
+
+	/**
+	 * Maximum RIFF chunk size before switching to the RF64 format.
+	 */
+	private final long maximumRiffSize;
+
+	/**
+	 * Number of audio bytes written to the file so far, including any in the
+	 * buffer.
+	 */
+	private long dataSize;
+
+	/**
+	 * Whether the file has been converted to the RF64 format.
+	 */
+	private boolean rf64;
+
+	private boolean closed;
+
+	/**
+	 * Constructs a new wave file output stream, creating or replacing the
+	 * given file.
+	 *
+	 * @param file File to write to.
+	 * @param format Format of the audio.
+	 *
+	 * @throws IOException if the file can't be written.
+	 */
+	public WaveFileOutputStream(File file, AudioFormat format)
+	        throws IOException {
+		this(file, format, MAXIMUM_RIFF_SIZE);
+	}
+
+	/**
+	 * Constructs a new wave file output stream that switches to RF64 at the
+	 * given size, for testing purposes.
+	 */
+	WaveFileOutputStream(File file, AudioFormat format, long maximumRiffSize)
+	        throws IOException {
+		this.maximumRiffSize = maximumRiffSize;
+		frameSize = format.getFrameSize();
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(0);
+		} catch (IOException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+		channel = randomAccessFile.getChannel();
+
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		writeHeader(format);
+
+		dataSize = 0;
+		rf64 = false;
+		closed = false;
+	}
+
+	private void writeHeader(AudioFormat format) throws IOException {
+		int channels = format.getChannels();
+		int sampleRate = (int) format.getSampleRate();
+		int bitsPerSample = format.getSampleSizeInBits();
+
+		putId("RIFF");
+		buffer.putInt(HEADER_SIZE - 8); // updated on flush
+		putId("WAVE");
+
+		// reserved for 'ds64', in case the file exceeds 4 GB
+		putId("JUNK");
+		buffer.putInt(DS64_SIZE);
+		for (int i = 0; i < DS64_SIZE; i++) {
+			buffer.put((byte) 0);
+		}
+
+		putId("fmt ");
+		buffer.putInt(16); // chunk size
+		buffer.putShort((short) 1); // audio format = PCM
+		buffer.putShort((short) channels);
+		buffer.putInt(sampleRate);
+		buffer.putInt(sampleRate * channels * bitsPerSample / 8); // byte rate
+		buffer.putShort((short) (channels * bitsPerSample / 8)); // block align
+		buffer.putShort((short) bitsPerSample);
+
+		putId("data");
+		buffer.putInt(0); // updated on flush
+
+		if (buffer.position() != HEADER_SIZE) {
+			throw new AssertionError("Unexpected header size: "
+			        + buffer.position());
+		}
+	}
+
+	private void putId(String id) {
+		for (int i = 0; i < 4; i++) {
+			buffer.put((byte) id.charAt(i));
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (!buffer.hasRemaining()) {
+			writeBlock();
+		}
+		buffer.put((byte) b);
+		dataSize++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			if (!buffer.hasRemaining()) {
+				writeBlock();
+			}
+			int length = Math.min(len, buffer.remaining());
+			buffer.put(b, off, length);
+			off += length;
+			len -= length;
+			dataSize += length;
+		}
+	}
+
+	/**
+	 * Writes any buffered audio to the file and updates the header to match.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		writeBuffer();
+		updateHeader(dataSize);
+	}
+
+	/**
+	 * Writes any buffered audio, adds a pad byte if needed and updates the
+	 * header before closing the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		try {
+			if (dataSize % 2 != 0) {
+				// chunks are word-aligned; not counted in the data size
+				if (!buffer.hasRemaining()) {
+					writeBuffer();
+				}
+				buffer.put((byte) 0);
+			}
+			writeBuffer();
+			updateHeader(dataSize);
+		} finally {
+			closed = true;
+			channel.close();
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	/**
+	 * Appends the contents of the buffer to the file and updates the header.
+	 */
+	private void writeBlock() throws IOException {
+		writeBuffer();
+		updateHeader(dataSize);
+	}
+
+	/**
+	 * Appends the contents of the buffer to the file.
+	 */
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Updates the sizes in the header in place, converting the file to RF64
+	 * if needed. Only the header is written; the file position is unaffected.
+	 *
+	 * @param dataSize Size of the audio data.
+	 */
+	private void updateHeader(long dataSize) throws IOException {
+		long riffSize = HEADER_SIZE - 8 + dataSize + (dataSize % 2);
+
+		if (!rf64 && (riffSize > maximumRiffSize)) {
+			rf64 = true;
+			ByteBuffer ids = ByteBuffer.allocate(4);
+			ids.put((byte) 'R').put((byte) 'F').put((byte) '6')
+			        .put((byte) '4').flip();
+			writeFully(ids, 0);
+			ids.clear();
+			ids.put((byte) 'd').put((byte) 's').put((byte) '6')
+			        .put((byte) '4').flip();
+			writeFully(ids, DS64_POSITION);
+		}
+
+		ByteBuffer size = ByteBuffer.allocate(DS64_SIZE);
+		size.order(ByteOrder.LITTLE_ENDIAN);
+		if (rf64) {
+			size.putInt(-1).flip();
+			writeFully(size, RIFF_SIZE_POSITION);
+			size.rewind();
+			writeFully(size, DATA_SIZE_POSITION);
+
+			size.clear();
+			size.putLong(riffSize);
+			size.putLong(dataSize);
+			size.putLong(dataSize / frameSize); // sample count
+			size.putInt(0); // table length
+			size.flip();
+			writeFully(size, DS64_POSITION + 8);
+
+		} else {
+			size.putInt((int) riffSize).flip();
+			writeFully(size, RIFF_SIZE_POSITION);
+			size.clear();
+			size.putInt((int) dataSize).flip();
+			writeFully(size, DATA_SIZE_POSITION);
+		}
+	}
+
+	private void writeFully(ByteBuffer source, long position)
+	        throws IOException {
+		while (source.hasRemaining()) {
+			position += channel.write(source, position);
+		}
+	}
+}
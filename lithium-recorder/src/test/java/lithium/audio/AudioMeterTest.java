@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class AudioMeterTest
+{
+	/**
+	 * Tests that snapshots contain the peak and RMS levels of the committed
+	 * samples, and that taking a snapshot resets them.
+	 */
+	@Test
+	public void testSnapshot()
+	{
+		AudioMeter meter = new AudioMeter(2, 1000, 4);
+
+		for (int i = 0; i < 8; i++)
+		{
+			meter.setGain(1, 2.5);
+			meter.add(0, (i % 2 == 0) ? 500 : -500);
+			meter.add(1, (i == 5) ? -1000 : 100);
+		}
+
+		/*
+		 * These samples are not committed yet.
+		 */
+		meter.add(0, 900);
+		meter.add(1, 900);
+		meter.add(0, 900);
+
+		AudioMeter.Snapshot snapshot = meter.takeSnapshot();
+		assertEquals("Unexpected channels", 2, snapshot.getChannels());
+		assertEquals("Unexpected peak", 0.5, snapshot.getPeak(0), 1e-9);
+		assertEquals("Unexpected peak", 1.0, snapshot.getPeak(1), 1e-9);
+		assertEquals("Unexpected RMS", 0.5, snapshot.getRMS(0), 1e-9);
+		assertEquals("Unexpected RMS", Math.sqrt((7 * 0.01 + 1.0) / 8),
+		        snapshot.getRMS(1), 1e-9);
+		assertEquals("Unexpected gain", 1.0, snapshot.getGain(0), 1e-9);
+		assertEquals("Unexpected gain", 2.5, snapshot.getGain(1), 1e-9);
+
+		snapshot = meter.takeSnapshot();
+		assertEquals("Unexpected peak", 0.0, snapshot.getPeak(0), 1e-9);
+		assertEquals("Unexpected RMS", 0.0, snapshot.getRMS(1), 1e-9);
+		assertEquals("Unexpected gain", 2.5, snapshot.getGain(1), 1e-9);
+	}
+}
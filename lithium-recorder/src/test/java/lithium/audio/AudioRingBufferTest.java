@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import java.io.*;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class AudioRingBufferTest
+{
+	/**
+	 * Tests that data written by a producer thread is read by the consumer
+	 * completely and in order, even though the buffer is much smaller than
+	 * the amount of data.
+	 *
+	 * @throws Exception if the test fails unexpectedly
+	 */
+	@Test
+	public void testProducerConsumer() throws Exception
+	{
+		final int frameSize = 4;
+		final int frames = 250000;
+		final AudioRingBuffer buffer = new AudioRingBuffer(1000, frameSize);
+
+		Thread producer = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				byte[] array = buffer.array();
+				int value = 0;
+				int remaining = frames * frameSize;
+				while (remaining > 0)
+				{
+					int length = Math.min(buffer.getWritableLength(),
+					        Math.min(remaining, 12 * frameSize));
+					int offset = buffer.getWriteOffset();
+					for (int i = 0; i < length; i++)
+					{
+						array[offset + i] = (byte) value++;
+					}
+					buffer.commitWrite(length);
+					remaining -= length;
+				}
+				buffer.close();
+			}
+		};
+		producer.start();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		buffer.drainTo(out);
+		producer.join();
+
+		byte[] data = out.toByteArray();
+		assertEquals("Unexpected length", frames * frameSize, data.length);
+		for (int i = 0; i < data.length; i++)
+		{
+			assertEquals("Unexpected value at " + i, (byte) i, data[i]);
+		}
+		assertEquals("Unexpected overruns", 0, buffer.getOverrunCount());
+	}
+
+	/**
+	 * Tests that skipping discards data across the end of the backing array,
+	 * and stops when the buffer is closed.
+	 *
+	 * @throws Exception if the test fails unexpectedly
+	 */
+	@Test
+	public void testSkip() throws Exception
+	{
+		AudioRingBuffer buffer = new AudioRingBuffer(16, 4);
+		byte[] array = buffer.array();
+
+		buffer.commitWrite(12);
+		assertEquals("Unexpected skipped length", 8, buffer.skip(8));
+
+		/*
+		 * Write the values 12 to 19, wrapping around at the end of the array.
+		 */
+		for (int value = 12; value < 20; value += 4)
+		{
+			int offset = buffer.getWriteOffset();
+			for (int i = 0; i < 4; i++)
+			{
+				array[offset + i] = (byte) (value + i);
+			}
+			buffer.commitWrite(4);
+		}
+
+		assertEquals("Unexpected skipped length", 6, buffer.skip(6));
+		assertEquals("Unexpected value", 14, array[buffer.getReadOffset()]);
+
+		buffer.close();
+		assertEquals("Unexpected skipped length", 6, buffer.skip(10));
+		assertEquals("Unexpected available length", 0, buffer.available());
+	}
+
+	/**
+	 * Tests that only whole frames can be committed.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testPartialFrame()
+	{
+		AudioRingBuffer buffer = new AudioRingBuffer(16, 4);
+		buffer.commitWrite(3);
+	}
+}
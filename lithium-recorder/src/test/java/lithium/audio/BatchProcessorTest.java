@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import java.io.*;
+import java.util.*;
+import javax.sound.sampled.*;
+
+import lithium.*;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class BatchProcessorTest
+{
+	/**
+	 * Tests that all files are normalized into the target folder, without
+	 * changing their length. One of the files lacks a valid data chunk size,
+	 * as if the recording was interrupted.
+	 *
+	 * @throws Exception if the test fails unexpectedly
+	 */
+	@Test
+	public void testProcess() throws Exception
+	{
+		AudioFormat audioFormat = new AudioFormat(
+		        AudioFormat.Encoding.PCM_SIGNED, 8000, 16, 1, 2, 8000, false);
+
+		File folder = File.createTempFile("BatchProcessorTest", "");
+		folder.delete();
+		folder.mkdir();
+		File targetFolder = new File(folder, "normalized");
+
+		try
+		{
+			List<File> sources = new ArrayList<File>();
+			for (int i = 0; i < 3; i++)
+			{
+				File source = new File(folder, "test" + i + ".wav");
+				WaveFileOutputStream out = new WaveFileOutputStream(source,
+				        audioFormat);
+				for (int j = 0; j < 10000 * (i + 1); j++)
+				{
+					int sample = (int) (1000.0 * Math.sin(j * 0.1));
+					out.write(sample);
+					out.write(sample >> 8);
+				}
+				out.close();
+				sources.add(source);
+			}
+
+			RandomAccessFile interrupted = new RandomAccessFile(sources.get(2),
+			        "rw");
+			try
+			{
+				interrupted.seek(76);
+				interrupted.writeInt(0);
+			}
+			finally
+			{
+				interrupted.close();
+			}
+
+			Config config = new Config();
+			config.getRecorderConfig().setNormalize(true);
+			config.getRecorderConfig().setWindowSize(0.1);
+
+			BatchProcessor processor = new BatchProcessor(config, 2);
+			assertEquals("Unexpected failures", 0,
+			        processor.process(sources, targetFolder));
+
+			for (int i = 0; i < sources.size(); i++)
+			{
+				File target = new File(targetFolder, "test" + i + ".wav");
+				AudioInputStream in = AudioSystem.getAudioInputStream(target);
+				try
+				{
+					assertEquals("Unexpected frame length", 10000 * (i + 1),
+					        in.getFrameLength());
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+		}
+		finally
+		{
+			for (File file : targetFolder.listFiles())
+			{
+				file.delete();
+			}
+			targetFolder.delete();
+			for (File file : folder.listFiles())
+			{
+				file.delete();
+			}
+			folder.delete();
+		}
+	}
+
+	/**
+	 * Tests that 8-bit wave files, which store unsigned samples, are
+	 * normalized around the same center value, rather than being interpreted
+	 * as signed samples.
+	 *
+	 * @throws Exception if the test fails unexpectedly
+	 */
+	@Test
+	public void testProcess8Bit() throws Exception
+	{
+		AudioFormat audioFormat = new AudioFormat(
+		        AudioFormat.Encoding.PCM_UNSIGNED, 8000, 8, 1, 1, 8000, false);
+
+		File folder = File.createTempFile("BatchProcessorTest", "");
+		folder.delete();
+		folder.mkdir();
+		File targetFolder = new File(folder, "normalized");
+
+		try
+		{
+			File source = new File(folder, "test.wav");
+			WaveFileOutputStream out = new WaveFileOutputStream(source,
+			        audioFormat);
+			for (int j = 0; j < 10000; j++)
+			{
+				out.write(0x80 + (int) (20.0 * Math.sin(j * 0.1)));
+			}
+			out.close();
+
+			Config config = new Config();
+			config.getRecorderConfig().setNormalize(true);
+			config.getRecorderConfig().setWindowSize(0.1);
+
+			BatchProcessor processor = new BatchProcessor(config, 1);
+			assertEquals("Unexpected failures", 0, processor.process(
+			        Collections.singletonList(source), targetFolder));
+
+			File target = new File(targetFolder, "test.wav");
+			AudioInputStream in = AudioSystem.getAudioInputStream(target);
+			try
+			{
+				assertEquals("Unexpected encoding",
+				        AudioFormat.Encoding.PCM_UNSIGNED,
+				        in.getFormat().getEncoding());
+				assertEquals("Unexpected frame length", 10000,
+				        in.getFrameLength());
+
+				long sum = 0;
+				int minimum = 0xff;
+				int maximum = 0;
+				int count = 0;
+				for (int b; (b = in.read()) != -1; count++)
+				{
+					sum += b;
+					minimum = Math.min(minimum, b);
+					maximum = Math.max(maximum, b);
+				}
+				assertEquals("Unexpected sample count", 10000, count);
+				assertEquals("Unexpected center", 0x80, (double) sum / count,
+				        2.0);
+				assertTrue("Expected amplification", maximum - minimum > 40);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		finally
+		{
+			for (File file : targetFolder.listFiles())
+			{
+				file.delete();
+			}
+			targetFolder.delete();
+			for (File file : folder.listFiles())
+			{
+				file.delete();
+			}
+			folder.delete();
+		}
+	}
+}
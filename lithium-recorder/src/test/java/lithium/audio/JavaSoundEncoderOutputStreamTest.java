@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import java.io.*;
+import javax.sound.sampled.*;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test of {@link JavaSoundEncoderOutputStream}. Instead of MP3 encoding,
+ * which requires an additional service provider, the tests use a conversion
+ * from little-endian to big-endian samples that is provided by the JRE.
+ *
+ * @author Gerrit Meinders
+ */
+public class JavaSoundEncoderOutputStreamTest
+{
+	private final AudioFormat sourceFormat = new AudioFormat(
+	        AudioFormat.Encoding.PCM_SIGNED, 8000, 16, 1, 2, 8000, false);
+
+	private final AudioFormat targetFormat = new AudioFormat(
+	        AudioFormat.Encoding.PCM_SIGNED, 8000, 16, 1, 2, 8000, true);
+
+	/**
+	 * Tests that all written audio is converted and written to the underlying
+	 * stream, using blocks that are smaller than the written data.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testEncode() throws IOException
+	{
+		byte[] data = new byte[10000];
+		for (int i = 0; i < data.length; i++)
+		{
+			data[i] = (byte) (i * 7);
+		}
+
+		ClosableOutputStream target = new ClosableOutputStream(false);
+		JavaSoundEncoderOutputStream out = new JavaSoundEncoderOutputStream(
+		        target, sourceFormat, targetFormat, 512, 4);
+		out.write(data, 0, 3001);
+		out.write(data[3001] & 0xff);
+		out.write(data, 3002, data.length - 3002);
+		out.close();
+
+		assertTrue("Underlying stream not closed", target.closed);
+		byte[] encoded = target.toByteArray();
+		assertEquals("Unexpected length", data.length, encoded.length);
+		for (int i = 0; i < data.length; i += 2)
+		{
+			assertEquals("Unexpected byte at " + i, data[i + 1], encoded[i]);
+			assertEquals("Unexpected byte at " + (i + 1), data[i],
+			        encoded[i + 1]);
+		}
+	}
+
+	/**
+	 * Tests that a failure of the encoder is reported when the stream is
+	 * closed, and that the underlying stream is closed nonetheless.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testEncoderFailure() throws IOException
+	{
+		ClosableOutputStream target = new ClosableOutputStream(true);
+		JavaSoundEncoderOutputStream out = new JavaSoundEncoderOutputStream(
+		        target, sourceFormat, targetFormat, 512, 4);
+		out.write(new byte[1000]);
+
+		try
+		{
+			out.close();
+			fail("Expected IOException");
+		}
+		catch (IOException e)
+		{
+			assertTrue("Unexpected cause: " + e.getCause(),
+			        e.getCause() instanceof IOException);
+		}
+		assertTrue("Underlying stream not closed", target.closed);
+
+		// closing again has no effect
+		out.close();
+	}
+
+	/**
+	 * Output stream that keeps track of whether it's closed, and optionally
+	 * fails to write any data.
+	 */
+	private static class ClosableOutputStream extends OutputStream
+	{
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		private final boolean failing;
+
+		private volatile boolean closed = false;
+
+		ClosableOutputStream(boolean failing)
+		{
+			this.failing = failing;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if (failing)
+			{
+				throw new IOException("Disk full");
+			}
+			buffer.write(b, off, len);
+		}
+
+		@Override
+		public void close()
+		{
+			closed = true;
+		}
+
+		byte[] toByteArray()
+		{
+			return buffer.toByteArray();
+		}
+	}
+}
@@ -18,6 +18,7 @@
 package lithium.audio;
 
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 import javax.sound.sampled.*;
 
@@ -154,6 +155,132 @@ public class NormalizingOutputStreamTest
 		}
 	}
 
+	/**
+	 * Tests that writing data in blocks produces the same output as writing
+	 * the same data one byte at a time, including blocks that end in the
+	 * middle of a sample. The same applies to data written from buffers.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testBlockWrite() throws IOException
+	{
+		AudioFormat audioFormat = new AudioFormat(
+		        AudioFormat.Encoding.PCM_SIGNED, 4410, 16, 2, 4, 4410, false);
+
+		byte[] data = createTestSignal(audioFormat, 100000);
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		NormalizingOutputStream out = new NormalizingOutputStream(expected,
+		        audioFormat, 1.0, 30.0, false);
+		for (byte b : data)
+		{
+			out.write(b & 0xff);
+		}
+		out.close();
+
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		out = new NormalizingOutputStream(actual, audioFormat, 1.0, 30.0,
+		        false);
+		Random random = new Random(0);
+		for (int offset = 0; offset < data.length;)
+		{
+			int length = Math.min(data.length - offset,
+			        random.nextInt(10000) + 1);
+			out.write(data, offset, length);
+			offset += length;
+		}
+		out.close();
+
+		assertArrayEquals("Unexpected output", expected.toByteArray(),
+		        actual.toByteArray());
+
+		actual = new ByteArrayOutputStream();
+		out = new NormalizingOutputStream(actual, audioFormat, 1.0, 30.0,
+		        false);
+		for (int offset = 0; offset < data.length;)
+		{
+			int length = Math.min(data.length - offset,
+			        random.nextInt(10000) + 1);
+			ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+			out.write(buffer);
+			assertFalse("Buffer not consumed", buffer.hasRemaining());
+			offset += length;
+		}
+		out.close();
+
+		assertArrayEquals("Unexpected output from buffers",
+		        expected.toByteArray(), actual.toByteArray());
+	}
+
+	/**
+	 * Tests that true peak limiting keeps the signal below the true peak
+	 * ceiling, using a sine wave at a quarter of the sample rate with its
+	 * peaks exactly between samples.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testTruePeakLimiting() throws IOException
+	{
+		AudioFormat audioFormat = new AudioFormat(
+		        AudioFormat.Encoding.PCM_SIGNED, 4410, 16, 1, 2, 4410, false);
+
+		int sampleCount = 4410 * 10;
+		byte[] data = new byte[sampleCount * 2];
+		for (int i = 0; i < sampleCount; i++)
+		{
+			int sample = (int) (1000 * Math.sin(Math.PI * (i + 0.5) / 2));
+			data[2 * i] = (byte) sample;
+			data[2 * i + 1] = (byte) (sample >> 8);
+		}
+
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		NormalizingOutputStream out = new NormalizingOutputStream(actual,
+		        audioFormat, 0.5, 100.0, false);
+		out.setTruePeakLimiting(true);
+		out.write(data);
+		out.close();
+
+		byte[] output = actual.toByteArray();
+		int maximum = 0;
+		for (int i = output.length / 2; i < output.length; i += 2)
+		{
+			int sample = (short) ((output[i] & 0xff) | (output[i + 1] << 8));
+			maximum = Math.max(maximum, Math.abs(sample));
+		}
+
+		double ceiling = out.getTruePeakCeiling() * 32767;
+		assertTrue("Above true peak ceiling: " + maximum,
+		        maximum / Math.sin(Math.PI / 4) <= ceiling);
+		assertTrue("Not normalized: " + maximum, maximum > ceiling * 0.6);
+	}
+
+	/**
+	 * Creates a 16-bit little-endian test signal consisting of alternating
+	 * loud and quiet random noise.
+	 *
+	 * @param audioFormat Audio format of the signal.
+	 * @param sampleCount Number of samples in the signal.
+	 *
+	 * @return Test signal.
+	 */
+	private byte[] createTestSignal(AudioFormat audioFormat, int sampleCount)
+	{
+		Random random = new Random(0);
+		int period = (int) audioFormat.getSampleRate() * 3;
+
+		byte[] data = new byte[sampleCount * 2];
+		for (int i = 0; i < sampleCount; i++)
+		{
+			int amplitude = (i / period) % 2 == 0 ? 30000 : 300;
+			int sample = random.nextInt(2 * amplitude + 1) - amplitude;
+			data[2 * i] = (byte) sample;
+			data[2 * i + 1] = (byte) (sample >> 8);
+		}
+		return data;
+	}
+
 	/**
 	 * This output stream discards any data written to it.
 	 */
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import java.util.*;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class RollingPeakTest
+{
+	/**
+	 * Tests that the rolling peak matches the maximum of the most recent
+	 * values, as determined by brute force, for random values with long
+	 * decreasing runs.
+	 */
+	@Test
+	public void testRandomValues()
+	{
+		Random random = new Random(0);
+		for (int windowSize : new int[] { 1, 2, 7, 64 })
+		{
+			RollingPeak peak = new RollingPeak(windowSize);
+			int[] values = new int[5000];
+			for (int i = 0; i < values.length; i++)
+			{
+				if (random.nextInt(10) == 0)
+				{
+					values[i] = random.nextInt(1000);
+				}
+				else
+				{
+					values[i] = Math.max(0, (i == 0 ? 500 : values[i - 1])
+					        - random.nextInt(20));
+				}
+
+				peak.add(values[i]);
+
+				int expected = 0;
+				for (int j = Math.max(0, i - windowSize + 1); j <= i; j++)
+				{
+					expected = Math.max(expected, values[j]);
+				}
+				assertEquals("Unexpected peak at " + i + " for window size "
+				        + windowSize, expected, peak.get());
+			}
+		}
+	}
+
+	/**
+	 * Tests that clearing the rolling peak removes all values.
+	 */
+	@Test
+	public void testClear()
+	{
+		RollingPeak peak = new RollingPeak(4);
+		peak.add(10);
+		peak.add(5);
+		peak.clear();
+		assertEquals("Unexpected peak", 0, peak.get());
+		peak.add(3);
+		assertEquals("Unexpected peak", 3, peak.get());
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 Gerrit Meinders
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package lithium.audio;
+
+import java.io.*;
+import java.nio.*;
+import javax.sound.sampled.*;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class WaveFileOutputStreamTest
+{
+	private final AudioFormat audioFormat = new AudioFormat(
+	        AudioFormat.Encoding.PCM_SIGNED, 44100, 16, 2, 4, 44100, false);
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		file = File.createTempFile("WaveFileOutputStreamTest", ".wav");
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	/**
+	 * Tests that the header is updated when the stream is flushed, such that
+	 * the file can be read while it is still being written, and again when
+	 * the stream is closed.
+	 *
+	 * @throws Exception if the test fails unexpectedly
+	 */
+	@Test
+	public void testUpdateHeader() throws Exception
+	{
+		WaveFileOutputStream out = new WaveFileOutputStream(file, audioFormat);
+		try
+		{
+			out.write(new byte[4000]);
+			out.flush();
+
+			AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(file);
+			assertEquals("Unexpected type", AudioFileFormat.Type.WAVE,
+			        fileFormat.getType());
+			assertEquals("Unexpected frame length", 1000,
+			        fileFormat.getFrameLength());
+
+			out.write(new byte[1000000]);
+		}
+		finally
+		{
+			out.close();
+		}
+
+		AudioInputStream in = AudioSystem.getAudioInputStream(file);
+		try
+		{
+			assertEquals("Unexpected frame length", 251000, in.getFrameLength());
+			assertEquals("Unexpected sample rate", 44100.0f,
+			        in.getFormat().getSampleRate(), 0.0f);
+			assertEquals("Unexpected channels", 2, in.getFormat().getChannels());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Tests that the file is converted to RF64 when it exceeds the maximum
+	 * size of a standard wave file.
+	 *
+	 * @throws Exception if the test fails unexpectedly
+	 */
+	@Test
+	public void testRF64() throws Exception
+	{
+		WaveFileOutputStream out = new WaveFileOutputStream(file, audioFormat,
+		        1000);
+		try
+		{
+			out.write(new byte[800]);
+			out.flush();
+			assertEquals("Unexpected chunk ID", "RIFF", readId(readHeader(), 0));
+
+			out.write(new byte[400]);
+		}
+		finally
+		{
+			out.close();
+		}
+
+		ByteBuffer header = readHeader();
+		assertEquals("Unexpected length", 80 + 1200, file.length());
+		assertEquals("Unexpected chunk ID", "RF64", readId(header, 0));
+		assertEquals("Unexpected RIFF size", -1, header.getInt(4));
+		assertEquals("Unexpected chunk ID", "ds64", readId(header, 12));
+		assertEquals("Unexpected RIFF size", 80 - 8 + 1200, header.getLong(20));
+		assertEquals("Unexpected data size", 1200, header.getLong(28));
+		assertEquals("Unexpected sample count", 300, header.getLong(36));
+		assertEquals("Unexpected chunk ID", "data", readId(header, 72));
+		assertEquals("Unexpected data size", -1, header.getInt(76));
+	}
+
+	private ByteBuffer readHeader() throws IOException
+	{
+		byte[] header = new byte[80];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try
+		{
+			in.readFully(header);
+		}
+		finally
+		{
+			in.close();
+		}
+		return ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private String readId(ByteBuffer header, int position)
+	{
+		char[] id = new char[4];
+		for (int i = 0; i < id.length; i++)
+		{
+			id[i] = (char) header.get(position + i);
+		}
+		return new String(id);
+	}
+}